@@ -1,5 +1,6 @@
 package com.google.cloud.healthcare.fdamystudies.oauthscim.task;
 
+import com.google.cloud.healthcare.fdamystudies.common.ScheduledTaskMetrics;
 import com.google.cloud.healthcare.fdamystudies.oauthscim.service.UserService;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
@@ -19,10 +20,14 @@ public class RemoveExpiredTempRegIdScheduledTask {
 
   @Autowired private UserService userService;
 
+  @Autowired private ScheduledTaskMetrics scheduledTaskMetrics;
+
   // 30min fixed delay and 10s initial delay
   @Scheduled(fixedDelay = FIXED_DELAY_MILLI_SEC, initialDelay = INITIAL_DELAY_MILLI_SEC)
   public void removeExpiredTempRegIds() {
     logger.info("begin removeExpiredTempRegIds()");
-    userService.removeExpiredTempRegIds();
+    scheduledTaskMetrics.record(
+        RemoveExpiredTempRegIdScheduledTask.class.getSimpleName(),
+        userService::removeExpiredTempRegIds);
   }
 }
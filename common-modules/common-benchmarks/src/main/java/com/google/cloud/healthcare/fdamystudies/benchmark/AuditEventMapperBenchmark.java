@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.benchmark;
+
+import com.google.cloud.healthcare.fdamystudies.beans.AuditLogEventRequest;
+import com.google.cloud.healthcare.fdamystudies.mapper.AuditEventMapper;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.Cookie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+/** Maps the audit headers of a mobile app request, and of a browser request that sends cookies. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuditEventMapperBenchmark {
+
+  private MockHttpServletRequest headerRequest;
+
+  private MockHttpServletRequest cookieRequest;
+
+  @Setup
+  public void setUp() {
+    headerRequest = new MockHttpServletRequest("POST", "/participant-enroll-datastore/enroll");
+    headerRequest.addHeader("appId", "GCPMS001");
+    headerRequest.addHeader("appVersion", "1.0");
+    headerRequest.addHeader("correlationId", "3d8b0e0c-65a5-4c39-9b2e-7c8e6a1f4b21");
+    headerRequest.addHeader("userId", "4878641");
+    headerRequest.addHeader("source", "MOBILE%20APPS");
+    headerRequest.addHeader("mobilePlatform", "ANDROID");
+    headerRequest.addHeader("X-FORWARDED-FOR", "10.10.0.12");
+
+    cookieRequest = new MockHttpServletRequest("GET", "/participant-manager-datastore/sites");
+    cookieRequest.setCookies(
+        new Cookie("mystudies_appId", "GCPMS001"),
+        new Cookie("mystudies_appVersion", "1.0"),
+        new Cookie("mystudies_correlationId", "3d8b0e0c-65a5-4c39-9b2e-7c8e6a1f4b21"),
+        new Cookie("mystudies_userId", "4878641"),
+        new Cookie("mystudies_source", "PARTICIPANT%20MANAGER"),
+        new Cookie("mystudies_mobilePlatform", "UNKNOWN"));
+    cookieRequest.setRemoteAddr("10.10.0.13");
+  }
+
+  @Benchmark
+  public AuditLogEventRequest fromHeaders() {
+    return AuditEventMapper.fromHttpServletRequest(headerRequest);
+  }
+
+  @Benchmark
+  public AuditLogEventRequest fromCookies() {
+    return AuditEventMapper.fromHttpServletRequest(cookieRequest);
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.healthcare.fdamystudies.beans.AuditLogEventRequest;
+import com.google.cloud.healthcare.fdamystudies.common.ErrorCode;
+import com.google.cloud.healthcare.fdamystudies.common.JsonUtils;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversions done on every request (error responses, audit events, introspection bodies). The
+ * newObjectMapper benchmark is the baseline cost of creating a mapper per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonUtilsBenchmark {
+
+  private AuditLogEventRequest auditRequest;
+
+  private String introspectionResponse;
+
+  @Setup
+  public void setUp() {
+    auditRequest = new AuditLogEventRequest();
+    auditRequest.setAppId("GCPMS001");
+    auditRequest.setAppVersion("1.0");
+    auditRequest.setCorrelationId("3d8b0e0c-65a5-4c39-9b2e-7c8e6a1f4b21");
+    auditRequest.setUserId("4878641");
+    auditRequest.setSource("MOBILE APPS");
+    auditRequest.setMobilePlatform("ANDROID");
+    auditRequest.setUserIp("10.10.0.12");
+
+    introspectionResponse =
+        "{\"active\":true,\"sub\":\"4878641\",\"client_id\":\"mobile-apps\","
+            + "\"scope\":\"openid offline\",\"exp\":1893456000,\"iat\":1893452400,"
+            + "\"iss\":\"https://hydra.example.com/\"}";
+  }
+
+  @Benchmark
+  public JsonNode convertErrorCode() {
+    return JsonUtils.getObjectMapper().convertValue(ErrorCode.UNAUTHORIZED, JsonNode.class);
+  }
+
+  @Benchmark
+  public String asJsonString() throws IOException {
+    return JsonUtils.asJsonString(auditRequest);
+  }
+
+  @Benchmark
+  public JsonNode readTree() throws IOException {
+    return JsonUtils.getObjectMapper().readTree(introspectionResponse);
+  }
+
+  @Benchmark
+  public JsonNode newObjectMapper() throws IOException {
+    return new ObjectMapper().readTree(introspectionResponse);
+  }
+}
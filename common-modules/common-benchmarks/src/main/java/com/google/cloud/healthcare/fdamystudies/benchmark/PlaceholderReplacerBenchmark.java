@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.benchmark;
+
+import com.google.cloud.healthcare.fdamystudies.common.PlaceholderReplacer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Email templates are rendered with both ${name} and {{name}} placeholders. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlaceholderReplacerBenchmark {
+
+  private String template;
+
+  private Map<String, String> values;
+
+  @Setup
+  public void setUp() {
+    template =
+        "<html><body><div>Dear Participant,<br/><br/>Thank you for registering with the"
+            + " ${appName} app. Your verification code is <b>{{securitytoken}}</b>.<br/><br/>"
+            + "Please contact ${contactEmail} for any questions.<br/><br/>Thanks,<br/>"
+            + "The ${orgName} MyStudies Support Team</div></body></html>";
+
+    values = new HashMap<>();
+    values.put("appName", "Heart Study");
+    values.put("securitytoken", "7HK2P9");
+    values.put("contactEmail", "support@example.com");
+    values.put("orgName", "Example Org");
+  }
+
+  @Benchmark
+  public String replaceNamedPlaceholders() {
+    return PlaceholderReplacer.replaceNamedPlaceholders(template, values);
+  }
+}
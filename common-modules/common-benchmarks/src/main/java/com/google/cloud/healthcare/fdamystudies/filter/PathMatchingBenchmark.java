@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.filter;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+/**
+ * Path matching of {@link BaseTokenIntrospectionFilter}, which runs for every uri template of a
+ * service on every request. In the filter package to reach the package-private matcher.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathMatchingBenchmark {
+
+  @Param({"/participant-manager-datastore/sites/{siteId}/participants"})
+  private String uriTemplate;
+
+  @Param({"/participant-manager-datastore/sites/5c1a3b7e/participants/"})
+  private String path;
+
+  @Benchmark
+  public boolean checkPathMatches() {
+    return BaseTokenIntrospectionFilter.checkPathMatches(uriTemplate, path);
+  }
+
+  /** Baseline: parsing the uri template on every call. */
+  @Benchmark
+  public boolean parsePerRequest() {
+    PathPatternParser parser = new PathPatternParser();
+    parser.setMatchOptionalTrailingSeparator(true);
+    return parser.parse(uriTemplate).matches(PathContainer.parsePath(path));
+  }
+}
@@ -0,0 +1,21 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.common;
+
+/** What the audit log queue does with a new event when it is full. */
+public enum AuditLogOverflowPolicy {
+  /** Wait for the flusher to free up space, up to the configured offer timeout, then spill. */
+  BLOCK,
+
+  /** Discard the oldest queued event to make room for the new one, events are lost. */
+  DROP_OLDEST,
+
+  /** Append the event to the local spill file instead of queueing it, replayed later. */
+  SPILL_TO_FILE;
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.common;
+
+/** Hibernate second-level cache regions, sized in HibernateCacheConfiguration. */
+public final class CacheRegions {
+
+  private CacheRegions() {}
+
+  public static final String APP = "app";
+
+  public static final String STUDY = "study";
+
+  public static final String SITE = "site";
+
+  public static final String LOCATION = "location";
+
+  /** Results of the by-natural-key lookups of the entities above. */
+  public static final String REFERENCE_QUERIES = "reference-queries";
+
+  /** Hibernate's last-update timestamps per table, used to invalidate cached query results. */
+  public static final String UPDATE_TIMESTAMPS = "default-update-timestamps-region";
+}
@@ -383,7 +383,13 @@ public enum ErrorCode {
       Constants.BAD_REQUEST,
       "This is a default location name in use by the system already. Please enter a different location name."),
 
-  APP_INACTIVE(400, "EC_0089", Constants.BAD_REQUEST, "This app is no longer active.");
+  APP_INACTIVE(400, "EC_0089", Constants.BAD_REQUEST, "This app is no longer active."),
+
+  CLIENT_ACCESS_DENIED(
+      403,
+      "EC_0090",
+      HttpStatus.FORBIDDEN.toString(),
+      "You are not authorized to access this information");
 
   private final int status;
   private final String code;
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.common;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded in-process cache where every entry carries its own time-to-live. Concurrent misses for
+ * the same key are coalesced so that only one caller runs the loader, the others wait for its
+ * result. Once the cache is full the oldest inserted entries are evicted first. The insertion order
+ * keeps the keys of removed and expired entries until a sweep, which runs once it holds more than
+ * twice max-size keys, so that it stays bounded whatever the churn.
+ */
+public class ExpiringCache<K, V> {
+
+  private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+  private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+  private final Queue<K> insertionOrder = new ConcurrentLinkedQueue<>();
+
+  /** Size of insertionOrder, ConcurrentLinkedQueue.size() walks the whole queue. */
+  private final AtomicInteger queuedKeys = new AtomicInteger();
+
+  private final int maxSize;
+
+  private final Counter hits;
+
+  private final Counter misses;
+
+  private final Counter evictions;
+
+  public ExpiringCache(String name, int maxSize, MeterRegistry meterRegistry) {
+    this.maxSize = maxSize;
+    Tags tags = Tags.of("cache", name);
+    this.hits = meterRegistry.counter("cache.gets", tags.and("result", "hit"));
+    this.misses = meterRegistry.counter("cache.gets", tags.and("result", "miss"));
+    this.evictions = meterRegistry.counter("cache.evictions", tags);
+    meterRegistry.gaugeMapSize("cache.size", tags, entries);
+  }
+
+  /**
+   * Returns the cached value for the key, or runs the loader once for all concurrent callers.
+   *
+   * @param loader computes the value on a miss, any exception is rethrown to every waiting caller
+   * @param ttlMillis time-to-live of the loaded value, values with ttl <= 0 are not cached
+   */
+  public V get(K key, Function<K, V> loader, ToLongFunction<V> ttlMillis) {
+    Entry<V> entry = entries.get(key);
+    if (entry != null && !entry.isExpired()) {
+      hits.increment();
+      return entry.value;
+    }
+    if (entry != null) {
+      entries.remove(key, entry);
+    }
+    misses.increment();
+
+    CompletableFuture<V> future = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+    if (existing != null) {
+      return join(existing);
+    }
+
+    try {
+      V value = loader.apply(key);
+      long ttl = ttlMillis.applyAsLong(value);
+      if (ttl > 0) {
+        put(key, value, ttl);
+      }
+      future.complete(value);
+      return value;
+    } catch (RuntimeException e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, future);
+    }
+  }
+
+  public V getIfPresent(K key) {
+    Entry<V> entry = entries.get(key);
+    if (entry == null || entry.isExpired()) {
+      return null;
+    }
+    return entry.value;
+  }
+
+  public void put(K key, V value, long ttlMillis) {
+    if (entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis)) == null) {
+      insertionOrder.add(key);
+      if (queuedKeys.incrementAndGet() > 2 * maxSize) {
+        sweep();
+      }
+    }
+    evictIfFull();
+  }
+
+  public void invalidate(K key) {
+    entries.remove(key);
+  }
+
+  public void invalidateAll() {
+    entries.clear();
+    insertionOrder.clear();
+    queuedKeys.set(0);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Removes the expired entries, then the keys of the insertion order without an entry and the
+   * later duplicates of the keys that were removed and put again.
+   */
+  private synchronized void sweep() {
+    if (queuedKeys.get() <= 2 * maxSize) {
+      // swept by another thread meanwhile
+      return;
+    }
+    entries.values().removeIf(Entry::isExpired);
+    Set<K> queued = new HashSet<>();
+    insertionOrder.removeIf(key -> !entries.containsKey(key) || !queued.add(key));
+    queuedKeys.set(queued.size());
+  }
+
+  private void evictIfFull() {
+    while (entries.size() > maxSize) {
+      K oldest = insertionOrder.poll();
+      if (oldest == null) {
+        return;
+      }
+      queuedKeys.decrementAndGet();
+      if (entries.remove(oldest) != null) {
+        evictions.increment();
+      }
+    }
+  }
+
+  private static <V> V join(CompletableFuture<V> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompletionException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new CompletionException(e.getCause());
+    }
+  }
+
+  private static class Entry<V> {
+
+    private final V value;
+
+    private final long expiresAt;
+
+    private Entry(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+
+    private boolean isExpired() {
+      return System.currentTimeMillis() >= expiresAt;
+    }
+  }
+}
@@ -21,8 +21,12 @@ public final class JsonUtils {
 
   private JsonUtils() {}
 
+  /** Shared, an ObjectMapper is thread-safe once configured and expensive to create. */
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  /** @return the shared ObjectMapper, callers must not change its configuration */
   public static ObjectMapper getObjectMapper() {
-    return new ObjectMapper();
+    return OBJECT_MAPPER;
   }
 
   public static ObjectNode getObjectNode() {
@@ -44,7 +48,7 @@ public final class JsonUtils {
   }
 
   public static String asJsonString(Object obj) throws JsonProcessingException {
-    return new ObjectMapper().writeValueAsString(obj);
+    return OBJECT_MAPPER.writeValueAsString(obj);
   }
 
   public static void addTextFields(
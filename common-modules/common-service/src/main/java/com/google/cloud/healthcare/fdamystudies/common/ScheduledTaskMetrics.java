@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.common;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/** Records the run time and outcome of scheduled tasks as the scheduled.task timer. */
+@Component
+public class ScheduledTaskMetrics {
+
+  @Autowired private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+  private MeterRegistry meterRegistry;
+
+  @PostConstruct
+  public void init() {
+    meterRegistry = meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+  }
+
+  public void record(String taskName, Runnable task) {
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String outcome = "success";
+    try {
+      task.run();
+    } catch (RuntimeException e) {
+      outcome = "failure";
+      throw e;
+    } finally {
+      sample.stop(
+          Timer.builder("scheduled.task")
+              .tag("task", taskName)
+              .tag("outcome", outcome)
+              .publishPercentileHistogram()
+              .register(meterRegistry));
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/** A timed operation of a trace. Closing the span ends it and hands it to the exporter. */
+@Getter
+public class Span implements AutoCloseable {
+
+  public enum Kind {
+    INTERNAL,
+    SERVER,
+    CLIENT;
+  }
+
+  @Getter(AccessLevel.NONE)
+  private final Tracer tracer;
+
+  @Getter(AccessLevel.NONE)
+  final Span previous;
+
+  private final String name;
+
+  private final Kind kind;
+
+  private final TraceContext context;
+
+  private final String parentSpanId;
+
+  private final long startEpochNanos;
+
+  @Getter(AccessLevel.NONE)
+  private final long startNanoTime;
+
+  private long endEpochNanos;
+
+  private boolean error;
+
+  private final Map<String, String> attributes = new LinkedHashMap<>();
+
+  Span(
+      Tracer tracer,
+      Span previous,
+      String name,
+      Kind kind,
+      TraceContext context,
+      String parentSpanId) {
+    this.tracer = tracer;
+    this.previous = previous;
+    this.name = name;
+    this.kind = kind;
+    this.context = context;
+    this.parentSpanId = parentSpanId;
+    this.startEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    this.startNanoTime = System.nanoTime();
+  }
+
+  public Span setAttribute(String key, Object value) {
+    if (value != null) {
+      attributes.put(key, String.valueOf(value));
+    }
+    return this;
+  }
+
+  public Span setError(Throwable throwable) {
+    this.error = true;
+    return setAttribute("exception.type", throwable.getClass().getName());
+  }
+
+  public Span setError(boolean error) {
+    this.error = error;
+    return this;
+  }
+
+  @Override
+  public void close() {
+    if (endEpochNanos == 0) {
+      endEpochNanos = startEpochNanos + (System.nanoTime() - startNanoTime);
+      tracer.end(this);
+    }
+  }
+}
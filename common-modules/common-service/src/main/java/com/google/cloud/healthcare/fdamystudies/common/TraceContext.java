@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.common;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Trace and span id pair propagated in the W3C trace-context {@code traceparent} header, see
+ * https://www.w3.org/TR/trace-context/.
+ */
+@Getter
+public final class TraceContext {
+
+  public static final String TRACEPARENT = "traceparent";
+
+  private static final Pattern TRACEPARENT_PATTERN =
+      Pattern.compile("^00-[0-9a-f]{32}-[0-9a-f]{16}-[0-9a-f]{2}$");
+
+  private static final String INVALID_TRACE_ID = "00000000000000000000000000000000";
+
+  private static final String INVALID_SPAN_ID = "0000000000000000";
+
+  private final String traceId;
+
+  private final String spanId;
+
+  private final boolean sampled;
+
+  public TraceContext(String traceId, String spanId, boolean sampled) {
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.sampled = sampled;
+  }
+
+  /** @return the parsed header, or null if the header is missing or malformed */
+  public static TraceContext fromTraceparent(String traceparent) {
+    if (StringUtils.isEmpty(traceparent)
+        || !TRACEPARENT_PATTERN.matcher(traceparent.trim()).matches()) {
+      return null;
+    }
+    String[] parts = traceparent.trim().split("-");
+    if (INVALID_TRACE_ID.equals(parts[1]) || INVALID_SPAN_ID.equals(parts[2])) {
+      return null;
+    }
+    boolean sampled = (Integer.parseInt(parts[3], 16) & 0x01) == 1;
+    return new TraceContext(parts[1], parts[2], sampled);
+  }
+
+  /** @return a random, valid (not all zero) 128-bit trace id */
+  public static String randomTraceId() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    String traceId;
+    do {
+      traceId = String.format("%016x%016x", random.nextLong(), random.nextLong());
+    } while (INVALID_TRACE_ID.equals(traceId));
+    return traceId;
+  }
+
+  /** @return a random, valid (not all zero) 64-bit span id */
+  public static String randomSpanId() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    String spanId;
+    do {
+      spanId = String.format("%016x", random.nextLong());
+    } while (INVALID_SPAN_ID.equals(spanId));
+    return spanId;
+  }
+
+  public String toTraceparent() {
+    return String.format("00-%s-%s-%s", traceId, spanId, sampled ? "01" : "00");
+  }
+}
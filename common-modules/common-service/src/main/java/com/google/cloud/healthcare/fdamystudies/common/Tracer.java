@@ -0,0 +1,181 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.common;
+
+import com.google.cloud.healthcare.fdamystudies.service.FileSpanExporter;
+import com.google.cloud.healthcare.fdamystudies.service.OtlpHttpSpanExporter;
+import com.google.cloud.healthcare.fdamystudies.service.SpanExporter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.MDC;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates spans and keeps the current span of each thread. Ended spans are queued and exported in
+ * batches by a background thread to the exporter selected with commonservice.tracing.exporter
+ * ({@code none}, {@code file} or {@code otlp}).
+ */
+@Component
+public class Tracer {
+
+  private XLogger logger = XLoggerFactory.getXLogger(Tracer.class.getName());
+
+  private static final String TRACE_ID_MDC_KEY = "traceId";
+
+  private static final ThreadLocal<Span> CURRENT_SPAN = new ThreadLocal<>();
+
+  @Value("${commonservice.tracing.exporter:none}")
+  private String exporterType;
+
+  @Value("${commonservice.tracing.file.path:./logs/traces.ndjson}")
+  private String filePath;
+
+  @Value("${commonservice.tracing.otlp.endpoint:http://localhost:4318/v1/traces}")
+  private String otlpEndpoint;
+
+  @Value("${commonservice.tracing.queue.capacity:2048}")
+  private int queueCapacity;
+
+  @Value("${commonservice.tracing.batch-size:256}")
+  private int batchSize;
+
+  @Value("${component.name:}")
+  private String serviceName;
+
+  private SpanExporter exporter;
+
+  private BlockingQueue<Span> queue;
+
+  private Thread exporterThread;
+
+  private volatile boolean running;
+
+  @PostConstruct
+  public void init() throws Exception {
+    switch (exporterType.toLowerCase()) {
+      case "file":
+        exporter = new FileSpanExporter(serviceName, filePath);
+        break;
+      case "otlp":
+        exporter = new OtlpHttpSpanExporter(serviceName, otlpEndpoint);
+        break;
+      default:
+        return;
+    }
+
+    queue = new ArrayBlockingQueue<>(queueCapacity);
+    running = true;
+    exporterThread = new Thread(this::exportLoop, "span-exporter");
+    exporterThread.setDaemon(true);
+    exporterThread.start();
+  }
+
+  @PreDestroy
+  public void destroy() throws InterruptedException {
+    if (exporterThread != null) {
+      running = false;
+      exporterThread.interrupt();
+      exporterThread.join(TimeUnit.SECONDS.toMillis(5));
+      export(new ArrayList<>(queue));
+    }
+  }
+
+  public Span currentSpan() {
+    return CURRENT_SPAN.get();
+  }
+
+  /** Starts a span that continues the remote parent, or a new trace if there is none. */
+  public Span startServerSpan(String name, TraceContext remoteParent) {
+    TraceContext context;
+    String parentSpanId = null;
+    if (remoteParent != null) {
+      context =
+          new TraceContext(
+              remoteParent.getTraceId(), TraceContext.randomSpanId(), remoteParent.isSampled());
+      parentSpanId = remoteParent.getSpanId();
+    } else {
+      context = new TraceContext(TraceContext.randomTraceId(), TraceContext.randomSpanId(), true);
+    }
+    return start(name, Span.Kind.SERVER, context, parentSpanId);
+  }
+
+  /** Starts a child of the current span, or returns null when there is no active trace. */
+  public Span startChildSpan(String name, Span.Kind kind) {
+    Span parent = CURRENT_SPAN.get();
+    if (parent == null) {
+      return null;
+    }
+    TraceContext context =
+        new TraceContext(
+            parent.getContext().getTraceId(),
+            TraceContext.randomSpanId(),
+            parent.getContext().isSampled());
+    return start(name, kind, context, parent.getContext().getSpanId());
+  }
+
+  private Span start(String name, Span.Kind kind, TraceContext context, String parentSpanId) {
+    Span span = new Span(this, CURRENT_SPAN.get(), name, kind, context, parentSpanId);
+    CURRENT_SPAN.set(span);
+    MDC.put(TRACE_ID_MDC_KEY, context.getTraceId());
+    return span;
+  }
+
+  void end(Span span) {
+    if (CURRENT_SPAN.get() == span) {
+      if (span.previous == null) {
+        CURRENT_SPAN.remove();
+        MDC.remove(TRACE_ID_MDC_KEY);
+      } else {
+        CURRENT_SPAN.set(span.previous);
+      }
+    }
+
+    if (queue != null && span.getContext().isSampled() && !queue.offer(span)) {
+      logger.warn(String.format("span queue full, %s span dropped", span.getName()));
+    }
+  }
+
+  private void exportLoop() {
+    List<Span> batch = new ArrayList<>(batchSize);
+    while (running) {
+      try {
+        Span first = queue.poll(1, TimeUnit.SECONDS);
+        if (first != null) {
+          batch.add(first);
+          queue.drainTo(batch, batchSize - 1);
+          export(batch);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        running = false;
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void export(List<Span> spans) {
+    if (spans.isEmpty()) {
+      return;
+    }
+    try {
+      exporter.export(spans);
+    } catch (Exception e) {
+      logger.error(String.format("failed to export %d spans", spans.size()), e);
+    }
+  }
+}
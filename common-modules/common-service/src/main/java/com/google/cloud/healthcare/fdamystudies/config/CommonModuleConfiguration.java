@@ -11,15 +11,19 @@ package com.google.cloud.healthcare.fdamystudies.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.cloud.healthcare.fdamystudies.exceptions.RestResponseErrorHandler;
 import com.google.cloud.healthcare.fdamystudies.interceptor.RestTemplateAuthTokenModifierInterceptor;
+import com.google.cloud.healthcare.fdamystudies.interceptor.TracingRestTemplateInterceptor;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.web.client.MetricsRestTemplateCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.client.ClientHttpRequestInterceptor;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
@@ -37,6 +41,13 @@ public class CommonModuleConfiguration implements WebMvcConfigurer {
   @Autowired
   private RestTemplateAuthTokenModifierInterceptor restTemplateAuthTokenModifierInterceptor;
 
+  @Autowired
+  private ObjectProvider<TracingRestTemplateInterceptor> tracingRestTemplateInterceptor;
+
+  @Autowired private ClientHttpRequestFactory clientHttpRequestFactory;
+
+  @Autowired private ObjectProvider<MetricsRestTemplateCustomizer> metricsRestTemplateCustomizer;
+
   @Bean
   public ObjectMapper objectMapper() {
     return new ObjectMapper();
@@ -44,11 +55,14 @@ public class CommonModuleConfiguration implements WebMvcConfigurer {
 
   @Bean
   public RestTemplate restTemplate() {
-    RestTemplate restTemplate = new RestTemplate();
+    RestTemplate restTemplate = new RestTemplate(clientHttpRequestFactory);
 
     addInterceptors(restTemplate);
 
     restTemplate.setErrorHandler(restResponseErrorHandler);
+
+    // records http.client.requests timings per downstream host and uri template
+    metricsRestTemplateCustomizer.ifAvailable(customizer -> customizer.customize(restTemplate));
     return restTemplate;
   }
 
@@ -57,6 +71,12 @@ public class CommonModuleConfiguration implements WebMvcConfigurer {
     if (CollectionUtils.isEmpty(interceptors)) {
       interceptors = new ArrayList<>();
     }
+    // the client span also covers the retry made after an access token refresh
+    TracingRestTemplateInterceptor tracingInterceptor =
+        tracingRestTemplateInterceptor.getIfAvailable();
+    if (tracingInterceptor != null) {
+      interceptors.add(tracingInterceptor);
+    }
     interceptors.add(restTemplateAuthTokenModifierInterceptor);
     restTemplate.setInterceptors(interceptors);
   }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.config;
+
+import com.google.cloud.healthcare.fdamystudies.common.CacheRegions;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import org.apache.commons.lang3.StringUtils;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Hibernate second-level entity and query cache backed by a local Ehcache JCache manager. Every
+ * region in {@link CacheRegions} is created up front with its own size and time-to-live, so that
+ * entities written by another service are re-read after at most ttl-seconds. Permission entities
+ * are not cached, so that a revoked permission applies to the next request of every service.
+ */
+@Configuration
+@ConditionalOnProperty(
+    value = "commonservice.hibernate.cache.enabled",
+    havingValue = "true",
+    matchIfMissing = false)
+public class HibernateCacheConfiguration {
+
+  private static final String[] ENTITY_REGIONS = {
+    CacheRegions.APP,
+    CacheRegions.STUDY,
+    CacheRegions.SITE,
+    CacheRegions.LOCATION,
+    CacheRegions.REFERENCE_QUERIES
+  };
+
+  @Value("${commonservice.hibernate.cache.default.max-entries:1000}")
+  private long defaultMaxEntries;
+
+  @Value("${commonservice.hibernate.cache.default.ttl-seconds:300}")
+  private long defaultTtlSeconds;
+
+  /** Comma separated list of region=max-entries:ttl-seconds overrides. */
+  @Value("${commonservice.hibernate.cache.regions:}")
+  private String regionOverrides;
+
+  @Bean(destroyMethod = "close")
+  public CacheManager hibernateCacheManager() {
+    Map<String, long[]> regionSettings = new HashMap<>();
+    for (String region : ENTITY_REGIONS) {
+      regionSettings.put(region, new long[] {defaultMaxEntries, defaultTtlSeconds});
+    }
+    for (String override : StringUtils.split(regionOverrides, ',')) {
+      String region = StringUtils.substringBefore(override, "=").trim();
+      String[] values = StringUtils.split(StringUtils.substringAfter(override, "="), ':');
+      regionSettings.put(
+          region,
+          new long[] {Long.parseLong(values[0].trim()), Long.parseLong(values[1].trim())});
+    }
+
+    CachingProvider provider = Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+    CacheManager cacheManager =
+        provider.getCacheManager(provider.getDefaultURI(), getClass().getClassLoader());
+    for (Map.Entry<String, long[]> region : regionSettings.entrySet()) {
+      dropCache(cacheManager, region.getKey());
+      cacheManager.createCache(
+          region.getKey(),
+          Eh107Configuration.fromEhcacheCacheConfiguration(
+              CacheConfigurationBuilder.newCacheConfigurationBuilder(
+                      Object.class,
+                      Object.class,
+                      ResourcePoolsBuilder.heap(region.getValue()[0]))
+                  .withExpiry(
+                      ExpiryPolicyBuilder.timeToLiveExpiration(
+                          Duration.ofSeconds(region.getValue()[1])))));
+    }
+
+    // update timestamps must outlive every cached query result, so they never expire
+    dropCache(cacheManager, CacheRegions.UPDATE_TIMESTAMPS);
+    cacheManager.createCache(
+        CacheRegions.UPDATE_TIMESTAMPS,
+        Eh107Configuration.fromEhcacheCacheConfiguration(
+            CacheConfigurationBuilder.newCacheConfigurationBuilder(
+                Object.class, Object.class, ResourcePoolsBuilder.heap(10000))));
+    return cacheManager;
+  }
+
+  /** Drops a region left over by a previous application context in the same JVM (tests). */
+  private static void dropCache(CacheManager cacheManager, String region) {
+    if (cacheManager.getCache(region) != null) {
+      cacheManager.destroyCache(region);
+    }
+  }
+
+  /** Applies the cache settings to the Spring Boot managed EntityManagerFactory. */
+  @Bean
+  public HibernatePropertiesCustomizer hibernateCachePropertiesCustomizer() {
+    return this::applyTo;
+  }
+
+  /** Adds the second-level cache settings to the given Hibernate properties. */
+  public void applyTo(Map<? super String, Object> hibernateProperties) {
+    hibernateProperties.put("hibernate.cache.use_second_level_cache", "true");
+    hibernateProperties.put("hibernate.cache.use_query_cache", "true");
+    hibernateProperties.put("hibernate.cache.region.factory_class", "jcache");
+    hibernateProperties.put("hibernate.javax.cache.cache_manager", hibernateCacheManager());
+    hibernateProperties.put("hibernate.javax.cache.missing_cache_strategy", "fail");
+    hibernateProperties.put("javax.persistence.sharedCache.mode", "ENABLE_SELECTIVE");
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.config;
+
+import java.util.Map;
+import java.util.TreeMap;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * /actuator/hibernatecache lists the second-level cache regions with their size and hit counts, and
+ * evicts a region (DELETE /actuator/hibernatecache/{region}) or all of them (DELETE
+ * /actuator/hibernatecache). Writes made through Hibernate keep the cache current by themselves,
+ * this is the hook for changes made outside of this service, e.g. by another service or a manual
+ * database update.
+ *
+ * <p>The endpoint is excluded from the web exposure in common-application.properties, as the
+ * actuator endpoints are not authenticated. It is meant for JMX or for a service that exposes it
+ * behind its own access control.
+ */
+@Component
+@Endpoint(id = "hibernatecache")
+@ConditionalOnProperty(
+    value = "commonservice.hibernate.cache.enabled",
+    havingValue = "true",
+    matchIfMissing = false)
+public class HibernateCacheEndpoint {
+
+  private XLogger logger = XLoggerFactory.getXLogger(HibernateCacheEndpoint.class.getName());
+
+  @Autowired private EntityManagerFactory entityManagerFactory;
+
+  @ReadOperation
+  public Map<String, Map<String, Long>> regions() {
+    Statistics statistics = getSessionFactory().getStatistics();
+    Map<String, Map<String, Long>> regions = new TreeMap<>();
+    for (String region : statistics.getSecondLevelCacheRegionNames()) {
+      CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+      Map<String, Long> values = new TreeMap<>();
+      if (regionStatistics != null) {
+        values.put("elementCountInMemory", regionStatistics.getElementCountInMemory());
+        values.put("hitCount", regionStatistics.getHitCount());
+        values.put("missCount", regionStatistics.getMissCount());
+        values.put("putCount", regionStatistics.getPutCount());
+      }
+      regions.put(region, values);
+    }
+    return regions;
+  }
+
+  @DeleteOperation
+  public void evictRegion(@Selector String region) {
+    logger.info(String.format("evict second-level cache region %s", region));
+    getSessionFactory().getCache().evictRegion(region);
+  }
+
+  @DeleteOperation
+  public void evictAll() {
+    logger.info("evict all second-level cache regions");
+    getSessionFactory().getCache().evictAllRegions();
+  }
+
+  private SessionFactory getSessionFactory() {
+    return entityManagerFactory.unwrap(SessionFactory.class);
+  }
+}
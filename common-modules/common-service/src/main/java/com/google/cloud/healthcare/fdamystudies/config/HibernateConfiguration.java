@@ -11,6 +11,8 @@ package com.google.cloud.healthcare.fdamystudies.config;
 import java.util.Properties;
 import javax.sql.DataSource;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
@@ -52,6 +54,20 @@ public class HibernateConfiguration {
   @Value("${spring.jpa.properties.hibernate.hbm2ddl.import_files:}")
   private String dataSqlFile;
 
+  @Value("${spring.jpa.properties.hibernate.generate_statistics:false}")
+  private String generateStatistics;
+
+  @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:100}")
+  private String batchSize;
+
+  @Value("${spring.jpa.properties.hibernate.order_inserts:true}")
+  private String orderInserts;
+
+  @Value("${spring.jpa.properties.hibernate.order_updates:true}")
+  private String orderUpdates;
+
+  @Autowired private ObjectProvider<HibernateCacheConfiguration> hibernateCacheConfiguration;
+
   @Bean
   public DataSource dataSource() {
     DriverManagerDataSource dataSource = new DriverManagerDataSource();
@@ -71,11 +87,18 @@ public class HibernateConfiguration {
     hibernateProperties.put("hibernate.dialect", dialect);
     hibernateProperties.put("hibernate.show_sql", showSql);
     hibernateProperties.put("hibernate.hbm2ddl.auto", autoDdl);
+    hibernateProperties.put("hibernate.generate_statistics", generateStatistics);
+    hibernateProperties.put("hibernate.jdbc.batch_size", batchSize);
+    hibernateProperties.put("hibernate.order_inserts", orderInserts);
+    hibernateProperties.put("hibernate.order_updates", orderUpdates);
+    hibernateProperties.put("hibernate.jdbc.batch_versioned_data", "true");
 
     if (StringUtils.isNotEmpty(dataSqlFile)) {
       hibernateProperties.put("hibernate.hbm2ddl.import_files", dataSqlFile);
     }
 
+    hibernateCacheConfiguration.ifAvailable(cache -> cache.applyTo(hibernateProperties));
+
     sessionFactory.setHibernateProperties(hibernateProperties);
 
     return sessionFactory;
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+/**
+ * Pooled Apache HttpClient used by the shared {@link org.springframework.web.client.RestTemplate}
+ * for service to service calls. Every value can be overridden per service with the
+ * commonservice.http.client.* properties.
+ */
+@Configuration
+public class HttpClientConfiguration {
+
+  private static final String POOL_NAME = "rest-template";
+
+  private static final String HTTPS = "https";
+
+  @Value("${commonservice.http.client.max-total:200}")
+  private int maxTotal;
+
+  @Value("${commonservice.http.client.max-per-route:50}")
+  private int maxPerRoute;
+
+  /** Comma separated list of scheme://host:port=max-connections per-route overrides. */
+  @Value("${commonservice.http.client.route-max-connections:}")
+  private String routeMaxConnections;
+
+  @Value("${commonservice.http.client.connect-timeout-millis:5000}")
+  private int connectTimeoutMillis;
+
+  @Value("${commonservice.http.client.read-timeout-millis:30000}")
+  private int readTimeoutMillis;
+
+  @Value("${commonservice.http.client.pool-acquire-timeout-millis:5000}")
+  private int poolAcquireTimeoutMillis;
+
+  @Value("${commonservice.http.client.idle-timeout-seconds:30}")
+  private long idleTimeoutSeconds;
+
+  @Value("${commonservice.http.client.time-to-live-seconds:300}")
+  private long timeToLiveSeconds;
+
+  @Value("${commonservice.http.client.validate-after-inactivity-millis:2000}")
+  private int validateAfterInactivityMillis;
+
+  @Autowired private ObjectProvider<MeterRegistry> meterRegistry;
+
+  @Bean
+  public PoolingHttpClientConnectionManager httpClientConnectionManager() {
+    PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager(timeToLiveSeconds, TimeUnit.SECONDS);
+    connectionManager.setMaxTotal(maxTotal);
+    connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+    connectionManager.setValidateAfterInactivity(validateAfterInactivityMillis);
+
+    for (String routeLimit : StringUtils.split(routeMaxConnections, ',')) {
+      connectionManager.setMaxPerRoute(
+          toRoute(StringUtils.substringBeforeLast(routeLimit, "=").trim()),
+          Integer.parseInt(StringUtils.substringAfterLast(routeLimit, "=").trim()));
+    }
+
+    new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, POOL_NAME)
+        .bindTo(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    return connectionManager;
+  }
+
+  /**
+   * @return the route HttpClient plans for requests to the uri, with the default port of the
+   *     scheme when the uri has none
+   */
+  static HttpRoute toRoute(String uri) {
+    URI target = URI.create(uri);
+    boolean secure = HTTPS.equalsIgnoreCase(target.getScheme());
+    int port = target.getPort() != -1 ? target.getPort() : secure ? 443 : 80;
+    return new HttpRoute(new HttpHost(target.getHost(), port, target.getScheme()), null, secure);
+  }
+
+  @Bean(destroyMethod = "close")
+  public CloseableHttpClient pooledHttpClient() {
+    RequestConfig requestConfig =
+        RequestConfig.custom()
+            .setConnectTimeout(connectTimeoutMillis)
+            .setSocketTimeout(readTimeoutMillis)
+            .setConnectionRequestTimeout(poolAcquireTimeoutMillis)
+            .build();
+
+    return HttpClients.custom()
+        .setConnectionManager(httpClientConnectionManager())
+        .setDefaultRequestConfig(requestConfig)
+        .evictExpiredConnections()
+        .evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS)
+        .build();
+  }
+
+  @Bean
+  public ClientHttpRequestFactory clientHttpRequestFactory() {
+    return new HttpComponentsClientHttpRequestFactory(pooledHttpClient());
+  }
+}
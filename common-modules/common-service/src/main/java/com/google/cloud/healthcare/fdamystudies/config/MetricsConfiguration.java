@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jpa.HibernateQueryMetrics;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.metrics.MeterRegistryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+/**
+ * Shared metrics setup for the Spring Boot services. Endpoint latencies (http.server.requests),
+ * Hibernate statistics and JVM metrics come from Spring Boot actuator auto-configuration, this class
+ * adds the application tag, per-query Hibernate timings and second-level cache hit ratios.
+ * Everything is exposed on /actuator/prometheus, see common-application.properties for the
+ * histogram settings.
+ */
+@Configuration
+public class MetricsConfiguration {
+
+  private static final String ENTITY_MANAGER_FACTORY_SUFFIX = "entityManagerFactory";
+
+  @Value("${component.name:}")
+  private String componentName;
+
+  @Bean
+  public MeterRegistryCustomizer<MeterRegistry> applicationTagCustomizer() {
+    return registry -> registry.config().commonTags("application", componentName);
+  }
+
+  @Bean
+  public SmartInitializingSingleton hibernateQueryMetricsBinder(
+      ListableBeanFactory beanFactory, ObjectProvider<MeterRegistry> meterRegistry) {
+    return () ->
+        meterRegistry.ifAvailable(
+            registry ->
+                beanFactory
+                    .getBeansOfType(EntityManagerFactory.class)
+                    .forEach(
+                        (beanName, entityManagerFactory) -> {
+                          SessionFactory sessionFactory =
+                              entityManagerFactory.unwrap(SessionFactory.class);
+                          new HibernateQueryMetrics(
+                                  sessionFactory,
+                                  getEntityManagerFactoryName(beanName),
+                                  Tags.empty())
+                              .bindTo(registry);
+                          bindCacheHitRatios(sessionFactory.getStatistics(), registry);
+                        }));
+  }
+
+  /**
+   * Tags the query timings like the actuator Hibernate metrics: by the bean name of the factory,
+   * without the entityManagerFactory suffix of a secondary factory.
+   */
+  static String getEntityManagerFactoryName(String beanName) {
+    if (beanName.length() > ENTITY_MANAGER_FACTORY_SUFFIX.length()
+        && StringUtils.endsWithIgnoreCase(beanName, ENTITY_MANAGER_FACTORY_SUFFIX)) {
+      return beanName.substring(0, beanName.length() - ENTITY_MANAGER_FACTORY_SUFFIX.length());
+    }
+    return beanName;
+  }
+
+  /**
+   * Second-level cache hit ratio per region. Hit and miss counts per region are also published by
+   * the actuator as hibernate.second.level.cache.requests.
+   */
+  private static void bindCacheHitRatios(Statistics statistics, MeterRegistry registry) {
+    if (!statistics.isStatisticsEnabled()) {
+      return;
+    }
+    for (String region : statistics.getSecondLevelCacheRegionNames()) {
+      Gauge.builder(
+              "hibernate.second.level.cache.hit.ratio",
+              statistics,
+              stats -> {
+                CacheRegionStatistics regionStatistics = stats.getCacheRegionStatistics(region);
+                if (regionStatistics == null) {
+                  return Double.NaN;
+                }
+                long requests = regionStatistics.getHitCount() + regionStatistics.getMissCount();
+                return requests == 0
+                    ? Double.NaN
+                    : (double) regionStatistics.getHitCount() / requests;
+              })
+          .tag("region", region)
+          .register(registry);
+    }
+  }
+}
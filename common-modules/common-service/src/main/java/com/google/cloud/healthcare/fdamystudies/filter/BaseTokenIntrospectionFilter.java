@@ -21,6 +21,7 @@ import com.google.cloud.healthcare.fdamystudies.mapper.AuditEventMapper;
 import com.google.cloud.healthcare.fdamystudies.service.OAuthService;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -33,7 +34,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.server.PathContainer;
@@ -48,10 +48,23 @@ public abstract class BaseTokenIntrospectionFilter implements Filter {
 
   public static final String ACTIVE = "active";
 
+  private static final PathPatternParser PATH_PATTERN_PARSER = new PathPatternParser();
+
+  static {
+    PATH_PATTERN_PARSER.setMatchOptionalTrailingSeparator(true);
+  }
+
+  /** Parsed uri templates, the template set is fixed per filter so this stays small. */
+  private static final Map<String, PathPattern> PATH_PATTERNS = new ConcurrentHashMap<>();
+
   @Autowired private OAuthService oauthService;
 
   @Autowired private AuditEventHelper auditEventHelper;
 
+  @Autowired private TokenIntrospectionCache tokenIntrospectionCache;
+
+  @Autowired private JwtAccessTokenVerifier jwtAccessTokenVerifier;
+
   @Override
   public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
       throws IOException, ServletException {
@@ -85,10 +98,8 @@ public abstract class BaseTokenIntrospectionFilter implements Filter {
     return false;
   }
 
-  private static boolean checkPathMatches(String uriTemplate, String path) {
-    PathPatternParser parser = new PathPatternParser();
-    parser.setMatchOptionalTrailingSeparator(true);
-    PathPattern p = parser.parse(uriTemplate);
+  static boolean checkPathMatches(String uriTemplate, String path) {
+    PathPattern p = PATH_PATTERNS.computeIfAbsent(uriTemplate, PATH_PATTERN_PARSER::parse);
     return p.matches(PathContainer.parsePath(path));
   }
 
@@ -99,12 +110,18 @@ public abstract class BaseTokenIntrospectionFilter implements Filter {
     AuditLogEventRequest auditRequest = AuditEventMapper.fromHttpServletRequest(req);
 
     String token = StringUtils.replace(auth, "Bearer", "").trim();
-    ObjectNode params = getObjectNode();
-    params.put(TOKEN, token);
-    ResponseEntity<JsonNode> oauthResponse = oauthService.introspectToken(params);
+    ResponseEntity<JsonNode> oauthResponse = jwtAccessTokenVerifier.verify(token);
+    if (oauthResponse == null) {
+      oauthResponse = tokenIntrospectionCache.introspect(token, this::introspectToken);
+    }
     if (oauthResponse.getStatusCode().is2xxSuccessful()) {
       if (oauthResponse.getBody().get(ACTIVE).booleanValue()) {
-        chain.doFilter(request, response);
+        if (isAuthorized(req, oauthResponse.getBody())) {
+          chain.doFilter(request, response);
+        } else {
+          logger.exit("client is not allowed on this path, return 403 Forbidden response");
+          setForbiddenResponse(response);
+        }
       } else {
         logger.exit("token is invalid, return 401 Unauthorized response");
         auditEventHelper.logEvent(ACCESS_TOKEN_INVALID_OR_EXPIRED, auditRequest);
@@ -120,13 +137,37 @@ public abstract class BaseTokenIntrospectionFilter implements Filter {
     }
   }
 
+  private ResponseEntity<JsonNode> introspectToken(String token) {
+    ObjectNode params = getObjectNode();
+    params.put(TOKEN, token);
+    return oauthService.introspectToken(params);
+  }
+
   private void setUnauthorizedResponse(ServletResponse response) throws IOException {
+    setErrorResponse(response, ErrorCode.UNAUTHORIZED);
+  }
+
+  private void setForbiddenResponse(ServletResponse response) throws IOException {
+    setErrorResponse(response, ErrorCode.CLIENT_ACCESS_DENIED);
+  }
+
+  private void setErrorResponse(ServletResponse response, ErrorCode errorCode)
+      throws IOException {
     HttpServletResponse res = (HttpServletResponse) response;
-    res.setStatus(HttpStatus.UNAUTHORIZED.value());
+    res.setStatus(errorCode.getStatus());
     res.setContentType(MediaType.APPLICATION_JSON_VALUE);
-    JsonNode reponse = getObjectMapper().convertValue(ErrorCode.UNAUTHORIZED, JsonNode.class);
+    JsonNode reponse = getObjectMapper().convertValue(errorCode, JsonNode.class);
     res.getOutputStream().write(reponse.toString().getBytes());
   }
+
+  /**
+   * Called for active tokens only, override to restrict a path to some clients. {@code tokenInfo}
+   * is the introspection (or verified JWT) response with the {@code client_id} and {@code scope}.
+   */
+  protected boolean isAuthorized(HttpServletRequest request, JsonNode tokenInfo) {
+    return true;
+  }
+
   /** HashMap where key=uriTemplate, value=array of http method names */
   protected abstract Map<String, String[]> getUriTemplateAndHttpMethodsMap();
 }
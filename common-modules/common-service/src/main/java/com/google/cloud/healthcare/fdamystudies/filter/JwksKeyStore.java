@@ -0,0 +1,160 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.filter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.math.BigInteger;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Holds the RSA signing keys published by the authorization server (Hydra) JWKS endpoint. Keys are
+ * refreshed periodically in the background and on demand when a token refers to an unknown key id,
+ * at most once per min-refresh-interval-seconds. The keys are fetched with a RestTemplate of their
+ * own, without the interceptors of the shared one, as the JWKS endpoint is public.
+ */
+@Component
+public class JwksKeyStore {
+
+  private XLogger logger = XLoggerFactory.getXLogger(JwksKeyStore.class.getName());
+
+  private static final String KEYS = "keys";
+
+  private static final String KID = "kid";
+
+  private static final String KTY = "kty";
+
+  private static final String USE = "use";
+
+  private static final String RSA = "RSA";
+
+  private static final String SIG = "sig";
+
+  @Value("${commonservice.token.validation.mode:introspection}")
+  private String validationMode;
+
+  @Value("${security.oauth2.jwks_endpoint:}")
+  private String jwksEndpoint;
+
+  @Value("${security.oauth2.jwks.refresh-interval-seconds:300}")
+  private long refreshIntervalSeconds;
+
+  @Value("${security.oauth2.jwks.min-refresh-interval-seconds:30}")
+  private long minRefreshIntervalSeconds;
+
+  @Value("${security.oauth2.jwks.timeout-seconds:5}")
+  private int timeoutSeconds;
+
+  private RestTemplate restTemplate;
+
+  private volatile Map<String, PublicKey> keys = Collections.emptyMap();
+
+  private volatile long lastRefreshMillis;
+
+  private ScheduledExecutorService scheduler;
+
+  @PostConstruct
+  public void init() {
+    if (!isEnabled()) {
+      return;
+    }
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout((int) TimeUnit.SECONDS.toMillis(timeoutSeconds));
+    requestFactory.setReadTimeout((int) TimeUnit.SECONDS.toMillis(timeoutSeconds));
+    restTemplate = new RestTemplate(requestFactory);
+    scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "jwks-refresh");
+              thread.setDaemon(true);
+              return thread;
+            });
+    scheduler.scheduleWithFixedDelay(
+        () -> refreshQuietly(0), 0, refreshIntervalSeconds, TimeUnit.SECONDS);
+  }
+
+  @PreDestroy
+  public void destroy() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  public boolean isEnabled() {
+    return StringUtils.equalsIgnoreCase(validationMode, "jwt")
+        && StringUtils.isNotEmpty(jwksEndpoint);
+  }
+
+  /** @return the key for the given key id, or null if the key set does not contain it */
+  public PublicKey getKey(String kid) {
+    PublicKey key = keys.get(kid);
+    if (key == null) {
+      refreshQuietly(TimeUnit.SECONDS.toMillis(minRefreshIntervalSeconds));
+      key = keys.get(kid);
+    }
+    return key;
+  }
+
+  /** Fetches the keys unless they were fetched within minAgeMillis. */
+  private synchronized void refreshQuietly(long minAgeMillis) {
+    // checked under the lock, so that the threads waiting for a refresh do not fetch again
+    if (System.currentTimeMillis() - lastRefreshMillis < minAgeMillis) {
+      return;
+    }
+    try {
+      lastRefreshMillis = System.currentTimeMillis();
+      ResponseEntity<JsonNode> response = restTemplate.getForEntity(jwksEndpoint, JsonNode.class);
+      if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
+        keys = toPublicKeys(response.getBody());
+        logger.info(String.format("loaded %d signing keys from JWKS endpoint", keys.size()));
+      } else {
+        logger.warn(
+            String.format("JWKS refresh failed with status=%d", response.getStatusCodeValue()));
+      }
+    } catch (Exception e) {
+      logger.error("JWKS refresh failed with an exception, keeping the previous key set", e);
+    }
+  }
+
+  private Map<String, PublicKey> toPublicKeys(JsonNode jwks) throws Exception {
+    Map<String, PublicKey> publicKeys = new HashMap<>();
+    KeyFactory keyFactory = KeyFactory.getInstance(RSA);
+    for (JsonNode jwk : jwks.path(KEYS)) {
+      if (!RSA.equals(jwk.path(KTY).asText())
+          || (jwk.hasNonNull(USE) && !SIG.equals(jwk.get(USE).asText()))
+          || !jwk.hasNonNull(KID)) {
+        continue;
+      }
+      BigInteger modulus = new BigInteger(1, Base64.getUrlDecoder().decode(jwk.get("n").asText()));
+      BigInteger exponent = new BigInteger(1, Base64.getUrlDecoder().decode(jwk.get("e").asText()));
+      publicKeys.put(
+          jwk.get(KID).asText(),
+          keyFactory.generatePublic(new RSAPublicKeySpec(modulus, exponent)));
+    }
+    return Collections.unmodifiableMap(publicKeys);
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.filter;
+
+import static com.google.cloud.healthcare.fdamystudies.common.JsonUtils.getObjectMapper;
+import static com.google.cloud.healthcare.fdamystudies.filter.BaseTokenIntrospectionFilter.ACTIVE;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+/**
+ * Verifies JWT access tokens locally against the keys in {@link JwksKeyStore}. The result mimics
+ * the body of an introspection response ({@code active}, {@code exp}, {@code sub}, ...) so that
+ * callers can treat both validation strategies the same way. Tokens are only verified locally when
+ * the expected audience is configured, a token without it in its {@code aud} claim is inactive.
+ */
+@Component
+public class JwtAccessTokenVerifier {
+
+  private XLogger logger = XLoggerFactory.getXLogger(JwtAccessTokenVerifier.class.getName());
+
+  private static final Map<String, String> SIGNATURE_ALGORITHMS = new HashMap<>();
+
+  static {
+    SIGNATURE_ALGORITHMS.put("RS256", "SHA256withRSA");
+    SIGNATURE_ALGORITHMS.put("RS384", "SHA384withRSA");
+    SIGNATURE_ALGORITHMS.put("RS512", "SHA512withRSA");
+  }
+
+  private static final String[] INTROSPECTION_CLAIMS = {
+    "sub", "client_id", "scope", "exp", "iat", "iss", "aud"
+  };
+
+  @Value("${security.oauth2.jwt.issuer:}")
+  private String issuer;
+
+  @Value("${security.oauth2.jwt.audience:}")
+  private String audience;
+
+  @Value("${security.oauth2.jwt.clock-skew-seconds:30}")
+  private long clockSkewSeconds;
+
+  @Autowired private JwksKeyStore jwksKeyStore;
+
+  /**
+   * @return an introspection-like response when the token is a JWT signed by a known key, or null
+   *     when the token cannot be verified locally (opaque token, unknown key id, unsupported
+   *     algorithm, no audience configured or JWT mode disabled) and remote introspection should
+   *     be used instead
+   */
+  public ResponseEntity<JsonNode> verify(String token) {
+    if (!jwksKeyStore.isEnabled() || StringUtils.isEmpty(audience)) {
+      return null;
+    }
+
+    String[] parts = StringUtils.split(token, '.');
+    if (parts == null || parts.length != 3 || StringUtils.countMatches(token, '.') != 2) {
+      return null;
+    }
+
+    try {
+      JsonNode header = decode(parts[0]);
+      String algorithm = SIGNATURE_ALGORITHMS.get(header.path("alg").asText());
+      PublicKey key = algorithm == null ? null : jwksKeyStore.getKey(header.path("kid").asText());
+      if (key == null) {
+        return null;
+      }
+
+      Signature signature = Signature.getInstance(algorithm);
+      signature.initVerify(key);
+      signature.update((parts[0] + "." + parts[1]).getBytes(StandardCharsets.US_ASCII));
+      if (!signature.verify(Base64.getUrlDecoder().decode(parts[2]))) {
+        logger.warn("JWT signature verification failed");
+        return inactive();
+      }
+
+      JsonNode claims = decode(parts[1]);
+      return isValid(claims) ? active(claims) : inactive();
+    } catch (Exception e) {
+      logger.warn("JWT could not be parsed, fall back to token introspection", e);
+      return null;
+    }
+  }
+
+  private boolean isValid(JsonNode claims) {
+    long nowSeconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    if (!claims.hasNonNull("exp") || claims.get("exp").asLong() + clockSkewSeconds < nowSeconds) {
+      return false;
+    }
+    if (claims.hasNonNull("nbf") && claims.get("nbf").asLong() - clockSkewSeconds > nowSeconds) {
+      return false;
+    }
+    if (StringUtils.isNotEmpty(issuer) && !issuer.equals(claims.path("iss").asText())) {
+      return false;
+    }
+    return hasAudience(claims.path("aud"));
+  }
+
+  /** The aud claim is either a single string or an array of them. */
+  private boolean hasAudience(JsonNode aud) {
+    if (aud.isArray()) {
+      for (JsonNode value : aud) {
+        if (audience.equals(value.asText())) {
+          return true;
+        }
+      }
+      return false;
+    }
+    return audience.equals(aud.asText());
+  }
+
+  private ResponseEntity<JsonNode> active(JsonNode claims) {
+    ObjectNode body = getObjectMapper().createObjectNode();
+    body.put(ACTIVE, true);
+    for (String claim : INTROSPECTION_CLAIMS) {
+      if (claims.has(claim)) {
+        body.set(claim, claims.get(claim));
+      }
+    }
+    return ResponseEntity.ok(body);
+  }
+
+  private ResponseEntity<JsonNode> inactive() {
+    ObjectNode body = getObjectMapper().createObjectNode();
+    body.put(ACTIVE, false);
+    return ResponseEntity.ok(body);
+  }
+
+  private JsonNode decode(String part) throws Exception {
+    return getObjectMapper().readTree(Base64.getUrlDecoder().decode(part));
+  }
+}
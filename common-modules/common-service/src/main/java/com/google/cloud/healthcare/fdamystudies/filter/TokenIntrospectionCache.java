@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.filter;
+
+import static com.google.cloud.healthcare.fdamystudies.filter.BaseTokenIntrospectionFilter.ACTIVE;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.cloud.healthcare.fdamystudies.common.ExpiringCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.annotation.PostConstruct;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches token introspection results keyed by the SHA-256 hash of the token. Active tokens are
+ * cached until their {@code exp} claim (capped by max-ttl-seconds), inactive tokens are cached for
+ * negative-ttl-seconds and error responses are never cached. A token revoked on logout stays
+ * active here for up to max-ttl-seconds, so keep it to a few seconds.
+ */
+@Component
+public class TokenIntrospectionCache {
+
+  private static final String EXP = "exp";
+
+  @Value("${commonservice.token.introspection.cache.enabled:false}")
+  private boolean enabled;
+
+  @Value("${commonservice.token.introspection.cache.max-size:10000}")
+  private int maxSize;
+
+  @Value("${commonservice.token.introspection.cache.max-ttl-seconds:5}")
+  private long maxTtlSeconds;
+
+  @Value("${commonservice.token.introspection.cache.negative-ttl-seconds:10}")
+  private long negativeTtlSeconds;
+
+  @Autowired private ObjectProvider<MeterRegistry> meterRegistry;
+
+  private ExpiringCache<String, ResponseEntity<JsonNode>> cache;
+
+  @PostConstruct
+  public void init() {
+    cache =
+        new ExpiringCache<>(
+            "token-introspection",
+            maxSize,
+            meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+  }
+
+  public ResponseEntity<JsonNode> introspect(
+      String token, Function<String, ResponseEntity<JsonNode>> introspector) {
+    if (!enabled) {
+      return introspector.apply(token);
+    }
+    return cache.get(
+        DigestUtils.sha256Hex(token), key -> introspector.apply(token), this::getTtlMillis);
+  }
+
+  private long getTtlMillis(ResponseEntity<JsonNode> response) {
+    if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
+      return 0;
+    }
+
+    JsonNode body = response.getBody();
+    if (!body.path(ACTIVE).booleanValue()) {
+      return TimeUnit.SECONDS.toMillis(negativeTtlSeconds);
+    }
+
+    long maxTtlMillis = TimeUnit.SECONDS.toMillis(maxTtlSeconds);
+    if (!body.hasNonNull(EXP)) {
+      return maxTtlMillis;
+    }
+    long expiresInMillis =
+        TimeUnit.SECONDS.toMillis(body.get(EXP).asLong()) - System.currentTimeMillis();
+    return Math.min(maxTtlMillis, expiresInMillis);
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.filter;
+
+import com.google.cloud.healthcare.fdamystudies.common.Span;
+import com.google.cloud.healthcare.fdamystudies.common.TraceContext;
+import com.google.cloud.healthcare.fdamystudies.common.Tracer;
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Opens the server span of each request. The trace is continued from the {@code traceparent}
+ * header when present, otherwise a new trace is started. The correlationId header is recorded as a
+ * span attribute, so audit log entries and traces of the same request can be joined.
+ */
+@Component
+@Order(0)
+@ConditionalOnProperty(
+    value = "commonservice.tracing.enabled",
+    havingValue = "true",
+    matchIfMissing = false)
+public class TracingFilter extends OncePerRequestFilter {
+
+  private static final String CORRELATION_ID = "correlationId";
+
+  @Autowired private Tracer tracer;
+
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    TraceContext remoteParent =
+        TraceContext.fromTraceparent(request.getHeader(TraceContext.TRACEPARENT));
+    Span span =
+        tracer.startServerSpan(request.getMethod() + " " + request.getRequestURI(), remoteParent);
+    try {
+      span.setAttribute("http.method", request.getMethod());
+      span.setAttribute("http.target", request.getRequestURI());
+      span.setAttribute("correlation_id", request.getHeader(CORRELATION_ID));
+      response.setHeader(TraceContext.TRACEPARENT, span.getContext().toTraceparent());
+
+      filterChain.doFilter(request, response);
+    } catch (IOException | ServletException | RuntimeException e) {
+      span.setError(e);
+      throw e;
+    } finally {
+      span.setAttribute("http.status_code", response.getStatus());
+      if (response.getStatus() >= 500) {
+        span.setError(true);
+      }
+      span.close();
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.interceptor;
+
+import com.google.cloud.healthcare.fdamystudies.common.Span;
+import com.google.cloud.healthcare.fdamystudies.common.Tracer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records a span around DAO and Spring Data repository calls made within a traced request, so that
+ * database time shows up in the request trace.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(
+    value = "commonservice.tracing.enabled",
+    havingValue = "true",
+    matchIfMissing = false)
+public class DaoTracingAspect {
+
+  @Autowired private Tracer tracer;
+
+  @Around(
+      "within(com.google.cloud.healthcare.fdamystudies..dao..*)"
+          + " || this(org.springframework.data.repository.Repository)")
+  public Object trace(ProceedingJoinPoint joinPoint) throws Throwable {
+    if (tracer.currentSpan() == null) {
+      return joinPoint.proceed();
+    }
+
+    String name =
+        joinPoint.getSignature().getDeclaringType().getSimpleName()
+            + "."
+            + joinPoint.getSignature().getName();
+    try (Span span = tracer.startChildSpan(name, Span.Kind.INTERNAL)) {
+      span.setAttribute("db.operation", joinPoint.getSignature().getName());
+      try {
+        return joinPoint.proceed();
+      } catch (Throwable t) {
+        span.setError(t);
+        throw t;
+      }
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.interceptor;
+
+import com.google.cloud.healthcare.fdamystudies.common.Span;
+import com.google.cloud.healthcare.fdamystudies.common.TraceContext;
+import com.google.cloud.healthcare.fdamystudies.common.Tracer;
+import java.io.IOException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+/**
+ * Opens a client span for each outgoing call made within a traced request and propagates it in the
+ * {@code traceparent} header. Calls made outside of a request (scheduled tasks) are not traced.
+ */
+@Component
+@ConditionalOnProperty(
+    value = "commonservice.tracing.enabled",
+    havingValue = "true",
+    matchIfMissing = false)
+public class TracingRestTemplateInterceptor implements ClientHttpRequestInterceptor {
+
+  private static final String CORRELATION_ID = "correlationId";
+
+  @Autowired private Tracer tracer;
+
+  @Override
+  public ClientHttpResponse intercept(
+      HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+    Span parent = tracer.currentSpan();
+    if (parent == null) {
+      return execution.execute(request, body);
+    }
+
+    String correlationId = parent.getAttributes().get("correlation_id");
+    if (correlationId != null && !request.getHeaders().containsKey(CORRELATION_ID)) {
+      request.getHeaders().set(CORRELATION_ID, correlationId);
+    }
+
+    try (Span span =
+        tracer.startChildSpan(
+            request.getMethodValue() + " " + request.getURI().getHost(), Span.Kind.CLIENT)) {
+      span.setAttribute("http.method", request.getMethodValue());
+      span.setAttribute("http.url", request.getURI());
+      request.getHeaders().set(TraceContext.TRACEPARENT, span.getContext().toTraceparent());
+      try {
+        ClientHttpResponse response = execution.execute(request, body);
+        span.setAttribute("http.status_code", response.getRawStatusCode());
+        span.setError(response.getStatusCode().is5xxServerError());
+        return response;
+      } catch (IOException | RuntimeException e) {
+        span.setError(e);
+        throw e;
+      }
+    }
+  }
+}
@@ -8,6 +8,10 @@
 
 package com.google.cloud.healthcare.fdamystudies.repository;
 
+import static org.hibernate.annotations.QueryHints.CACHEABLE;
+import static org.hibernate.annotations.QueryHints.CACHE_REGION;
+
+import com.google.cloud.healthcare.fdamystudies.common.CacheRegions;
 import com.google.cloud.healthcare.fdamystudies.model.AppCount;
 import com.google.cloud.healthcare.fdamystudies.model.AppEntity;
 import com.google.cloud.healthcare.fdamystudies.model.AppParticipantsInfo;
@@ -15,9 +19,11 @@ import com.google.cloud.healthcare.fdamystudies.model.AppStudyInfo;
 import com.google.cloud.healthcare.fdamystudies.model.AppStudySiteInfo;
 import java.util.List;
 import java.util.Optional;
+import javax.persistence.QueryHint;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -28,6 +34,10 @@ import org.springframework.stereotype.Repository;
     matchIfMissing = false)
 public interface AppRepository extends JpaRepository<AppEntity, String> {
 
+  @QueryHints({
+    @QueryHint(name = CACHEABLE, value = "true"),
+    @QueryHint(name = CACHE_REGION, value = CacheRegions.REFERENCE_QUERIES)
+  })
   @Query("SELECT app from AppEntity app where app.appId=:appId")
   public Optional<AppEntity> findByAppId(String appId);
 
@@ -8,6 +8,10 @@
 
 package com.google.cloud.healthcare.fdamystudies.repository;
 
+import static org.hibernate.annotations.QueryHints.CACHEABLE;
+import static org.hibernate.annotations.QueryHints.CACHE_REGION;
+
+import com.google.cloud.healthcare.fdamystudies.common.CacheRegions;
 import com.google.cloud.healthcare.fdamystudies.model.AppCount;
 import com.google.cloud.healthcare.fdamystudies.model.EnrolledInvitedCountForStudy;
 import com.google.cloud.healthcare.fdamystudies.model.LocationIdStudyNamesPair;
@@ -19,9 +23,11 @@ import com.google.cloud.healthcare.fdamystudies.model.StudyParticipantDetails;
 import com.google.cloud.healthcare.fdamystudies.model.StudySiteInfo;
 import java.util.List;
 import java.util.Optional;
+import javax.persistence.QueryHint;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -301,6 +307,10 @@ public interface StudyRepository extends JpaRepository<StudyEntity, String> {
       nativeQuery = true)
   public List<StudyEntity> findAll(Integer limit, Integer offset, String searchTerm);
 
+  @QueryHints({
+    @QueryHint(name = CACHEABLE, value = "true"),
+    @QueryHint(name = CACHE_REGION, value = CacheRegions.REFERENCE_QUERIES)
+  })
   @Query("SELECT study from StudyEntity study where study.customId=:customStudyId")
   public Optional<StudyEntity> findByCustomStudyId(String customStudyId);
 
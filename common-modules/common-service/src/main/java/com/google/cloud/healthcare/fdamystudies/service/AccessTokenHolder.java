@@ -0,0 +1,208 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * Holds the client credentials access token of a service. The token is refreshed in the background
+ * once refresh-ahead-ratio of its lifetime has passed, so callers keep getting a valid token across
+ * rollover. When a refresh is needed on the request path, concurrent callers share one in-flight
+ * token request, and all of them get an {@link AccessTokenUnavailableException} if it fails.
+ */
+public class AccessTokenHolder {
+
+  private XLogger logger = XLoggerFactory.getXLogger(AccessTokenHolder.class.getName());
+
+  private final Supplier<AccessToken> tokenSupplier;
+
+  private final double refreshAheadRatio;
+
+  private final long retryDelaySeconds;
+
+  private final ScheduledExecutorService scheduler;
+
+  private volatile AccessToken current;
+
+  private CompletableFuture<AccessToken> inFlight;
+
+  private ScheduledFuture<?> scheduledRefresh;
+
+  private boolean shutdown;
+
+  public AccessTokenHolder(
+      Supplier<AccessToken> tokenSupplier, double refreshAheadRatio, long retryDelaySeconds) {
+    this.tokenSupplier = tokenSupplier;
+    this.refreshAheadRatio = refreshAheadRatio;
+    this.retryDelaySeconds = retryDelaySeconds;
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "access-token-refresh");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /** @return the current token, waiting for a refresh only if there is no unexpired token */
+  public String getToken() {
+    AccessToken token = current;
+    if (token != null && !token.isExpired()) {
+      return token.getValue();
+    }
+    return join(refresh()).getValue();
+  }
+
+  /**
+   * Called after the token was rejected. Refreshes it unless another caller has already replaced
+   * the rejected token, in which case the newer token is returned without a new request.
+   */
+  public String getNewToken(String rejectedToken) {
+    AccessToken token = current;
+    if (token != null
+        && !token.isExpired()
+        && rejectedToken != null
+        && !StringUtils.equals(token.getValue(), rejectedToken)) {
+      return token.getValue();
+    }
+    return join(refresh()).getValue();
+  }
+
+  /** Cancels the scheduled refresh, callers still waiting for a token get an exception. */
+  public synchronized void shutdown() {
+    shutdown = true;
+    if (scheduledRefresh != null) {
+      scheduledRefresh.cancel(false);
+      scheduledRefresh = null;
+    }
+    if (inFlight != null) {
+      inFlight.completeExceptionally(shutdownException());
+    }
+    scheduler.shutdownNow();
+  }
+
+  private synchronized CompletableFuture<AccessToken> refresh() {
+    if (shutdown) {
+      CompletableFuture<AccessToken> future = new CompletableFuture<>();
+      future.completeExceptionally(shutdownException());
+      return future;
+    }
+    if (inFlight == null) {
+      CompletableFuture<AccessToken> future = new CompletableFuture<>();
+      inFlight = future;
+      scheduler.execute(() -> fetch(future));
+    }
+    return inFlight;
+  }
+
+  private void fetch(CompletableFuture<AccessToken> future) {
+    AccessToken token = null;
+    Exception failure = null;
+    try {
+      token = tokenSupplier.get();
+      if (token == null) {
+        failure = new AccessTokenUnavailableException("no access token was returned", null);
+      }
+    } catch (Exception e) {
+      logger.error("access token refresh failed with an exception", e);
+      failure = e;
+    } finally {
+      long nextRefreshSeconds =
+          token == null
+              ? retryDelaySeconds
+              : Math.max(
+                  retryDelaySeconds, (long) (token.getExpiresInSeconds() * refreshAheadRatio));
+      synchronized (this) {
+        inFlight = null;
+        if (token != null) {
+          current = token;
+        }
+        if (!shutdown) {
+          if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+          }
+          scheduledRefresh =
+              scheduler.schedule(this::refresh, nextRefreshSeconds, TimeUnit.SECONDS);
+        }
+      }
+      if (token != null) {
+        future.complete(token);
+      } else {
+        future.completeExceptionally(
+            failure != null
+                ? failure
+                : new AccessTokenUnavailableException("access token refresh failed", null));
+      }
+    }
+  }
+
+  private static AccessToken join(CompletableFuture<AccessToken> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AccessTokenUnavailableException("interrupted waiting for the access token", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof AccessTokenUnavailableException) {
+        throw (AccessTokenUnavailableException) e.getCause();
+      }
+      throw new AccessTokenUnavailableException("access token refresh failed", e.getCause());
+    }
+  }
+
+  private static AccessTokenUnavailableException shutdownException() {
+    return new AccessTokenUnavailableException("the access token holder is shut down", null);
+  }
+
+  /** Thrown to the callers waiting for a token when the refresh failed. */
+  public static class AccessTokenUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 4618262390235810427L;
+
+    public AccessTokenUnavailableException(String message, Throwable cause) {
+      super(message, cause);
+    }
+  }
+
+  public static class AccessToken {
+
+    private final String value;
+
+    private final long expiresInSeconds;
+
+    private final long expiresAt;
+
+    public AccessToken(String value, long expiresInSeconds) {
+      this.value = value;
+      this.expiresInSeconds = expiresInSeconds;
+      this.expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(expiresInSeconds);
+    }
+
+    public String getValue() {
+      return value;
+    }
+
+    public long getExpiresInSeconds() {
+      return expiresInSeconds;
+    }
+
+    public boolean isExpired() {
+      return System.currentTimeMillis() >= expiresAt;
+    }
+  }
+}
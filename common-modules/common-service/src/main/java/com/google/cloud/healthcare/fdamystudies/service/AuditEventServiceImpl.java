@@ -8,19 +8,10 @@
 
 package com.google.cloud.healthcare.fdamystudies.service;
 
-import static com.google.cloud.healthcare.fdamystudies.common.JsonUtils.getObjectMapper;
-
-import com.google.cloud.MonitoredResource;
 import com.google.cloud.healthcare.fdamystudies.beans.AuditLogEventRequest;
-import com.google.cloud.logging.LogEntry;
-import com.google.cloud.logging.Logging;
-import com.google.cloud.logging.LoggingOptions;
-import com.google.cloud.logging.Payload;
-import com.google.cloud.logging.Severity;
-import java.util.Collections;
-import java.util.Map;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
@@ -33,32 +24,17 @@ public class AuditEventServiceImpl implements AuditEventService {
 
   private XLogger logger = XLoggerFactory.getXLogger(AuditEventServiceImpl.class.getName());
 
-  private static final String AUDIT_LOG_NAME = "application-audit-log";
+  @Autowired private AuditLogEventQueue auditLogEventQueue;
 
   @Override
   public void postAuditLogEvent(AuditLogEventRequest auditRequest) {
     logger.entry(
         String.format("begin postAuditLogEvent() for %s event", auditRequest.getEventCode()));
 
-    try (Logging logging = LoggingOptions.getDefaultInstance().getService()) {
-
-      // The data to write to the log
-      Map<String, Object> jsonPayloadMap = getObjectMapper().convertValue(auditRequest, Map.class);
-
-      LogEntry entry =
-          LogEntry.newBuilder(Payload.JsonPayload.of(jsonPayloadMap))
-              .setTimestamp(auditRequest.getOccurred().getTime())
-              .setSeverity(Severity.INFO)
-              .setLogName(AUDIT_LOG_NAME)
-              .setResource(MonitoredResource.newBuilder("global").build())
-              .build();
+    // Entries are written to the sink in batches by the background flusher
+    auditLogEventQueue.add(auditRequest);
 
-      // Writes the log entry asynchronously
-      logging.write(Collections.singleton(entry));
-    } catch (Exception e) {
-      logger.error(String.format("%s failed with an exception", auditRequest.getEventCode()), e);
-    }
     logger.exit(
-        String.format("postAuditLogEvent() for %s event finished", auditRequest.getEventCode()));
+        String.format("postAuditLogEvent() for %s event queued", auditRequest.getEventCode()));
   }
 }
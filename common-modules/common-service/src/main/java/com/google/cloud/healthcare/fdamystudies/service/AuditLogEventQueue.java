@@ -0,0 +1,377 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import static com.google.cloud.healthcare.fdamystudies.common.JsonUtils.getObjectMapper;
+
+import com.google.cloud.healthcare.fdamystudies.beans.AuditLogEventRequest;
+import com.google.cloud.healthcare.fdamystudies.common.AuditLogOverflowPolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded in-memory queue of audit log events. A background flusher drains the queue and writes
+ * the events to the configured {@link AuditLogSink} in batches of up to batch-size events, or
+ * whatever has accumulated after flush-interval-millis.
+ *
+ * <p>With the default SPILL_TO_FILE policy no event is lost: events that do not fit in the queue,
+ * batches the sink fails to write and events added during shutdown are appended to the spill file,
+ * which the flusher replays to the sink on start and then every replay-interval-millis. BLOCK
+ * waits for room up to offer-timeout-millis and then spills. DROP_OLDEST is the only lossy policy.
+ */
+@Component
+@ConditionalOnProperty(
+    value = "commonservice.auditlogevent.enabled",
+    havingValue = "true",
+    matchIfMissing = true)
+public class AuditLogEventQueue {
+
+  private XLogger logger = XLoggerFactory.getXLogger(AuditLogEventQueue.class.getName());
+
+  private static final String FILE_SINK = "file";
+
+  private static final String REPLAY_SUFFIX = ".replay";
+
+  @Value("${commonservice.auditlogevent.sink:cloud-logging}")
+  private String sinkType;
+
+  @Value("${commonservice.auditlogevent.file.path:./logs/audit-log.ndjson}")
+  private String filePath;
+
+  @Value("${commonservice.auditlogevent.spill.file.path:./logs/audit-log-spill.ndjson}")
+  private String spillFilePath;
+
+  @Value("${commonservice.auditlogevent.spill.replay-interval-millis:60000}")
+  private long replayIntervalMillis;
+
+  @Value("${commonservice.auditlogevent.queue.capacity:10000}")
+  private int capacity;
+
+  @Value("${commonservice.auditlogevent.queue.batch-size:100}")
+  private int batchSize;
+
+  @Value("${commonservice.auditlogevent.queue.flush-interval-millis:1000}")
+  private long flushIntervalMillis;
+
+  @Value("${commonservice.auditlogevent.queue.overflow-policy:SPILL_TO_FILE}")
+  private AuditLogOverflowPolicy overflowPolicy;
+
+  @Value("${commonservice.auditlogevent.queue.offer-timeout-millis:500}")
+  private long offerTimeoutMillis;
+
+  @Value("${commonservice.auditlogevent.queue.shutdown-timeout-millis:10000}")
+  private long shutdownTimeoutMillis;
+
+  @Autowired private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+  private BlockingQueue<AuditLogEventRequest> queue;
+
+  private AuditLogSink sink;
+
+  private FileAuditLogSink spillSink;
+
+  private Thread flusher;
+
+  private volatile boolean running;
+
+  private long lastReplayMillis;
+
+  private Counter written;
+
+  private Counter dropped;
+
+  private Counter spilled;
+
+  private Counter replayed;
+
+  private Counter failed;
+
+  @PostConstruct
+  public void init() {
+    queue = new ArrayBlockingQueue<>(capacity);
+
+    MeterRegistry meterRegistry =
+        meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+    meterRegistry.gaugeCollectionSize("auditlog.queue.depth", Collections.emptyList(), queue);
+    written = meterRegistry.counter("auditlog.events", "result", "written");
+    dropped = meterRegistry.counter("auditlog.events", "result", "dropped");
+    spilled = meterRegistry.counter("auditlog.events", "result", "spilled");
+    replayed = meterRegistry.counter("auditlog.events", "result", "replayed");
+    failed = meterRegistry.counter("auditlog.events", "result", "failed");
+
+    running = true;
+    flusher = new Thread(this::flushLoop, "auditlog-flusher");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /**
+   * Stops the flusher, which writes the queued events before it exits. The flusher is only
+   * interrupted past shutdown-timeout-millis, and the sink is closed once it has stopped, so that
+   * no batch is written while the sink closes.
+   */
+  @PreDestroy
+  public void destroy() throws InterruptedException {
+    running = false;
+    flusher.join(shutdownTimeoutMillis);
+    if (flusher.isAlive()) {
+      logger.warn("audit log flusher did not stop in time, interrupting it");
+      flusher.interrupt();
+      flusher.join(shutdownTimeoutMillis);
+    }
+    if (flusher.isAlive()) {
+      logger.error("audit log flusher is still running, the sink is left open");
+      return;
+    }
+    // events added while the flusher drained the queue
+    spill(drain());
+    if (sink instanceof AutoCloseable) {
+      try {
+        ((AutoCloseable) sink).close();
+      } catch (Exception e) {
+        logger.error("failed to close the audit log sink", e);
+      }
+    }
+  }
+
+  public void add(AuditLogEventRequest auditRequest) {
+    if (!running) {
+      // the flusher is stopping, the event is replayed on the next start
+      spill(Collections.singletonList(auditRequest));
+      return;
+    }
+    if (queue.offer(auditRequest)) {
+      return;
+    }
+
+    switch (overflowPolicy) {
+      case BLOCK:
+        offerOrSpill(auditRequest);
+        break;
+      case DROP_OLDEST:
+        while (!queue.offer(auditRequest)) {
+          if (queue.poll() != null) {
+            dropped.increment();
+          }
+        }
+        break;
+      case SPILL_TO_FILE:
+      default:
+        spill(Collections.singletonList(auditRequest));
+    }
+  }
+
+  private void offerOrSpill(AuditLogEventRequest auditRequest) {
+    try {
+      if (queue.offer(auditRequest, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        return;
+      }
+      logger.warn(
+          String.format("audit log queue full, %s event spilled", auditRequest.getEventCode()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    spill(Collections.singletonList(auditRequest));
+  }
+
+  private void flushLoop() {
+    replaySpilled();
+    List<AuditLogEventRequest> batch = new ArrayList<>(batchSize);
+    while (running) {
+      try {
+        AuditLogEventRequest first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          if (System.currentTimeMillis() - lastReplayMillis >= replayIntervalMillis) {
+            replaySpilled();
+          }
+          continue;
+        }
+        batch.add(first);
+        long deadline = System.currentTimeMillis() + flushIntervalMillis;
+        while (batch.size() < batchSize) {
+          queue.drainTo(batch, batchSize - batch.size());
+          long remaining = deadline - System.currentTimeMillis();
+          if (batch.size() >= batchSize || remaining <= 0) {
+            break;
+          }
+          AuditLogEventRequest next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+        write(batch);
+        batch.clear();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        running = false;
+      } finally {
+        // events polled before an interrupt are written before the flusher exits
+        if (!batch.isEmpty()) {
+          write(batch);
+          batch.clear();
+        }
+      }
+    }
+    flushRemaining();
+  }
+
+  private void flushRemaining() {
+    List<AuditLogEventRequest> batch = new ArrayList<>(batchSize);
+    while (queue.drainTo(batch, batchSize) > 0) {
+      write(batch);
+      batch.clear();
+    }
+  }
+
+  private List<AuditLogEventRequest> drain() {
+    List<AuditLogEventRequest> remaining = new ArrayList<>();
+    queue.drainTo(remaining);
+    return remaining;
+  }
+
+  private void write(List<AuditLogEventRequest> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    try {
+      getSink().write(batch);
+      written.increment(batch.size());
+    } catch (Exception e) {
+      logger.error(String.format("failed to write %d audit log events", batch.size()), e);
+      if (overflowPolicy == AuditLogOverflowPolicy.DROP_OLDEST) {
+        failed.increment(batch.size());
+      } else {
+        spill(batch);
+      }
+    }
+  }
+
+  private void spill(List<AuditLogEventRequest> auditRequests) {
+    if (auditRequests.isEmpty()) {
+      return;
+    }
+    try {
+      getSpillSink().write(auditRequests);
+      spilled.increment(auditRequests.size());
+    } catch (Exception e) {
+      logger.error(String.format("failed to spill %d audit log events", auditRequests.size()), e);
+      dropped.increment(auditRequests.size());
+    }
+  }
+
+  /**
+   * Writes the spilled events to the sink. The spill file is first renamed, so that events spilled
+   * meanwhile go to a new file. When the sink fails, the renamed file is rewritten with the events
+   * not written yet, for the next replay.
+   */
+  private void replaySpilled() {
+    lastReplayMillis = System.currentTimeMillis();
+    Path replayFile = Paths.get(spillFilePath + REPLAY_SUFFIX);
+    List<String> lines;
+    try {
+      if (!Files.exists(replayFile) && !getSpillSink().moveTo(replayFile)) {
+        return;
+      }
+      lines = Files.readAllLines(replayFile, StandardCharsets.UTF_8);
+    } catch (Exception e) {
+      logger.error("failed to read the spilled audit log events", e);
+      return;
+    }
+
+    for (int next = 0; next < lines.size(); next += batchSize) {
+      List<String> batchLines = lines.subList(next, Math.min(next + batchSize, lines.size()));
+      try {
+        List<AuditLogEventRequest> batch = readEvents(batchLines);
+        if (!batch.isEmpty()) {
+          getSink().write(batch);
+          replayed.increment(batch.size());
+        }
+      } catch (Exception e) {
+        logger.error("failed to replay the spilled audit log events, retrying later", e);
+        keepForReplay(replayFile, lines.subList(next, lines.size()));
+        return;
+      }
+    }
+    try {
+      Files.delete(replayFile);
+      logger.info(String.format("replayed %d spilled audit log events", lines.size()));
+    } catch (IOException e) {
+      logger.error(String.format("failed to delete %s", replayFile), e);
+    }
+  }
+
+  private List<AuditLogEventRequest> readEvents(List<String> lines) {
+    List<AuditLogEventRequest> auditRequests = new ArrayList<>(lines.size());
+    for (String line : lines) {
+      if (StringUtils.isBlank(line)) {
+        continue;
+      }
+      try {
+        auditRequests.add(getObjectMapper().readValue(line, AuditLogEventRequest.class));
+      } catch (IOException e) {
+        logger.error("skipping an unreadable spilled audit log event", e);
+        failed.increment();
+      }
+    }
+    return auditRequests;
+  }
+
+  private void keepForReplay(Path replayFile, List<String> lines) {
+    Path tmpFile = Paths.get(replayFile + ".tmp");
+    try {
+      Files.write(tmpFile, lines, StandardCharsets.UTF_8);
+      Files.move(tmpFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      // the whole file is replayed again, events already written may be written twice
+      logger.error(String.format("failed to rewrite %s", replayFile), e);
+    }
+  }
+
+  /** The sink is created lazily so that services start even when GCP credentials are missing. */
+  private synchronized AuditLogSink getSink() throws Exception {
+    if (sink == null) {
+      sink =
+          StringUtils.equalsIgnoreCase(sinkType, FILE_SINK)
+              ? new FileAuditLogSink(filePath)
+              : new CloudLoggingAuditLogSink();
+    }
+    return sink;
+  }
+
+  private synchronized FileAuditLogSink getSpillSink() throws Exception {
+    if (spillSink == null) {
+      spillSink = new FileAuditLogSink(spillFilePath);
+    }
+    return spillSink;
+  }
+}
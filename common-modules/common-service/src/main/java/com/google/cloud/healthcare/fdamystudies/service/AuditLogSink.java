@@ -0,0 +1,18 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import com.google.cloud.healthcare.fdamystudies.beans.AuditLogEventRequest;
+import java.util.List;
+
+/** Destination of the audit log events drained by {@link AuditLogEventQueue}. */
+public interface AuditLogSink {
+
+  public void write(List<AuditLogEventRequest> auditRequests) throws Exception;
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import java.util.List;
+
+/**
+ * Writes many entities with few database round-trips. Entities are written in chunks of
+ * hibernate.jdbc.batch_size, with one flush per chunk, so that Hibernate sends them as JDBC batches
+ * grouped by entity type (hibernate.order_inserts / hibernate.order_updates).
+ */
+public interface BulkPersistenceService {
+
+  /**
+   * Inserts new entities. An object graph is passed as a flat list with parents before their
+   * children. The entities are detached once written, ids are assigned when the method returns.
+   */
+  public void persistAll(List<?> entities);
+
+  /** Updates detached or managed entities and returns the managed copies in the same order. */
+  public <T> List<T> mergeAll(List<T> entities);
+}
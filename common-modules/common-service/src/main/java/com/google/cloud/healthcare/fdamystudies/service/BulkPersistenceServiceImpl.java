@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+@Service
+public class BulkPersistenceServiceImpl implements BulkPersistenceService {
+
+  private XLogger logger = XLoggerFactory.getXLogger(BulkPersistenceServiceImpl.class.getName());
+
+  @PersistenceContext private EntityManager entityManager;
+
+  @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:100}")
+  private int batchSize;
+
+  @Override
+  @Transactional
+  public void persistAll(List<?> entities) {
+    logger.entry(String.format("begin persistAll() for %d entities", entities.size()));
+    List<Object> chunk = new ArrayList<>(batchSize);
+    for (Object entity : entities) {
+      entityManager.persist(entity);
+      chunk.add(entity);
+      if (chunk.size() == batchSize) {
+        flushAndDetach(chunk);
+      }
+    }
+    flushAndDetach(chunk);
+    logger.exit("persistAll() completed");
+  }
+
+  @Override
+  @Transactional
+  public <T> List<T> mergeAll(List<T> entities) {
+    logger.entry(String.format("begin mergeAll() for %d entities", entities.size()));
+    List<T> merged = new ArrayList<>(entities.size());
+    int pending = 0;
+    for (T entity : entities) {
+      merged.add(entityManager.merge(entity));
+      if (++pending == batchSize) {
+        entityManager.flush();
+        pending = 0;
+      }
+    }
+    entityManager.flush();
+    logger.exit("mergeAll() completed");
+    return merged;
+  }
+
+  /** Written entities are detached so that later flushes do not dirty-check them again. */
+  private void flushAndDetach(List<Object> chunk) {
+    entityManager.flush();
+    chunk.forEach(entityManager::detach);
+    chunk.clear();
+  }
+}
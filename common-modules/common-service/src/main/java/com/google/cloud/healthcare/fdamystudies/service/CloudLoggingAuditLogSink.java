@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import static com.google.cloud.healthcare.fdamystudies.common.JsonUtils.getObjectMapper;
+
+import com.google.cloud.MonitoredResource;
+import com.google.cloud.healthcare.fdamystudies.beans.AuditLogEventRequest;
+import com.google.cloud.logging.LogEntry;
+import com.google.cloud.logging.Logging;
+import com.google.cloud.logging.LoggingOptions;
+import com.google.cloud.logging.Payload;
+import com.google.cloud.logging.Severity;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/** Writes audit log events to Cloud Logging through one long-lived client. */
+public class CloudLoggingAuditLogSink implements AuditLogSink, AutoCloseable {
+
+  private static final String AUDIT_LOG_NAME = "application-audit-log";
+
+  private static final MonitoredResource GLOBAL_RESOURCE =
+      MonitoredResource.newBuilder("global").build();
+
+  private final Logging logging;
+
+  public CloudLoggingAuditLogSink() {
+    this.logging = LoggingOptions.getDefaultInstance().getService();
+  }
+
+  @Override
+  public void write(List<AuditLogEventRequest> auditRequests) {
+    List<LogEntry> entries = new ArrayList<>(auditRequests.size());
+    for (AuditLogEventRequest auditRequest : auditRequests) {
+      Map<String, Object> jsonPayloadMap = getObjectMapper().convertValue(auditRequest, Map.class);
+      entries.add(
+          LogEntry.newBuilder(Payload.JsonPayload.of(jsonPayloadMap))
+              .setTimestamp(auditRequest.getOccurred().getTime())
+              .setSeverity(Severity.INFO)
+              .setLogName(AUDIT_LOG_NAME)
+              .setResource(GLOBAL_RESOURCE)
+              .build());
+    }
+    logging.write(entries);
+  }
+
+  @Override
+  public void close() throws Exception {
+    logging.close();
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import static com.google.cloud.healthcare.fdamystudies.common.JsonUtils.getObjectMapper;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.cloud.healthcare.fdamystudies.beans.AuditLogEventRequest;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends audit log events to a local file, one JSON document per line. Used as the sink when
+ * running without GCP and as the spill file of {@link AuditLogEventQueue}.
+ */
+public class FileAuditLogSink implements AuditLogSink {
+
+  private final Path path;
+
+  private final ObjectWriter writer = getObjectMapper().writer();
+
+  public FileAuditLogSink(String path) throws IOException {
+    this.path = Paths.get(path);
+    if (this.path.getParent() != null) {
+      Files.createDirectories(this.path.getParent());
+    }
+  }
+
+  @Override
+  public synchronized void write(List<AuditLogEventRequest> auditRequests) throws IOException {
+    try (BufferedWriter out =
+        Files.newBufferedWriter(
+            path,
+            StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND,
+            StandardOpenOption.WRITE)) {
+      for (AuditLogEventRequest auditRequest : auditRequests) {
+        out.write(writer.writeValueAsString(auditRequest));
+        out.newLine();
+      }
+    }
+  }
+
+  /**
+   * Renames the file to the target, the next write creates a new file.
+   *
+   * @return false if there is no file
+   */
+  public synchronized boolean moveTo(Path target) throws IOException {
+    if (!Files.exists(path)) {
+      return false;
+    }
+    Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+    return true;
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import com.google.cloud.healthcare.fdamystudies.common.Span;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/** Appends each batch of spans to a local file as one OTLP/JSON document per line. */
+public class FileSpanExporter implements SpanExporter {
+
+  private final String serviceName;
+
+  private final Path path;
+
+  public FileSpanExporter(String serviceName, String path) throws IOException {
+    this.serviceName = serviceName;
+    this.path = Paths.get(path);
+    if (this.path.getParent() != null) {
+      Files.createDirectories(this.path.getParent());
+    }
+  }
+
+  @Override
+  public void export(List<Span> spans) throws IOException {
+    try (BufferedWriter out =
+        Files.newBufferedWriter(
+            path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      out.write(OtlpJsonSpanEncoder.encode(serviceName, spans).toString());
+      out.newLine();
+    }
+  }
+}
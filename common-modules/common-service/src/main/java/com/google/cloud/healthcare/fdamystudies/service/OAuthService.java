@@ -18,4 +18,10 @@ public interface OAuthService {
   public String getAccessToken();
 
   public String getNewAccessToken();
+
+  /**
+   * Requests a new access token unless the rejected token has already been replaced by a
+   * concurrent caller, in which case the current token is returned.
+   */
+  public String getNewAccessToken(String rejectedAccessToken);
 }
@@ -13,9 +13,10 @@ import static com.google.cloud.healthcare.fdamystudies.common.JsonUtils.addTextF
 import static com.google.cloud.healthcare.fdamystudies.common.JsonUtils.getTextValue;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.cloud.healthcare.fdamystudies.service.AccessTokenHolder.AccessToken;
 import java.util.Base64;
 import javax.annotation.PostConstruct;
-import org.apache.commons.lang3.StringUtils;
+import javax.annotation.PreDestroy;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -53,7 +54,7 @@ public class OAuthServiceImpl extends BaseServiceImpl implements OAuthService {
 
   private static final String ACCESS_TOKEN = "access_token";
 
-  private String accessToken;
+  private static final String EXPIRES_IN = "expires_in";
 
   @Value("${security.oauth2.client.client-id:}")
   private String clientId;
@@ -70,12 +71,30 @@ public class OAuthServiceImpl extends BaseServiceImpl implements OAuthService {
   @Value("${security.oauth2.token_endpoint:}")
   private String tokenEndpoint;
 
+  @Value("${security.oauth2.client.token.default-expires-in-seconds:3600}")
+  private long defaultExpiresInSeconds;
+
+  @Value("${security.oauth2.client.token.refresh-ahead-ratio:0.8}")
+  private double refreshAheadRatio;
+
+  @Value("${security.oauth2.client.token.retry-delay-seconds:10}")
+  private long retryDelaySeconds;
+
   private String encodedAuthorization;
 
+  private AccessTokenHolder accessTokenHolder;
+
   @PostConstruct
   public void init() {
     String credentials = clientId + ":" + clientSecret;
     encodedAuthorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes());
+    accessTokenHolder =
+        new AccessTokenHolder(this::requestAccessToken, refreshAheadRatio, retryDelaySeconds);
+  }
+
+  @PreDestroy
+  public void destroy() {
+    accessTokenHolder.shutdown();
   }
 
   @Override
@@ -99,26 +118,36 @@ public class OAuthServiceImpl extends BaseServiceImpl implements OAuthService {
 
   @Override
   public String getAccessToken() {
-    if (StringUtils.isEmpty(accessToken)) {
-      this.accessToken = getNewAccessToken();
-    }
-    return this.accessToken;
+    return accessTokenHolder.getToken();
   }
 
   @Override
   public String getNewAccessToken() {
-    logger.entry("begin getNewAccessToken()");
+    return accessTokenHolder.getNewToken(null);
+  }
+
+  @Override
+  public String getNewAccessToken(String rejectedAccessToken) {
+    return accessTokenHolder.getNewToken(rejectedAccessToken);
+  }
+
+  private AccessToken requestAccessToken() {
+    logger.entry("begin requestAccessToken()");
     ResponseEntity<JsonNode> response = getToken();
-    if (isSuccessful(response)) {
-      this.accessToken = response.getBody().get(ACCESS_TOKEN).textValue();
-      logger.exit(String.format("status=%d", response.getStatusCodeValue()));
-    } else {
+    if (!isSuccessful(response)) {
       logger.error(
           String.format(
               "Get new access token from oauth scim service failed with status=%d and response=%s",
               response.getStatusCodeValue(), response.getBody()));
+      return null;
     }
-    return this.accessToken;
+
+    JsonNode body = response.getBody();
+    long expiresIn =
+        body.hasNonNull(EXPIRES_IN) ? body.get(EXPIRES_IN).asLong() : defaultExpiresInSeconds;
+    logger.exit(
+        String.format("status=%d, expires_in=%d", response.getStatusCodeValue(), expiresIn));
+    return new AccessToken(body.get(ACCESS_TOKEN).textValue(), expiresIn);
   }
 
   private ResponseEntity<JsonNode> getToken() {
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.cloud.healthcare.fdamystudies.common.Span;
+import java.util.List;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Posts spans to an OpenTelemetry collector with the OTLP/HTTP JSON protocol. Uses its own
+ * RestTemplate so that export calls are not traced or authenticated like service calls.
+ */
+public class OtlpHttpSpanExporter implements SpanExporter {
+
+  private final String serviceName;
+
+  private final String endpoint;
+
+  private final RestTemplate restTemplate = new RestTemplate();
+
+  public OtlpHttpSpanExporter(String serviceName, String endpoint) {
+    this.serviceName = serviceName;
+    this.endpoint = endpoint;
+  }
+
+  @Override
+  public void export(List<Span> spans) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.APPLICATION_JSON);
+    restTemplate.postForEntity(
+        endpoint,
+        new HttpEntity<JsonNode>(OtlpJsonSpanEncoder.encode(serviceName, spans), headers),
+        String.class);
+  }
+}
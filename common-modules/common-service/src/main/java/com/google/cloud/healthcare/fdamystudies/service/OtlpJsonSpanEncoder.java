@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import static com.google.cloud.healthcare.fdamystudies.common.JsonUtils.getObjectNode;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.cloud.healthcare.fdamystudies.common.Span;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes spans as an OTLP/JSON {@code ExportTraceServiceRequest}, so that the exported files can
+ * be replayed into any OpenTelemetry collector.
+ */
+public final class OtlpJsonSpanEncoder {
+
+  private OtlpJsonSpanEncoder() {}
+
+  public static ObjectNode encode(String serviceName, List<Span> spans) {
+    ObjectNode request = getObjectNode();
+    ObjectNode resourceSpans = request.putArray("resourceSpans").addObject();
+    addAttribute(
+        resourceSpans.putObject("resource").putArray("attributes"), "service.name", serviceName);
+
+    ObjectNode scopeSpans = resourceSpans.putArray("scopeSpans").addObject();
+    scopeSpans.putObject("scope").put("name", "fdamystudies-common-service");
+    ArrayNode spanArray = scopeSpans.putArray("spans");
+    for (Span span : spans) {
+      ObjectNode node = spanArray.addObject();
+      node.put("traceId", span.getContext().getTraceId());
+      node.put("spanId", span.getContext().getSpanId());
+      if (span.getParentSpanId() != null) {
+        node.put("parentSpanId", span.getParentSpanId());
+      }
+      node.put("name", span.getName());
+      node.put("kind", span.getKind().ordinal() + 1);
+      node.put("startTimeUnixNano", String.valueOf(span.getStartEpochNanos()));
+      node.put("endTimeUnixNano", String.valueOf(span.getEndEpochNanos()));
+      ArrayNode attributes = node.putArray("attributes");
+      for (Map.Entry<String, String> attribute : span.getAttributes().entrySet()) {
+        addAttribute(attributes, attribute.getKey(), attribute.getValue());
+      }
+      // STATUS_CODE_OK = 1, STATUS_CODE_ERROR = 2
+      node.putObject("status").put("code", span.isError() ? 2 : 1);
+    }
+    return request;
+  }
+
+  private static void addAttribute(ArrayNode attributes, String key, String value) {
+    ObjectNode attribute = attributes.addObject();
+    attribute.put("key", key);
+    attribute.putObject("value").put("stringValue", value);
+  }
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import com.google.cloud.healthcare.fdamystudies.common.Span;
+import java.util.List;
+
+/** Destination of the spans ended by {@link com.google.cloud.healthcare.fdamystudies.common.Tracer}. */
+public interface SpanExporter {
+
+  public void export(List<Span> spans) throws Exception;
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ExpiringCacheTest {
+
+  private static final int MAX_SIZE = 10;
+
+  private final ExpiringCache<String, String> cache =
+      new ExpiringCache<>("test", MAX_SIZE, new SimpleMeterRegistry());
+
+  @Test
+  public void shouldExpireEntriesAfterTheirTtl() throws Exception {
+    cache.put("key", "value", 50);
+    assertEquals("value", cache.getIfPresent("key"));
+
+    Thread.sleep(100);
+    assertNull(cache.getIfPresent("key"));
+    assertEquals("reloaded", cache.get("key", key -> "reloaded", value -> 1000));
+  }
+
+  @Test
+  public void shouldNotCacheValuesWithoutTtl() {
+    AtomicInteger loads = new AtomicInteger();
+    cache.get("key", key -> "value" + loads.incrementAndGet(), value -> 0);
+    assertEquals("value2", cache.get("key", key -> "value" + loads.incrementAndGet(), value -> 0));
+  }
+
+  @Test
+  public void shouldRunLoaderOnceForConcurrentMisses() throws Exception {
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<String>> gets = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      gets.add(
+          executor.submit(
+              () -> {
+                start.await();
+                return cache.get(
+                    "key",
+                    key -> {
+                      loads.incrementAndGet();
+                      sleep(200);
+                      return "value";
+                    },
+                    value -> 1000);
+              }));
+    }
+    start.countDown();
+    for (Future<String> get : gets) {
+      assertEquals("value", get.get());
+    }
+    executor.shutdown();
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void shouldRethrowLoaderFailureAndNotCacheIt() {
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            cache.get(
+                "key",
+                key -> {
+                  throw new IllegalStateException("introspection failed");
+                },
+                value -> 1000));
+    assertEquals("value", cache.get("key", key -> "value", value -> 1000));
+  }
+
+  @Test
+  public void shouldEvictOldestEntriesOnceFull() {
+    for (int i = 0; i <= MAX_SIZE; i++) {
+      cache.put("key" + i, "value" + i, 60000);
+    }
+    assertEquals(MAX_SIZE, cache.size());
+    assertNull(cache.getIfPresent("key0"));
+    assertEquals("value" + MAX_SIZE, cache.getIfPresent("key" + MAX_SIZE));
+  }
+
+  @Test
+  public void shouldKeepInsertionOrderBoundedWhenEntriesAreInvalidated() {
+    for (int i = 0; i < 100 * MAX_SIZE; i++) {
+      cache.put("key" + i, "value", 60000);
+      cache.invalidate("key" + i);
+      // the same key put again after a removal
+      cache.put("key", "value", 60000);
+      cache.invalidate("key");
+    }
+    assertTrue(insertionOrder().size() <= 2 * MAX_SIZE + 1);
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void shouldSweepExpiredEntries() throws Exception {
+    for (int i = 0; i < MAX_SIZE; i++) {
+      cache.put("expired" + i, "value", 1);
+    }
+    Thread.sleep(10);
+    for (int i = 0; i < 2 * MAX_SIZE; i++) {
+      cache.put("key" + i, "value", 60000);
+      cache.invalidate("key" + i);
+    }
+    cache.put("live", "value", 60000);
+
+    assertEquals(1, cache.size());
+    assertTrue(insertionOrder().size() <= 2 * MAX_SIZE + 1);
+    assertEquals("value", cache.getIfPresent("live"));
+  }
+
+  @SuppressWarnings("unchecked")
+  private Queue<String> insertionOrder() {
+    return (Queue<String>) ReflectionTestUtils.getField(cache, "insertionOrder");
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
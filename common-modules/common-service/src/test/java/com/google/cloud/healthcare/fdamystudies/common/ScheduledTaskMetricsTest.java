@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ScheduledTaskMetricsTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private final ScheduledTaskMetrics scheduledTaskMetrics = new ScheduledTaskMetrics();
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    ObjectProvider<MeterRegistry> meterRegistryProvider = mock(ObjectProvider.class);
+    when(meterRegistryProvider.getIfAvailable(any())).thenReturn(registry);
+    ReflectionTestUtils.setField(
+        scheduledTaskMetrics, "meterRegistryProvider", meterRegistryProvider);
+    scheduledTaskMetrics.init();
+  }
+
+  @Test
+  public void shouldRecordSuccessAndFailureOutcomes() {
+    scheduledTaskMetrics.record("cleanup", () -> {});
+    scheduledTaskMetrics.record("cleanup", () -> {});
+
+    IllegalStateException failure = new IllegalStateException("datastore unavailable");
+    IllegalStateException thrown =
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                scheduledTaskMetrics.record(
+                    "cleanup",
+                    () -> {
+                      throw failure;
+                    }));
+
+    // the failure reaches the scheduler unchanged
+    assertSame(failure, thrown);
+    assertEquals(2, getTimer("cleanup", "success").count());
+    assertEquals(1, getTimer("cleanup", "failure").count());
+  }
+
+  private Timer getTimer(String task, String outcome) {
+    return registry.get("scheduled.task").tag("task", task).tag("outcome", outcome).timer();
+  }
+}
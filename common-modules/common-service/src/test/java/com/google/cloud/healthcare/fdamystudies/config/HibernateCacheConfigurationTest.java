@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.config;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.cloud.healthcare.fdamystudies.common.CacheRegions;
+import com.google.cloud.healthcare.fdamystudies.model.AppEntity;
+import com.google.cloud.healthcare.fdamystudies.model.AppPermissionEntity;
+import com.google.cloud.healthcare.fdamystudies.model.LocationEntity;
+import com.google.cloud.healthcare.fdamystudies.model.SiteEntity;
+import com.google.cloud.healthcare.fdamystudies.model.SitePermissionEntity;
+import com.google.cloud.healthcare.fdamystudies.model.StudyEntity;
+import com.google.cloud.healthcare.fdamystudies.model.StudyPermissionEntity;
+import java.util.Arrays;
+import java.util.List;
+import javax.cache.CacheManager;
+import javax.persistence.Cacheable;
+import org.hibernate.annotations.Cache;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class HibernateCacheConfigurationTest {
+
+  @Test
+  public void shouldNotCachePermissionEntities() {
+    // permissions changed by another service must apply without waiting for a cache entry to expire
+    List<Class<?>> permissionEntities =
+        Arrays.asList(
+            AppPermissionEntity.class, StudyPermissionEntity.class, SitePermissionEntity.class);
+    for (Class<?> entity : permissionEntities) {
+      assertFalse(entity.isAnnotationPresent(Cacheable.class), entity.getSimpleName());
+      assertFalse(entity.isAnnotationPresent(Cache.class), entity.getSimpleName());
+    }
+
+    List<Class<?>> referenceEntities =
+        Arrays.asList(AppEntity.class, StudyEntity.class, SiteEntity.class, LocationEntity.class);
+    for (Class<?> entity : referenceEntities) {
+      assertTrue(entity.isAnnotationPresent(Cacheable.class), entity.getSimpleName());
+    }
+  }
+
+  @Test
+  public void shouldCreateRegionsOfCachedEntitiesOnly() {
+    HibernateCacheConfiguration configuration = new HibernateCacheConfiguration();
+    ReflectionTestUtils.setField(configuration, "defaultMaxEntries", 100L);
+    ReflectionTestUtils.setField(configuration, "defaultTtlSeconds", 300L);
+    ReflectionTestUtils.setField(configuration, "regionOverrides", "site=500:60");
+
+    CacheManager cacheManager = configuration.hibernateCacheManager();
+    try {
+      for (String region :
+          Arrays.asList(
+              CacheRegions.APP,
+              CacheRegions.STUDY,
+              CacheRegions.SITE,
+              CacheRegions.LOCATION,
+              CacheRegions.REFERENCE_QUERIES,
+              CacheRegions.UPDATE_TIMESTAMPS)) {
+        assertNotNull(cacheManager.getCache(region), region);
+      }
+      for (String cacheName : cacheManager.getCacheNames()) {
+        assertFalse(cacheName.contains("permission"), cacheName);
+      }
+    } finally {
+      cacheManager.close();
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.DefaultRoutePlanner;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class HttpClientConfigurationTest {
+
+  private final HttpClientConfiguration configuration = new HttpClientConfiguration();
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    ObjectProvider<MeterRegistry> meterRegistryProvider = mock(ObjectProvider.class);
+    when(meterRegistryProvider.getIfAvailable(any())).thenReturn(new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(configuration, "meterRegistry", meterRegistryProvider);
+    ReflectionTestUtils.setField(configuration, "maxTotal", 200);
+    ReflectionTestUtils.setField(configuration, "maxPerRoute", 50);
+    ReflectionTestUtils.setField(configuration, "timeToLiveSeconds", 300L);
+    ReflectionTestUtils.setField(configuration, "validateAfterInactivityMillis", 2000);
+  }
+
+  @Test
+  public void shouldApplyRouteOverridesWithAndWithoutPort() throws Exception {
+    ReflectionTestUtils.setField(
+        configuration,
+        "routeMaxConnections",
+        "https://hydra:4444=10, http://auth-server=20, https://participant-manager=30");
+
+    PoolingHttpClientConnectionManager connectionManager =
+        configuration.httpClientConnectionManager();
+
+    assertEquals(10, connectionManager.getMaxPerRoute(plannedRoute("https://hydra:4444/token")));
+    assertEquals(20, connectionManager.getMaxPerRoute(plannedRoute("http://auth-server/users")));
+    assertEquals(
+        30, connectionManager.getMaxPerRoute(plannedRoute("https://participant-manager/sites")));
+    assertEquals(50, connectionManager.getMaxPerRoute(plannedRoute("http://auth-server:8080/x")));
+    connectionManager.close();
+  }
+
+  @Test
+  public void shouldUseDefaultPortOfScheme() {
+    assertEquals(443, getPort(HttpClientConfiguration.toRoute("https://hydra")));
+    assertEquals(80, getPort(HttpClientConfiguration.toRoute("http://hydra")));
+    assertEquals(4444, getPort(HttpClientConfiguration.toRoute("https://hydra:4444")));
+  }
+
+  private static int getPort(HttpRoute route) {
+    return route.getTargetHost().getPort();
+  }
+
+  /** @return the route HttpClient plans for a request, which is the key of the per-route limit */
+  private static HttpRoute plannedRoute(String uri) throws Exception {
+    HttpGet request = new HttpGet(uri);
+    HttpHost target = URIUtils.extractHost(URI.create(uri));
+    return new DefaultRoutePlanner(DefaultSchemePortResolver.INSTANCE)
+        .determineRoute(target, request, HttpClientContext.create());
+  }
+}
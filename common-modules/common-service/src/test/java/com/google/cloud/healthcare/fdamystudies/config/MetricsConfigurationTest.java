@@ -0,0 +1,26 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class MetricsConfigurationTest {
+
+  @Test
+  public void shouldNameEntityManagerFactoriesByBeanName() {
+    assertEquals(
+        "entityManagerFactory",
+        MetricsConfiguration.getEntityManagerFactoryName("entityManagerFactory"));
+    assertEquals(
+        "audit", MetricsConfiguration.getEntityManagerFactoryName("auditEntityManagerFactory"));
+    assertEquals("reporting", MetricsConfiguration.getEntityManagerFactoryName("reporting"));
+  }
+}
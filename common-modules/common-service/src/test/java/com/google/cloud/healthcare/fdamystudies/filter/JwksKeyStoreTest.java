@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.filter;
+
+import static com.google.cloud.healthcare.fdamystudies.common.JsonUtils.getObjectMapper;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+public class JwksKeyStoreTest {
+
+  private static final String JWKS_ENDPOINT = "http://hydra:4444/.well-known/jwks.json";
+
+  private RestTemplate restTemplate;
+
+  private JwksKeyStore jwksKeyStore;
+
+  private RSAPublicKey publicKey;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    KeyPair keyPair = generator.generateKeyPair();
+    publicKey = (RSAPublicKey) keyPair.getPublic();
+
+    restTemplate = mock(RestTemplate.class);
+    when(restTemplate.getForEntity(eq(JWKS_ENDPOINT), eq(JsonNode.class)))
+        .thenAnswer(
+            invocation -> {
+              // slow enough for the concurrent lookups to wait on the refresh
+              Thread.sleep(200);
+              return ResponseEntity.ok(newJwks());
+            });
+
+    jwksKeyStore = new JwksKeyStore();
+    ReflectionTestUtils.setField(jwksKeyStore, "validationMode", "jwt");
+    ReflectionTestUtils.setField(jwksKeyStore, "jwksEndpoint", JWKS_ENDPOINT);
+    ReflectionTestUtils.setField(jwksKeyStore, "minRefreshIntervalSeconds", 30L);
+    ReflectionTestUtils.setField(jwksKeyStore, "restTemplate", restTemplate);
+  }
+
+  @Test
+  public void shouldFetchKeysOnUnknownKeyId() {
+    assertEquals(publicKey, jwksKeyStore.getKey("key1"));
+    verify(restTemplate, times(1)).getForEntity(JWKS_ENDPOINT, JsonNode.class);
+  }
+
+  @Test
+  public void shouldNotRefetchWithinMinRefreshInterval() {
+    assertNull(jwksKeyStore.getKey("unknown"));
+    assertNull(jwksKeyStore.getKey("unknown"));
+    verify(restTemplate, times(1)).getForEntity(JWKS_ENDPOINT, JsonNode.class);
+  }
+
+  @Test
+  public void shouldFetchOnceForConcurrentUnknownKeyIds() throws Exception {
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> lookups = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      lookups.add(
+          executor.submit(
+              () -> {
+                start.await();
+                return jwksKeyStore.getKey("key1");
+              }));
+    }
+    start.countDown();
+    for (Future<?> lookup : lookups) {
+      assertEquals(publicKey, lookup.get());
+    }
+    executor.shutdown();
+
+    verify(restTemplate, times(1)).getForEntity(JWKS_ENDPOINT, JsonNode.class);
+  }
+
+  private JsonNode newJwks() {
+    ObjectNode jwk = getObjectMapper().createObjectNode();
+    jwk.put("kty", "RSA");
+    jwk.put("use", "sig");
+    jwk.put("kid", "key1");
+    jwk.put("n", encode(publicKey.getModulus().toByteArray()));
+    jwk.put("e", encode(publicKey.getPublicExponent().toByteArray()));
+    ObjectNode jwks = getObjectMapper().createObjectNode();
+    jwks.putArray("keys").add(jwk);
+    return jwks;
+  }
+
+  private static String encode(byte[] value) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(value);
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.filter;
+
+import static com.google.cloud.healthcare.fdamystudies.common.JsonUtils.getObjectMapper;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class JwtAccessTokenVerifierTest {
+
+  private static final String KID = "key1";
+
+  private static final String ISSUER = "https://hydra-server:9000/";
+
+  private static final String AUDIENCE = "mystudies";
+
+  private static KeyPair keyPair;
+
+  private static KeyPair otherKeyPair;
+
+  private JwksKeyStore jwksKeyStore;
+
+  private JwtAccessTokenVerifier verifier;
+
+  @BeforeAll
+  public static void generateKeys() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    keyPair = generator.generateKeyPair();
+    otherKeyPair = generator.generateKeyPair();
+  }
+
+  @BeforeEach
+  public void setUp() {
+    jwksKeyStore = mock(JwksKeyStore.class);
+    when(jwksKeyStore.isEnabled()).thenReturn(true);
+    when(jwksKeyStore.getKey(KID)).thenReturn(keyPair.getPublic());
+
+    verifier = new JwtAccessTokenVerifier();
+    ReflectionTestUtils.setField(verifier, "jwksKeyStore", jwksKeyStore);
+    ReflectionTestUtils.setField(verifier, "issuer", ISSUER);
+    ReflectionTestUtils.setField(verifier, "audience", AUDIENCE);
+    ReflectionTestUtils.setField(verifier, "clockSkewSeconds", 30L);
+  }
+
+  @Test
+  public void shouldVerifyValidToken() throws Exception {
+    ResponseEntity<JsonNode> response = verifier.verify(sign(KID, newClaims(), keyPair));
+
+    assertTrue(response.getBody().get("active").booleanValue());
+    assertEquals("test", response.getBody().get("client_id").textValue());
+    assertEquals("subject", response.getBody().get("sub").textValue());
+  }
+
+  @Test
+  public void shouldAcceptAudienceInArray() throws Exception {
+    ObjectNode claims = newClaims();
+    claims.putArray("aud").add("other").add(AUDIENCE);
+
+    ResponseEntity<JsonNode> response = verifier.verify(sign(KID, claims, keyPair));
+
+    assertTrue(response.getBody().get("active").booleanValue());
+  }
+
+  @Test
+  public void shouldRejectBadSignature() throws Exception {
+    ResponseEntity<JsonNode> response = verifier.verify(sign(KID, newClaims(), otherKeyPair));
+
+    assertFalse(response.getBody().get("active").booleanValue());
+  }
+
+  @Test
+  public void shouldRejectExpiredToken() throws Exception {
+    ObjectNode claims = newClaims();
+    claims.put("exp", nowSeconds() - 60);
+
+    ResponseEntity<JsonNode> response = verifier.verify(sign(KID, claims, keyPair));
+
+    assertFalse(response.getBody().get("active").booleanValue());
+  }
+
+  @Test
+  public void shouldRejectWrongIssuer() throws Exception {
+    ObjectNode claims = newClaims();
+    claims.put("iss", "https://other-issuer/");
+
+    ResponseEntity<JsonNode> response = verifier.verify(sign(KID, claims, keyPair));
+
+    assertFalse(response.getBody().get("active").booleanValue());
+  }
+
+  @Test
+  public void shouldRejectWrongAudience() throws Exception {
+    ObjectNode claims = newClaims();
+    claims.put("aud", "other");
+
+    ResponseEntity<JsonNode> response = verifier.verify(sign(KID, claims, keyPair));
+
+    assertFalse(response.getBody().get("active").booleanValue());
+  }
+
+  @Test
+  public void shouldRejectMissingAudience() throws Exception {
+    ObjectNode claims = newClaims();
+    claims.remove("aud");
+
+    ResponseEntity<JsonNode> response = verifier.verify(sign(KID, claims, keyPair));
+
+    assertFalse(response.getBody().get("active").booleanValue());
+  }
+
+  @Test
+  public void shouldFallBackToIntrospectionForUnknownKeyId() throws Exception {
+    assertNull(verifier.verify(sign("unknown", newClaims(), keyPair)));
+  }
+
+  @Test
+  public void shouldFallBackToIntrospectionWithoutAudience() throws Exception {
+    ReflectionTestUtils.setField(verifier, "audience", "");
+
+    assertNull(verifier.verify(sign(KID, newClaims(), keyPair)));
+  }
+
+  @Test
+  public void shouldFallBackToIntrospectionForOpaqueToken() {
+    assertNull(verifier.verify("7fd50c2c-d618-493c-89d6-f1887e3e4bb8"));
+  }
+
+  private static ObjectNode newClaims() {
+    ObjectNode claims = getObjectMapper().createObjectNode();
+    claims.put("sub", "subject");
+    claims.put("client_id", "test");
+    claims.put("iss", ISSUER);
+    claims.put("aud", AUDIENCE);
+    claims.put("iat", nowSeconds());
+    claims.put("exp", nowSeconds() + 3600);
+    return claims;
+  }
+
+  private static long nowSeconds() {
+    return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+  }
+
+  private static String sign(String kid, JsonNode claims, KeyPair signingKeyPair)
+      throws Exception {
+    ObjectNode header = getObjectMapper().createObjectNode();
+    header.put("alg", "RS256");
+    header.put("kid", kid);
+    String content = encode(header) + "." + encode(claims);
+    Signature signature = Signature.getInstance("SHA256withRSA");
+    PrivateKey privateKey = signingKeyPair.getPrivate();
+    signature.initSign(privateKey);
+    signature.update(content.getBytes(StandardCharsets.US_ASCII));
+    return content + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature.sign());
+  }
+
+  private static String encode(JsonNode json) throws Exception {
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(getObjectMapper().writeValueAsBytes(json));
+  }
+}
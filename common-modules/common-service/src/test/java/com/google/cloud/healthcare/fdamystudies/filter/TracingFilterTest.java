@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.cloud.healthcare.fdamystudies.common.Span;
+import com.google.cloud.healthcare.fdamystudies.common.TraceContext;
+import com.google.cloud.healthcare.fdamystudies.common.Tracer;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class TracingFilterTest {
+
+  private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+
+  private static final String PARENT_SPAN_ID = "00f067aa0ba902b7";
+
+  private static final String CORRELATION_ID = "0af76519-16cd-43dd-8448-eb211c80319c";
+
+  private final Tracer tracer = new Tracer();
+
+  private final TracingFilter filter = new TracingFilter();
+
+  private final AtomicReference<Span> requestSpan = new AtomicReference<>();
+
+  @BeforeEach
+  public void setUp() {
+    ReflectionTestUtils.setField(filter, "tracer", tracer);
+  }
+
+  @Test
+  public void shouldContinueIncomingTraceparent() throws Exception {
+    MockHttpServletRequest request = newRequest();
+    request.addHeader(TraceContext.TRACEPARENT, "00-" + TRACE_ID + "-" + PARENT_SPAN_ID + "-01");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    doFilter(request, response);
+
+    Span span = requestSpan.get();
+    assertEquals(TRACE_ID, span.getContext().getTraceId());
+    assertEquals(PARENT_SPAN_ID, span.getParentSpanId());
+    assertNotEquals(PARENT_SPAN_ID, span.getContext().getSpanId());
+    assertTrue(span.getContext().isSampled());
+    assertEquals(span.getContext().toTraceparent(), response.getHeader(TraceContext.TRACEPARENT));
+  }
+
+  @Test
+  public void shouldStartRandomTraceWithoutTraceparent() throws Exception {
+    doFilter(newRequest(), new MockHttpServletResponse());
+    Span first = requestSpan.get();
+    doFilter(newRequest(), new MockHttpServletResponse());
+    Span second = requestSpan.get();
+
+    // the trace id is not derived from the correlationId, which is kept as an attribute instead
+    assertNull(first.getParentSpanId());
+    assertTrue(first.getContext().getTraceId().matches("[0-9a-f]{32}"));
+    assertNotEquals(CORRELATION_ID.replace("-", ""), first.getContext().getTraceId());
+    assertNotEquals(first.getContext().getTraceId(), second.getContext().getTraceId());
+    assertEquals(CORRELATION_ID, first.getAttributes().get("correlation_id"));
+  }
+
+  @Test
+  public void shouldStartNewTraceForMalformedTraceparent() throws Exception {
+    MockHttpServletRequest request = newRequest();
+    request.addHeader(TraceContext.TRACEPARENT, "00-" + TRACE_ID + "-0000000000000000-01");
+
+    doFilter(request, new MockHttpServletResponse());
+
+    assertNull(requestSpan.get().getParentSpanId());
+    assertNotEquals(TRACE_ID, requestSpan.get().getContext().getTraceId());
+  }
+
+  @Test
+  public void shouldEndRequestSpanAndRecordStatus() throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    response.setStatus(503);
+
+    doFilter(newRequest(), response);
+
+    assertNull(tracer.currentSpan());
+    assertTrue(requestSpan.get().isError());
+    assertEquals("503", requestSpan.get().getAttributes().get("http.status_code"));
+  }
+
+  @Test
+  public void shouldNotRegisterTracingUnlessEnabled() {
+    ApplicationContextRunner contextRunner =
+        new ApplicationContextRunner().withUserConfiguration(Tracer.class, TracingFilter.class);
+
+    contextRunner.run(context -> assertThat(context).doesNotHaveBean(TracingFilter.class));
+    contextRunner
+        .withPropertyValues("commonservice.tracing.enabled=true")
+        .run(context -> assertThat(context).hasSingleBean(TracingFilter.class));
+  }
+
+  private void doFilter(MockHttpServletRequest request, MockHttpServletResponse response)
+      throws Exception {
+    filter.doFilter(request, response, (req, res) -> requestSpan.set(tracer.currentSpan()));
+    assertNotNull(requestSpan.get());
+  }
+
+  private static MockHttpServletRequest newRequest() {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/participants");
+    request.addHeader("correlationId", CORRELATION_ID);
+    return request;
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.cloud.healthcare.fdamystudies.service.AccessTokenHolder.AccessToken;
+import com.google.cloud.healthcare.fdamystudies.service.AccessTokenHolder.AccessTokenUnavailableException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class AccessTokenHolderTest {
+
+  private static final long EXPIRES_IN_SECONDS = 3600;
+
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private final ExecutorService callers = Executors.newFixedThreadPool(4);
+
+  private AccessTokenHolder holder;
+
+  @AfterEach
+  public void tearDown() {
+    callers.shutdownNow();
+    if (holder != null) {
+      holder.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldShareOneTokenRequestBetweenConcurrentCallers() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    holder =
+        newHolder(
+            () -> {
+              await(release);
+              return newToken(requests.incrementAndGet(), EXPIRES_IN_SECONDS);
+            });
+
+    List<Future<String>> tokens = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      tokens.add(callers.submit((Callable<String>) holder::getToken));
+    }
+    release.countDown();
+
+    for (Future<String> token : tokens) {
+      assertEquals("token1", token.get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  public void shouldPropagateRefreshFailureToWaiters() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    holder =
+        newHolder(
+            () -> {
+              requests.incrementAndGet();
+              await(release);
+              throw new IllegalStateException("token endpoint is down");
+            });
+
+    List<Future<String>> tokens = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      tokens.add(callers.submit((Callable<String>) holder::getToken));
+    }
+    release.countDown();
+
+    for (Future<String> token : tokens) {
+      ExecutionException e =
+          assertThrows(ExecutionException.class, () -> token.get(5, TimeUnit.SECONDS));
+      assertTrue(e.getCause() instanceof AccessTokenUnavailableException);
+      assertEquals("token endpoint is down", e.getCause().getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void shouldNotReturnRejectedTokenWhenRefreshFails() {
+    holder =
+        newHolder(
+            () -> requests.incrementAndGet() == 1 ? newToken(1, EXPIRES_IN_SECONDS) : null);
+    assertEquals("token1", holder.getToken());
+
+    // the unexpired token is still served, but a rejected one is never handed out again
+    assertThrows(AccessTokenUnavailableException.class, () -> holder.getNewToken("token1"));
+    assertEquals("token1", holder.getToken());
+    assertEquals(2, requests.get());
+  }
+
+  @Test
+  public void shouldReturnNewerTokenWithoutRequest() {
+    holder = newHolder(() -> newToken(requests.incrementAndGet(), EXPIRES_IN_SECONDS));
+    assertEquals("token1", holder.getToken());
+
+    assertEquals("token1", holder.getNewToken("token0"));
+    assertEquals(1, requests.get());
+
+    assertEquals("token2", holder.getNewToken("token1"));
+    assertEquals(2, requests.get());
+  }
+
+  @Test
+  public void shouldCancelScheduledRefreshOnShutdown() throws Exception {
+    // the next refresh is scheduled one second after the token was fetched
+    holder = newHolder(() -> newToken(requests.incrementAndGet(), 1));
+    assertEquals("token1", holder.getToken());
+
+    holder.shutdown();
+    TimeUnit.MILLISECONDS.sleep(1500);
+
+    assertEquals(1, requests.get());
+    assertThrows(AccessTokenUnavailableException.class, () -> holder.getNewToken("token1"));
+  }
+
+  @Test
+  public void shouldFailWaitersOnShutdown() throws Exception {
+    CountDownLatch entered = new CountDownLatch(1);
+    holder =
+        newHolder(
+            () -> {
+              entered.countDown();
+              await(new CountDownLatch(1));
+              return newToken(1, EXPIRES_IN_SECONDS);
+            });
+
+    Future<String> token = callers.submit((Callable<String>) holder::getToken);
+    assertTrue(entered.await(5, TimeUnit.SECONDS));
+    holder.shutdown();
+
+    ExecutionException e =
+        assertThrows(ExecutionException.class, () -> token.get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof AccessTokenUnavailableException);
+  }
+
+  private static AccessTokenHolder newHolder(Supplier<AccessToken> tokenSupplier) {
+    return new AccessTokenHolder(tokenSupplier, 1.0, 1);
+  }
+
+  private static AccessToken newToken(int number, long expiresInSeconds) {
+    return new AccessToken("token" + number, expiresInSeconds);
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+}
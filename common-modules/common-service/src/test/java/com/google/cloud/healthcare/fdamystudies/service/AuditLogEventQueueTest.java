@@ -0,0 +1,238 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.healthcare.fdamystudies.beans.AuditLogEventRequest;
+import com.google.cloud.healthcare.fdamystudies.common.AuditLogOverflowPolicy;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class AuditLogEventQueueTest {
+
+  @TempDir Path tempDir;
+
+  private final RecordingSink sink = new RecordingSink();
+
+  private AuditLogEventQueue queue;
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    sink.release.countDown();
+    if (queue != null) {
+      queue.destroy();
+    }
+  }
+
+  @Test
+  public void shouldSpillOverflowAndReplayIt() throws Exception {
+    queue = newQueue(AuditLogOverflowPolicy.SPILL_TO_FILE, 2);
+    queue.init();
+
+    // Step 1: the flusher is blocked writing event0, the queue holds event1 and event2
+    queue.add(newEvent("event0"));
+    assertTrue(sink.entered.await(5, TimeUnit.SECONDS));
+    queue.add(newEvent("event1"));
+    queue.add(newEvent("event2"));
+
+    // Step 2: event3 does not fit and is spilled
+    queue.add(newEvent("event3"));
+    assertEquals(1, Files.readAllLines(spillFile(), StandardCharsets.UTF_8).size());
+
+    // Step 3: once the sink is free, the queued events are written and the spilled one replayed
+    sink.release.countDown();
+    waitFor(() -> sink.getEventCodes().size() == 4);
+    assertEquals(newSet("event0", "event1", "event2", "event3"), sink.getEventCodes());
+    waitFor(() -> !Files.exists(spillFile()) && !Files.exists(replayFile()));
+  }
+
+  @Test
+  public void shouldSpillAfterOfferTimeoutWhenBlocking() throws Exception {
+    queue = newQueue(AuditLogOverflowPolicy.BLOCK, 1);
+    queue.init();
+
+    queue.add(newEvent("event0"));
+    assertTrue(sink.entered.await(5, TimeUnit.SECONDS));
+    queue.add(newEvent("event1"));
+    queue.add(newEvent("event2"));
+    assertEquals(1, Files.readAllLines(spillFile(), StandardCharsets.UTF_8).size());
+
+    sink.release.countDown();
+    waitFor(() -> sink.getEventCodes().size() == 3);
+    assertEquals(newSet("event0", "event1", "event2"), sink.getEventCodes());
+  }
+
+  @Test
+  public void shouldSpillFailedBatchesAndReplayThem() throws Exception {
+    sink.release.countDown();
+    sink.failing = true;
+    queue = newQueue(AuditLogOverflowPolicy.SPILL_TO_FILE, 10);
+    queue.init();
+
+    queue.add(newEvent("event0"));
+    queue.add(newEvent("event1"));
+    waitFor(() -> Files.exists(spillFile()) || Files.exists(replayFile()));
+    assertTrue(sink.getEventCodes().isEmpty());
+
+    sink.failing = false;
+    waitFor(() -> sink.getEventCodes().size() == 2);
+    assertEquals(newSet("event0", "event1"), sink.getEventCodes());
+  }
+
+  @Test
+  public void shouldReplaySpillFileLeftByPreviousRun() throws Exception {
+    sink.release.countDown();
+    FileAuditLogSink previousRun = new FileAuditLogSink(spillFile().toString());
+    List<AuditLogEventRequest> spilled = new ArrayList<>();
+    spilled.add(newEvent("event0"));
+    spilled.add(newEvent("event1"));
+    previousRun.write(spilled);
+
+    queue = newQueue(AuditLogOverflowPolicy.SPILL_TO_FILE, 10);
+    queue.init();
+
+    waitFor(() -> sink.getEventCodes().size() == 2);
+    assertEquals(newSet("event0", "event1"), sink.getEventCodes());
+    assertFalse(Files.exists(spillFile()));
+  }
+
+  @Test
+  public void shouldFlushQueuedEventsOnShutdown() throws Exception {
+    sink.release.countDown();
+    queue = newQueue(AuditLogOverflowPolicy.SPILL_TO_FILE, 10);
+    // the flusher holds the events while it waits up to 10 s for a full batch
+    ReflectionTestUtils.setField(queue, "batchSize", 100);
+    ReflectionTestUtils.setField(queue, "flushIntervalMillis", 10000L);
+    ReflectionTestUtils.setField(queue, "shutdownTimeoutMillis", 200L);
+    queue.init();
+
+    queue.add(newEvent("event0"));
+    queue.add(newEvent("event1"));
+    queue.destroy();
+    assertEquals(newSet("event0", "event1"), sink.getEventCodes());
+    assertTrue(sink.closed);
+
+    // added after the shutdown, spilled for the next start
+    queue.add(newEvent("event2"));
+    assertEquals(1, Files.readAllLines(spillFile(), StandardCharsets.UTF_8).size());
+    queue = null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private AuditLogEventQueue newQueue(AuditLogOverflowPolicy overflowPolicy, int capacity) {
+    ObjectProvider<MeterRegistry> meterRegistryProvider = mock(ObjectProvider.class);
+    when(meterRegistryProvider.getIfAvailable(any())).thenReturn(new SimpleMeterRegistry());
+
+    AuditLogEventQueue auditLogEventQueue = new AuditLogEventQueue();
+    ReflectionTestUtils.setField(
+        auditLogEventQueue, "meterRegistryProvider", meterRegistryProvider);
+    ReflectionTestUtils.setField(auditLogEventQueue, "sink", sink);
+    ReflectionTestUtils.setField(auditLogEventQueue, "spillFilePath", spillFile().toString());
+    ReflectionTestUtils.setField(auditLogEventQueue, "replayIntervalMillis", 100L);
+    ReflectionTestUtils.setField(auditLogEventQueue, "capacity", capacity);
+    ReflectionTestUtils.setField(auditLogEventQueue, "batchSize", 1);
+    ReflectionTestUtils.setField(auditLogEventQueue, "flushIntervalMillis", 50L);
+    ReflectionTestUtils.setField(auditLogEventQueue, "overflowPolicy", overflowPolicy);
+    ReflectionTestUtils.setField(auditLogEventQueue, "offerTimeoutMillis", 50L);
+    ReflectionTestUtils.setField(auditLogEventQueue, "shutdownTimeoutMillis", 5000L);
+    return auditLogEventQueue;
+  }
+
+  private Path spillFile() {
+    return tempDir.resolve("audit-log-spill.ndjson");
+  }
+
+  private Path replayFile() {
+    return tempDir.resolve("audit-log-spill.ndjson.replay");
+  }
+
+  private static AuditLogEventRequest newEvent(String eventCode) {
+    AuditLogEventRequest auditRequest = new AuditLogEventRequest();
+    auditRequest.setEventCode(eventCode);
+    auditRequest.setCorrelationId(eventCode);
+    return auditRequest;
+  }
+
+  private static Set<String> newSet(String... values) {
+    Set<String> set = new TreeSet<>();
+    for (String value : values) {
+      set.add(value);
+    }
+    return set;
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+      Thread.sleep(50);
+    }
+    assertTrue(condition.getAsBoolean());
+  }
+
+  /** Records the written events, blocks until released and fails on demand. */
+  private static class RecordingSink implements AuditLogSink, AutoCloseable {
+
+    private final List<AuditLogEventRequest> events = new ArrayList<>();
+
+    private final CountDownLatch entered = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private volatile boolean failing;
+
+    private volatile boolean closed;
+
+    @Override
+    public void write(List<AuditLogEventRequest> auditRequests) throws Exception {
+      entered.countDown();
+      release.await();
+      if (failing) {
+        throw new IllegalStateException("sink unavailable");
+      }
+      synchronized (events) {
+        events.addAll(auditRequests);
+      }
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+
+    private Set<String> getEventCodes() {
+      Set<String> eventCodes = new TreeSet<>();
+      synchronized (events) {
+        for (AuditLogEventRequest event : events) {
+          eventCodes.add(event.getEventCode());
+        }
+      }
+      return eventCodes;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import javax.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class BulkPersistenceServiceImplTest {
+
+  private final EntityManager entityManager = mock(EntityManager.class);
+
+  private final BulkPersistenceServiceImpl bulkPersistenceService =
+      new BulkPersistenceServiceImpl();
+
+  @BeforeEach
+  public void setUp() {
+    ReflectionTestUtils.setField(bulkPersistenceService, "entityManager", entityManager);
+    ReflectionTestUtils.setField(bulkPersistenceService, "batchSize", 2);
+  }
+
+  @Test
+  public void shouldPersistInChunksAndDetachWrittenEntities() {
+    List<String> entities = Arrays.asList("entity1", "entity2", "entity3", "entity4", "entity5");
+
+    bulkPersistenceService.persistAll(entities);
+
+    // one flush per chunk of batch_size, each chunk is detached after its flush
+    InOrder inOrder = inOrder(entityManager);
+    inOrder.verify(entityManager).persist("entity1");
+    inOrder.verify(entityManager).persist("entity2");
+    inOrder.verify(entityManager).flush();
+    inOrder.verify(entityManager).detach("entity1");
+    inOrder.verify(entityManager).detach("entity2");
+    inOrder.verify(entityManager).persist("entity3");
+    inOrder.verify(entityManager).persist("entity4");
+    inOrder.verify(entityManager).flush();
+    inOrder.verify(entityManager).persist("entity5");
+    inOrder.verify(entityManager).flush();
+    inOrder.verify(entityManager).detach("entity5");
+    verify(entityManager, times(3)).flush();
+    verify(entityManager, times(5)).detach(any());
+  }
+
+  @Test
+  public void shouldReturnManagedCopiesOfMergedEntities() {
+    List<String> entities = Arrays.asList("entity1", "entity2", "entity3");
+    for (String entity : entities) {
+      when(entityManager.merge(entity)).thenReturn("managed-" + entity);
+    }
+
+    List<String> merged = bulkPersistenceService.mergeAll(entities);
+
+    assertEquals(Arrays.asList("managed-entity1", "managed-entity2", "managed-entity3"), merged);
+    verify(entityManager, times(2)).flush();
+    verify(entityManager, never()).detach(any());
+  }
+}
@@ -102,6 +102,10 @@ public class BaseMockIT {
 
   protected static final String INVALID_TOKEN = "cd57710c-1d19-4058-8bfe-a6aac3a39e35";
 
+  /** Active token issued to the mobile app client ("participant-app"), not to a service. */
+  protected static final String PARTICIPANT_BEARER_TOKEN =
+      "Bearer 5a3f0d6e-2c4b-4d6b-9d1e-3b7a8c41f2e9";
+
   protected static final String AUTH_CODE_VALUE = "28889b79-d7c6-4fe3-990c-bd239c6ce199";
 
   protected static final ResultMatcher OK = status().isOk();
@@ -110,6 +114,8 @@ public class BaseMockIT {
 
   protected static final ResultMatcher UNAUTHORIZED = status().isUnauthorized();
 
+  protected static final ResultMatcher FORBIDDEN = status().isForbidden();
+
   protected static final ResultMatcher CREATED = status().isCreated();
 
   protected static final ResultMatcher NOT_FOUND = status().isNotFound();
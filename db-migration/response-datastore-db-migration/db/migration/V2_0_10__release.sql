@@ -0,0 +1,3 @@
+/* Keyset pagination of the responses of a study, used by the response export jobs. */
+ALTER TABLE `mystudies_response_server`.`activity_responses`
+  ADD KEY `activity_responses_study_idx` (`study_id`, `id`);
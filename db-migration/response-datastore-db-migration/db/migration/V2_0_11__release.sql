@@ -0,0 +1,44 @@
+/* Per-question aggregates of the responses, see ResponseAggregateServiceImpl. Each answer counted
+is kept as a contribution, so that an activity run is counted once and the answers of a withdrawn
+participant can be subtracted. */
+CREATE TABLE IF NOT EXISTS `mystudies_response_server`.`question_response_aggregates` (
+  `id` VARCHAR(255) NOT NULL,
+  `study_id` VARCHAR(64) NOT NULL,
+  `site_id` VARCHAR(64) NOT NULL,
+  `activity_id` VARCHAR(64) NOT NULL,
+  `question_key` VARCHAR(255) NOT NULL,
+  `response_count` BIGINT NOT NULL,
+  `numeric_count` BIGINT NOT NULL,
+  `value_sum` DOUBLE NOT NULL,
+  `value_sum_of_squares` DOUBLE NOT NULL,
+  `min_value` DOUBLE DEFAULT NULL,
+  `max_value` DOUBLE DEFAULT NULL,
+  `last_value` VARCHAR(255) DEFAULT NULL,
+  `last_created_timestamp` BIGINT DEFAULT NULL,
+  `sketch` LONGTEXT,
+  `version` BIGINT NOT NULL,
+  `updated_time` DATETIME DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `question_response_aggregates_uk` (`study_id`, `site_id`, `activity_id`, `question_key`),
+  KEY `question_response_aggregates_question_idx` (`study_id`, `activity_id`, `question_key`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS `mystudies_response_server`.`question_response_contributions` (
+  `id` VARCHAR(255) NOT NULL,
+  `study_id` VARCHAR(64) NOT NULL,
+  `site_id` VARCHAR(64) NOT NULL,
+  `participant_id` VARCHAR(64) NOT NULL,
+  `activity_id` VARCHAR(64) NOT NULL,
+  `activity_run_id` VARCHAR(64) NOT NULL,
+  `question_key` VARCHAR(255) NOT NULL,
+  `numeric_value` DOUBLE DEFAULT NULL,
+  `answer_value` VARCHAR(255) DEFAULT NULL,
+  `created_timestamp` BIGINT NOT NULL,
+  `withdrawn` BIT(1) NOT NULL,
+  `created_time` DATETIME DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `question_response_contributions_uk`
+    (`study_id`, `participant_id`, `activity_id`, `activity_run_id`, `question_key`),
+  KEY `question_response_contributions_question_idx`
+    (`study_id`, `site_id`, `activity_id`, `question_key`, `withdrawn`, `created_timestamp`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
@@ -0,0 +1,13 @@
+/* One activity state per participant and activity, so that ParticipantActivitiesDaoImpl can upsert
+the states. Of duplicated states the last created one is kept. */
+DELETE older FROM `mystudies_response_server`.`participant_activities` older
+  JOIN `mystudies_response_server`.`participant_activities` newer
+    ON newer.`study_id` = older.`study_id`
+    AND newer.`participant_id` = older.`participant_id`
+    AND newer.`activity_id` = older.`activity_id`
+    AND (COALESCE(newer.`created_time`, '1970-01-01') > COALESCE(older.`created_time`, '1970-01-01')
+      OR (COALESCE(newer.`created_time`, '1970-01-01') = COALESCE(older.`created_time`, '1970-01-01')
+        AND newer.`id` > older.`id`));
+
+ALTER TABLE `mystudies_response_server`.`participant_activities`
+  ADD UNIQUE KEY `participant_activities_uk` (`study_id`, `participant_id`, `activity_id`);
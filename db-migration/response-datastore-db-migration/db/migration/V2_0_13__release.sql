@@ -0,0 +1,5 @@
+/* Modification version of the activity states, so that the app can get only the states changed
+since its last sync, see ParticipantActivityStateResponseServiceImpl. */
+ALTER TABLE `mystudies_response_server`.`participant_activities`
+  ADD COLUMN `modification_version` BIGINT NOT NULL DEFAULT 0 AFTER `total_count`,
+  ADD KEY `participant_activities_version_idx` (`study_id`, `participant_id`, `modification_version`);
@@ -0,0 +1,14 @@
+/* Idempotency keys of the submitted responses, see IdempotencyServiceImpl. A key is claimed while
+its first request is processed, with a NULL status, and then keeps the response of the request and
+the hash of its body. A request with the same key and another body is rejected instead of getting
+the stored response. */
+CREATE TABLE IF NOT EXISTS `mystudies_response_server`.`idempotency_keys` (
+  `idempotency_key` VARCHAR(64) NOT NULL,
+  `response_status` INT DEFAULT NULL,
+  `response_body` LONGTEXT,
+  `request_fingerprint` VARCHAR(64) DEFAULT NULL,
+  `expires_at` BIGINT NOT NULL,
+  `created_time` DATETIME DEFAULT NULL,
+  PRIMARY KEY (`idempotency_key`),
+  KEY `idempotency_keys_expires_at_idx` (`expires_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
@@ -0,0 +1,39 @@
+/* Response documents stored by JdbcResponsesDaoImpl (response.storage.type=jdbc). The participant,
+site, activity and activity run of a response are generated from its JSON document and indexed,
+the keys of the questions it answers are indexed in a side table. Missing participant, activity and
+activity run ids are stored as empty strings, MySQL does not compare NULLs in a unique key and
+activity_responses_run_uk would not dedupe responses saved twice without them. */
+CREATE TABLE IF NOT EXISTS `mystudies_response_server`.`study_metadata` (
+  `study_id` VARCHAR(64) NOT NULL,
+  `document` JSON NOT NULL,
+  `updated_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+  PRIMARY KEY (`study_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS `mystudies_response_server`.`activity_responses` (
+  `id` BIGINT NOT NULL AUTO_INCREMENT,
+  `study_id` VARCHAR(64) NOT NULL,
+  `document` JSON NOT NULL,
+  `participant_id` VARCHAR(64)
+    GENERATED ALWAYS AS (IFNULL(JSON_UNQUOTE(JSON_EXTRACT(`document`, '$.participantId')), '')) STORED NOT NULL,
+  `site_id` VARCHAR(64)
+    GENERATED ALWAYS AS (JSON_UNQUOTE(JSON_EXTRACT(`document`, '$.siteId'))) STORED,
+  `activity_id` VARCHAR(64)
+    GENERATED ALWAYS AS (IFNULL(JSON_UNQUOTE(JSON_EXTRACT(`document`, '$.activityId')), '')) STORED NOT NULL,
+  `activity_run_id` VARCHAR(64)
+    GENERATED ALWAYS AS (IFNULL(JSON_UNQUOTE(JSON_EXTRACT(`document`, '$.activityRunId')), '')) STORED NOT NULL,
+  `created_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `activity_responses_run_uk` (`study_id`, `participant_id`, `activity_id`, `activity_run_id`),
+  KEY `activity_responses_site_activity_idx` (`study_id`, `participant_id`, `site_id`, `activity_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS `mystudies_response_server`.`activity_response_questions` (
+  `study_id` VARCHAR(64) NOT NULL,
+  `participant_id` VARCHAR(64) NOT NULL,
+  `activity_id` VARCHAR(64) NOT NULL,
+  `activity_run_id` VARCHAR(64) NOT NULL,
+  `question_key` VARCHAR(255) NOT NULL,
+  PRIMARY KEY (`study_id`, `participant_id`, `activity_id`, `activity_run_id`, `question_key`),
+  KEY `activity_response_questions_key_idx` (`study_id`, `question_key`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
@@ -1,5 +1,6 @@
 package com.google.cloud.healthcare.fdamystudies.task;
 
+import com.google.cloud.healthcare.fdamystudies.common.ScheduledTaskMetrics;
 import com.google.cloud.healthcare.fdamystudies.service.UserManagementProfileService;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
@@ -14,13 +15,17 @@ public class DeactivateAccountScheduledTask {
 
   @Autowired UserManagementProfileService userManagementProfService;
 
+  @Autowired private ScheduledTaskMetrics scheduledTaskMetrics;
+
   @Scheduled(
       fixedDelayString = "${fixed.delay.milliseconds}",
       initialDelayString = "${initial.delay.milliseconds}")
   public void processDeactivatePendingRequests() {
     logger.entry("begin processDeactivatePendingRequests()");
 
-    userManagementProfService.processDeactivatePendingRequests();
+    scheduledTaskMetrics.record(
+        DeactivateAccountScheduledTask.class.getSimpleName(),
+        userManagementProfService::processDeactivatePendingRequests);
 
     logger.exit("processDeactivatePendingRequests() completed");
   }
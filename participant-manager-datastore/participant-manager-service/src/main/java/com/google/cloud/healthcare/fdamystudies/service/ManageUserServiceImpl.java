@@ -122,6 +122,8 @@ public class ManageUserServiceImpl implements ManageUserService {
 
   @Autowired private OAuthService oauthService;
 
+  @Autowired private BulkPersistenceService bulkPersistenceService;
+
   @Override
   @Transactional
   public AdminUserResponse createUser(UserRequest user, AuditLogEventRequest auditRequest) {
@@ -357,7 +359,7 @@ public class ManageUserServiceImpl implements ManageUserService {
       appPermissionEntities.add(appPermissionEntity);
     }
 
-    appPermissionRepository.saveAll(appPermissionEntities);
+    bulkPersistenceService.persistAll(appPermissionEntities);
     logger.exit("Successfully saved app level permissions");
   }
 
@@ -384,7 +386,7 @@ public class ManageUserServiceImpl implements ManageUserService {
       studyPermissionEntities.add(studyPermissionEntity);
     }
 
-    studyPermissionRepository.saveAll(studyPermissionEntities);
+    bulkPersistenceService.persistAll(studyPermissionEntities);
     logger.exit("Successfully saved study level permissions");
   }
 
@@ -413,7 +415,7 @@ public class ManageUserServiceImpl implements ManageUserService {
       sitePermissionEntities.add(sitePermissionEntity);
     }
 
-    sitePermissionRepository.saveAll(sitePermissionEntities);
+    bulkPersistenceService.persistAll(sitePermissionEntities);
     logger.exit("Successfully saved site level permissions");
   }
 
@@ -178,6 +178,8 @@ public class SiteServiceImpl implements SiteService {
 
   @Autowired private ParticipantManagerUtil participantManagerUtil;
 
+  @Autowired private BulkPersistenceService bulkPersistenceService;
+
   @Autowired ResourceLoader resourceLoader;
 
   @Override
@@ -826,17 +828,17 @@ public class SiteServiceImpl implements SiteService {
         findEligibleParticipantsAndInvite(
             participantsList, siteEntity, auditRequest, inviteParticipantRequest.getIds());
 
-    participantsList.removeAll(invitedParticipants);
-    List<String> failedParticipantIds =
-        participantsList
+    List<String> invitedParticipantIds =
+        invitedParticipants
             .stream()
             .map(ParticipantRegistrySiteEntity::getId)
             .collect(Collectors.toList());
 
-    List<String> invitedParticipantIds =
-        invitedParticipants
+    List<String> failedParticipantIds =
+        participantsList
             .stream()
             .map(ParticipantRegistrySiteEntity::getId)
+            .filter(id -> !invitedParticipantIds.contains(id))
             .collect(Collectors.toList());
 
     logger.exit(
@@ -854,6 +856,7 @@ public class SiteServiceImpl implements SiteService {
       List<String> ids) {
 
     List<ParticipantRegistrySiteEntity> invitedParticipants = new ArrayList<>();
+    List<InviteParticipantEntity> inviteParticipantsEmails = new ArrayList<>();
     for (ParticipantRegistrySiteEntity participantRegistrySiteEntity : participants) {
       OnboardingStatus onboardingStatus =
           OnboardingStatus.fromCode(participantRegistrySiteEntity.getOnboardingStatus());
@@ -884,14 +887,19 @@ public class SiteServiceImpl implements SiteService {
       inviteParticipantsEmail.setParticipantRegistrySite(participantRegistrySiteEntity.getId());
       inviteParticipantsEmail.setAppId(participantRegistrySiteEntity.getStudy().getAppId());
 
-      invitedParticipantsEmailRepository.saveAndFlush(inviteParticipantsEmail);
-
-      participantRegistrySiteRepository.saveAndFlush(participantRegistrySiteEntity);
-      participantStudyRepository.updateEnrollmentStatus(
-          ids, EnrollmentStatus.YET_TO_ENROLL.getStatus());
+      inviteParticipantsEmails.add(inviteParticipantsEmail);
       invitedParticipants.add(participantRegistrySiteEntity);
     }
-    return invitedParticipants;
+
+    if (invitedParticipants.isEmpty()) {
+      return invitedParticipants;
+    }
+    List<ParticipantRegistrySiteEntity> mergedParticipants =
+        bulkPersistenceService.mergeAll(invitedParticipants);
+    bulkPersistenceService.persistAll(inviteParticipantsEmails);
+    participantStudyRepository.updateEnrollmentStatus(
+        ids, EnrollmentStatus.YET_TO_ENROLL.getStatus());
+    return mergedParticipants;
   }
 
   @Override
@@ -1022,6 +1030,9 @@ public class SiteServiceImpl implements SiteService {
         (List<String>)
             CollectionUtils.removeAll(new ArrayList<String>(emails), participantRegistryEmails);
 
+    // each registry entry is followed by its participant study entry, see BulkPersistenceService
+    List<Object> newEntities = new ArrayList<>(newEmails.size() * 2);
+    List<ParticipantRegistrySiteEntity> newParticipants = new ArrayList<>(newEmails.size());
     List<ParticipantDetail> savedParticipants = new ArrayList<>();
     for (String email : newEmails) {
       ParticipantDetail participantDetail = new ParticipantDetail();
@@ -1034,8 +1045,6 @@ public class SiteServiceImpl implements SiteService {
               Instant.now()
                   .plus(appPropertyConfig.getEnrollmentTokenExpiryInHours(), ChronoUnit.HOURS)
                   .toEpochMilli()));
-      participantRegistrySite =
-          participantRegistrySiteRepository.saveAndFlush(participantRegistrySite);
 
       ParticipantStudyEntity participantStudyEntity =
           ParticipantMapper.toParticipantStudyEntity(
@@ -1043,12 +1052,18 @@ public class SiteServiceImpl implements SiteService {
       participantStudyEntity.setParticipantId(null);
       participantStudyEntity.setUserDetails(null);
       participantStudyEntity.setEnrolledDate(null);
-      participantStudyRepository.saveAndFlush(participantStudyEntity);
 
-      participantDetail.setId(participantRegistrySite.getId());
+      newEntities.add(participantRegistrySite);
+      newEntities.add(participantStudyEntity);
+      newParticipants.add(participantRegistrySite);
       savedParticipants.add(participantDetail);
     }
 
+    bulkPersistenceService.persistAll(newEntities);
+    for (int i = 0; i < newParticipants.size(); i++) {
+      savedParticipants.get(i).setId(newParticipants.get(i).getId());
+    }
+
     logger.exit(
         String.format(
             "%d duplicates email found and %d new emails saved",
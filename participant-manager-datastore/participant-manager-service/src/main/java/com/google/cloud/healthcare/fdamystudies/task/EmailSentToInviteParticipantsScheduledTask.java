@@ -1,5 +1,6 @@
 package com.google.cloud.healthcare.fdamystudies.task;
 
+import com.google.cloud.healthcare.fdamystudies.common.ScheduledTaskMetrics;
 import com.google.cloud.healthcare.fdamystudies.service.SiteService;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
@@ -15,6 +16,8 @@ public class EmailSentToInviteParticipantsScheduledTask {
 
   @Autowired SiteService siteService;
 
+  @Autowired private ScheduledTaskMetrics scheduledTaskMetrics;
+
   // 5min fixed delay and 10s initial delay
   @Scheduled(
       fixedDelayString = "${invite.participant.fixed.delay.ms}",
@@ -22,7 +25,9 @@ public class EmailSentToInviteParticipantsScheduledTask {
   public void processEmailRequests() {
     logger.entry("begin processEmailRequests()");
 
-    siteService.sendInvitationEmail();
+    scheduledTaskMetrics.record(
+        EmailSentToInviteParticipantsScheduledTask.class.getSimpleName(),
+        siteService::sendInvitationEmail);
     logger.exit("processEmailRequests() completed");
   }
 }
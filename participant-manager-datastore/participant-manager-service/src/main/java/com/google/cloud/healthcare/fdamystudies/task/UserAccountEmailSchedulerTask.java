@@ -8,6 +8,7 @@
 
 package com.google.cloud.healthcare.fdamystudies.task;
 
+import com.google.cloud.healthcare.fdamystudies.common.ScheduledTaskMetrics;
 import com.google.cloud.healthcare.fdamystudies.service.ManageUserService;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
@@ -22,13 +23,16 @@ public class UserAccountEmailSchedulerTask {
 
   @Autowired private ManageUserService manageUserService;
 
+  @Autowired private ScheduledTaskMetrics scheduledTaskMetrics;
+
   // 5min fixed delay and 10s initial delay
   @Scheduled(
       fixedDelayString = "${invite.participant.fixed.delay.ms}",
       initialDelayString = "${invite.participant.initial.delay.ms}")
   public void processEmailRequests() {
     logger.entry("begin processEmailRequests()");
-    manageUserService.sendUserEmail();
+    scheduledTaskMetrics.record(
+        UserAccountEmailSchedulerTask.class.getSimpleName(), manageUserService::sendUserEmail);
     logger.exit("processEmailRequests() completed");
   }
 }
@@ -93,6 +93,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -1804,6 +1805,48 @@ public class SiteControllerTest extends BaseMockIT {
     verifyTokenIntrospectRequest();
   }
 
+  @Test
+  public void shouldInviteParticipantsInOneBatch() throws Exception {
+    studyEntity.setApp(appEntity);
+    siteEntity.setStudy(studyEntity);
+    testDataHelper.getSiteRepository().saveAndFlush(siteEntity);
+
+    // Step 1: several new participants that are updated with one batched write
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      ids.add(testDataHelper.createParticipantRegistrySite(siteEntity, studyEntity).getId());
+    }
+
+    HttpHeaders headers = testDataHelper.newCommonHeaders();
+    headers.add(USER_ID_HEADER, userRegAdminEntity.getId());
+
+    InviteParticipantRequest inviteParticipantRequest = new InviteParticipantRequest();
+    inviteParticipantRequest.setIds(ids);
+    // Step 2: call the API and expect every participant to be invited
+    mockMvc
+        .perform(
+            post(ApiEndpoint.INVITE_PARTICIPANTS.getPath(), siteEntity.getId())
+                .content(asJsonString(inviteParticipantRequest))
+                .headers(headers)
+                .contextPath(getContextPath()))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.invitedParticipantIds", hasSize(3)))
+        .andExpect(jsonPath("$.failedParticipantIds", hasSize(0)));
+
+    // Step 3: verify the batched updates were written for every participant
+    for (String id : ids) {
+      ParticipantRegistrySiteEntity participantRegistrySite =
+          participantRegistrySiteRepository.findById(id).get();
+      assertEquals(
+          OnboardingStatus.INVITED.getCode(), participantRegistrySite.getOnboardingStatus());
+      assertEquals(Long.valueOf(3), participantRegistrySite.getInvitationCount());
+      assertFalse(participantRegistrySite.isEnrollmentTokenUsed());
+    }
+
+    verifyTokenIntrospectRequest();
+  }
+
   @Test
   public void shouldReturnAccessDeniedForImportNewParticipant() throws Exception {
     // Step 1: set manage site permission to view only
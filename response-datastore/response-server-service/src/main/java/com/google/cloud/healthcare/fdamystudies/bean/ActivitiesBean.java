@@ -20,4 +20,10 @@ import lombok.ToString;
 public class ActivitiesBean {
   List<ParticipantActivityBean> activities = new ArrayList<>();
   private String message = null;
+
+  /** Passed as `since` to get only the activities changed after this response. */
+  private String syncToken;
+
+  /** True if only the activities changed since the requested token are listed. */
+  private boolean delta;
 }
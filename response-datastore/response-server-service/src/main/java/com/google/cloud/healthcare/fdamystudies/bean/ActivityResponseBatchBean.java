@@ -0,0 +1,23 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.bean;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/** Responses of one participant in one study, typically replayed from the app's offline queue. */
+@Setter
+@Getter
+@ToString
+public class ActivityResponseBatchBean {
+  private List<ActivityResponseBean> responses = new ArrayList<>();
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.bean;
+
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/** Per response outcome of a batch submission, in the order of the request. */
+@Setter
+@Getter
+@ToString
+public class ActivityResponseBatchResultBean {
+  private String message = AppConstants.EMPTY_STR;
+  private List<ActivityResponseItemResultBean> results = new ArrayList<>();
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.bean;
+
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Outcome of one response of a batch submission. Failed responses carry the same error code the
+ * single response endpoint would return and can be submitted again.
+ */
+@Setter
+@Getter
+@ToString
+public class ActivityResponseItemResultBean {
+  private Integer index;
+  private String activityId = AppConstants.EMPTY_STR;
+  private String activityVersion = AppConstants.EMPTY_STR;
+  private String activityRunId = AppConstants.EMPTY_STR;
+  private String status = AppConstants.EMPTY_STR;
+  private Integer errorCode;
+  private String errorMessage;
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.bean;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/** Stored result of a request made with an idempotency key, returned again for its duplicates. */
+@Setter
+@Getter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotentResponse {
+
+  /** HTTP status of the response, null while the first request is processed. */
+  private Integer status;
+
+  /** JSON body of the response. */
+  private String body;
+
+  /** Hash of the body of the first request, null for keys stored before it was kept. */
+  private String requestFingerprint;
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.bean;
+
+import com.google.cloud.healthcare.fdamystudies.beans.AuditLogEventRequest;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Activity response document accepted in write-behind ingestion mode, together with what is needed
+ * to persist it, to mark the activity completed for the participant and to audit it.
+ */
+@Setter
+@Getter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class IngestedActivityResponse {
+
+  private String studyId;
+  private String studyCollectionName;
+  private String activitiesCollectionName;
+  private String participantId;
+  private String activityId;
+  private String activityVersion;
+  private String activityRunId;
+  private Map<String, Object> dataToStoreActivityResults;
+  private AuditLogEventRequest auditRequest;
+}
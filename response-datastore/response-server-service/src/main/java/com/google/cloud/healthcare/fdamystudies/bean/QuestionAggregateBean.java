@@ -0,0 +1,40 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.bean;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Statistics of the answers to one question, of one site or, when the site ID is null, of the
+ * whole study. Min, max, mean, standard deviation and quantiles are computed from the answers of
+ * numeric question types only; quantiles are approximate.
+ */
+@Setter
+@Getter
+@ToString
+public class QuestionAggregateBean {
+  private String studyId;
+  private String siteId;
+  private String activityId;
+  private String questionKey;
+  private long responseCount;
+  private long numericCount;
+  private Double min;
+  private Double max;
+  private Double mean;
+  private Double standardDeviation;
+  /** Quantile values by name, such as p50 for the median. */
+  private Map<String, Double> quantiles = new LinkedHashMap<>();
+  private String lastValue;
+  private Long lastCreatedTimestamp;
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/** Answer to one question in one activity run, the unit of the question-level read model. */
+@Setter
+@Getter
+@ToString
+public class QuestionResponseValue {
+  private String activityRunId;
+  private long createdTimestamp;
+  private String resultType;
+  /** Answers to a question repeated in a group are joined with {@code |}. */
+  private String value;
+}
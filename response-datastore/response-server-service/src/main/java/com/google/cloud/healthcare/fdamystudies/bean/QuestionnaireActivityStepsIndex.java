@@ -0,0 +1,69 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.bean;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Case-insensitive lookup of the metadata steps of a {@link QuestionnaireActivityStructureBean} by
+ * step key. Top-level steps and the sub-steps of form steps are indexed separately. When keys
+ * repeat, the lookups return the step the former linear scans settled on: the last top-level
+ * match, and the last match within the first form step that contains the key.
+ */
+public final class QuestionnaireActivityStepsIndex {
+
+  private final Map<String, QuestionnaireActivityStepsBean> steps;
+
+  private final Map<String, QuestionnaireActivityStepsBean> formSteps;
+
+  public QuestionnaireActivityStepsIndex(List<QuestionnaireActivityStepsBean> metadataSteps) {
+    Map<String, QuestionnaireActivityStepsBean> stepsByKey = new HashMap<>();
+    Map<String, QuestionnaireActivityStepsBean> formStepsByKey = new HashMap<>();
+    for (QuestionnaireActivityStepsBean step : metadataSteps) {
+      putByKey(stepsByKey, step);
+      if (step.getSteps() == null) {
+        continue;
+      }
+      Map<String, QuestionnaireActivityStepsBean> subStepsByKey = new HashMap<>();
+      for (QuestionnaireActivityStepsBean subStep : step.getSteps()) {
+        putByKey(subStepsByKey, subStep);
+      }
+      for (Map.Entry<String, QuestionnaireActivityStepsBean> entry : subStepsByKey.entrySet()) {
+        formStepsByKey.putIfAbsent(entry.getKey(), entry.getValue());
+      }
+    }
+    this.steps = Collections.unmodifiableMap(stepsByKey);
+    this.formSteps = Collections.unmodifiableMap(formStepsByKey);
+  }
+
+  /** @return the top-level metadata step with the given key, or null */
+  public QuestionnaireActivityStepsBean getStep(String key) {
+    return key == null ? null : steps.get(normalize(key));
+  }
+
+  /** @return the form sub-step with the given key, or null */
+  public QuestionnaireActivityStepsBean getFormStep(String key) {
+    return key == null ? null : formSteps.get(normalize(key));
+  }
+
+  private static void putByKey(
+      Map<String, QuestionnaireActivityStepsBean> stepsByKey, QuestionnaireActivityStepsBean step) {
+    if (step != null && step.getKey() != null) {
+      stepsByKey.put(normalize(step.getKey()), step);
+    }
+  }
+
+  private static String normalize(String key) {
+    return key.toLowerCase(Locale.ROOT);
+  }
+}
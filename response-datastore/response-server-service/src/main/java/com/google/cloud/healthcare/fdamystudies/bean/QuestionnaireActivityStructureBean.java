@@ -8,9 +8,11 @@
 
 package com.google.cloud.healthcare.fdamystudies.bean;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
 import java.util.ArrayList;
 import java.util.List;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
@@ -27,4 +29,26 @@ public class QuestionnaireActivityStructureBean {
   private String type = AppConstants.EMPTY_STR;
   private ActivityMetadataBean metadata = new ActivityMetadataBean();
   private List<QuestionnaireActivityStepsBean> steps = new ArrayList<>();
+
+  /** Built on first use and shared by every response merged with this (cached) structure. */
+  @JsonIgnore
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  @ToString.Exclude
+  private transient volatile QuestionnaireActivityStepsIndex stepsIndex;
+
+  public void setSteps(List<QuestionnaireActivityStepsBean> steps) {
+    this.steps = steps;
+    this.stepsIndex = null;
+  }
+
+  @JsonIgnore
+  public QuestionnaireActivityStepsIndex getStepsIndex() {
+    QuestionnaireActivityStepsIndex index = stepsIndex;
+    if (index == null) {
+      index = new QuestionnaireActivityStepsIndex(steps);
+      stepsIndex = index;
+    }
+    return index;
+  }
 }
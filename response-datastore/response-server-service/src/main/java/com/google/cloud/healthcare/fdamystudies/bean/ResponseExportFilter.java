@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.bean;
+
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Responses exported by a response export job. Blank fields do not filter, the created timestamps
+ * are epoch milliseconds and the range includes both ends.
+ */
+@Setter
+@Getter
+@ToString
+public class ResponseExportFilter {
+  private String siteId;
+  private String activityId;
+  private Long createdFrom;
+  private Long createdTo;
+
+  /** @return true if the response document passes the filter */
+  public boolean matches(Map<String, Object> document) {
+    if (StringUtils.isNotBlank(siteId) && !siteId.equals(document.get(AppConstants.SITE_ID_KEY))) {
+      return false;
+    }
+    if (StringUtils.isNotBlank(activityId)
+        && !activityId.equals(document.get(AppConstants.ACTIVITY_ID_KEY))) {
+      return false;
+    }
+    if (createdFrom == null && createdTo == null) {
+      return true;
+    }
+    long created;
+    try {
+      created = Long.parseLong(String.valueOf(document.get(AppConstants.CREATED_TS_KEY)));
+    } catch (NumberFormatException e) {
+      return false;
+    }
+    return (createdFrom == null || created >= createdFrom)
+        && (createdTo == null || created <= createdTo);
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.bean;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * State of a response export job, saved with its files after each chunk so that the job can be
+ * resumed from the cursor of the last written chunk.
+ */
+@Setter
+@Getter
+@ToString
+public class ResponseExportJobBean {
+  private String jobId;
+  private String studyId;
+  private ResponseExportFilter filter = new ResponseExportFilter();
+  /** ndjson and/or csv, each chunk is written in every format. */
+  private List<String> formats = new ArrayList<>();
+  /** PENDING, RUNNING, COMPLETED or FAILED. */
+  private String status;
+  /** COLUMNS while the question keys of the CSV header are collected, then ROWS. */
+  private String phase;
+  /** Position of the next page to read, null at the start of a phase. */
+  private String cursor;
+  /** Columns of the CSV files after the response fields, one per question key. */
+  private List<String> questionKeys = new ArrayList<>();
+  private List<String> files = new ArrayList<>();
+  private int chunks;
+  private long scannedResponses;
+  private long exportedResponses;
+  private String errorMessage;
+  private long createdTime;
+  private long updatedTime;
+}
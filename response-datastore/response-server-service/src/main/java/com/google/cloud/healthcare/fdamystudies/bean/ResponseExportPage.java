@@ -0,0 +1,28 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.bean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * One page of the responses of a study. The page can hold fewer documents than requested, or none,
+ * while the next cursor is set; the responses are read to the end once the next cursor is null.
+ */
+@Setter
+@Getter
+@ToString
+public class ResponseExportPage {
+  private List<Map<String, Object>> documents = new ArrayList<>();
+  private String nextCursor;
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.bean;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+@Setter
+@Getter
+@ToString
+public class ResponseExportRequestBean {
+  private ResponseExportFilter filter = new ResponseExportFilter();
+  /** ndjson and/or csv. */
+  private List<String> formats = new ArrayList<>();
+}
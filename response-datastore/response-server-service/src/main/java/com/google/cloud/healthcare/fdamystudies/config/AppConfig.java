@@ -9,14 +9,40 @@
 package com.google.cloud.healthcare.fdamystudies.config;
 
 import com.google.cloud.GcpLaunchStage.Beta;
+import com.google.cloud.healthcare.fdamystudies.dao.ResponsesDao;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 @Configuration
 public class AppConfig extends CommonModuleConfiguration {
 
+  private static final String FILE_STORAGE = "file";
+
+  private static final String JDBC_STORAGE = "jdbc";
+
   @Beta
   public BCryptPasswordEncoder passwordEncoder() {
     return new BCryptPasswordEncoder();
   }
+
+  /** The responses DAO injected in the services, selected by {@code response.storage.type}. */
+  @Bean(destroyMethod = "")
+  @Primary
+  public ResponsesDao responsesDao(
+      @Value("${response.storage.type:firestore}") String storageType,
+      @Qualifier("cloudFirestoreResponsesDaoImpl") ResponsesDao cloudFirestoreResponsesDao,
+      @Qualifier("fileResponsesDaoImpl") ResponsesDao fileResponsesDao,
+      @Qualifier("jdbcResponsesDaoImpl") ResponsesDao jdbcResponsesDao) {
+    if (FILE_STORAGE.equalsIgnoreCase(storageType)) {
+      return fileResponsesDao;
+    }
+    if (JDBC_STORAGE.equalsIgnoreCase(storageType)) {
+      return jdbcResponsesDao;
+    }
+    return cloudFirestoreResponsesDao;
+  }
 }
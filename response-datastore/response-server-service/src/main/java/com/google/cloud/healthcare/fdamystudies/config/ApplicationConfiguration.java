@@ -24,6 +24,9 @@ public class ApplicationConfiguration {
   @Value("${studydatastore.study.activity.metadata.url}")
   private String wcpStudyActivityMetadataUrl;
 
+  @Value("${studydatastore.study.activity.list.url}")
+  private String wcpStudyActivityListUrl;
+
   @Value("${response.data.file.path}")
   private String responseDataFilePath;
 
@@ -59,4 +62,7 @@ public class ApplicationConfiguration {
 
   @Value("${enroll.mgmt.service.url}")
   private String regServerPartStudyInfoUrl;
+
+  @Value("${response.batch.max-size:100}")
+  private int responseBatchMaxSize;
 }
@@ -12,6 +12,7 @@ import static com.google.cloud.healthcare.fdamystudies.common.CommonConstants.AC
 import static com.google.cloud.healthcare.fdamystudies.common.CommonConstants.ACTIVITY_TYPE;
 import static com.google.cloud.healthcare.fdamystudies.common.CommonConstants.ACTIVITY_VERSION;
 import static com.google.cloud.healthcare.fdamystudies.common.CommonConstants.RUN_ID;
+import static com.google.cloud.healthcare.fdamystudies.common.JsonUtils.getObjectMapper;
 import static com.google.cloud.healthcare.fdamystudies.common.ResponseServerEvent.ACTIVITY_DATA_DELETION_FAILED;
 import static com.google.cloud.healthcare.fdamystudies.common.ResponseServerEvent.ACTIVITY_RESPONSE_DATA_PROCESSING_FAILED;
 import static com.google.cloud.healthcare.fdamystudies.common.ResponseServerEvent.ACTIVITY_RESPONSE_NOT_SAVED;
@@ -34,9 +35,15 @@ import static com.google.cloud.healthcare.fdamystudies.common.ResponseServerEven
 import static com.google.cloud.healthcare.fdamystudies.common.ResponseServerEvent.WITHDRAWAL_INFORMATION_UPDATED;
 import static com.google.cloud.healthcare.fdamystudies.common.ResponseServerEvent.WITHDRAWAL_INFORMATION_UPDATE_FAILED;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.cloud.healthcare.fdamystudies.bean.ActivityMetadataBean;
+import com.google.cloud.healthcare.fdamystudies.bean.ActivityResponseBatchBean;
+import com.google.cloud.healthcare.fdamystudies.bean.ActivityResponseBatchResultBean;
 import com.google.cloud.healthcare.fdamystudies.bean.ActivityResponseBean;
+import com.google.cloud.healthcare.fdamystudies.bean.ActivityResponseItemResultBean;
 import com.google.cloud.healthcare.fdamystudies.bean.ActivityStateRequestBean;
 import com.google.cloud.healthcare.fdamystudies.bean.ErrorBean;
+import com.google.cloud.healthcare.fdamystudies.bean.IngestedActivityResponse;
 import com.google.cloud.healthcare.fdamystudies.bean.ParticipantActivityBean;
 import com.google.cloud.healthcare.fdamystudies.bean.ParticipantStudyInformation;
 import com.google.cloud.healthcare.fdamystudies.bean.QuestionnaireActivityStructureBean;
@@ -45,30 +52,39 @@ import com.google.cloud.healthcare.fdamystudies.bean.StudyActivityMetadataReques
 import com.google.cloud.healthcare.fdamystudies.bean.SuccessResponseBean;
 import com.google.cloud.healthcare.fdamystudies.beans.AuditLogEventRequest;
 import com.google.cloud.healthcare.fdamystudies.common.ResponseServerAuditLogHelper;
+import com.google.cloud.healthcare.fdamystudies.config.ApplicationConfiguration;
+import com.google.cloud.healthcare.fdamystudies.exception.ResponseIngestionBackpressureException;
 import com.google.cloud.healthcare.fdamystudies.mapper.AuditEventMapper;
 import com.google.cloud.healthcare.fdamystudies.response.model.ParticipantInfoEntity;
 import com.google.cloud.healthcare.fdamystudies.service.ActivityResponseProcessorService;
+import com.google.cloud.healthcare.fdamystudies.service.IdempotencyService;
 import com.google.cloud.healthcare.fdamystudies.service.ParticipantActivityStateResponseService;
 import com.google.cloud.healthcare.fdamystudies.service.ParticipantService;
 import com.google.cloud.healthcare.fdamystudies.service.ParticipantStudyInfoService;
+import com.google.cloud.healthcare.fdamystudies.service.ResponseIngestionService;
 import com.google.cloud.healthcare.fdamystudies.service.StudyMetadataService;
 import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
 import com.google.cloud.healthcare.fdamystudies.utils.AppUtil;
 import com.google.cloud.healthcare.fdamystudies.utils.ErrorCode;
+import com.google.cloud.healthcare.fdamystudies.utils.ResponseServerUtil;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.collections4.map.HashedMap;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -92,8 +108,16 @@ public class ProcessActivityResponseController {
 
   @Autowired private ResponseServerAuditLogHelper responseServerAuditLogHelper;
 
+  @Autowired private ResponseIngestionService responseIngestionService;
+
+  @Autowired private IdempotencyService idempotencyService;
+
+  @Autowired private ApplicationConfiguration appConfig;
+
   private static final String BEGIN_REQUEST_LOG = "%s request";
 
+  private static final int INGESTION_RETRY_AFTER_SECONDS = 30;
+
   private XLogger logger =
       XLoggerFactory.getXLogger(ProcessActivityResponseController.class.getName());
 
@@ -103,22 +127,85 @@ public class ProcessActivityResponseController {
   public ResponseEntity<?> processActivityResponseForParticipant(
       @RequestBody ActivityResponseBean questionnaireActivityResponseBean,
       @RequestHeader String userId,
+      @RequestHeader(name = AppConstants.IDEMPOTENCY_KEY_HEADER, required = false)
+          String idempotencyKey,
       HttpServletRequest request) {
     logger.entry(String.format(BEGIN_REQUEST_LOG, request.getRequestURI()));
     AuditLogEventRequest auditRequest = AuditEventMapper.fromHttpServletRequest(request);
     auditRequest.setUserId(userId);
-    String applicationId = null;
+    ResponseEntity<?> invalidResponse =
+        validateActivityResponse(questionnaireActivityResponseBean, userId, auditRequest);
+    if (invalidResponse != null) {
+      return invalidResponse;
+    }
+
+    // the key is resolved once the token is checked, so only the participant gets its responses
+    String requestKey = getRequestKey(idempotencyKey, questionnaireActivityResponseBean);
+    if (requestKey == null) {
+      return processActivityResponse(questionnaireActivityResponseBean, auditRequest);
+    }
+    return idempotencyService.process(
+        requestKey,
+        getRequestFingerprint(questionnaireActivityResponseBean),
+        () -> processActivityResponse(questionnaireActivityResponseBean, auditRequest));
+  }
+
+  /**
+   * @return the key of the response, scoped to the participant, from the key of the client or else
+   *     from the activity run and the submission time, or null if the response has neither
+   */
+  private String getRequestKey(
+      String idempotencyKey, ActivityResponseBean questionnaireActivityResponseBean) {
+    String participantId = questionnaireActivityResponseBean.getParticipantId();
+    if (StringUtils.isBlank(participantId)) {
+      return null;
+    }
+    if (StringUtils.isNotBlank(idempotencyKey)) {
+      return ResponseServerUtil.getHashedValue(participantId + "\n" + idempotencyKey);
+    }
+    ActivityMetadataBean metadata = questionnaireActivityResponseBean.getMetadata();
+    if (metadata == null
+        || StringUtils.isBlank(metadata.getActivityRunId())
+        || StringUtils.isBlank(questionnaireActivityResponseBean.getCreatedTimestamp())) {
+      return null;
+    }
+    return ResponseServerUtil.getHashedValue(
+        String.join(
+            "\n",
+            participantId,
+            metadata.getStudyId(),
+            metadata.getActivityId(),
+            metadata.getActivityRunId(),
+            questionnaireActivityResponseBean.getCreatedTimestamp()));
+  }
+
+  /** @return the hash of the body, a retry with the same key must send the same body */
+  private String getRequestFingerprint(Object requestBody) {
+    try {
+      return ResponseServerUtil.getHashedValue(getObjectMapper().writeValueAsString(requestBody));
+    } catch (JsonProcessingException e) {
+      logger.warn("Could not hash the request, its idempotency key is not checked", e);
+      return null;
+    }
+  }
+
+  /**
+   * @return the error response if a required value is missing or the enrollment token is not the
+   *     one of the participant, or null if the response can be processed
+   */
+  private ResponseEntity<?> validateActivityResponse(
+      ActivityResponseBean questionnaireActivityResponseBean,
+      String userId,
+      AuditLogEventRequest auditRequest) {
     String studyId = null;
-    String studyVersion = null;
     String activityId = null;
     String activityVersion = null;
     String participantId = null;
     String secureEnrollmentToken = null;
-    boolean savedResponseData = false;
     try {
-      applicationId = questionnaireActivityResponseBean.getApplicationId();
+      String applicationId = questionnaireActivityResponseBean.getApplicationId();
       studyId = questionnaireActivityResponseBean.getMetadata().getStudyId();
-      studyVersion = questionnaireActivityResponseBean.getMetadata().getStudyVersion();
+      String studyVersion = questionnaireActivityResponseBean.getMetadata().getStudyVersion();
       activityId = questionnaireActivityResponseBean.getMetadata().getActivityId();
       activityVersion = questionnaireActivityResponseBean.getMetadata().getVersion();
       participantId = questionnaireActivityResponseBean.getParticipantId();
@@ -167,107 +254,161 @@ public class ProcessActivityResponseController {
       participantBo.setTokenId(secureEnrollmentToken);
       participantBo.setParticipantId(participantId);
 
-      if (participantService.isValidParticipant(participantBo)) {
+      if (!participantService.isValidParticipant(participantBo)) {
+        ErrorBean errorBean =
+            AppUtil.dynamicResponse(
+                ErrorCode.EC_706.code(),
+                ErrorCode.EC_706.errorMessage(),
+                AppConstants.ERROR_STR,
+                "Could not save response for invalid participant.\n Study Id: "
+                    + studyId
+                    + "\n Activity Id: "
+                    + activityId
+                    + "\n Activity Version: "
+                    + activityVersion
+                    + "\n Particpant Id: "
+                    + participantId);
 
-        // Get ActivityMetadata from the WCP - we map the metadata information to the activity
-        // response information to come up with a consolidated response object
-        StudyActivityMetadataRequestBean studyActivityMetadataRequestBean =
-            new StudyActivityMetadataRequestBean();
-        studyActivityMetadataRequestBean.setStudyId(studyId);
-        studyActivityMetadataRequestBean.setActivityId(activityId);
-        studyActivityMetadataRequestBean.setActivityVersion(activityVersion);
-        QuestionnaireActivityStructureBean activityMetadatFromWcp =
-            studyMetadataService.getStudyActivityMetadata(
-                applicationId, studyActivityMetadataRequestBean, auditRequest);
-        if (activityMetadatFromWcp == null) {
-          logger.error(
-              "Input values are :\n Study Id: "
-                  + studyId
-                  + "\n Activity Id: "
-                  + activityId
-                  + "\n Activity Version: "
-                  + activityVersion);
-
-          Map<String, String> receiptMap = new HashedMap<>();
-          receiptMap.put(
-              "questionnaire_or_active_task", questionnaireActivityResponseBean.getType());
-          receiptMap.put(ACTIVITY_ID, activityId);
-          receiptMap.put(ACTIVITY_VERSION, activityVersion);
-          receiptMap.put(
-              RUN_ID, questionnaireActivityResponseBean.getMetadata().getActivityRunId());
-          responseServerAuditLogHelper.logEvent(
-              ACTIVITY_RESPONSE_RECEIPT_FAILED, auditRequest, receiptMap);
+        logger.error(
+            "Could not save response for invalid participant.\n Study Id: "
+                + studyId
+                + "\n Activity Id: "
+                + activityId
+                + "\n Activity Version: "
+                + activityVersion);
 
-          Map<String, String> map = new HashedMap<>();
-          map.put(ACTIVITY_TYPE, questionnaireActivityResponseBean.getType());
-          map.put(ACTIVITY_ID, activityId);
-          map.put(ACTIVITY_VERSION, activityVersion);
-          responseServerAuditLogHelper.logEvent(
-              ACTIVTY_METADATA_RETRIEVAL_FAILED, auditRequest, map);
-          map.put(RUN_ID, questionnaireActivityResponseBean.getMetadata().getActivityRunId());
-          responseServerAuditLogHelper.logEvent(
-              ACTIVITY_RESPONSE_DATA_PROCESSING_FAILED, auditRequest, map);
+        return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
+      }
+      return null;
+    } catch (Exception e) {
+      ErrorBean errorBean =
+          AppUtil.dynamicResponse(
+              ErrorCode.EC_707.code(),
+              ErrorCode.EC_707.errorMessage(),
+              AppConstants.ERROR_STR,
+              e.getMessage());
+      logger.error(
+          "An error occured while saving response for participant.\n Study Id: "
+              + studyId
+              + "\n Activity Id: "
+              + activityId
+              + "\n Activity Version: "
+              + activityVersion);
+      responseServerAuditLogHelper.logEvent(PARTICIPANT_ID_INVALID, auditRequest);
+      return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
+    }
+  }
+
+  private ResponseEntity<?> processActivityResponse(
+      ActivityResponseBean questionnaireActivityResponseBean, AuditLogEventRequest auditRequest) {
+    String applicationId = questionnaireActivityResponseBean.getApplicationId();
+    String studyId = questionnaireActivityResponseBean.getMetadata().getStudyId();
+    String activityId = questionnaireActivityResponseBean.getMetadata().getActivityId();
+    String activityVersion = questionnaireActivityResponseBean.getMetadata().getVersion();
+    String participantId = questionnaireActivityResponseBean.getParticipantId();
+    boolean savedResponseData = false;
+    try {
+      // Get ActivityMetadata from the WCP - we map the metadata information to the activity
+      // response information to come up with a consolidated response object
+      StudyActivityMetadataRequestBean studyActivityMetadataRequestBean =
+          new StudyActivityMetadataRequestBean();
+      studyActivityMetadataRequestBean.setStudyId(studyId);
+      studyActivityMetadataRequestBean.setActivityId(activityId);
+      studyActivityMetadataRequestBean.setActivityVersion(activityVersion);
+      QuestionnaireActivityStructureBean activityMetadatFromWcp =
+          studyMetadataService.getStudyActivityMetadata(
+              applicationId, studyActivityMetadataRequestBean, auditRequest);
+      if (activityMetadatFromWcp == null) {
+        logger.error(
+            "Input values are :\n Study Id: "
+                + studyId
+                + "\n Activity Id: "
+                + activityId
+                + "\n Activity Version: "
+                + activityVersion);
+
+        Map<String, String> receiptMap = new HashedMap<>();
+        receiptMap.put(
+            "questionnaire_or_active_task", questionnaireActivityResponseBean.getType());
+        receiptMap.put(ACTIVITY_ID, activityId);
+        receiptMap.put(ACTIVITY_VERSION, activityVersion);
+        receiptMap.put(
+            RUN_ID, questionnaireActivityResponseBean.getMetadata().getActivityRunId());
+        responseServerAuditLogHelper.logEvent(
+            ACTIVITY_RESPONSE_RECEIPT_FAILED, auditRequest, receiptMap);
 
-          ErrorBean errorBean =
-              AppUtil.dynamicResponse(
-                  ErrorCode.EC_705.code(),
-                  ErrorCode.EC_705.errorMessage(),
-                  AppConstants.ERROR_STR,
-                  ErrorCode.EC_705.errorMessage());
-          return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
-        }
         Map<String, String> map = new HashedMap<>();
         map.put(ACTIVITY_TYPE, questionnaireActivityResponseBean.getType());
         map.put(ACTIVITY_ID, activityId);
         map.put(ACTIVITY_VERSION, activityVersion);
-        responseServerAuditLogHelper.logEvent(ACTIVTY_METADATA_RETRIEVED, auditRequest, map);
+        responseServerAuditLogHelper.logEvent(
+            ACTIVTY_METADATA_RETRIEVAL_FAILED, auditRequest, map);
+        map.put(RUN_ID, questionnaireActivityResponseBean.getMetadata().getActivityRunId());
+        responseServerAuditLogHelper.logEvent(
+            ACTIVITY_RESPONSE_DATA_PROCESSING_FAILED, auditRequest, map);
 
-        // Get ParticipantStudyInfo from Registration Server
-        ParticipantStudyInformation partStudyInfo =
-            partStudyInfoService.getParticipantStudyInfo(studyId, participantId, auditRequest);
-        if (partStudyInfo == null) {
-          logger.error("GetParticipantStudyInfo() - ParticipantInfo is null. Study Id: " + studyId);
-          responseServerAuditLogHelper.logEvent(
-              DATA_SHARING_CONSENT_VALUE_RETRIEVAL_FAILED, auditRequest);
+        ErrorBean errorBean =
+            AppUtil.dynamicResponse(
+                ErrorCode.EC_705.code(),
+                ErrorCode.EC_705.errorMessage(),
+                AppConstants.ERROR_STR,
+                ErrorCode.EC_705.errorMessage());
+        return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
+      }
+      Map<String, String> map = new HashedMap<>();
+      map.put(ACTIVITY_TYPE, questionnaireActivityResponseBean.getType());
+      map.put(ACTIVITY_ID, activityId);
+      map.put(ACTIVITY_VERSION, activityVersion);
+      responseServerAuditLogHelper.logEvent(ACTIVTY_METADATA_RETRIEVED, auditRequest, map);
 
-          responseServerAuditLogHelper.logEvent(
-              WITHDRAWAL_INFORMATION_RETREIVAL_FAILED, auditRequest);
-          ErrorBean errorBean =
-              AppUtil.dynamicResponse(
-                  ErrorCode.EC_715.code(),
-                  ErrorCode.EC_715.errorMessage(),
-                  AppConstants.ERROR_STR,
-                  ErrorCode.EC_715.errorMessage());
-          return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
-        }
-        String sharingConsent = partStudyInfo.getSharing();
-        Map<String, String> consentMap = new HashedMap<>();
-        consentMap.put("datasharing_consent_value", sharingConsent);
-        responseServerAuditLogHelper.logEvent(
-            DATA_SHARING_CONSENT_VALUE_RETRIEVED, auditRequest, consentMap);
-
-        questionnaireActivityResponseBean.setSharingConsent(sharingConsent);
-        Map<String, String> sharingMap = new HashedMap<>();
-        sharingMap.put(ACTIVITY_TYPE, questionnaireActivityResponseBean.getType());
-        sharingMap.put(ACTIVITY_ID, activityId);
-        sharingMap.put(ACTIVITY_VERSION, activityVersion);
-        sharingMap.put(RUN_ID, questionnaireActivityResponseBean.getMetadata().getActivityRunId());
+      // Get ParticipantStudyInfo from Registration Server
+      ParticipantStudyInformation partStudyInfo =
+          partStudyInfoService.getParticipantStudyInfo(studyId, participantId, auditRequest);
+      if (partStudyInfo == null) {
+        logger.error("GetParticipantStudyInfo() - ParticipantInfo is null. Study Id: " + studyId);
         responseServerAuditLogHelper.logEvent(
-            DATA_SHARING_CONSENT_VALUE_CONJOINED_WITH_ACTIVITY_RESPONSE_DATA,
-            auditRequest,
-            sharingMap);
-        boolean withdrawalStatus = !StringUtils.isBlank(partStudyInfo.getWithdrawal());
+            DATA_SHARING_CONSENT_VALUE_RETRIEVAL_FAILED, auditRequest);
 
-        Map<String, String> withdrawMap = new HashedMap<>();
-        withdrawMap.put("withdrawn_status", String.valueOf(withdrawalStatus));
         responseServerAuditLogHelper.logEvent(
-            WITHDRAWAL_INFORMATION_RETRIEVED, auditRequest, withdrawMap);
-        if (!withdrawalStatus) {
-          activityResponseProcessorService.saveActivityResponseDataForParticipant(
-              activityMetadatFromWcp, questionnaireActivityResponseBean, auditRequest);
-          savedResponseData = true;
+            WITHDRAWAL_INFORMATION_RETREIVAL_FAILED, auditRequest);
+        ErrorBean errorBean =
+            AppUtil.dynamicResponse(
+                ErrorCode.EC_715.code(),
+                ErrorCode.EC_715.errorMessage(),
+                AppConstants.ERROR_STR,
+                ErrorCode.EC_715.errorMessage());
+        return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
+      }
+      String sharingConsent = partStudyInfo.getSharing();
+      Map<String, String> consentMap = new HashedMap<>();
+      consentMap.put("datasharing_consent_value", sharingConsent);
+      responseServerAuditLogHelper.logEvent(
+          DATA_SHARING_CONSENT_VALUE_RETRIEVED, auditRequest, consentMap);
+
+      questionnaireActivityResponseBean.setSharingConsent(sharingConsent);
+      Map<String, String> sharingMap = new HashedMap<>();
+      sharingMap.put(ACTIVITY_TYPE, questionnaireActivityResponseBean.getType());
+      sharingMap.put(ACTIVITY_ID, activityId);
+      sharingMap.put(ACTIVITY_VERSION, activityVersion);
+      sharingMap.put(RUN_ID, questionnaireActivityResponseBean.getMetadata().getActivityRunId());
+      responseServerAuditLogHelper.logEvent(
+          DATA_SHARING_CONSENT_VALUE_CONJOINED_WITH_ACTIVITY_RESPONSE_DATA,
+          auditRequest,
+          sharingMap);
+      boolean withdrawalStatus = !StringUtils.isBlank(partStudyInfo.getWithdrawal());
+
+      Map<String, String> withdrawMap = new HashedMap<>();
+      withdrawMap.put("withdrawn_status", String.valueOf(withdrawalStatus));
+      responseServerAuditLogHelper.logEvent(
+          WITHDRAWAL_INFORMATION_RETRIEVED, auditRequest, withdrawMap);
+      if (!withdrawalStatus) {
+        activityResponseProcessorService.saveActivityResponseDataForParticipant(
+            activityMetadatFromWcp, questionnaireActivityResponseBean, auditRequest);
+        savedResponseData = true;
 
-          // Update Participant Activity State
+        // Update Participant Activity State only once the response is stored, in write-behind
+        // mode the ingestion drainer does it
+        if (!responseIngestionService.isEnabled()) {
           ActivityStateRequestBean activityStateRequestBean = new ActivityStateRequestBean();
           activityStateRequestBean.setParticipantId(participantId);
           activityStateRequestBean.setStudyId(studyId);
@@ -291,56 +432,26 @@ public class ProcessActivityResponseController {
               ACTIVITY_STATE_SAVED_OR_UPDATED_AFTER_RESPONSE_SUBMISSION,
               auditRequest,
               activityStateMap);
-          SuccessResponseBean srBean = new SuccessResponseBean();
-          srBean.setMessage(AppConstants.SUCCESS_MSG);
-
-          Map<String, String> activityResponseMap = new HashedMap<>();
-          activityResponseMap.put(ACTIVITY_TYPE, questionnaireActivityResponseBean.getType());
-          activityResponseMap.put(ACTIVITY_ID, activityId);
-          activityResponseMap.put(ACTIVITY_VERSION, activityVersion);
-          activityResponseMap.put(
-              RUN_ID, questionnaireActivityResponseBean.getMetadata().getActivityRunId());
-          responseServerAuditLogHelper.logEvent(
-              ACTIVITY_RESPONSE_SAVED, auditRequest, activityResponseMap);
-          return new ResponseEntity<>(srBean, HttpStatus.OK);
-        } else {
-          ErrorBean errorBean =
-              AppUtil.dynamicResponse(
-                  ErrorCode.EC_716.code(),
-                  ErrorCode.EC_716.errorMessage(),
-                  AppConstants.ERROR_STR,
-                  "Could not save response for withdrawn participant.\n Study Id: "
-                      + studyId
-                      + "\n Activity Id: "
-                      + activityId
-                      + "\n Activity Version: "
-                      + activityVersion
-                      + "\n Particpant Id: "
-                      + participantId);
-          Map<String, String> notSaveMap = new HashedMap<>();
-          notSaveMap.put(ACTIVITY_TYPE, questionnaireActivityResponseBean.getType());
-          notSaveMap.put(ACTIVITY_ID, activityId);
-          notSaveMap.put(ACTIVITY_VERSION, activityVersion);
-          notSaveMap.put(
-              "submission_timestamp", questionnaireActivityResponseBean.getCreatedTimestamp());
-          responseServerAuditLogHelper.logEvent(
-              ACTIVITY_RESPONSE_NOT_SAVED, auditRequest, notSaveMap);
-          logger.error(
-              "Could not save response for withdrawn participant.\n Study Id: "
-                  + studyId
-                  + "\n Activity Id: "
-                  + activityId
-                  + "\n Activity Version: "
-                  + activityVersion);
-          return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
         }
+        SuccessResponseBean srBean = new SuccessResponseBean();
+        srBean.setMessage(AppConstants.SUCCESS_MSG);
+
+        Map<String, String> activityResponseMap = new HashedMap<>();
+        activityResponseMap.put(ACTIVITY_TYPE, questionnaireActivityResponseBean.getType());
+        activityResponseMap.put(ACTIVITY_ID, activityId);
+        activityResponseMap.put(ACTIVITY_VERSION, activityVersion);
+        activityResponseMap.put(
+            RUN_ID, questionnaireActivityResponseBean.getMetadata().getActivityRunId());
+        responseServerAuditLogHelper.logEvent(
+            ACTIVITY_RESPONSE_SAVED, auditRequest, activityResponseMap);
+        return new ResponseEntity<>(srBean, HttpStatus.OK);
       } else {
         ErrorBean errorBean =
             AppUtil.dynamicResponse(
-                ErrorCode.EC_706.code(),
-                ErrorCode.EC_706.errorMessage(),
+                ErrorCode.EC_716.code(),
+                ErrorCode.EC_716.errorMessage(),
                 AppConstants.ERROR_STR,
-                "Could not save response for invalid participant.\n Study Id: "
+                "Could not save response for withdrawn participant.\n Study Id: "
                     + studyId
                     + "\n Activity Id: "
                     + activityId
@@ -348,17 +459,34 @@ public class ProcessActivityResponseController {
                     + activityVersion
                     + "\n Particpant Id: "
                     + participantId);
-
+        Map<String, String> notSaveMap = new HashedMap<>();
+        notSaveMap.put(ACTIVITY_TYPE, questionnaireActivityResponseBean.getType());
+        notSaveMap.put(ACTIVITY_ID, activityId);
+        notSaveMap.put(ACTIVITY_VERSION, activityVersion);
+        notSaveMap.put(
+            "submission_timestamp", questionnaireActivityResponseBean.getCreatedTimestamp());
+        responseServerAuditLogHelper.logEvent(
+            ACTIVITY_RESPONSE_NOT_SAVED, auditRequest, notSaveMap);
         logger.error(
-            "Could not save response for invalid participant.\n Study Id: "
+            "Could not save response for withdrawn participant.\n Study Id: "
                 + studyId
                 + "\n Activity Id: "
                 + activityId
                 + "\n Activity Version: "
                 + activityVersion);
-
         return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
       }
+    } catch (ResponseIngestionBackpressureException e) {
+      ErrorBean errorBean =
+          AppUtil.dynamicResponse(
+              ErrorCode.EC_720.code(),
+              ErrorCode.EC_720.errorMessage(),
+              AppConstants.ERROR_STR,
+              e.getMessage());
+      logger.warn("Response ingestion log is full. Study Id: " + studyId);
+      return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+          .header(HttpHeaders.RETRY_AFTER, String.valueOf(INGESTION_RETRY_AFTER_SECONDS))
+          .body(errorBean);
     } catch (Exception e) {
 
       if (!savedResponseData) {
@@ -396,6 +524,320 @@ public class ProcessActivityResponseController {
     }
   }
 
+  @ApiOperation(
+      value =
+          "Process a batch of activity responses of one participant and store them in Google Cloud"
+              + " Firestore")
+  @PostMapping("/participant/process-responses")
+  public ResponseEntity<?> processActivityResponsesForParticipant(
+      @RequestBody ActivityResponseBatchBean activityResponseBatchBean,
+      @RequestHeader String userId,
+      @RequestHeader(name = AppConstants.IDEMPOTENCY_KEY_HEADER, required = false)
+          String idempotencyKey,
+      HttpServletRequest request) {
+    logger.entry(String.format(BEGIN_REQUEST_LOG, request.getRequestURI()));
+    List<ActivityResponseBean> responses = activityResponseBatchBean.getResponses();
+    if (responses == null
+        || responses.isEmpty()
+        || responses.size() > appConfig.getResponseBatchMaxSize()) {
+      ErrorBean errorBean =
+          AppUtil.dynamicResponse(
+              ErrorCode.EC_711.code(),
+              ErrorCode.EC_711.errorMessage(),
+              AppConstants.ERROR_STR,
+              String.format(
+                  "A batch must hold between 1 and %d responses",
+                  appConfig.getResponseBatchMaxSize()));
+      return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
+    }
+
+    // The participant, study and app are validated once for the whole batch
+    ActivityResponseBean first = responses.get(0);
+    String applicationId = first.getApplicationId();
+    String studyId = first.getMetadata() == null ? null : first.getMetadata().getStudyId();
+    String participantId = first.getParticipantId();
+    String secureEnrollmentToken = first.getTokenIdentifier();
+    boolean sameParticipant = true;
+    for (ActivityResponseBean response : responses) {
+      sameParticipant &=
+          response.getMetadata() != null
+              && StringUtils.equals(applicationId, response.getApplicationId())
+              && StringUtils.equals(studyId, response.getMetadata().getStudyId())
+              && StringUtils.equals(participantId, response.getParticipantId())
+              && StringUtils.equals(secureEnrollmentToken, response.getTokenIdentifier());
+    }
+    if (StringUtils.isBlank(applicationId)
+        || StringUtils.isBlank(secureEnrollmentToken)
+        || StringUtils.isBlank(studyId)
+        || !sameParticipant) {
+      ErrorBean errorBean =
+          AppUtil.dynamicResponse(
+              ErrorCode.EC_701.code(),
+              ErrorCode.EC_701.errorMessage(),
+              AppConstants.ERROR_STR,
+              "All responses of a batch must belong to one participant, study and app");
+      return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
+    }
+
+    AuditLogEventRequest auditRequest = AuditEventMapper.fromHttpServletRequest(request);
+    auditRequest.setUserId(userId);
+    auditRequest.setStudyId(studyId);
+    auditRequest.setParticipantId(participantId);
+    auditRequest.setStudyVersion(first.getMetadata().getStudyVersion());
+    for (ActivityResponseBean response : responses) {
+      Map<String, String> activityMap = new HashedMap<>();
+      activityMap.put(ACTIVITY_TYPE, response.getType());
+      activityMap.put(ACTIVITY_ID, response.getMetadata().getActivityId());
+      activityMap.put(ACTIVITY_VERSION, response.getMetadata().getVersion());
+      activityMap.put(RUN_ID, response.getMetadata().getActivityRunId());
+      responseServerAuditLogHelper.logEvent(ACTIVITY_RESPONSE_RECEIVED, auditRequest, activityMap);
+    }
+
+    try {
+      ParticipantInfoEntity participantBo = new ParticipantInfoEntity();
+      participantBo.setTokenId(secureEnrollmentToken);
+      participantBo.setParticipantId(participantId);
+      if (!participantService.isValidParticipant(participantBo)) {
+        responseServerAuditLogHelper.logEvent(PARTICIPANT_ID_INVALID, auditRequest);
+        ErrorBean errorBean =
+            AppUtil.dynamicResponse(
+                ErrorCode.EC_706.code(),
+                ErrorCode.EC_706.errorMessage(),
+                AppConstants.ERROR_STR,
+                "Could not save responses for invalid participant.\n Study Id: "
+                    + studyId
+                    + "\n Particpant Id: "
+                    + participantId);
+        return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
+      }
+    } catch (Exception e) {
+      logger.error("An error occured while validating participant " + participantId, e);
+      responseServerAuditLogHelper.logEvent(PARTICIPANT_ID_INVALID, auditRequest);
+      ErrorBean errorBean =
+          AppUtil.dynamicResponse(
+              ErrorCode.EC_707.code(),
+              ErrorCode.EC_707.errorMessage(),
+              AppConstants.ERROR_STR,
+              e.getMessage());
+      return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
+    }
+
+    // the key is resolved once the token is checked, so only the participant gets its responses
+    String requestKey = getBatchRequestKey(idempotencyKey, participantId, responses);
+    if (requestKey == null) {
+      return processActivityResponses(responses, auditRequest);
+    }
+    return idempotencyService.process(
+        requestKey,
+        getRequestFingerprint(activityResponseBatchBean),
+        () -> processActivityResponses(responses, auditRequest));
+  }
+
+  /**
+   * @return the key of the batch, scoped to the participant, from the key of the client or else
+   *     from the activity run and the submission time of each response, or null if one has neither
+   */
+  private String getBatchRequestKey(
+      String idempotencyKey, String participantId, List<ActivityResponseBean> responses) {
+    if (StringUtils.isBlank(participantId)) {
+      return null;
+    }
+    if (StringUtils.isNotBlank(idempotencyKey)) {
+      return ResponseServerUtil.getHashedValue(participantId + "\n" + idempotencyKey);
+    }
+    // the marker keeps a batch of one response apart from the same response sent alone
+    StringJoiner requestKey = new StringJoiner("\n").add(participantId).add("batch");
+    for (ActivityResponseBean response : responses) {
+      ActivityMetadataBean metadata = response.getMetadata();
+      if (StringUtils.isBlank(metadata.getActivityRunId())
+          || StringUtils.isBlank(response.getCreatedTimestamp())) {
+        return null;
+      }
+      requestKey
+          .add(metadata.getStudyId())
+          .add(metadata.getActivityId())
+          .add(metadata.getActivityRunId())
+          .add(response.getCreatedTimestamp());
+    }
+    return ResponseServerUtil.getHashedValue(requestKey.toString());
+  }
+
+  private ResponseEntity<?> processActivityResponses(
+      List<ActivityResponseBean> responses, AuditLogEventRequest auditRequest) {
+    ActivityResponseBean first = responses.get(0);
+    String applicationId = first.getApplicationId();
+    String studyId = first.getMetadata().getStudyId();
+    String participantId = first.getParticipantId();
+    try {
+      ParticipantStudyInformation partStudyInfo =
+          partStudyInfoService.getParticipantStudyInfo(studyId, participantId, auditRequest);
+      if (partStudyInfo == null) {
+        responseServerAuditLogHelper.logEvent(
+            DATA_SHARING_CONSENT_VALUE_RETRIEVAL_FAILED, auditRequest);
+        ErrorBean errorBean =
+            AppUtil.dynamicResponse(
+                ErrorCode.EC_715.code(),
+                ErrorCode.EC_715.errorMessage(),
+                AppConstants.ERROR_STR,
+                ErrorCode.EC_715.errorMessage());
+        return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
+      }
+      if (!StringUtils.isBlank(partStudyInfo.getWithdrawal())) {
+        ErrorBean errorBean =
+            AppUtil.dynamicResponse(
+                ErrorCode.EC_716.code(),
+                ErrorCode.EC_716.errorMessage(),
+                AppConstants.ERROR_STR,
+                "Could not save responses for withdrawn participant.\n Study Id: "
+                    + studyId
+                    + "\n Particpant Id: "
+                    + participantId);
+        return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
+      }
+
+      ActivityResponseBatchResultBean resultBean = new ActivityResponseBatchResultBean();
+      Map<String, QuestionnaireActivityStructureBean> metadataByActivityVersion = new HashMap<>();
+      List<IngestedActivityResponse> preparedResponses = new ArrayList<>();
+      List<ActivityResponseItemResultBean> preparedResults = new ArrayList<>();
+      for (int i = 0; i < responses.size(); i++) {
+        ActivityResponseBean response = responses.get(i);
+        ActivityResponseItemResultBean itemResult = new ActivityResponseItemResultBean();
+        itemResult.setIndex(i);
+        itemResult.setActivityId(response.getMetadata().getActivityId());
+        itemResult.setActivityVersion(response.getMetadata().getVersion());
+        itemResult.setActivityRunId(response.getMetadata().getActivityRunId());
+        resultBean.getResults().add(itemResult);
+        if (StringUtils.isBlank(itemResult.getActivityId())
+            || StringUtils.isBlank(itemResult.getActivityVersion())) {
+          setItemFailure(itemResult, ErrorCode.EC_701, ErrorCode.EC_701.errorMessage());
+          continue;
+        }
+
+        // Metadata is resolved once per distinct activity version of the batch
+        String activityVersionKey =
+            itemResult.getActivityId() + AppConstants.COLON + itemResult.getActivityVersion();
+        if (!metadataByActivityVersion.containsKey(activityVersionKey)) {
+          StudyActivityMetadataRequestBean studyActivityMetadataRequestBean =
+              new StudyActivityMetadataRequestBean();
+          studyActivityMetadataRequestBean.setStudyId(studyId);
+          studyActivityMetadataRequestBean.setActivityId(itemResult.getActivityId());
+          studyActivityMetadataRequestBean.setActivityVersion(itemResult.getActivityVersion());
+          QuestionnaireActivityStructureBean fetchedMetadata = null;
+          try {
+            fetchedMetadata =
+                studyMetadataService.getStudyActivityMetadata(
+                    applicationId, studyActivityMetadataRequestBean, auditRequest);
+          } catch (Exception e) {
+            logger.error("Could not retrieve activity metadata " + activityVersionKey, e);
+          }
+          metadataByActivityVersion.put(activityVersionKey, fetchedMetadata);
+        }
+        QuestionnaireActivityStructureBean activityMetadata =
+            metadataByActivityVersion.get(activityVersionKey);
+        if (activityMetadata == null) {
+          setItemFailure(itemResult, ErrorCode.EC_705, ErrorCode.EC_705.errorMessage());
+          continue;
+        }
+
+        try {
+          response.setSharingConsent(partStudyInfo.getSharing());
+          preparedResponses.add(
+              activityResponseProcessorService.prepareActivityResponseData(
+                  activityMetadata, response, auditRequest));
+          preparedResults.add(itemResult);
+        } catch (Exception e) {
+          logger.error("Could not process response " + i + " of the batch", e);
+          setItemFailure(itemResult, ErrorCode.EC_707, e.getMessage());
+        }
+      }
+
+      if (!preparedResponses.isEmpty()) {
+        try {
+          activityResponseProcessorService.saveActivityResponseData(preparedResponses);
+          for (ActivityResponseItemResultBean itemResult : preparedResults) {
+            itemResult.setStatus(AppConstants.SUCCESS_MSG);
+          }
+        } catch (ResponseIngestionBackpressureException e) {
+          throw e;
+        } catch (Exception e) {
+          logger.error("Could not store the responses of the batch", e);
+          for (ActivityResponseItemResultBean itemResult : preparedResults) {
+            setItemFailure(itemResult, ErrorCode.EC_704, e.getMessage());
+          }
+          preparedResults.clear();
+        }
+      }
+
+      // In write-behind mode the ingestion drainer updates the activity state of each response
+      if (!preparedResults.isEmpty() && !responseIngestionService.isEnabled()) {
+        ActivityStateRequestBean activityStateRequestBean = new ActivityStateRequestBean();
+        activityStateRequestBean.setParticipantId(participantId);
+        activityStateRequestBean.setStudyId(studyId);
+        Set<String> completedActivityVersions = new HashSet<>();
+        for (ActivityResponseItemResultBean itemResult : preparedResults) {
+          if (!completedActivityVersions.add(
+              itemResult.getActivityId() + AppConstants.COLON + itemResult.getActivityVersion())) {
+            continue;
+          }
+          ParticipantActivityBean participantActivityBean = new ParticipantActivityBean();
+          participantActivityBean.setActivityId(itemResult.getActivityId());
+          participantActivityBean.setActivityVersion(itemResult.getActivityVersion());
+          participantActivityBean.setActivityState(AppConstants.COMPLETED);
+          activityStateRequestBean.getActivity().add(participantActivityBean);
+        }
+        participantActivityStateResponseService.saveParticipantActivities(
+            activityStateRequestBean);
+      }
+
+      for (ActivityResponseItemResultBean itemResult : resultBean.getResults()) {
+        Map<String, String> activityResponseMap = new HashedMap<>();
+        activityResponseMap.put(ACTIVITY_TYPE, responses.get(itemResult.getIndex()).getType());
+        activityResponseMap.put(ACTIVITY_ID, itemResult.getActivityId());
+        activityResponseMap.put(ACTIVITY_VERSION, itemResult.getActivityVersion());
+        activityResponseMap.put(RUN_ID, itemResult.getActivityRunId());
+        responseServerAuditLogHelper.logEvent(
+            AppConstants.SUCCESS_MSG.equals(itemResult.getStatus())
+                ? ACTIVITY_RESPONSE_SAVED
+                : ACTIVITY_RESPONSE_NOT_SAVED,
+            auditRequest,
+            activityResponseMap);
+      }
+      resultBean.setMessage(
+          preparedResults.size() == responses.size()
+              ? AppConstants.SUCCESS_MSG
+              : AppConstants.FAILURE);
+      logger.exit(
+          String.format("%d of %d responses stored", preparedResults.size(), responses.size()));
+      return new ResponseEntity<>(resultBean, HttpStatus.OK);
+    } catch (ResponseIngestionBackpressureException e) {
+      ErrorBean errorBean =
+          AppUtil.dynamicResponse(
+              ErrorCode.EC_720.code(),
+              ErrorCode.EC_720.errorMessage(),
+              AppConstants.ERROR_STR,
+              e.getMessage());
+      return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+          .header(HttpHeaders.RETRY_AFTER, String.valueOf(INGESTION_RETRY_AFTER_SECONDS))
+          .body(errorBean);
+    } catch (Exception e) {
+      logger.error("An error occured while saving responses for participant " + participantId, e);
+      ErrorBean errorBean =
+          AppUtil.dynamicResponse(
+              ErrorCode.EC_707.code(),
+              ErrorCode.EC_707.errorMessage(),
+              AppConstants.ERROR_STR,
+              e.getMessage());
+      return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
+    }
+  }
+
+  private static void setItemFailure(
+      ActivityResponseItemResultBean itemResult, ErrorCode errorCode, String errorMessage) {
+    itemResult.setStatus(AppConstants.FAILURE);
+    itemResult.setErrorCode(errorCode.code());
+    itemResult.setErrorMessage(errorMessage);
+  }
+
   @ApiOperation(value = "Get activity response data for participant from Google Cloud Firestore")
   @GetMapping("/participant/getresponse")
   public ResponseEntity<?> getActivityResponseDataForParticipant(
@@ -406,6 +848,8 @@ public class ProcessActivityResponseController {
       @RequestParam(AppConstants.PARTICIPANT_TOKEN_IDENTIFIER_KEY) String tokenIdentifier,
       @RequestParam("activityId") String activityId,
       @RequestParam("questionKey") String questionKey,
+      @RequestParam(value = "since", required = false) Long since,
+      @RequestParam(value = "limit", required = false) Integer limit,
       @RequestHeader String userId,
       HttpServletRequest request) {
     logger.entry(String.format(BEGIN_REQUEST_LOG, request.getRequestURI()));
@@ -433,6 +877,15 @@ public class ProcessActivityResponseController {
                 ErrorCode.EC_701.errorMessage());
         return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
       }
+      if (limit != null && limit <= 0) {
+        ErrorBean errorBean =
+            AppUtil.dynamicResponse(
+                ErrorCode.EC_711.code(),
+                ErrorCode.EC_711.errorMessage(),
+                AppConstants.ERROR_STR,
+                "limit must be greater than 0");
+        return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
+      }
       auditRequest.setAppId(applicationId);
       auditRequest.setSiteId(siteId);
       auditRequest.setStudyId(studyId);
@@ -447,7 +900,7 @@ public class ProcessActivityResponseController {
 
         StoredResponseBean storedResponseBean =
             activityResponseProcessorService.getActivityResponseDataForParticipant(
-                studyId, siteId, participantId, activityId, questionKey);
+                studyId, siteId, participantId, activityId, questionKey, since, limit);
         responseServerAuditLogHelper.logEvent(
             READ_OPERATION_FOR_RESPONSE_DATA_SUCCEEDED, auditRequest);
         return new ResponseEntity<>(storedResponseBean, HttpStatus.OK);
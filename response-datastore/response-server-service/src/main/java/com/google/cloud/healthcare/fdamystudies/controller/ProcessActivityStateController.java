@@ -42,6 +42,7 @@ import org.apache.logging.log4j.util.Strings;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -73,6 +74,8 @@ public class ProcessActivityStateController {
   public ResponseEntity<?> getActivityState(
       @RequestParam(name = "studyId") String studyId,
       @RequestParam("participantId") String participantId,
+      @RequestParam(name = "since", required = false) Long since,
+      @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
       HttpServletRequest request)
       throws ProcessActivityStateException {
     logger.entry(String.format(BEGIN_REQUEST_LOG, request.getRequestURI()));
@@ -91,15 +94,30 @@ public class ProcessActivityStateController {
           READ_OPERATION_FOR_ACTIVITY_STATE_INFO_FAILED, auditRequest);
       return new ResponseEntity<>(errorBean, HttpStatus.BAD_REQUEST);
     } else {
-      ActivitiesBean activitiesBean =
-          participantActivityStateResponseService.getParticipantActivities(studyId, participantId);
-
       auditRequest.setStudyId(studyId);
       auditRequest.setStudyVersion("NA");
       auditRequest.setParticipantId(participantId);
+
+      // the ETag is the sync token, so an unchanged state costs one probe of the version
+      if (StringUtils.isNotBlank(ifNoneMatch)) {
+        String eTag =
+            toETag(
+                participantActivityStateResponseService.getParticipantActivitiesVersion(
+                    studyId, participantId));
+        if (matchesETag(ifNoneMatch, eTag)) {
+          responseServerAuditLogHelper.logEvent(
+              READ_OPERATION_FOR_ACTIVITY_STATE_INFO_SUCCEEDED, auditRequest);
+          return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+      }
+
+      ActivitiesBean activitiesBean =
+          participantActivityStateResponseService.getParticipantActivities(
+              studyId, participantId, since);
+
       responseServerAuditLogHelper.logEvent(
           READ_OPERATION_FOR_ACTIVITY_STATE_INFO_SUCCEEDED, auditRequest);
-      return new ResponseEntity<>(activitiesBean, HttpStatus.OK);
+      return ResponseEntity.ok().eTag(toETag(activitiesBean.getSyncToken())).body(activitiesBean);
     }
   }
 
@@ -162,4 +180,17 @@ public class ProcessActivityStateController {
       }
     }
   }
+
+  private static String toETag(Object syncToken) {
+    return "\"" + syncToken + "\"";
+  }
+
+  private static boolean matchesETag(String ifNoneMatch, String eTag) {
+    for (String candidate : StringUtils.split(ifNoneMatch, ',')) {
+      if (eTag.equals(StringUtils.removeStart(candidate.trim(), "W/"))) {
+        return true;
+      }
+    }
+    return false;
+  }
 }
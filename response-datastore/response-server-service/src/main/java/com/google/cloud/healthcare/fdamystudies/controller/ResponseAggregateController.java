@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.controller;
+
+import com.google.cloud.healthcare.fdamystudies.bean.QuestionAggregateBean;
+import com.google.cloud.healthcare.fdamystudies.service.ResponseAggregateService;
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import com.google.cloud.healthcare.fdamystudies.utils.AppUtil;
+import com.google.cloud.healthcare.fdamystudies.utils.ErrorCode;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@Api(
+    tags = "Response aggregates",
+    value = "Response aggregates",
+    description = "Per-question statistics of the responses, updated as responses are saved")
+@RestController
+public class ResponseAggregateController {
+  @Autowired private ResponseAggregateService responseAggregateService;
+
+  private static final String BEGIN_REQUEST_LOG = "%s request";
+
+  private static final String STATUS_LOG = "status=%d";
+
+  private XLogger logger = XLoggerFactory.getXLogger(ResponseAggregateController.class.getName());
+
+  @ApiOperation(
+      value =
+          "Get the per-question aggregates of a study, of one site or merged over all sites "
+              + "when no site is given")
+  @GetMapping("/studies/{studyId}/aggregates")
+  public ResponseEntity<?> getAggregates(
+      @PathVariable String studyId,
+      @RequestParam(value = "siteId", required = false) String siteId,
+      @RequestParam(value = "activityId", required = false) String activityId,
+      @RequestParam(value = "questionKey", required = false) String questionKey,
+      HttpServletRequest request) {
+    logger.entry(String.format(BEGIN_REQUEST_LOG, request.getRequestURI()));
+    if (StringUtils.isBlank(studyId)) {
+      return new ResponseEntity<>(
+          AppUtil.dynamicResponse(
+              ErrorCode.EC_701.code(),
+              ErrorCode.EC_701.errorMessage(),
+              AppConstants.ERROR_STR,
+              ErrorCode.EC_701.errorMessage()),
+          HttpStatus.BAD_REQUEST);
+    }
+    List<QuestionAggregateBean> aggregates =
+        responseAggregateService.getAggregates(studyId, siteId, activityId, questionKey);
+    logger.exit(String.format(STATUS_LOG, HttpStatus.OK.value()));
+    return new ResponseEntity<>(aggregates, HttpStatus.OK);
+  }
+}
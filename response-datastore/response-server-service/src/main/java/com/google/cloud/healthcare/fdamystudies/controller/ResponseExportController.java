@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.controller;
+
+import com.google.cloud.healthcare.fdamystudies.bean.ErrorBean;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportFilter;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportJobBean;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportRequestBean;
+import com.google.cloud.healthcare.fdamystudies.service.ResponseExportService;
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import com.google.cloud.healthcare.fdamystudies.utils.AppUtil;
+import com.google.cloud.healthcare.fdamystudies.utils.ErrorCode;
+import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+@Api(
+    tags = "Response export",
+    value = "Response export",
+    description = "Background export of the responses of a study to NDJSON and CSV files")
+@RestController
+public class ResponseExportController {
+  @Autowired private ResponseExportService responseExportService;
+
+  private static final String BEGIN_REQUEST_LOG = "%s request";
+
+  private static final String STATUS_LOG = "status=%d";
+
+  private XLogger logger = XLoggerFactory.getXLogger(ResponseExportController.class.getName());
+
+  @ApiOperation(value = "Start a background export of the responses of a study")
+  @PostMapping("/studies/{studyId}/exports")
+  public ResponseEntity<?> startExport(
+      @PathVariable String studyId,
+      @RequestBody ResponseExportRequestBean exportRequest,
+      HttpServletRequest request) {
+    logger.entry(String.format(BEGIN_REQUEST_LOG, request.getRequestURI()));
+    // formats are deduplicated, so that each chunk file is written once
+    List<String> formats =
+        exportRequest.getFormats() == null
+            ? new ArrayList<>()
+            : new ArrayList<>(new LinkedHashSet<>(exportRequest.getFormats()));
+    if (StringUtils.isBlank(studyId) || formats.isEmpty()) {
+      return errorResponse(ErrorCode.EC_701, ErrorCode.EC_701.errorMessage());
+    }
+    for (String format : formats) {
+      if (!ResponseExportService.NDJSON_FORMAT.equals(format)
+          && !ResponseExportService.CSV_FORMAT.equals(format)) {
+        return errorResponse(ErrorCode.EC_711, "Unsupported export format " + format);
+      }
+    }
+    ResponseExportFilter filter =
+        exportRequest.getFilter() == null ? new ResponseExportFilter() : exportRequest.getFilter();
+    if (filter.getCreatedFrom() != null
+        && filter.getCreatedTo() != null
+        && filter.getCreatedFrom() > filter.getCreatedTo()) {
+      return errorResponse(ErrorCode.EC_711, "createdFrom is after createdTo");
+    }
+    try {
+      ResponseExportJobBean job = responseExportService.startExport(studyId, filter, formats);
+      logger.exit(String.format(STATUS_LOG, HttpStatus.ACCEPTED.value()));
+      return new ResponseEntity<>(job, HttpStatus.ACCEPTED);
+    } catch (ProcessResponseException e) {
+      logger.error("startExport() failed", e);
+      return new ResponseEntity<>(
+          AppUtil.dynamicResponse(
+              ErrorCode.EC_721.code(),
+              ErrorCode.EC_721.errorMessage(),
+              AppConstants.ERROR_STR,
+              e.getMessage()),
+          HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+  }
+
+  @ApiOperation(value = "Get the status, progress and files of a response export")
+  @GetMapping("/studies/{studyId}/exports/{jobId}")
+  public ResponseEntity<?> getExport(
+      @PathVariable String studyId, @PathVariable String jobId, HttpServletRequest request) {
+    logger.entry(String.format(BEGIN_REQUEST_LOG, request.getRequestURI()));
+    ResponseExportJobBean job = responseExportService.getExport(studyId, jobId);
+    if (job == null) {
+      return errorResponse(ErrorCode.EC_404, "Response export job not found");
+    }
+    logger.exit(String.format(STATUS_LOG, HttpStatus.OK.value()));
+    return new ResponseEntity<>(job, HttpStatus.OK);
+  }
+
+  @ApiOperation(value = "Resume a failed response export from its last written chunk")
+  @PostMapping("/studies/{studyId}/exports/{jobId}/resume")
+  public ResponseEntity<?> resumeExport(
+      @PathVariable String studyId, @PathVariable String jobId, HttpServletRequest request) {
+    logger.entry(String.format(BEGIN_REQUEST_LOG, request.getRequestURI()));
+    try {
+      ResponseExportJobBean job = responseExportService.resumeExport(studyId, jobId);
+      if (job == null) {
+        return errorResponse(ErrorCode.EC_404, "Response export job not found");
+      }
+      logger.exit(String.format(STATUS_LOG, HttpStatus.ACCEPTED.value()));
+      return new ResponseEntity<>(job, HttpStatus.ACCEPTED);
+    } catch (ProcessResponseException e) {
+      logger.error("resumeExport() failed", e);
+      return new ResponseEntity<>(
+          AppUtil.dynamicResponse(
+              ErrorCode.EC_721.code(),
+              ErrorCode.EC_721.errorMessage(),
+              AppConstants.ERROR_STR,
+              e.getMessage()),
+          HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+  }
+
+  @ApiOperation(value = "Download a file written by a response export")
+  @GetMapping("/studies/{studyId}/exports/{jobId}/files/{fileName:.+}")
+  public ResponseEntity<?> getExportFile(
+      @PathVariable String studyId,
+      @PathVariable String jobId,
+      @PathVariable String fileName,
+      HttpServletRequest request) {
+    logger.entry(String.format(BEGIN_REQUEST_LOG, request.getRequestURI()));
+    Path file = responseExportService.getExportFile(studyId, jobId, fileName);
+    if (file == null) {
+      return errorResponse(ErrorCode.EC_404, "Response export file not found");
+    }
+    MediaType contentType =
+        fileName.endsWith("." + ResponseExportService.CSV_FORMAT)
+            ? MediaType.parseMediaType("text/csv")
+            : MediaType.parseMediaType("application/x-ndjson");
+    logger.exit(String.format(STATUS_LOG, HttpStatus.OK.value()));
+    // the file is streamed from disk, not read into memory
+    return ResponseEntity.ok()
+        .contentType(contentType)
+        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+        .body(new FileSystemResource(file));
+  }
+
+  private ResponseEntity<?> errorResponse(ErrorCode errorCode, String detailMessage) {
+    ErrorBean errorBean =
+        AppUtil.dynamicResponse(
+            errorCode.code(), errorCode.errorMessage(), AppConstants.ERROR_STR, detailMessage);
+    HttpStatus status =
+        errorCode == ErrorCode.EC_404 ? HttpStatus.NOT_FOUND : HttpStatus.BAD_REQUEST;
+    return new ResponseEntity<>(errorBean, status);
+  }
+}
@@ -9,34 +9,56 @@
 package com.google.cloud.healthcare.fdamystudies.dao;
 
 import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
 import com.google.cloud.firestore.Firestore;
 import com.google.cloud.firestore.FirestoreOptions;
 import com.google.cloud.firestore.Query;
 import com.google.cloud.firestore.QueryDocumentSnapshot;
 import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.SetOptions;
 import com.google.cloud.firestore.WriteBatch;
 import com.google.cloud.firestore.WriteResult;
-import com.google.cloud.healthcare.fdamystudies.bean.ResponseRows;
-import com.google.cloud.healthcare.fdamystudies.bean.SavedActivityResponse;
+import com.google.cloud.healthcare.fdamystudies.bean.QuestionResponseValue;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportFilter;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportPage;
 import com.google.cloud.healthcare.fdamystudies.bean.StoredResponseBean;
+import com.google.cloud.healthcare.fdamystudies.common.ExpiringCache;
 import com.google.cloud.healthcare.fdamystudies.config.ApplicationConfiguration;
 import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
 import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
-import com.google.gson.Gson;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import com.google.cloud.healthcare.fdamystudies.utils.ResponseServerUtil;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Repository;
@@ -45,10 +67,55 @@ import org.springframework.stereotype.Repository;
 @Qualifier("cloudFirestoreResponsesDaoImpl")
 public class CloudFirestoreResponsesDaoImpl implements ResponsesDao {
   @Autowired private ApplicationConfiguration appConfig;
+  @Autowired private StoredResponseConverter storedResponseConverter;
+  @Autowired private ObjectProvider<MeterRegistry> meterRegistry;
+
+  @Value("${response.firestore.study-version.cache.max-size:1000}")
+  private int studyVersionCacheMaxSize;
+
+  @Value("${response.firestore.study-version.cache.ttl-seconds:300}")
+  private long studyVersionCacheTtl;
+
+  @Value("${response.firestore.bulk-write.max-in-flight:4}")
+  private int bulkWriteMaxInFlight;
+
+  @Value("${response.firestore.bulk-write.max-attempts:3}")
+  private int bulkWriteMaxAttempts;
+
+  @Value("${response.firestore.bulk-write.retry-delay-millis:500}")
+  private long bulkWriteRetryDelayMillis;
+
+  private MeterRegistry registry;
+
+  private ScheduledExecutorService bulkWriteRetryExecutor;
+
+  /** Last study version written to each study document by this instance. */
+  private ExpiringCache<String, Object> studyVersionCache;
+
   private Firestore responsesDb;
   private XLogger logger =
       XLoggerFactory.getXLogger(CloudFirestoreResponsesDaoImpl.class.getName());
 
+  @PostConstruct
+  public void init() {
+    registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    studyVersionCache =
+        new ExpiringCache<>("firestore-study-version", studyVersionCacheMaxSize, registry);
+    bulkWriteRetryExecutor =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "firestore-bulk-write-retry");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    // retries already scheduled still run, so that their writes report an outcome
+    bulkWriteRetryExecutor.shutdown();
+  }
+
   @Override
   @Retryable(
       value = {Exception.class},
@@ -63,8 +130,11 @@ public class CloudFirestoreResponsesDaoImpl implements ResponsesDao {
 
         logger.info("saveStudyMetadata() : \n Study Collection Name: " + studyCollectionName);
         initializeFirestore();
-        ApiFuture<WriteResult> cr =
-            this.responsesDb.collection(studyCollectionName).document(studyId).set(dataToStore);
+        DocumentReference studyDocument =
+            this.responsesDb.collection(studyCollectionName).document(studyId);
+        // the metadata replaces the study version document
+        studyVersionCache.invalidate(studyDocument.getPath());
+        ApiFuture<WriteResult> cr = studyDocument.set(dataToStore);
         logger.debug(
             "saveStudyMetadata() : \n Study Collection Name: "
                 + studyCollectionName
@@ -93,45 +163,284 @@ public class CloudFirestoreResponsesDaoImpl implements ResponsesDao {
       String activitiesCollectionName,
       Map<String, Object> dataToStoreActivityResults)
       throws ProcessResponseException {
+    logger.entry("begin saveActivityResponseData()");
     try {
-      logger.entry("begin saveActivityResponseData()");
       initializeFirestore();
+      ApiFuture<List<WriteResult>> written =
+          writeActivityResponse(
+              studyId, studyCollectionName, activitiesCollectionName, dataToStoreActivityResults);
+      logger.debug("Committed " + written.get().size() + " writes");
+    } catch (ExecutionException e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(e.getCause().getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ProcessResponseException(e.getMessage());
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(e.getMessage());
+    }
+  }
 
-      // Check if data already exists before updating it. This is to account for discrepancies
-      // created on loss of
-      // connectivity where there is a potential of data getting created twice
-      String participantId =
-          (String) dataToStoreActivityResults.get(AppConstants.PARTICIPANT_ID_KEY);
-      String activityId = (String) dataToStoreActivityResults.get(AppConstants.ACTIVITY_ID_KEY);
-      String activityRunId =
-          (String) dataToStoreActivityResults.get(AppConstants.ACTIVITY_RUN_ID_KEY);
-      if (isResponseExists(
-          studyCollectionName, studyId, participantId, activityId, activityRunId)) {
-        logger.info("Response exists. Returning without saving. Study ID " + studyId);
-        return;
-      }
+  /**
+   * Checks that the response is not saved yet, then writes it and, if its version differs from the
+   * cached one, the study version document, in one batch.
+   */
+  private ApiFuture<List<WriteResult>> writeActivityResponse(
+      String studyId,
+      String studyCollectionName,
+      String activitiesCollectionName,
+      Map<String, Object> dataToStoreActivityResults) {
+    DocumentReference studyDocument =
+        this.responsesDb.collection(studyCollectionName).document(studyId);
+    // Check if data already exists before updating it. This is to account for discrepancies
+    // created on loss of connectivity where there is a potential of data getting created twice
+    ApiFuture<QuerySnapshot> existingResponses =
+        ApiFutures.catching(
+            activityRunQuery(
+                    studyCollectionName,
+                    studyId,
+                    (String) dataToStoreActivityResults.get(AppConstants.PARTICIPANT_ID_KEY),
+                    (String) dataToStoreActivityResults.get(AppConstants.ACTIVITY_ID_KEY),
+                    (String) dataToStoreActivityResults.get(AppConstants.ACTIVITY_RUN_ID_KEY))
+                .get(),
+            Exception.class,
+            e -> {
+              logger.error("isResponseExists() query failed. Exception is: " + e.getMessage(), e);
+              return null;
+            },
+            MoreExecutors.directExecutor());
+    return ApiFutures.transformAsync(
+        existingResponses,
+        snapshot -> {
+          if (snapshot != null && !snapshot.isEmpty()) {
+            logger.info("Response exists. Returning without saving. Study ID " + studyId);
+            return ApiFutures.immediateFuture(Collections.<WriteResult>emptyList());
+          }
+          WriteBatch writeBatch = this.responsesDb.batch();
+          writeBatch.set(
+              studyDocument.collection(activitiesCollectionName).document(),
+              dataToStoreActivityResults);
+          List<Consumer<WriteBatch>> questionWrites =
+              questionResponseWrites(studyDocument, dataToStoreActivityResults);
+          Object studyVersion = dataToStoreActivityResults.get(AppConstants.STUDY_VERSION_KEY);
+          // the response, its answers and the study version document fit in one batch unless the
+          // activity has hundreds of questions
+          if (questionWrites.size() + 2 <= AppConstants.FS_BATCH_COMMIT_LIMIT) {
+            questionWrites.forEach(questionWrite -> questionWrite.accept(writeBatch));
+            return commitActivityResponseBatch(writeBatch, studyDocument, studyVersion);
+          }
+          return ApiFutures.transformAsync(
+              commitActivityResponseBatch(writeBatch, studyDocument, studyVersion),
+              results -> commitWrites(questionWrites),
+              MoreExecutors.directExecutor());
+        },
+        MoreExecutors.directExecutor());
+  }
 
-      Map<String, Object> studyVersionMap = new HashMap<>();
-      studyVersionMap.put("studyVersion", dataToStoreActivityResults.get("studyVersion"));
-      ApiFuture<WriteResult> futuresStudyColl =
-          this.responsesDb.collection(studyCollectionName).document(studyId).set(studyVersionMap);
-      WriteResult wresultStudy = futuresStudyColl.get();
-      logger.debug("Updated time: " + wresultStudy.getUpdateTime());
-      ApiFuture<WriteResult> futuresActivities =
-          this.responsesDb
-              .collection(studyCollectionName)
-              .document(studyId)
-              .collection(activitiesCollectionName)
-              .document()
-              .set(dataToStoreActivityResults);
-      WriteResult wresult = futuresActivities.get();
-      logger.debug("Updated time: " + wresult.getUpdateTime());
+  @Override
+  @Retryable(
+      value = {Exception.class},
+      maxAttempts = 3,
+      backoff = @Backoff(delay = 500))
+  public void saveActivityResponseDataList(
+      String studyId,
+      String studyCollectionName,
+      String activitiesCollectionName,
+      List<Map<String, Object>> dataToStoreActivityResultsList)
+      throws ProcessResponseException {
+    try {
+      logger.entry("begin saveActivityResponseDataList()");
+      initializeFirestore();
+      DocumentReference studyDocument =
+          this.responsesDb.collection(studyCollectionName).document(studyId);
+      WriteBatch writeBatch = this.responsesDb.batch();
+      // one write is kept for the study version document
+      int batchCount = 1;
+      Object studyVersion = null;
+      // answers of responses too large for a batch, written once the responses are
+      List<Consumer<WriteBatch>> overflowWrites = new ArrayList<>();
+      for (Map<String, Object> dataToStoreActivityResults : dataToStoreActivityResultsList) {
+        // Same check as saveActivityResponseData(), a retried batch skips what was already saved
+        if (isResponseExists(
+            studyCollectionName,
+            studyId,
+            (String) dataToStoreActivityResults.get(AppConstants.PARTICIPANT_ID_KEY),
+            (String) dataToStoreActivityResults.get(AppConstants.ACTIVITY_ID_KEY),
+            (String) dataToStoreActivityResults.get(AppConstants.ACTIVITY_RUN_ID_KEY))) {
+          logger.info("Response exists. Skipping it. Study ID " + studyId);
+          continue;
+        }
+        List<Consumer<WriteBatch>> questionWrites =
+            questionResponseWrites(studyDocument, dataToStoreActivityResults);
+        // a response is committed with its answers, in the next batch if they do not fit
+        if (batchCount > 1
+            && batchCount + 1 + questionWrites.size() > AppConstants.FS_BATCH_COMMIT_LIMIT) {
+          logCommittedWrites(
+              commitActivityResponseBatch(writeBatch, studyDocument, studyVersion).get());
+          writeBatch = this.responsesDb.batch();
+          batchCount = 1;
+        }
+        studyVersion = dataToStoreActivityResults.get("studyVersion");
+        writeBatch.set(
+            studyDocument.collection(activitiesCollectionName).document(),
+            dataToStoreActivityResults);
+        batchCount++;
+        if (batchCount + questionWrites.size() <= AppConstants.FS_BATCH_COMMIT_LIMIT) {
+          for (Consumer<WriteBatch> questionWrite : questionWrites) {
+            questionWrite.accept(writeBatch);
+          }
+          batchCount += questionWrites.size();
+        } else {
+          overflowWrites.addAll(questionWrites);
+        }
+        if (batchCount == AppConstants.FS_BATCH_COMMIT_LIMIT) {
+          logCommittedWrites(
+              commitActivityResponseBatch(writeBatch, studyDocument, studyVersion).get());
+          writeBatch = this.responsesDb.batch();
+          batchCount = 1;
+        }
+      }
+      if (batchCount > 1) {
+        logCommittedWrites(
+            commitActivityResponseBatch(writeBatch, studyDocument, studyVersion).get());
+      }
+      if (!overflowWrites.isEmpty()) {
+        logCommittedWrites(commitWrites(overflowWrites).get());
+      }
     } catch (Exception e) {
       logger.error(e.getMessage(), e);
       throw new ProcessResponseException(e.getMessage());
     }
   }
 
+  /**
+   * Adds the study version document to the batch, unless the cached version is the same, and
+   * commits it. The cached version is updated once the batch is committed.
+   */
+  private ApiFuture<List<WriteResult>> commitActivityResponseBatch(
+      WriteBatch writeBatch, DocumentReference studyDocument, Object studyVersion) {
+    String studyVersionKey = studyDocument.getPath();
+    Object cachedStudyVersion = studyVersionCache.getIfPresent(studyVersionKey);
+    boolean studyVersionChanged = studyVersion == null || !studyVersion.equals(cachedStudyVersion);
+    if (studyVersionChanged) {
+      Map<String, Object> studyVersionMap = new HashMap<>();
+      studyVersionMap.put(AppConstants.STUDY_VERSION_KEY, studyVersion);
+      writeBatch.set(studyDocument, studyVersionMap);
+    }
+    return ApiFutures.transform(
+        writeBatch.commit(),
+        results -> {
+          if (studyVersionChanged && studyVersion != null) {
+            studyVersionCache.put(
+                studyVersionKey, studyVersion, TimeUnit.SECONDS.toMillis(studyVersionCacheTtl));
+          }
+          return results;
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  private void logCommittedWrites(List<WriteResult> results) {
+    logger.debug("Committed " + results.size() + " writes");
+  }
+
+  /**
+   * @return the writes of the question-level read model for a response: per question, the series
+   *     document with the latest answer and the value document of the answer. The created
+   *     timestamp is set on ingestion, so the last answer written is the latest one.
+   */
+  private List<Consumer<WriteBatch>> questionResponseWrites(
+      DocumentReference studyDocument, Map<String, Object> response) {
+    List<Consumer<WriteBatch>> writes = new ArrayList<>();
+    for (Map.Entry<String, QuestionResponseValue> entry :
+        StoredResponseConverter.getQuestionResponseValues(response).entrySet()) {
+      DocumentReference seriesDocument =
+          questionSeriesDocument(
+              studyDocument,
+              (String) response.get(AppConstants.SITE_ID_KEY),
+              (String) response.get(AppConstants.PARTICIPANT_ID_KEY),
+              (String) response.get(AppConstants.ACTIVITY_ID_KEY),
+              entry.getKey());
+      Map<String, Object> valueMap = toValueMap(entry.getValue());
+      Map<String, Object> seriesMap =
+          newSeriesMap(
+              (String) response.get(AppConstants.SITE_ID_KEY),
+              (String) response.get(AppConstants.PARTICIPANT_ID_KEY),
+              (String) response.get(AppConstants.ACTIVITY_ID_KEY),
+              entry.getKey());
+      seriesMap.put(AppConstants.LATEST_VALUE_KEY, valueMap);
+      DocumentReference valueDocument =
+          questionValueDocument(seriesDocument, entry.getValue().getActivityRunId());
+      writes.add(writeBatch -> writeBatch.set(seriesDocument, seriesMap, SetOptions.merge()));
+      writes.add(writeBatch -> writeBatch.set(valueDocument, valueMap));
+    }
+    return writes;
+  }
+
+  private static Map<String, Object> toValueMap(QuestionResponseValue value) {
+    Map<String, Object> valueMap = new HashMap<>();
+    valueMap.put(AppConstants.ACTIVITY_RUN_ID_KEY, value.getActivityRunId());
+    valueMap.put(AppConstants.CREATED_TS_KEY, value.getCreatedTimestamp());
+    valueMap.put(AppConstants.RESULT_TYPE_KEY, value.getResultType());
+    valueMap.put(AppConstants.VALUE_KEY_STR, value.getValue());
+    return valueMap;
+  }
+
+  private static Map<String, Object> newSeriesMap(
+      String siteId, String participantId, String activityId, String questionKey) {
+    Map<String, Object> seriesMap = new HashMap<>();
+    seriesMap.put(AppConstants.PARTICIPANT_ID_KEY, participantId);
+    seriesMap.put(AppConstants.SITE_ID_KEY, siteId);
+    seriesMap.put(AppConstants.ACTIVITY_ID_KEY, activityId);
+    seriesMap.put(AppConstants.QUESTION_ID_KEY, questionKey);
+    return seriesMap;
+  }
+
+  /** The activity run ID keeps a retried save from adding the answer twice. */
+  private static DocumentReference questionValueDocument(
+      DocumentReference seriesDocument, String activityRunId) {
+    return seriesDocument
+        .collection(AppConstants.QUESTION_VALUES_COLLECTION_NAME)
+        .document(ResponseServerUtil.getHashedValue(String.valueOf(activityRunId)));
+  }
+
+  /** The series document of a question, its ID is derived from the keys of the question. */
+  private DocumentReference questionSeriesDocument(
+      DocumentReference studyDocument,
+      String siteId,
+      String participantId,
+      String activityId,
+      String questionKey) {
+    return studyDocument
+        .collection(AppConstants.QUESTION_RESPONSES_COLLECTION_NAME)
+        .document(
+            ResponseServerUtil.getHashedValue(
+                String.join("\n", siteId, participantId, activityId, questionKey)));
+  }
+
+  /** Commits the writes in as many batches as needed, the batches are committed concurrently. */
+  private ApiFuture<List<WriteResult>> commitWrites(List<Consumer<WriteBatch>> writes) {
+    List<ApiFuture<List<WriteResult>>> commits = new ArrayList<>();
+    for (int from = 0; from < writes.size(); from += AppConstants.FS_BATCH_COMMIT_LIMIT) {
+      WriteBatch writeBatch = this.responsesDb.batch();
+      for (Consumer<WriteBatch> write :
+          writes.subList(
+              from, Math.min(from + AppConstants.FS_BATCH_COMMIT_LIMIT, writes.size()))) {
+        write.accept(writeBatch);
+      }
+      commits.add(writeBatch.commit());
+    }
+    return ApiFutures.transform(
+        ApiFutures.allAsList(commits),
+        batches -> {
+          List<WriteResult> results = new ArrayList<>();
+          batches.forEach(results::addAll);
+          return results;
+        },
+        MoreExecutors.directExecutor());
+  }
+
+
   @Override
   public StoredResponseBean getActivityResponseDataForParticipant(
       String studyCollectionName,
@@ -141,6 +450,10 @@ public class CloudFirestoreResponsesDaoImpl implements ResponsesDao {
       String activityId,
       String questionKey)
       throws ProcessResponseException {
+    if (!StringUtils.isBlank(questionKey)) {
+      return getQuestionResponseDataForParticipant(
+          studyCollectionName, studyId, siteId, participantId, activityId, questionKey, null, null);
+    }
     try {
       logger.entry("begin getActivityResponseDataForParticipant()");
       initializeFirestore();
@@ -157,9 +470,6 @@ public class CloudFirestoreResponsesDaoImpl implements ResponsesDao {
               .whereEqualTo(AppConstants.PARTICIPANT_ID_KEY, participantId)
               .whereEqualTo(AppConstants.SITE_ID_KEY, siteId)
               .whereEqualTo(AppConstants.ACTIVITY_ID_KEY, activityId);
-      if (!StringUtils.isBlank(questionKey)) {
-        activitiesQuery.whereEqualTo("results." + AppConstants.QUESTION_ID_KEY, questionKey);
-      }
       final ApiFuture<QuerySnapshot> querySnapshotActivities = activitiesQuery.get();
       List<QueryDocumentSnapshot> documentsActivities =
           querySnapshotActivities.get().getDocuments();
@@ -169,22 +479,150 @@ public class CloudFirestoreResponsesDaoImpl implements ResponsesDao {
         activityResponseMapList.add(mapObj);
       }
 
-      if (!activityResponseMapList.isEmpty()) {
-        String lastResponseOnly = appConfig.getLastResponseOnly();
-        if (!StringUtils.isBlank(lastResponseOnly)
-            && lastResponseOnly.equalsIgnoreCase(AppConstants.TRUE_STR)) {
-          activityResponseMapList = filterResponseListByTimestamp(activityResponseMapList);
+      return storedResponseConverter.toStoredResponseBean(participantId, activityResponseMapList);
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(e.getMessage());
+    }
+  }
+
+  /**
+   * Reads the series of the question, a single-field index on the created timestamp serves the
+   * query. The first read of a series backfills the answers of the responses saved before the read
+   * model, see {@link #backfillQuestionSeries}.
+   */
+  @Override
+  public StoredResponseBean getQuestionResponseDataForParticipant(
+      String studyCollectionName,
+      String studyId,
+      String siteId,
+      String participantId,
+      String activityId,
+      String questionKey,
+      Long since,
+      Integer limit)
+      throws ProcessResponseException {
+    logger.entry("begin getQuestionResponseDataForParticipant()");
+    try {
+      initializeFirestore();
+      DocumentReference studyDocument =
+          this.responsesDb.collection(studyCollectionName).document(studyId);
+      DocumentReference seriesDocument =
+          questionSeriesDocument(studyDocument, siteId, participantId, activityId, questionKey);
+      List<QuestionResponseValue> values = new ArrayList<>();
+      DocumentSnapshot series = seriesDocument.get().get();
+      if (!Boolean.TRUE.equals(series.getBoolean(AppConstants.BACKFILLED_KEY))
+          && backfillQuestionSeries(
+              studyDocument,
+              seriesDocument,
+              series,
+              siteId,
+              participantId,
+              activityId,
+              questionKey)) {
+        series = seriesDocument.get().get();
+      }
+      if (AppConstants.TRUE_STR.equalsIgnoreCase(appConfig.getLastResponseOnly())) {
+        if (series.get(AppConstants.LATEST_VALUE_KEY) instanceof Map) {
+          values.add(
+              toQuestionResponseValue((Map<?, ?>) series.get(AppConstants.LATEST_VALUE_KEY)));
+        }
+      } else {
+        Query valuesQuery =
+            seriesDocument.collection(AppConstants.QUESTION_VALUES_COLLECTION_NAME);
+        if (since != null) {
+          valuesQuery = valuesQuery.whereGreaterThan(AppConstants.CREATED_TS_KEY, since);
+        }
+        valuesQuery = valuesQuery.orderBy(AppConstants.CREATED_TS_KEY);
+        if (limit != null) {
+          valuesQuery = valuesQuery.limit(limit);
+        }
+        for (QueryDocumentSnapshot document : valuesQuery.get().get().getDocuments()) {
+          values.add(toQuestionResponseValue(document.getData()));
         }
-        StoredResponseBean storedResponseBean = initStoredResponseBean();
-        storedResponseBean =
-            convertResponseDataToBean(participantId, activityResponseMapList, storedResponseBean);
-        return storedResponseBean;
       }
+      return storedResponseConverter.toQuestionResponseBean(
+          participantId, questionKey, values, since, limit);
     } catch (Exception e) {
       logger.error(e.getMessage(), e);
       throw new ProcessResponseException(e.getMessage());
     }
-    return null;
+  }
+
+  /**
+   * Writes the answers to the question of the response documents into its series and marks the
+   * series as backfilled. Responses saved before the read model have no answers in the series,
+   * also when later responses created it, and responses saved since write their own answers. The
+   * answers are keyed by activity run, so a backfill that races a save or another backfill writes
+   * the same documents. The latest answer is only set if the series has none, later responses
+   * are newer than the backfilled ones.
+   *
+   * @return true if the series was written
+   */
+  private boolean backfillQuestionSeries(
+      DocumentReference studyDocument,
+      DocumentReference seriesDocument,
+      DocumentSnapshot series,
+      String siteId,
+      String participantId,
+      String activityId,
+      String questionKey)
+      throws InterruptedException, ExecutionException {
+    List<Map<String, Object>> activityResponseMapList =
+        getResponseForQuery(
+            studyDocument
+                .collection(AppConstants.ACTIVITIES_COLLECTION_NAME)
+                .whereEqualTo(AppConstants.PARTICIPANT_ID_KEY, participantId)
+                .whereEqualTo(AppConstants.SITE_ID_KEY, siteId)
+                .whereEqualTo(AppConstants.ACTIVITY_ID_KEY, activityId));
+    List<Consumer<WriteBatch>> writes = new ArrayList<>();
+    QuestionResponseValue latest = null;
+    boolean withdrawn = false;
+    for (Map<String, Object> document : activityResponseMapList) {
+      withdrawn |= Boolean.TRUE.equals(document.get(AppConstants.WITHDRAWAL_STATUS_KEY));
+      QuestionResponseValue value =
+          StoredResponseConverter.getQuestionResponseValues(document).get(questionKey);
+      if (value == null) {
+        continue;
+      }
+      DocumentReference valueDocument =
+          questionValueDocument(seriesDocument, value.getActivityRunId());
+      Map<String, Object> valueMap = toValueMap(value);
+      writes.add(writeBatch -> writeBatch.set(valueDocument, valueMap));
+      if (latest == null || value.getCreatedTimestamp() >= latest.getCreatedTimestamp()) {
+        latest = value;
+      }
+    }
+    // no series is created for a question without answers
+    if (writes.isEmpty() && !series.exists()) {
+      return false;
+    }
+    if (!writes.isEmpty()) {
+      logCommittedWrites(commitWrites(writes).get());
+    }
+    Map<String, Object> seriesMap = newSeriesMap(siteId, participantId, activityId, questionKey);
+    seriesMap.put(AppConstants.BACKFILLED_KEY, true);
+    if (withdrawn) {
+      seriesMap.put(AppConstants.WITHDRAWAL_STATUS_KEY, true);
+    }
+    if (latest != null && !(series.get(AppConstants.LATEST_VALUE_KEY) instanceof Map)) {
+      seriesMap.put(AppConstants.LATEST_VALUE_KEY, toValueMap(latest));
+    }
+    seriesDocument.set(seriesMap, SetOptions.merge()).get();
+    logger.info(String.format("backfilled %d answers of a question series", writes.size()));
+    return true;
+  }
+
+  private static QuestionResponseValue toQuestionResponseValue(Map<?, ?> valueMap) {
+    QuestionResponseValue value = new QuestionResponseValue();
+    value.setActivityRunId((String) valueMap.get(AppConstants.ACTIVITY_RUN_ID_KEY));
+    Object createdTimestamp = valueMap.get(AppConstants.CREATED_TS_KEY);
+    if (createdTimestamp instanceof Number) {
+      value.setCreatedTimestamp(((Number) createdTimestamp).longValue());
+    }
+    value.setResultType((String) valueMap.get(AppConstants.RESULT_TYPE_KEY));
+    value.setValue((String) valueMap.get(AppConstants.VALUE_KEY_STR));
+    return value;
   }
 
   @Override
@@ -194,36 +632,28 @@ public class CloudFirestoreResponsesDaoImpl implements ResponsesDao {
       String activitiesCollectionName,
       String participantId)
       throws ProcessResponseException {
+    logger.entry("begin deleteActivityResponseDataForParticipant()");
     try {
-      logger.entry("begin deleteActivityResponseDataForParticipant()");
       initializeFirestore();
-      final Query activitiesQueryByParticipantId =
-          this.responsesDb
-              .collection(studyCollectionName)
-              .document(studyId)
-              .collection(AppConstants.ACTIVITIES_COLLECTION_NAME)
+      DocumentReference studyDocument =
+          this.responsesDb.collection(studyCollectionName).document(studyId);
+      // the answers of the read model go first, so that no series outlives the responses
+      Query seriesQuery =
+          studyDocument
+              .collection(AppConstants.QUESTION_RESPONSES_COLLECTION_NAME)
               .whereEqualTo(AppConstants.PARTICIPANT_ID_KEY, participantId);
-
-      final ApiFuture<QuerySnapshot> querySnapshot = activitiesQueryByParticipantId.get();
-      List<QueryDocumentSnapshot> documents;
-
-      documents = querySnapshot.get().getDocuments();
-
-      WriteBatch deleteBatch = this.responsesDb.batch();
-      int batchCount = 0;
-      for (QueryDocumentSnapshot document : documents) {
-        deleteBatch.delete(document.getReference());
-        batchCount++;
-        // Firestore - Each transaction or batch of writes can write to a maximum of 500 documents.
-        if (batchCount == AppConstants.FS_BATCH_COMMIT_LIMIT) {
-          deleteBatch.commit();
-          // Reset the batch, once it has been committed, so it is available again
-          deleteBatch = this.responsesDb.batch();
-          batchCount = 0;
-        }
+      for (QueryDocumentSnapshot series :
+          seriesQuery.select(AppConstants.PARTICIPANT_ID_KEY).get().get().getDocuments()) {
+        writeDocuments(
+            "delete",
+            series.getReference().collection(AppConstants.QUESTION_VALUES_COLLECTION_NAME),
+            (writeBatch, document) -> writeBatch.delete(document));
       }
-      deleteBatch.commit();
-
+      writeDocuments("delete", seriesQuery, (writeBatch, document) -> writeBatch.delete(document));
+      writeDocuments(
+          "delete",
+          participantResponsesQuery(studyDocument, participantId),
+          (writeBatch, document) -> writeBatch.delete(document));
     } catch (Exception e) {
       logger.error(e.getMessage(), e);
       throw new ProcessResponseException(e.getMessage());
@@ -237,39 +667,224 @@ public class CloudFirestoreResponsesDaoImpl implements ResponsesDao {
     logger.entry("begin updateWithdrawalStatusForParticipant()");
     try {
       initializeFirestore();
-      final Query activitiesQueryByParticipantId =
+      DocumentReference studyDocument =
+          this.responsesDb.collection(studyCollectionName).document(studyId);
+      writeDocuments(
+          "withdraw",
+          participantResponsesQuery(studyDocument, participantId),
+          (writeBatch, document) ->
+              writeBatch.update(document, AppConstants.WITHDRAWAL_STATUS_KEY, true));
+      writeDocuments(
+          "withdraw",
+          studyDocument
+              .collection(AppConstants.QUESTION_RESPONSES_COLLECTION_NAME)
+              .whereEqualTo(AppConstants.PARTICIPANT_ID_KEY, participantId),
+          (writeBatch, document) ->
+              writeBatch.update(document, AppConstants.WITHDRAWAL_STATUS_KEY, true));
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(e.getMessage());
+    }
+  }
+
+  @Override
+  public ResponseExportPage getActivityResponseDataPage(
+      String studyCollectionName,
+      String studyId,
+      ResponseExportFilter filter,
+      String cursor,
+      int pageSize)
+      throws ProcessResponseException {
+    logger.entry("begin getActivityResponseDataPage()");
+    try {
+      initializeFirestore();
+      CollectionReference activities =
           this.responsesDb
               .collection(studyCollectionName)
               .document(studyId)
-              .collection(AppConstants.ACTIVITIES_COLLECTION_NAME)
-              .whereEqualTo(AppConstants.PARTICIPANT_ID_KEY, participantId);
-
-      final ApiFuture<QuerySnapshot> querySnapshot = activitiesQueryByParticipantId.get();
-      List<QueryDocumentSnapshot> documents;
-
-      documents = querySnapshot.get().getDocuments();
+              .collection(AppConstants.ACTIVITIES_COLLECTION_NAME);
+      // equality filters ordered by document ID are served without a composite index, the created
+      // timestamp range is checked on the page
+      Query pageQuery = activities;
+      if (StringUtils.isNotBlank(filter.getSiteId())) {
+        pageQuery = pageQuery.whereEqualTo(AppConstants.SITE_ID_KEY, filter.getSiteId());
+      }
+      if (StringUtils.isNotBlank(filter.getActivityId())) {
+        pageQuery = pageQuery.whereEqualTo(AppConstants.ACTIVITY_ID_KEY, filter.getActivityId());
+      }
+      pageQuery = pageQuery.orderBy(FieldPath.documentId()).limit(pageSize);
+      if (cursor != null) {
+        pageQuery = pageQuery.startAfter(activities.document(cursor));
+      }
+      List<QueryDocumentSnapshot> documents = pageQuery.get().get().getDocuments();
 
-      WriteBatch updateBatch = this.responsesDb.batch();
-      int batchCount = 0;
+      ResponseExportPage page = new ResponseExportPage();
       for (QueryDocumentSnapshot document : documents) {
-
-        updateBatch.update(document.getReference(), AppConstants.WITHDRAWAL_STATUS_KEY, true);
-        batchCount++;
-        // Firestore - Each transaction or batch of writes can write to a maximum of 500 documents.
-        if (batchCount == AppConstants.FS_BATCH_COMMIT_LIMIT) {
-          updateBatch.commit();
-          // Reset the batch, once it has been committed, so it is available again
-          updateBatch = this.responsesDb.batch();
-          batchCount = 0;
+        if (filter.matches(document.getData())) {
+          page.getDocuments().add(document.getData());
         }
       }
-      updateBatch.commit();
+      if (documents.size() == pageSize) {
+        page.setNextCursor(documents.get(documents.size() - 1).getId());
+      }
+      return page;
     } catch (Exception e) {
       logger.error(e.getMessage(), e);
       throw new ProcessResponseException(e.getMessage());
     }
   }
 
+  private Query participantResponsesQuery(DocumentReference studyDocument, String participantId) {
+    return studyDocument
+        .collection(AppConstants.ACTIVITIES_COLLECTION_NAME)
+        .whereEqualTo(AppConstants.PARTICIPANT_ID_KEY, participantId);
+  }
+
+  /**
+   * Applies the write to every document found by the query. The documents are read one page of
+   * {@link AppConstants#FS_BATCH_COMMIT_LIMIT} at a time, ordered by document ID, and each page is
+   * committed as one batch while the next page is read. At most max-in-flight batches are
+   * committed at once, a failed batch is retried up to max-attempts times.
+   */
+  private void writeDocuments(
+      String operation, Query query, BiConsumer<WriteBatch, DocumentReference> write)
+      throws InterruptedException, ExecutionException, ProcessResponseException {
+    final Query pagedQuery =
+        query.orderBy(FieldPath.documentId()).limit(AppConstants.FS_BATCH_COMMIT_LIMIT);
+
+    Timer.Sample sample = Timer.start(registry);
+    Semaphore inFlight = new Semaphore(bulkWriteMaxInFlight);
+    List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+    AtomicLong written = new AtomicLong();
+    int pages = 0;
+    QueryDocumentSnapshot lastDocument = null;
+    try {
+      while (failures.isEmpty()) {
+        Query pageQuery = lastDocument == null ? pagedQuery : pagedQuery.startAfter(lastDocument);
+        List<QueryDocumentSnapshot> documents = pageQuery.get().get().getDocuments();
+        if (documents.isEmpty()) {
+          break;
+        }
+        pages++;
+        lastDocument = documents.get(documents.size() - 1);
+        List<DocumentReference> references = new ArrayList<>();
+        for (QueryDocumentSnapshot document : documents) {
+          references.add(document.getReference());
+        }
+        inFlight.acquire();
+        commitPage(
+            operation,
+            references,
+            write,
+            1,
+            throwable -> {
+              if (throwable == null) {
+                written.addAndGet(references.size());
+              } else {
+                failures.add(throwable);
+              }
+              inFlight.release();
+            });
+        if (documents.size() < AppConstants.FS_BATCH_COMMIT_LIMIT) {
+          break;
+        }
+      }
+    } finally {
+      // wait for the batches in flight
+      inFlight.acquire(bulkWriteMaxInFlight);
+      inFlight.release(bulkWriteMaxInFlight);
+      sample.stop(
+          registry.timer(
+              "response.firestore.bulk.duration",
+              "operation",
+              operation,
+              "result",
+              failures.isEmpty() ? "success" : "failure"));
+    }
+    logger.info(
+        String.format(
+            "%s of the documents of a participant: %d documents written in %d pages, "
+                + "%d pages failed",
+            operation, written.get(), pages, failures.size()));
+    if (!failures.isEmpty()) {
+      throw new ProcessResponseException(
+          String.format(
+              "%s of the documents of a participant failed after %d documents: %s",
+              operation, written.get(), failures.get(0).getMessage()));
+    }
+  }
+
+  /**
+   * Commits one page, retrying it with a new batch after a delay, and reports the outcome. The
+   * outcome is always reported, also when the batch cannot be created or committed at all.
+   */
+  private void commitPage(
+      String operation,
+      List<DocumentReference> references,
+      BiConsumer<WriteBatch, DocumentReference> write,
+      int attempt,
+      Consumer<Throwable> done) {
+    ApiFuture<List<WriteResult>> commit;
+    try {
+      WriteBatch writeBatch = this.responsesDb.batch();
+      for (DocumentReference reference : references) {
+        write.accept(writeBatch, reference);
+      }
+      commit = writeBatch.commit();
+    } catch (RuntimeException e) {
+      retryPage(operation, references, write, attempt, done, e);
+      return;
+    }
+    ApiFutures.addCallback(
+        commit,
+        new ApiFutureCallback<List<WriteResult>>() {
+          @Override
+          public void onSuccess(List<WriteResult> results) {
+            registry
+                .counter("response.firestore.bulk.documents", "operation", operation)
+                .increment(results.size());
+            done.accept(null);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            retryPage(operation, references, write, attempt, done, t);
+          }
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  private void retryPage(
+      String operation,
+      List<DocumentReference> references,
+      BiConsumer<WriteBatch, DocumentReference> write,
+      int attempt,
+      Consumer<Throwable> done,
+      Throwable t) {
+    if (attempt >= bulkWriteMaxAttempts) {
+      countBatch(operation, "failed");
+      done.accept(t);
+      return;
+    }
+    countBatch(operation, "retried");
+    logger.warn(
+        String.format("%s batch failed, attempt %d: %s", operation, attempt, t.getMessage()));
+    try {
+      bulkWriteRetryExecutor.schedule(
+          () -> commitPage(operation, references, write, attempt + 1, done),
+          bulkWriteRetryDelayMillis << (attempt - 1),
+          TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      done.accept(t);
+    }
+  }
+
+  private void countBatch(String operation, String result) {
+    registry
+        .counter("response.firestore.bulk.batches", "operation", operation, "result", result)
+        .increment();
+  }
+
   public void getResponseDataScenarios(
       String studyCollectionName,
       String studyId,
@@ -369,137 +984,6 @@ public class CloudFirestoreResponsesDaoImpl implements ResponsesDao {
     }
   }
 
-  private StoredResponseBean convertResponseDataToBean(
-      String participantId,
-      List<Map<String, Object>> activityResponseMapList,
-      StoredResponseBean storedResponseBean) {
-    logger.entry("begin convertResponseDataToBean()");
-    List<ResponseRows> responsesList = new ArrayList<>();
-    for (Map<String, Object> activityResponseMap : activityResponseMapList) {
-      ResponseRows responsesRow = new ResponseRows();
-      // Add participant Id
-      Map<Object, Object> mapPartId = new HashMap<>();
-      Map<Object, Object> mapPartIdValue = new HashMap<>();
-      mapPartIdValue.put(AppConstants.VALUE_KEY_STR, participantId);
-      mapPartId.put(AppConstants.PARTICIPANT_ID_RESPONSE, mapPartIdValue);
-      responsesRow.getData().add(mapPartId);
-
-      // Add Created Timestamp
-      Map<Object, Object> mapTS = new HashMap<>();
-      Map<Object, Object> mapTsValue = new HashMap<>();
-
-      // Format timestamp to date
-      long timestampFromResponse = 0;
-      try {
-        timestampFromResponse =
-            Long.parseLong((String) activityResponseMap.get(AppConstants.CREATED_TS_KEY));
-
-        DateFormat simpleDateFormat = new SimpleDateFormat(AppConstants.ISO_DATE_FORMAT_RESPONSE);
-        String formattedDate = simpleDateFormat.format(timestampFromResponse);
-        mapTsValue.put(AppConstants.VALUE_KEY_STR, formattedDate);
-
-      } catch (NumberFormatException ne) {
-        logger.error(
-            "Could not format createdTimestamp field to long. createdTimestamp value is: "
-                + timestampFromResponse);
-        mapTsValue.put(AppConstants.VALUE_KEY_STR, String.valueOf(timestampFromResponse));
-      }
-
-      mapTS.put(AppConstants.CREATED_RESPONSE, mapTsValue);
-      responsesRow.getData().add(mapTS);
-      SavedActivityResponse savedActivityResponse =
-          new Gson().fromJson(new Gson().toJson(activityResponseMap), SavedActivityResponse.class);
-      List<Object> results = savedActivityResponse.getResults();
-      this.addResponsesToMap(responsesRow, results);
-      responsesList.add(responsesRow);
-      storedResponseBean.setRows(responsesList);
-    }
-    if (storedResponseBean.getRows() != null) {
-      storedResponseBean.setRowCount(storedResponseBean.getRows().size());
-    }
-    return storedResponseBean;
-  }
-
-  private void addResponsesToMap(ResponseRows responsesRow, List<Object> results) {
-    logger.entry("begin addResponsesToMap()");
-    if (results != null) {
-      for (Object result : results) {
-        if (result instanceof Map) {
-          Map<String, Object> mapResult = (Map<String, Object>) result;
-          String questionResultType = (String) mapResult.get(AppConstants.RESULT_TYPE_KEY);
-          String questionIdKey = null;
-          String questionValue = null;
-          Map<Object, Object> tempMapForQuestions = new HashMap<>();
-          Map<Object, Object> tempMapQuestionsValue = new HashMap<>();
-
-          if (!StringUtils.isBlank(questionResultType)) {
-            if (questionResultType.equalsIgnoreCase(AppConstants.GROUPED_FIELD_KEY)) {
-              Map<String, Object> resultsForm =
-                  (Map<String, Object>) mapResult.get("actvityValueGroup");
-              List<Object> obj = (List<Object>) resultsForm.get("results");
-              this.addResponsesToMap(responsesRow, obj);
-
-            } else {
-              questionIdKey = (String) mapResult.get(AppConstants.QUESTION_ID_KEY);
-              questionValue = (String) mapResult.get(AppConstants.VALUE_KEY_STR);
-              if (StringUtils.containsIgnoreCase(
-                      appConfig.getResponseSupportedQTypeDouble(), questionResultType)
-                  && !StringUtils.isBlank(questionValue)) {
-                Double questionValueDouble = null;
-                try {
-                  questionValueDouble = Double.parseDouble(questionValue);
-                  tempMapQuestionsValue.put(AppConstants.VALUE_KEY_STR, questionValueDouble);
-                  tempMapForQuestions.put(questionIdKey, tempMapQuestionsValue);
-                  responsesRow.getData().add(tempMapForQuestions);
-                } catch (NumberFormatException e) {
-                  logger.error(
-                      "Could not format value to Double. Value input string is: " + questionValue);
-                }
-              } else if (StringUtils.containsIgnoreCase(
-                      appConfig.getResponseSupportedQTypeDate(), questionResultType)
-                  && !StringUtils.isBlank(questionValue)) {
-                tempMapQuestionsValue.put(AppConstants.VALUE_KEY_STR, questionValue);
-                tempMapForQuestions.put(questionIdKey, tempMapQuestionsValue);
-                responsesRow.getData().add(tempMapForQuestions);
-              } else {
-                if (appConfig.getSupportStringResponse().equalsIgnoreCase(AppConstants.TRUE_STR)
-                    && StringUtils.containsIgnoreCase(
-                        appConfig.getResponseSupportedQTypeString(), questionResultType)
-                    && !StringUtils.isBlank(questionValue)) {
-                  tempMapQuestionsValue.put(AppConstants.VALUE_KEY_STR, questionValue);
-                  tempMapForQuestions.put(questionIdKey, tempMapQuestionsValue);
-                  responsesRow.getData().add(tempMapForQuestions);
-                }
-              }
-            }
-          }
-        }
-      }
-    }
-  }
-
-  private List<Map<String, Object>> filterResponseListByTimestamp(
-      List<Map<String, Object>> activityResponseMapList) {
-
-    activityResponseMapList.sort(
-        Comparator.nullsLast(
-            Comparator.comparing(
-                m -> Long.parseLong((String) m.get(AppConstants.CREATED_TS_KEY)),
-                Comparator.nullsLast(Comparator.reverseOrder()))));
-    // Get the latest response for activityId, bases on ordering by timestamp value
-    activityResponseMapList = Arrays.asList(activityResponseMapList.get(0));
-
-    return activityResponseMapList;
-  }
-
-  private StoredResponseBean initStoredResponseBean() {
-    StoredResponseBean retStoredResponseBean = new StoredResponseBean();
-    List<String> schemaNameList = Arrays.asList(AppConstants.RESPONSE_DATA_SCHEMA_NAME_LEGACY);
-    retStoredResponseBean.setSchemaName(schemaNameList);
-    retStoredResponseBean.setQueryName(AppConstants.RESPONSE_DATA_QUERY_NAME_LEGACY);
-    return retStoredResponseBean;
-  }
-
   private boolean isResponseExists(
       String studyCollectionName,
       String studyId,
@@ -510,13 +994,7 @@ public class CloudFirestoreResponsesDaoImpl implements ResponsesDao {
     // 1. Check if the
     try {
       final Query queryByActivityRuns =
-          this.responsesDb
-              .collection(studyCollectionName)
-              .document(studyId)
-              .collection(AppConstants.ACTIVITIES_COLLECTION_NAME)
-              .whereEqualTo(AppConstants.PARTICIPANT_ID_KEY, participantId)
-              .whereEqualTo(AppConstants.ACTIVITY_ID_KEY, activityId)
-              .whereEqualTo(AppConstants.ACTIVITY_RUN_ID_KEY, activityRunId);
+          activityRunQuery(studyCollectionName, studyId, participantId, activityId, activityRunId);
       final ApiFuture<QuerySnapshot> querySnapshot = queryByActivityRuns.get();
       List<QueryDocumentSnapshot> documents = querySnapshot.get().getDocuments();
       if (!documents.isEmpty()) {
@@ -529,4 +1007,19 @@ public class CloudFirestoreResponsesDaoImpl implements ResponsesDao {
     }
     return false;
   }
+
+  private Query activityRunQuery(
+      String studyCollectionName,
+      String studyId,
+      String participantId,
+      String activityId,
+      String activityRunId) {
+    return this.responsesDb
+        .collection(studyCollectionName)
+        .document(studyId)
+        .collection(AppConstants.ACTIVITIES_COLLECTION_NAME)
+        .whereEqualTo(AppConstants.PARTICIPANT_ID_KEY, participantId)
+        .whereEqualTo(AppConstants.ACTIVITY_ID_KEY, activityId)
+        .whereEqualTo(AppConstants.ACTIVITY_RUN_ID_KEY, activityRunId);
+  }
 }
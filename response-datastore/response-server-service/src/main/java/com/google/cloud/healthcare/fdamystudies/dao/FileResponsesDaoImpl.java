@@ -8,30 +8,103 @@
 
 package com.google.cloud.healthcare.fdamystudies.dao;
 
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportFilter;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportPage;
 import com.google.cloud.healthcare.fdamystudies.bean.StoredResponseBean;
 import com.google.cloud.healthcare.fdamystudies.config.ApplicationConfiguration;
 import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
 import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+/**
+ * Stores the responses of each study in a {@link ResponseSegmentStore} under {@code
+ * <response.data.file.path>/<studyId>/responses}, next to the study metadata file. The stores are
+ * compacted in the background when {@code response.storage.type} is {@code file}.
+ */
 @Repository
 @Qualifier("fileResponsesDaoImpl")
 public class FileResponsesDaoImpl implements ResponsesDao {
+
+  private static final String RESPONSES_DIRECTORY = "responses";
+
+  private static final String FILE_STORAGE = "file";
+
   @Autowired private ApplicationConfiguration appConfig;
 
+  @Autowired private StoredResponseConverter storedResponseConverter;
+
+  @Value("${response.storage.type:firestore}")
+  private String storageType;
+
+  @Value("${response.file.segment-max-bytes:67108864}")
+  private long segmentMaxBytes;
+
+  @Value("${response.file.compaction.interval-seconds:300}")
+  private long compactionIntervalSeconds;
+
+  @Value("${response.file.compaction.min-segments:4}")
+  private int compactionMinSegments;
+
+  private final Map<String, ResponseSegmentStore> stores = new ConcurrentHashMap<>();
+
+  private ScheduledExecutorService compactionExecutor;
+
   private XLogger logger = XLoggerFactory.getXLogger(FileResponsesDaoImpl.class.getName());
 
+  @PostConstruct
+  public void init() {
+    // the bean exists whatever the storage type, it only compacts when it stores the responses
+    if (!FILE_STORAGE.equalsIgnoreCase(storageType)) {
+      return;
+    }
+    compactionExecutor =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "file-responses-compaction");
+              thread.setDaemon(true);
+              return thread;
+            });
+    compactionExecutor.scheduleWithFixedDelay(
+        this::compactStores,
+        compactionIntervalSeconds,
+        compactionIntervalSeconds,
+        TimeUnit.SECONDS);
+  }
+
+  @PreDestroy
+  public void shutdown() throws IOException {
+    if (compactionExecutor != null) {
+      compactionExecutor.shutdownNow();
+    }
+    for (ResponseSegmentStore store : stores.values()) {
+      store.close();
+    }
+  }
+
   @Override
   public void saveStudyMetadata(
       String studyCollectionName, String studyId, Map<String, Object> dataToStore)
@@ -90,65 +163,94 @@ public class FileResponsesDaoImpl implements ResponsesDao {
       String activityId,
       String questionKey)
       throws ProcessResponseException {
-    // Unimplemeted method. A reference implementation has been provided for Cloud Firestore
-    throw new ProcessResponseException(
-        "Unimplemented method. Needs to be implemented with a datastore");
+    logger.entry("begin getActivityResponseDataForParticipant()");
+    try {
+      List<Map<String, Object>> activityResponseMapList = new ArrayList<>();
+      for (Map<String, Object> document :
+          getStore(studyId)
+              .find(participantId, activityId, StringUtils.defaultIfBlank(questionKey, null))) {
+        if (StringUtils.equals(siteId, (String) document.get(AppConstants.SITE_ID_KEY))) {
+          activityResponseMapList.add(document);
+        }
+      }
+      return storedResponseConverter.toStoredResponseBean(participantId, activityResponseMapList);
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(e.getMessage());
+    }
   }
 
+  /** The segment index is keyed by question already, so one lookup finds the answers. */
   @Override
-  public void saveActivityResponseData(
+  public StoredResponseBean getQuestionResponseDataForParticipant(
       String studyCollectionName,
       String studyId,
+      String siteId,
+      String participantId,
+      String activityId,
+      String questionKey,
+      Long since,
+      Integer limit)
+      throws ProcessResponseException {
+    logger.entry("begin getQuestionResponseDataForParticipant()");
+    try {
+      List<Map<String, Object>> activityResponseMapList = new ArrayList<>();
+      for (Map<String, Object> document :
+          getStore(studyId).find(participantId, activityId, questionKey)) {
+        if (StringUtils.equals(siteId, (String) document.get(AppConstants.SITE_ID_KEY))) {
+          activityResponseMapList.add(document);
+        }
+      }
+      return storedResponseConverter.documentsToQuestionResponseBean(
+          participantId, questionKey, activityResponseMapList, since, limit);
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(e.getMessage());
+    }
+  }
+
+  @Override
+  public void saveActivityResponseData(
+      String studyId,
+      String studyCollectionName,
       String activitiesCollectionName,
       Map<String, Object> dataToStoreActivityResults)
       throws ProcessResponseException {
-    // The conversion of the response data to a file is provided as sample implementation.
-    // Implementors should use the file representation of the response object or the
-    // JSON representation of the response object to store the responses in a suitable data store
-    if (studyCollectionName != null && dataToStoreActivityResults != null) {
-      try {
-        logger.info(
-            "saveActivityResponseData() : \n Study Collection Name: " + studyCollectionName);
-        Gson gson = new Gson();
-        StringBuilder studyResponseDataJsonStr = new StringBuilder();
-        studyResponseDataJsonStr.append(gson.toJson(dataToStoreActivityResults));
+    if (dataToStoreActivityResults == null) {
+      throw new ProcessResponseException(
+          "FileResponsesDaoImpl.saveActivityResponseData() - dataToStoreResults is null");
+    }
+    saveActivityResponseDataList(
+        studyId,
+        studyCollectionName,
+        activitiesCollectionName,
+        Collections.singletonList(dataToStoreActivityResults));
+  }
 
-        String studyDirName = appConfig.getResponseDataFilePath() + studyId;
-        Path studyDirPath = Paths.get(studyDirName);
-        if (!Files.exists(studyDirPath)) {
-          Files.createDirectories(studyDirPath);
-        }
-        Files.write(
-            Paths.get(
-                studyDirPath
-                    + AppConstants.FILE_SEPARATOR
-                    + studyCollectionName
-                    + AppConstants.HYPHEN
-                    + System.currentTimeMillis()
-                    + AppConstants.JSON_FILE_EXTENSION),
-            studyResponseDataJsonStr.toString().getBytes(),
-            StandardOpenOption.CREATE);
-        logger.debug(
-            "saveActivityResponseData() : \n Document in study collection: "
-                + studyCollectionName
-                + " with document ID. Path to StudyMetadata file: \n"
-                + studyDirPath
-                + AppConstants.FILE_SEPARATOR
-                + studyCollectionName
-                + AppConstants.HYPHEN
-                + System.currentTimeMillis()
-                + AppConstants.JSON_FILE_EXTENSION);
-      } catch (Exception e) {
-        logger.error(e.getMessage(), e);
-        throw new ProcessResponseException(
-            "FileResponsesDaoImpl.saveActivityResponseData() - "
-                + "Exception when saving data to file storage: "
-                + e.getMessage());
-      }
-    } else {
+  @Override
+  public void saveActivityResponseDataList(
+      String studyId,
+      String studyCollectionName,
+      String activitiesCollectionName,
+      List<Map<String, Object>> dataToStoreActivityResultsList)
+      throws ProcessResponseException {
+    if (studyId == null || dataToStoreActivityResultsList == null) {
       throw new ProcessResponseException(
-          "FileResponsesDaoImpl.saveActivityResponseData() - "
-              + "Study Collection is null or dataToStoreResults is null");
+          "FileResponsesDaoImpl.saveActivityResponseDataList() - "
+              + "Study Id is null or dataToStoreResultsList is null");
+    }
+    try {
+      logger.info("saveActivityResponseDataList() : \n Study Id: " + studyId);
+      // skip responses that were already saved for the activity run, like the Firestore DAO
+      int saved = getStore(studyId).putIfAbsent(dataToStoreActivityResultsList);
+      logger.debug(
+          String.format("%d of %d responses saved", saved, dataToStoreActivityResultsList.size()));
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(
+          "FileResponsesDaoImpl.saveActivityResponseDataList() - "
+              + "Exception when saving data to file storage: "
+              + e.getMessage());
     }
   }
 
@@ -159,18 +261,75 @@ public class FileResponsesDaoImpl implements ResponsesDao {
       String activitiesCollectionName,
       String participantId)
       throws ProcessResponseException {
-    // Unimplemeted method. A reference implementation has been provided for Cloud Firestore
-    // Implementation of the query to return response data, goes here
-    throw new ProcessResponseException(
-        "Unimplemented method. Needs to be implemented with a datastore");
+    logger.entry("begin deleteActivityResponseDataForParticipant()");
+    try {
+      getStore(studyId).delete(participantId);
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(e.getMessage());
+    }
   }
 
   @Override
   public void updateWithdrawalStatusForParticipant(
       String studyCollectionName, String studyId, String participantId)
       throws ProcessResponseException {
-    // Unimplemeted method. A reference implementation has been provided for Cloud Firestore
-    throw new ProcessResponseException(
-        "Unimplemented method. Needs to be implemented with a datastore");
+    logger.entry("begin updateWithdrawalStatusForParticipant()");
+    try {
+      getStore(studyId).withdraw(participantId);
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(e.getMessage());
+    }
+  }
+
+  @Override
+  public ResponseExportPage getActivityResponseDataPage(
+      String studyCollectionName,
+      String studyId,
+      ResponseExportFilter filter,
+      String cursor,
+      int pageSize)
+      throws ProcessResponseException {
+    logger.entry("begin getActivityResponseDataPage()");
+    try {
+      ResponseExportPage page = new ResponseExportPage();
+      page.setNextCursor(
+          getStore(studyId).scan(cursor, pageSize, filter::matches, page.getDocuments()));
+      return page;
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(e.getMessage());
+    }
+  }
+
+  private ResponseSegmentStore getStore(String studyId) throws IOException {
+    try {
+      return stores.computeIfAbsent(
+          studyId,
+          id -> {
+            try {
+              return new ResponseSegmentStore(
+                  Paths.get(appConfig.getResponseDataFilePath(), id, RESPONSES_DIRECTORY),
+                  segmentMaxBytes);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private void compactStores() {
+    for (Map.Entry<String, ResponseSegmentStore> store : stores.entrySet()) {
+      try {
+        if (store.getValue().needsCompaction(compactionMinSegments)) {
+          store.getValue().compact();
+        }
+      } catch (Exception e) {
+        logger.error("compaction of the responses of study " + store.getKey() + " failed", e);
+      }
+    }
   }
 }
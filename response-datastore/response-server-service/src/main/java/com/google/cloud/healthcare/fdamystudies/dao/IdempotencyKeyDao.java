@@ -0,0 +1,41 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.dao;
+
+import com.google.cloud.healthcare.fdamystudies.bean.IdempotentResponse;
+
+public interface IdempotencyKeyDao {
+
+  /**
+   * Claims the key for the request that processes it, until it is completed or released, or until
+   * the claim expires.
+   *
+   * @return false if the key is claimed or completed by another request and has not expired
+   */
+  boolean claim(String idempotencyKey, String requestFingerprint, long now, long expiresAt);
+
+  /**
+   * @return the response of the key and the fingerprint of its request, with a null status while
+   *     it is claimed, or null
+   */
+  IdempotentResponse find(String idempotencyKey, long now);
+
+  void complete(String idempotencyKey, IdempotentResponse response, long expiresAt);
+
+  /** Releases the claim of the key, so that a retry of the request processes it again. */
+  void release(String idempotencyKey);
+
+  /**
+   * Deletes the expired keys, and then the completed keys that expire first beyond the maximum
+   * number of keys.
+   *
+   * @return the number of keys deleted
+   */
+  int purge(long now, int maxKeys);
+}
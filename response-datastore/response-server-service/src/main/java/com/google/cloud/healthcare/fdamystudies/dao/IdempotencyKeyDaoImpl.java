@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.dao;
+
+import com.google.cloud.healthcare.fdamystudies.bean.IdempotentResponse;
+import java.sql.Timestamp;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Keeps the idempotency keys in the {@code idempotency_keys} table of the datasource, see
+ * IdempotencyKeyEntity. A key is claimed by inserting it, so only one request across the instances
+ * of the service processes it.
+ */
+@Repository
+public class IdempotencyKeyDaoImpl implements IdempotencyKeyDao {
+
+  private static final String INSERT_KEY_SQL =
+      "INSERT INTO idempotency_keys "
+          + "(idempotency_key, request_fingerprint, expires_at, created_time) VALUES (?, ?, ?, ?)";
+
+  // the claim of a request that did not complete, e.g. on an instance that stopped, is taken over
+  private static final String CLAIM_EXPIRED_KEY_SQL =
+      "UPDATE idempotency_keys SET response_status = NULL, response_body = NULL, "
+          + "request_fingerprint = ?, expires_at = ?, created_time = ? "
+          + "WHERE idempotency_key = ? AND expires_at < ?";
+
+  private static final String SELECT_KEY_SQL =
+      "SELECT response_status, response_body, request_fingerprint FROM idempotency_keys "
+          + "WHERE idempotency_key = ? AND expires_at >= ?";
+
+  private static final String COMPLETE_KEY_SQL =
+      "UPDATE idempotency_keys SET response_status = ?, response_body = ?, expires_at = ? "
+          + "WHERE idempotency_key = ?";
+
+  private static final String RELEASE_KEY_SQL =
+      "DELETE FROM idempotency_keys WHERE idempotency_key = ? AND response_status IS NULL";
+
+  private static final String DELETE_EXPIRED_KEYS_SQL =
+      "DELETE FROM idempotency_keys WHERE expires_at < ?";
+
+  private static final String SELECT_EXPIRY_CUTOFF_SQL =
+      "SELECT expires_at FROM idempotency_keys ORDER BY expires_at DESC LIMIT 1 OFFSET ?";
+
+  private static final String DELETE_KEYS_EXPIRING_BEFORE_SQL =
+      "DELETE FROM idempotency_keys WHERE expires_at <= ? AND response_status IS NOT NULL";
+
+  @Autowired private JdbcTemplate jdbcTemplate;
+
+  @Override
+  public boolean claim(
+      String idempotencyKey, String requestFingerprint, long now, long expiresAt) {
+    Timestamp created = new Timestamp(now);
+    try {
+      return jdbcTemplate.update(
+              INSERT_KEY_SQL, idempotencyKey, requestFingerprint, expiresAt, created)
+          == 1;
+    } catch (DuplicateKeyException e) {
+      return jdbcTemplate.update(
+              CLAIM_EXPIRED_KEY_SQL, requestFingerprint, expiresAt, created, idempotencyKey, now)
+          == 1;
+    }
+  }
+
+  @Override
+  public IdempotentResponse find(String idempotencyKey, long now) {
+    List<IdempotentResponse> responses =
+        jdbcTemplate.query(
+            SELECT_KEY_SQL,
+            (resultSet, rowNum) ->
+                new IdempotentResponse(
+                    resultSet.getObject("response_status", Integer.class),
+                    resultSet.getString("response_body"),
+                    resultSet.getString("request_fingerprint")),
+            idempotencyKey,
+            now);
+    return responses.isEmpty() ? null : responses.get(0);
+  }
+
+  @Override
+  public void complete(String idempotencyKey, IdempotentResponse response, long expiresAt) {
+    jdbcTemplate.update(
+        COMPLETE_KEY_SQL, response.getStatus(), response.getBody(), expiresAt, idempotencyKey);
+  }
+
+  @Override
+  public void release(String idempotencyKey) {
+    jdbcTemplate.update(RELEASE_KEY_SQL, idempotencyKey);
+  }
+
+  @Override
+  public int purge(long now, int maxKeys) {
+    int deleted = jdbcTemplate.update(DELETE_EXPIRED_KEYS_SQL, now);
+    List<Long> cutoff = jdbcTemplate.queryForList(SELECT_EXPIRY_CUTOFF_SQL, Long.class, maxKeys);
+    if (!cutoff.isEmpty()) {
+      deleted += jdbcTemplate.update(DELETE_KEYS_EXPIRING_BEFORE_SQL, cutoff.get(0));
+    }
+    return deleted;
+  }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.dao;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportFilter;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportPage;
+import com.google.cloud.healthcare.fdamystudies.bean.StoredResponseBean;
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Stores the response documents in the JSON column of the {@code activity_responses} table. The
+ * participant, site, activity and activity run columns are generated from the document, and the
+ * answered question keys are kept in {@code activity_response_questions}. See the
+ * response-datastore-db-migration scripts for the schema.
+ */
+@Repository
+@Qualifier("jdbcResponsesDaoImpl")
+public class JdbcResponsesDaoImpl implements ResponsesDao {
+
+  private static final String UPSERT_STUDY_METADATA_SQL =
+      "INSERT INTO study_metadata (study_id, document) VALUES (?, ?) "
+          + "ON DUPLICATE KEY UPDATE document = VALUES(document)";
+
+  private static final String UPSERT_STUDY_VERSION_SQL =
+      "INSERT INTO study_metadata (study_id, document) VALUES (?, JSON_OBJECT('studyVersion', ?)) "
+          + "ON DUPLICATE KEY UPDATE document = JSON_SET(document, '$.studyVersion', ?)";
+
+  // responses already saved for the activity run are skipped, like in the Firestore DAO. Unlike
+  // INSERT IGNORE, the no-op update skips only the duplicate key and still fails on other errors.
+  private static final String INSERT_RESPONSE_SQL =
+      "INSERT INTO activity_responses (study_id, document) VALUES (?, ?) "
+          + "ON DUPLICATE KEY UPDATE id = id";
+
+  // the question table has no id column, its key columns are updated to themselves instead
+  private static final String INSERT_QUESTION_SQL =
+      "INSERT INTO activity_response_questions "
+          + "(study_id, participant_id, activity_id, activity_run_id, question_key) "
+          + "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE question_key = question_key";
+
+  private static final String SELECT_RESPONSES_SQL =
+      "SELECT r.document FROM activity_responses r "
+          + "WHERE r.study_id = ? AND r.participant_id = ? AND r.site_id = ? AND r.activity_id = ?";
+
+  private static final String QUESTION_FILTER_SQL =
+      " AND EXISTS (SELECT 1 FROM activity_response_questions q "
+          + "WHERE q.study_id = r.study_id AND q.participant_id = r.participant_id "
+          + "AND q.activity_id = r.activity_id AND q.activity_run_id = r.activity_run_id "
+          + "AND q.question_key = ?)";
+
+  private static final String DELETE_QUESTIONS_SQL =
+      "DELETE FROM activity_response_questions WHERE study_id = ? AND participant_id = ?";
+
+  private static final String DELETE_RESPONSES_SQL =
+      "DELETE FROM activity_responses WHERE study_id = ? AND participant_id = ?";
+
+  private static final String UPDATE_WITHDRAWAL_STATUS_SQL =
+      "UPDATE activity_responses SET document = JSON_SET(document, '$.withdrawalStatus', TRUE) "
+          + "WHERE study_id = ? AND participant_id = ?";
+
+  private static final String SELECT_RESPONSE_PAGE_SQL =
+      "SELECT id, document FROM activity_responses WHERE study_id = ? AND id > ?";
+
+  /** Reads whole numbers as Long and other numbers as Double, the types Firestore returns. */
+  private static final ObjectMapper MAPPER =
+      new ObjectMapper().enable(DeserializationFeature.USE_LONG_FOR_INTS);
+
+  private static final TypeReference<Map<String, Object>> DOCUMENT_TYPE =
+      new TypeReference<Map<String, Object>>() {};
+
+  @Autowired private JdbcTemplate jdbcTemplate;
+
+  @Autowired private TransactionTemplate transactionTemplate;
+
+  @Autowired private StoredResponseConverter storedResponseConverter;
+
+  @Value("${response.jdbc.batch-size:500}")
+  private int batchSize;
+
+  private XLogger logger = XLoggerFactory.getXLogger(JdbcResponsesDaoImpl.class.getName());
+
+  @Override
+  public void saveStudyMetadata(
+      String studyCollectionName, String studyId, Map<String, Object> dataToStore)
+      throws ProcessResponseException {
+    logger.entry("begin saveStudyMetadata()");
+    if (studyId == null || dataToStore == null) {
+      throw new ProcessResponseException(
+          "JdbcResponsesDaoImpl.saveStudyMetadata() - Study Id is null or dataToStore is null");
+    }
+    try {
+      jdbcTemplate.update(
+          UPSERT_STUDY_METADATA_SQL, studyId, MAPPER.writeValueAsString(dataToStore));
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(e.getMessage());
+    }
+  }
+
+  @Override
+  public StoredResponseBean getActivityResponseDataForParticipant(
+      String studyCollectionName,
+      String studyId,
+      String siteId,
+      String participantId,
+      String activityId,
+      String questionKey)
+      throws ProcessResponseException {
+    logger.entry("begin getActivityResponseDataForParticipant()");
+    try {
+      List<String> documents;
+      if (StringUtils.isBlank(questionKey)) {
+        documents =
+            jdbcTemplate.queryForList(
+                SELECT_RESPONSES_SQL, String.class, studyId, participantId, siteId, activityId);
+      } else {
+        documents =
+            jdbcTemplate.queryForList(
+                SELECT_RESPONSES_SQL + QUESTION_FILTER_SQL,
+                String.class,
+                studyId,
+                participantId,
+                siteId,
+                activityId,
+                questionKey);
+      }
+      List<Map<String, Object>> activityResponseMapList = new ArrayList<>();
+      for (String document : documents) {
+        activityResponseMapList.add(MAPPER.readValue(document, DOCUMENT_TYPE));
+      }
+      return storedResponseConverter.toStoredResponseBean(participantId, activityResponseMapList);
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(e.getMessage());
+    }
+  }
+
+  /** The responses are found through the question index table, the answers are read from them. */
+  @Override
+  public StoredResponseBean getQuestionResponseDataForParticipant(
+      String studyCollectionName,
+      String studyId,
+      String siteId,
+      String participantId,
+      String activityId,
+      String questionKey,
+      Long since,
+      Integer limit)
+      throws ProcessResponseException {
+    logger.entry("begin getQuestionResponseDataForParticipant()");
+    try {
+      List<Map<String, Object>> activityResponseMapList = new ArrayList<>();
+      for (String document :
+          jdbcTemplate.queryForList(
+              SELECT_RESPONSES_SQL + QUESTION_FILTER_SQL,
+              String.class,
+              studyId,
+              participantId,
+              siteId,
+              activityId,
+              questionKey)) {
+        activityResponseMapList.add(MAPPER.readValue(document, DOCUMENT_TYPE));
+      }
+      return storedResponseConverter.documentsToQuestionResponseBean(
+          participantId, questionKey, activityResponseMapList, since, limit);
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(e.getMessage());
+    }
+  }
+
+  @Override
+  public void saveActivityResponseData(
+      String studyId,
+      String studyCollectionName,
+      String activitiesCollectionName,
+      Map<String, Object> dataToStoreActivityResults)
+      throws ProcessResponseException {
+    saveActivityResponseDataList(
+        studyId,
+        studyCollectionName,
+        activitiesCollectionName,
+        Collections.singletonList(dataToStoreActivityResults));
+  }
+
+  @Override
+  public void saveActivityResponseDataList(
+      String studyId,
+      String studyCollectionName,
+      String activitiesCollectionName,
+      List<Map<String, Object>> dataToStoreActivityResultsList)
+      throws ProcessResponseException {
+    logger.entry("begin saveActivityResponseDataList()");
+    if (dataToStoreActivityResultsList.isEmpty()) {
+      return;
+    }
+    List<Object[]> responseRows = new ArrayList<>();
+    List<Object[]> questionRows = new ArrayList<>();
+    Object studyVersion = null;
+    for (Map<String, Object> dataToStoreActivityResults : dataToStoreActivityResultsList) {
+      try {
+        responseRows.add(
+            new Object[] {studyId, MAPPER.writeValueAsString(dataToStoreActivityResults)});
+      } catch (JsonProcessingException e) {
+        logger.error(e.getMessage(), e);
+        throw new ProcessResponseException(e.getMessage());
+      }
+      String participantId =
+          (String) dataToStoreActivityResults.get(AppConstants.PARTICIPANT_ID_KEY);
+      String activityId = (String) dataToStoreActivityResults.get(AppConstants.ACTIVITY_ID_KEY);
+      String activityRunId =
+          (String) dataToStoreActivityResults.get(AppConstants.ACTIVITY_RUN_ID_KEY);
+      if (participantId != null && activityId != null) {
+        for (String questionKey :
+            StoredResponseConverter.getQuestionKeys(dataToStoreActivityResults)) {
+          questionRows.add(
+              new Object[] {
+                studyId,
+                participantId,
+                activityId,
+                StringUtils.defaultString(activityRunId),
+                questionKey
+              });
+        }
+      }
+      studyVersion = dataToStoreActivityResults.get(AppConstants.STUDY_VERSION_KEY);
+    }
+    Object lastStudyVersion = studyVersion;
+
+    try {
+      transactionTemplate.execute(
+          status -> {
+            jdbcTemplate.batchUpdate(INSERT_RESPONSE_SQL, responseRows, batchSize, this::setRow);
+            jdbcTemplate.batchUpdate(INSERT_QUESTION_SQL, questionRows, batchSize, this::setRow);
+            if (lastStudyVersion != null) {
+              jdbcTemplate.update(
+                  UPSERT_STUDY_VERSION_SQL, studyId, lastStudyVersion, lastStudyVersion);
+            }
+            return null;
+          });
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(e.getMessage());
+    }
+  }
+
+  @Override
+  public void deleteActivityResponseDataForParticipant(
+      String studyCollectionName,
+      String studyId,
+      String activitiesCollectionName,
+      String participantId)
+      throws ProcessResponseException {
+    logger.entry("begin deleteActivityResponseDataForParticipant()");
+    try {
+      transactionTemplate.execute(
+          status -> {
+            jdbcTemplate.update(DELETE_QUESTIONS_SQL, studyId, participantId);
+            return jdbcTemplate.update(DELETE_RESPONSES_SQL, studyId, participantId);
+          });
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(e.getMessage());
+    }
+  }
+
+  @Override
+  public void updateWithdrawalStatusForParticipant(
+      String studyCollectionName, String studyId, String participantId)
+      throws ProcessResponseException {
+    logger.entry("begin updateWithdrawalStatusForParticipant()");
+    try {
+      jdbcTemplate.update(UPDATE_WITHDRAWAL_STATUS_SQL, studyId, participantId);
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(e.getMessage());
+    }
+  }
+
+  @Override
+  public ResponseExportPage getActivityResponseDataPage(
+      String studyCollectionName,
+      String studyId,
+      ResponseExportFilter filter,
+      String cursor,
+      int pageSize)
+      throws ProcessResponseException {
+    logger.entry("begin getActivityResponseDataPage()");
+    try {
+      StringBuilder sql = new StringBuilder(SELECT_RESPONSE_PAGE_SQL);
+      List<Object> args = new ArrayList<>();
+      args.add(studyId);
+      args.add(cursor == null ? 0L : Long.parseLong(cursor));
+      if (StringUtils.isNotBlank(filter.getSiteId())) {
+        sql.append(" AND site_id = ?");
+        args.add(filter.getSiteId());
+      }
+      if (StringUtils.isNotBlank(filter.getActivityId())) {
+        sql.append(" AND activity_id = ?");
+        args.add(filter.getActivityId());
+      }
+      sql.append(" ORDER BY id LIMIT ?");
+      args.add(pageSize);
+
+      ResponseExportPage page = new ResponseExportPage();
+      long[] lastId = {0L};
+      int[] rows = {0};
+      jdbcTemplate.query(
+          sql.toString(),
+          resultSet -> {
+            lastId[0] = resultSet.getLong("id");
+            rows[0]++;
+            Map<String, Object> document = readDocument(resultSet.getString("document"));
+            if (filter.matches(document)) {
+              page.getDocuments().add(document);
+            }
+          },
+          args.toArray());
+      if (rows[0] == pageSize) {
+        page.setNextCursor(String.valueOf(lastId[0]));
+      }
+      return page;
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new ProcessResponseException(e.getMessage());
+    }
+  }
+
+  private static Map<String, Object> readDocument(String document) {
+    try {
+      return MAPPER.readValue(document, DOCUMENT_TYPE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void setRow(PreparedStatement statement, Object[] row) throws SQLException {
+    for (int i = 0; i < row.length; i++) {
+      statement.setObject(i + 1, row[i]);
+    }
+  }
+}
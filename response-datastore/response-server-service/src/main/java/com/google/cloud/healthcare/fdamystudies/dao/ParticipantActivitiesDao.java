@@ -14,12 +14,23 @@ import java.util.List;
 
 public interface ParticipantActivitiesDao {
 
-  void saveParticipantActivities(List<ParticipantActivitiesEntity> participantActivitiesList)
+  void saveParticipantActivities(
+      String studyId,
+      String participantId,
+      List<ParticipantActivitiesEntity> participantActivitiesList)
       throws ProcessActivityStateException;
 
   List<ParticipantActivitiesEntity> getParticipantActivities(String studyId, String participantId)
       throws ProcessActivityStateException;
 
+  List<ParticipantActivitiesEntity> getParticipantActivitiesModifiedAfter(
+      String studyId, String participantId, long modificationVersion)
+      throws ProcessActivityStateException;
+
+  /** @return the highest modification version of the activities of the participant, or 0 */
+  long getParticipantActivitiesVersion(String studyId, String participantId)
+      throws ProcessActivityStateException;
+
   void deleteParticipantActivites(String studyId, String participantId)
       throws ProcessActivityStateException;
 }
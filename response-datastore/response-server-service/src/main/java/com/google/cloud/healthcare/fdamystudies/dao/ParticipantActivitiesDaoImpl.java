@@ -10,7 +10,11 @@ package com.google.cloud.healthcare.fdamystudies.dao;
 
 import com.google.cloud.healthcare.fdamystudies.exception.ProcessActivityStateException;
 import com.google.cloud.healthcare.fdamystudies.response.model.ParticipantActivitiesEntity;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.List;
+import java.util.UUID;
 import javax.persistence.EntityManagerFactory;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
@@ -19,14 +23,40 @@ import org.hibernate.query.Query;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Repository
 public class ParticipantActivitiesDaoImpl implements ParticipantActivitiesDao {
 
+  private static final String UPSERT_PARTICIPANT_ACTIVITY_SQL =
+      "INSERT INTO participant_activities (id, participant_id, study_id, activity_id, bookmark, "
+          + "activity_version, activity_state, activity_run_id, total_count, completed_count, "
+          + "missed_count, modification_version, created_time) "
+          + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+          + "ON DUPLICATE KEY UPDATE bookmark = VALUES(bookmark), "
+          + "activity_version = VALUES(activity_version), "
+          + "activity_state = VALUES(activity_state), "
+          + "activity_run_id = VALUES(activity_run_id), total_count = VALUES(total_count), "
+          + "completed_count = VALUES(completed_count), missed_count = VALUES(missed_count), "
+          + "modification_version = VALUES(modification_version)";
+
+  private static final String SELECT_VERSIONS_FOR_UPDATE_SQL =
+      "SELECT modification_version FROM participant_activities "
+          + "WHERE study_id = ? AND participant_id = ? FOR UPDATE";
+
   private XLogger logger = XLoggerFactory.getXLogger(ParticipantActivitiesDaoImpl.class.getName());
   @Autowired private EntityManagerFactory entityManagerFactory;
 
+  @Autowired private JdbcTemplate jdbcTemplate;
+
+  @Autowired private TransactionTemplate transactionTemplate;
+
+  @Value("${response.jdbc.batch-size:500}")
+  private int batchSize;
+
   @Override
   @SuppressWarnings("unchecked")
   public List<ParticipantActivitiesEntity> getParticipantActivities(
@@ -59,33 +89,101 @@ public class ParticipantActivitiesDaoImpl implements ParticipantActivitiesDao {
   }
 
   @Override
-  public void saveParticipantActivities(List<ParticipantActivitiesEntity> participantActivitiesList)
+  public List<ParticipantActivitiesEntity> getParticipantActivitiesModifiedAfter(
+      String studyId, String participantId, long modificationVersion)
       throws ProcessActivityStateException {
-    logger.entry("begin saveParticipantActivities()");
+    logger.entry("begin getParticipantActivitiesModifiedAfter()");
+    try (Session session = entityManagerFactory.unwrap(SessionFactory.class).openSession()) {
+      return session
+          .createQuery(
+              "from ParticipantActivitiesEntity where studyId = :studyId "
+                  + "and participantId = :participantId "
+                  + "and modificationVersion > :modificationVersion",
+              ParticipantActivitiesEntity.class)
+          .setParameter("studyId", studyId)
+          .setParameter("participantId", participantId)
+          .setParameter("modificationVersion", modificationVersion)
+          .getResultList();
+    } catch (Exception e) {
+      logger.error("getParticipantActivitiesModifiedAfter: (ERROR) ", e);
+      throw new ProcessActivityStateException(
+          "Exception getting activity state data" + e.getMessage());
+    }
+  }
 
-    Transaction transaction = null;
-    Session session = null;
+  @Override
+  public long getParticipantActivitiesVersion(String studyId, String participantId)
+      throws ProcessActivityStateException {
+    try (Session session = entityManagerFactory.unwrap(SessionFactory.class).openSession()) {
+      Long modificationVersion =
+          session
+              .createQuery(
+                  "select max(modificationVersion) from ParticipantActivitiesEntity "
+                      + "where studyId = :studyId and participantId = :participantId",
+                  Long.class)
+              .setParameter("studyId", studyId)
+              .setParameter("participantId", participantId)
+              .uniqueResult();
+      return modificationVersion == null ? 0L : modificationVersion;
+    } catch (Exception e) {
+      logger.error("getParticipantActivitiesVersion: (ERROR) ", e);
+      throw new ProcessActivityStateException(
+          "Exception getting activity state version" + e.getMessage());
+    }
+  }
 
-    try {
-      session = entityManagerFactory.unwrap(SessionFactory.class).openSession();
-      transaction = session.beginTransaction();
+  /**
+   * Inserts the activities, or updates the ones already saved for the participant, in batches. The
+   * existing row of an activity is found by its ID or by the unique key on study, participant and
+   * activity.
+   *
+   * <p>The activities saved get the next modification version of the participant, whose rows are
+   * locked meanwhile. The version is at least the current time in milliseconds, so that it keeps
+   * increasing after the activities of the participant are deleted.
+   */
+  @Override
+  public void saveParticipantActivities(
+      String studyId,
+      String participantId,
+      List<ParticipantActivitiesEntity> participantActivitiesList)
+      throws ProcessActivityStateException {
+    logger.entry("begin saveParticipantActivities()");
+    if (participantActivitiesList.isEmpty()) {
+      logger.exit("saveParticipantActivities() - nothing to save ");
+      return;
+    }
 
-      for (ParticipantActivitiesEntity participantActivities : participantActivitiesList) {
-        session.saveOrUpdate(participantActivities);
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    for (ParticipantActivitiesEntity participantActivities : participantActivitiesList) {
+      if (participantActivities.getId() == null) {
+        participantActivities.setId(UUID.randomUUID().toString().replace("-", ""));
+        participantActivities.setCreated(now);
       }
-      transaction.commit();
+    }
 
+    try {
+      transactionTemplate.execute(
+          status -> {
+            long modificationVersion = System.currentTimeMillis();
+            for (Long savedVersion :
+                jdbcTemplate.queryForList(
+                    SELECT_VERSIONS_FOR_UPDATE_SQL, Long.class, studyId, participantId)) {
+              modificationVersion = Math.max(modificationVersion, savedVersion + 1);
+            }
+            for (ParticipantActivitiesEntity participantActivities : participantActivitiesList) {
+              participantActivities.setModificationVersion(modificationVersion);
+            }
+            return jdbcTemplate.batchUpdate(
+                UPSERT_PARTICIPANT_ACTIVITY_SQL,
+                participantActivitiesList,
+                batchSize,
+                this::setParticipantActivity);
+          });
     } catch (Exception e) {
       logger.error("saveParticipantActivities - error ", e.getMessage());
       throw new ProcessActivityStateException(
           "Exception save activity state data" + e.getMessage());
     } finally {
-      if (transaction != null) {
-        transaction.rollback();
-      }
-      if (session != null) {
-        session.close();
-      }
       logger.exit("saveParticipantActivities() - Ends ");
     }
   }
@@ -126,4 +224,22 @@ public class ParticipantActivitiesDaoImpl implements ParticipantActivitiesDao {
       throw new ProcessActivityStateException("Required input parameter is null");
     }
   }
+
+  private void setParticipantActivity(
+      PreparedStatement statement, ParticipantActivitiesEntity participantActivities)
+      throws SQLException {
+    statement.setString(1, participantActivities.getId());
+    statement.setString(2, participantActivities.getParticipantId());
+    statement.setString(3, participantActivities.getStudyId());
+    statement.setString(4, participantActivities.getActivityId());
+    statement.setObject(5, participantActivities.getBookmark());
+    statement.setString(6, participantActivities.getActivityVersion());
+    statement.setString(7, participantActivities.getActivityState());
+    statement.setString(8, participantActivities.getActivityRunId());
+    statement.setObject(9, participantActivities.getTotalCount());
+    statement.setObject(10, participantActivities.getCompletedCount());
+    statement.setObject(11, participantActivities.getMissedCount());
+    statement.setLong(12, participantActivities.getModificationVersion());
+    statement.setTimestamp(13, participantActivities.getCreated());
+  }
 }
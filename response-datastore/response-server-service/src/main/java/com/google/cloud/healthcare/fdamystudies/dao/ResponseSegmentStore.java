@@ -0,0 +1,1053 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.dao;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * Log structured store of the activity responses of one study.
+ *
+ * <p>Responses, participant deletions (tombstones) and withdrawals are appended as lines to the
+ * active segment file, which is sealed and replaced once it reaches the maximum size. Each line
+ * holds the sequence number, a CRC32, the record type and the payload, so a line torn by a crash is
+ * cut off when the store is opened again.
+ *
+ * <p>Sealed segments are covered by an index file, rewritten when a segment is sealed or compacted
+ * and memory-mapped for lookups. It holds the participant tombstones and withdrawals, and entries
+ * sorted by a 64 bit hash of the participant, activity and question key that point to the records
+ * holding them. Records of the active segment are indexed in memory and replayed on open.
+ *
+ * <p>Compaction rewrites the sealed segments without the records of deleted participants, with the
+ * withdrawal status set on the records of withdrawn participants, and drops the tombstones and
+ * withdrawal records themselves, whose state is kept in the index file.
+ */
+public class ResponseSegmentStore implements Closeable {
+
+  private static final String SEGMENT_PREFIX = "segment-";
+
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  private static final String INDEX_PREFIX = "index-";
+
+  private static final String INDEX_SUFFIX = ".idx";
+
+  private static final String TMP_SUFFIX = ".tmp";
+
+  private static final int INDEX_MAGIC = 0x52535849;
+
+  private static final int INDEX_VERSION = 1;
+
+  /** Key hash, segment, offset and length of an indexed record. */
+  private static final int ENTRY_BYTES = 8 + 8 + 8 + 4;
+
+  private static final char SEPARATOR = '\t';
+
+  private static final char PUT = 'P';
+
+  private static final char DELETE = 'D';
+
+  private static final char WITHDRAW = 'W';
+
+  /** Reads whole numbers as Long and other numbers as Double, the types Firestore returns. */
+  private static final ObjectMapper MAPPER =
+      new ObjectMapper().enable(DeserializationFeature.USE_LONG_FOR_INTS);
+
+  private static final TypeReference<Map<String, Object>> DOCUMENT_TYPE =
+      new TypeReference<Map<String, Object>>() {};
+
+  private static final Comparator<Entry> ENTRY_ORDER =
+      Comparator.comparingLong((Entry entry) -> entry.hash)
+          .thenComparingLong(entry -> entry.location.segment)
+          .thenComparingLong(entry -> entry.location.offset);
+
+  private XLogger logger = XLoggerFactory.getXLogger(ResponseSegmentStore.class.getName());
+
+  private final Path directory;
+
+  private final long segmentMaxBytes;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final AtomicBoolean compacting = new AtomicBoolean();
+
+  private final AtomicLong nextSegment = new AtomicLong(1);
+
+  private final Map<Long, FileChannel> readChannels = new ConcurrentHashMap<>();
+
+  /** Entries of the records in the active segment, by key hash. */
+  private final Map<Long, List<Location>> activeEntries = new HashMap<>();
+
+  private final Map<String, ParticipantState> participants = new HashMap<>();
+
+  private Index index;
+
+  private FileChannel activeChannel;
+
+  private long activeSegment;
+
+  private long lastSequence;
+
+  private int sealedSinceCompaction;
+
+  private boolean tombstonesSinceCompaction;
+
+  public ResponseSegmentStore(Path directory, long segmentMaxBytes) throws IOException {
+    this.directory = directory;
+    this.segmentMaxBytes = segmentMaxBytes;
+    Files.createDirectories(directory);
+    recover();
+  }
+
+  /** Appends the response documents and forces them to disk once. */
+  public void put(List<Map<String, Object>> documents) throws IOException {
+    if (documents.isEmpty()) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      for (Map<String, Object> document : documents) {
+        Location location = append(PUT, MAPPER.writeValueAsString(document));
+        for (long hash : keyHashes(document)) {
+          activeEntries.computeIfAbsent(hash, k -> new ArrayList<>()).add(location);
+        }
+      }
+      activeChannel.force(false);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Appends the response documents whose activity run is not stored yet for the participant, and
+   * forces them to disk once. The check and the append hold the same lock, so concurrent saves of
+   * one activity run store it once.
+   *
+   * @return the number of documents appended
+   */
+  public int putIfAbsent(List<Map<String, Object>> documents) throws IOException {
+    lock.writeLock().lock();
+    try {
+      List<Map<String, Object>> newDocuments = new ArrayList<>();
+      Set<List<Object>> newRuns = new HashSet<>();
+      for (Map<String, Object> document : documents) {
+        String participantId = (String) document.get(AppConstants.PARTICIPANT_ID_KEY);
+        String activityId = (String) document.get(AppConstants.ACTIVITY_ID_KEY);
+        String activityRunId = (String) document.get(AppConstants.ACTIVITY_RUN_ID_KEY);
+        if (contains(participantId, activityId, activityRunId)
+            || (activityRunId != null
+                && !newRuns.add(Arrays.asList(participantId, activityId, activityRunId)))) {
+          continue;
+        }
+        newDocuments.add(document);
+      }
+      put(newDocuments);
+      return newDocuments.size();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** @return the live responses of the participant for the activity, optionally to a question */
+  public List<Map<String, Object>> find(String participantId, String activityId, String questionKey)
+      throws IOException {
+    lock.readLock().lock();
+    try {
+      ParticipantState state = participants.get(participantId);
+      List<Map<String, Object>> documents = new ArrayList<>();
+      for (Location location : locate(hash(participantId, activityId, questionKey))) {
+        Record record = read(location);
+        if (record == null || record.type != PUT || (state != null && state.isDeleted(record))) {
+          continue;
+        }
+        Map<String, Object> document = MAPPER.readValue(record.payload, DOCUMENT_TYPE);
+        // entries of other keys can share the hash
+        if (!Objects.equals(participantId, document.get(AppConstants.PARTICIPANT_ID_KEY))
+            || !Objects.equals(activityId, document.get(AppConstants.ACTIVITY_ID_KEY))
+            || (questionKey != null
+                && !StoredResponseConverter.getQuestionKeys(document).contains(questionKey))) {
+          continue;
+        }
+        if (state != null && state.isWithdrawn(record)) {
+          document.put(AppConstants.WITHDRAWAL_STATUS_KEY, true);
+        }
+        documents.add(document);
+      }
+      return documents;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** @return true if a live response of the activity run is stored for the participant */
+  public boolean contains(String participantId, String activityId, String activityRunId)
+      throws IOException {
+    for (Map<String, Object> document : find(participantId, activityId, null)) {
+      if (activityRunId != null
+          && activityRunId.equals(document.get(AppConstants.ACTIVITY_RUN_ID_KEY))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Reads the live responses appended after the cursor in the order they were appended, and adds
+   * the ones accepted by the filter to the documents. The cursor holds the sequence number of the
+   * last record read, and the segment and offset to go on from while compaction has not rewritten
+   * that segment. Appends wait while the page is read.
+   *
+   * @param cursor the cursor returned for the previous page, or null to read from the start
+   * @param limit maximum number of records read
+   * @return the cursor of the next page, or null once the last record was read
+   */
+  public String scan(
+      String cursor,
+      int limit,
+      Predicate<Map<String, Object>> filter,
+      List<Map<String, Object>> documents)
+      throws IOException {
+    long afterSequence = 0;
+    long cursorSegment = -1;
+    long cursorOffset = 0;
+    if (cursor != null) {
+      String[] fields = cursor.split(":");
+      afterSequence = Long.parseLong(fields[0]);
+      cursorSegment = Long.parseLong(fields[1]);
+      cursorOffset = Long.parseLong(fields[2]);
+    }
+    lock.readLock().lock();
+    try {
+      // compaction keeps the order of the records but gives the rewritten segments new numbers
+      TreeMap<Long, Long> segmentsByFirstSequence = new TreeMap<>();
+      List<Long> segments = new ArrayList<>(index.covered);
+      if (activeChannel != null) {
+        segments.add(activeSegment);
+      }
+      for (long segment : segments) {
+        long firstSequence = firstSequence(segment);
+        if (firstSequence > 0) {
+          segmentsByFirstSequence.put(firstSequence, segment);
+        }
+      }
+      Long start = segmentsByFirstSequence.floorKey(afterSequence + 1);
+      Map<Long, Long> ordered =
+          start == null ? segmentsByFirstSequence : segmentsByFirstSequence.tailMap(start, true);
+
+      int read = 0;
+      long lastSequence = afterSequence;
+      for (Map.Entry<Long, Long> first : ordered.entrySet()) {
+        long segment = first.getValue();
+        // the offset is only valid in the segment still holding the last record read
+        long offset =
+            segment == cursorSegment && first.getKey() <= afterSequence ? cursorOffset : 0;
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ);
+            BufferedReader reader =
+                new BufferedReader(
+                    new InputStreamReader(
+                        Channels.newInputStream(channel.position(offset)),
+                        StandardCharsets.UTF_8))) {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            long lineOffset = offset;
+            offset += line.getBytes(StandardCharsets.UTF_8).length + 1;
+            Record record = decode(line);
+            if (record == null || record.sequence <= afterSequence) {
+              continue;
+            }
+            if (read == limit) {
+              return String.format("%d:%d:%d", lastSequence, segment, lineOffset);
+            }
+            read++;
+            lastSequence = record.sequence;
+            if (record.type != PUT) {
+              continue;
+            }
+            Map<String, Object> document = MAPPER.readValue(record.payload, DOCUMENT_TYPE);
+            ParticipantState state =
+                participants.get((String) document.get(AppConstants.PARTICIPANT_ID_KEY));
+            if (state != null && state.isDeleted(record)) {
+              continue;
+            }
+            if (state != null && state.isWithdrawn(record)) {
+              document.put(AppConstants.WITHDRAWAL_STATUS_KEY, true);
+            }
+            if (filter.test(document)) {
+              documents.add(document);
+            }
+          }
+        }
+      }
+      return null;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Appends a tombstone hiding every response stored so far for the participant. */
+  public void delete(String participantId) throws IOException {
+    appendParticipantRecord(DELETE, participantId);
+  }
+
+  /** Appends a withdrawal flag for every response stored so far for the participant. */
+  public void withdraw(String participantId) throws IOException {
+    appendParticipantRecord(WITHDRAW, participantId);
+  }
+
+  /**
+   * @return true if at least minSegments segments were sealed, or a participant was deleted or
+   *     withdrawn, since the last compaction
+   */
+  public boolean needsCompaction(int minSegments) {
+    lock.readLock().lock();
+    try {
+      return !index.covered.isEmpty()
+          && (sealedSinceCompaction >= minSegments || tombstonesSinceCompaction);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Rewrites the sealed segments. Appends and lookups go on while the segments are rewritten, they
+   * are blocked only while the new index is swapped in.
+   */
+  public void compact() throws IOException {
+    if (!compacting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      Set<Long> inputs;
+      Map<String, ParticipantState> states = new HashMap<>();
+      lock.writeLock().lock();
+      try {
+        inputs = new TreeSet<>(index.covered);
+        for (Map.Entry<String, ParticipantState> state : participants.entrySet()) {
+          states.put(state.getKey(), state.getValue().copy());
+        }
+        sealedSinceCompaction = 0;
+        tombstonesSinceCompaction = false;
+      } finally {
+        lock.writeLock().unlock();
+      }
+      if (inputs.isEmpty()) {
+        return;
+      }
+
+      long inputBytes = 0;
+      List<Long> outputs = new ArrayList<>();
+      List<Entry> entries = new ArrayList<>();
+      FileChannel output = null;
+      try {
+        for (long input : inputs) {
+          inputBytes += Files.size(segmentPath(input));
+          try (BufferedReader reader = newReader(segmentPath(input))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+              Record record = decode(line);
+              if (record == null || record.type != PUT) {
+                continue;
+              }
+              Map<String, Object> document = MAPPER.readValue(record.payload, DOCUMENT_TYPE);
+              ParticipantState state =
+                  states.get((String) document.get(AppConstants.PARTICIPANT_ID_KEY));
+              if (state != null && state.isDeleted(record)) {
+                continue;
+              }
+              String payload = record.payload;
+              if (state != null && state.isWithdrawn(record)) {
+                document.put(AppConstants.WITHDRAWAL_STATUS_KEY, true);
+                payload = MAPPER.writeValueAsString(document);
+              }
+              if (output == null || output.size() >= segmentMaxBytes) {
+                if (output != null) {
+                  output.force(true);
+                  output.close();
+                }
+                long segment = nextSegment.getAndIncrement();
+                output =
+                    FileChannel.open(
+                        tmpPath(segmentPath(segment)),
+                        StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE);
+                outputs.add(segment);
+              }
+              Location location =
+                  write(output, outputs.get(outputs.size() - 1), record.sequence, PUT, payload);
+              for (long hash : keyHashes(document)) {
+                entries.add(new Entry(hash, location));
+              }
+            }
+          }
+        }
+        if (output != null) {
+          output.force(true);
+        }
+      } finally {
+        if (output != null) {
+          output.close();
+        }
+      }
+
+      long outputBytes = 0;
+      lock.writeLock().lock();
+      try {
+        Set<Long> covered = new TreeSet<>(index.covered);
+        covered.removeAll(inputs);
+        covered.addAll(outputs);
+        writeIndex(covered, inputs, entries);
+        for (long segment : outputs) {
+          Files.move(
+              tmpPath(segmentPath(segment)), segmentPath(segment), StandardCopyOption.ATOMIC_MOVE);
+          outputBytes += Files.size(segmentPath(segment));
+        }
+        for (long segment : inputs) {
+          FileChannel channel = readChannels.remove(segment);
+          if (channel != null) {
+            channel.close();
+          }
+          Files.deleteIfExists(segmentPath(segment));
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+      logger.info(
+          String.format(
+              "compacted %d segments of %s from %d to %d bytes",
+              inputs.size(), directory, inputBytes, outputBytes));
+    } finally {
+      compacting.set(false);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (activeChannel != null) {
+        activeChannel.close();
+        activeChannel = null;
+      }
+      for (FileChannel channel : readChannels.values()) {
+        channel.close();
+      }
+      readChannels.clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void appendParticipantRecord(char type, String participantId) throws IOException {
+    lock.writeLock().lock();
+    try {
+      Location location = append(type, participantId);
+      activeChannel.force(false);
+      participants
+          .computeIfAbsent(participantId, k -> new ParticipantState())
+          .apply(type, location.sequence);
+      tombstonesSinceCompaction = true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private Location append(char type, String payload) throws IOException {
+    if (activeChannel == null || activeChannel.size() >= segmentMaxBytes) {
+      rollSegment();
+    }
+    Location location = write(activeChannel, activeSegment, lastSequence + 1, type, payload);
+    lastSequence = location.sequence;
+    return location;
+  }
+
+  private static Location write(
+      FileChannel channel, long segment, long sequence, char type, String payload)
+      throws IOException {
+    byte[] line = encode(sequence, type, payload);
+    long offset = channel.size();
+    ByteBuffer buffer = ByteBuffer.wrap(line);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, offset + buffer.position());
+    }
+    return new Location(segment, offset, line.length - 1, sequence);
+  }
+
+  /** Seals the active segment into the index and starts a new one. */
+  private void rollSegment() throws IOException {
+    if (activeChannel != null) {
+      activeChannel.force(true);
+      activeChannel.close();
+      List<Entry> entries = new ArrayList<>();
+      for (Map.Entry<Long, List<Location>> activeEntry : activeEntries.entrySet()) {
+        for (Location location : activeEntry.getValue()) {
+          entries.add(new Entry(activeEntry.getKey(), location));
+        }
+      }
+      Set<Long> covered = new TreeSet<>(index.covered);
+      covered.add(activeSegment);
+      activeSegment = nextSegment.getAndIncrement();
+      writeIndex(covered, Collections.emptySet(), entries);
+      activeEntries.clear();
+      sealedSinceCompaction++;
+    } else {
+      activeSegment = nextSegment.getAndIncrement();
+    }
+    activeChannel =
+        FileChannel.open(
+            segmentPath(activeSegment), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Writes a new index generation holding the entries of the current index that do not point to
+   * the dropped segments, merged with the added entries, and maps it in place of the current one.
+   */
+  private void writeIndex(Set<Long> covered, Set<Long> dropped, List<Entry> added)
+      throws IOException {
+    added.sort(ENTRY_ORDER);
+    long count = 0;
+    for (long i = 0; i < index.count; i++) {
+      if (!dropped.contains(index.segmentAt(i))) {
+        count++;
+      }
+    }
+    count += added.size();
+
+    long generation = index.generation + 1;
+    Path path = indexPath(generation);
+    Path tmp = tmpPath(path);
+    try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+      out.writeInt(INDEX_MAGIC);
+      out.writeInt(INDEX_VERSION);
+      out.writeLong(lastSequence);
+      out.writeLong(activeSegment);
+      out.writeInt(covered.size());
+      for (long segment : covered) {
+        out.writeLong(segment);
+      }
+      out.writeInt(participants.size());
+      for (Map.Entry<String, ParticipantState> participant : participants.entrySet()) {
+        byte[] participantId = participant.getKey().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(participantId.length);
+        out.write(participantId);
+        out.writeLong(participant.getValue().deletedUpTo);
+        out.writeLong(participant.getValue().withdrawnUpTo);
+      }
+      out.writeLong(count);
+
+      // merge the sorted entries of the current index with the sorted added entries
+      int next = 0;
+      for (long i = 0; i < index.count; i++) {
+        Entry entry = index.entryAt(i);
+        if (dropped.contains(entry.location.segment)) {
+          continue;
+        }
+        while (next < added.size() && ENTRY_ORDER.compare(added.get(next), entry) < 0) {
+          writeEntry(out, added.get(next++));
+        }
+        writeEntry(out, entry);
+      }
+      while (next < added.size()) {
+        writeEntry(out, added.get(next++));
+      }
+      out.flush();
+      file.getFD().sync();
+    }
+    Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+
+    long previousGeneration = index.generation;
+    index = Index.load(path, generation);
+    // the previous mapping is released when it is garbage collected
+    Files.deleteIfExists(indexPath(previousGeneration));
+  }
+
+  private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+    out.writeLong(entry.hash);
+    out.writeLong(entry.location.segment);
+    out.writeLong(entry.location.offset);
+    out.writeInt(entry.location.length);
+  }
+
+  private List<Location> locate(long hash) {
+    List<Location> locations = new ArrayList<>(index.find(hash));
+    locations.addAll(activeEntries.getOrDefault(hash, Collections.emptyList()));
+    return locations;
+  }
+
+  private Record read(Location location) throws IOException {
+    FileChannel channel = readChannels.get(location.segment);
+    if (channel == null) {
+      channel = FileChannel.open(segmentPath(location.segment), StandardOpenOption.READ);
+      FileChannel existing = readChannels.putIfAbsent(location.segment, channel);
+      if (existing != null) {
+        channel.close();
+        channel = existing;
+      }
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(location.length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, location.offset + buffer.position()) < 0) {
+        return null;
+      }
+    }
+    return decode(new String(buffer.array(), StandardCharsets.UTF_8));
+  }
+
+  private void recover() throws IOException {
+    long generation = 0;
+    List<Path> indexFiles = new ArrayList<>();
+    try (DirectoryStream<Path> stream =
+        Files.newDirectoryStream(directory, INDEX_PREFIX + "*" + INDEX_SUFFIX)) {
+      for (Path path : stream) {
+        indexFiles.add(path);
+        generation = Math.max(generation, sequenceOf(path, INDEX_PREFIX, INDEX_SUFFIX));
+      }
+    }
+    index = generation == 0 ? Index.EMPTY : Index.load(indexPath(generation), generation);
+    for (Path path : indexFiles) {
+      if (!path.equals(indexPath(generation))) {
+        Files.delete(path);
+      }
+    }
+    Files.deleteIfExists(tmpPath(indexPath(generation + 1)));
+    participants.putAll(index.participants);
+    lastSequence = index.lastSequence;
+
+    // compaction outputs are renamed after the index that covers them is written
+    Set<Long> segments = new TreeSet<>();
+    long maxSegment = 0;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*")) {
+      for (Path path : stream) {
+        String name = path.getFileName().toString();
+        if (name.endsWith(SEGMENT_SUFFIX + TMP_SUFFIX)) {
+          long segment = sequenceOf(path, SEGMENT_PREFIX, SEGMENT_SUFFIX + TMP_SUFFIX);
+          maxSegment = Math.max(maxSegment, segment);
+          if (index.covered.contains(segment)) {
+            Files.move(path, segmentPath(segment), StandardCopyOption.ATOMIC_MOVE);
+            segments.add(segment);
+          } else {
+            Files.delete(path);
+          }
+        } else if (name.endsWith(SEGMENT_SUFFIX)) {
+          long segment = sequenceOf(path, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+          maxSegment = Math.max(maxSegment, segment);
+          segments.add(segment);
+        }
+      }
+    }
+    for (long segment : index.covered) {
+      if (!segments.contains(segment)) {
+        logger.warn(String.format("segment %s is missing", segmentPath(segment)));
+      }
+      maxSegment = Math.max(maxSegment, segment);
+    }
+    nextSegment.set(Math.max(maxSegment, index.activeSegment) + 1);
+
+    List<Long> uncovered = new ArrayList<>();
+    for (long segment : segments) {
+      if (index.covered.contains(segment)) {
+        continue;
+      }
+      if (segment < index.activeSegment) {
+        // an input of a compaction that finished
+        Files.delete(segmentPath(segment));
+      } else {
+        uncovered.add(segment);
+      }
+    }
+    for (int i = 0; i < uncovered.size(); i++) {
+      replay(uncovered.get(i), i == uncovered.size() - 1);
+    }
+  }
+
+  /** Indexes the records of a segment that the index file does not cover. */
+  private void replay(long segment, boolean active) throws IOException {
+    long validBytes = 0;
+    try (BufferedReader reader = newReader(segmentPath(segment))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        Record record = decode(line);
+        if (record == null) {
+          break;
+        }
+        int length = line.getBytes(StandardCharsets.UTF_8).length;
+        Location location = new Location(segment, validBytes, length, record.sequence);
+        if (record.type == PUT) {
+          for (long hash : keyHashes(MAPPER.readValue(record.payload, DOCUMENT_TYPE))) {
+            activeEntries.computeIfAbsent(hash, k -> new ArrayList<>()).add(location);
+          }
+        } else {
+          participants
+              .computeIfAbsent(record.payload, k -> new ParticipantState())
+              .apply(record.type, record.sequence);
+          tombstonesSinceCompaction = true;
+        }
+        lastSequence = Math.max(lastSequence, record.sequence);
+        validBytes += length + 1;
+      }
+    }
+    if (!active) {
+      // only possible if the index of a sealed segment was not written, seal it now
+      List<Entry> entries = new ArrayList<>();
+      for (Map.Entry<Long, List<Location>> activeEntry : activeEntries.entrySet()) {
+        for (Location location : activeEntry.getValue()) {
+          entries.add(new Entry(activeEntry.getKey(), location));
+        }
+      }
+      Set<Long> covered = new TreeSet<>(index.covered);
+      covered.add(segment);
+      activeSegment = segment + 1;
+      writeIndex(covered, Collections.emptySet(), entries);
+      activeEntries.clear();
+      return;
+    }
+
+    activeSegment = segment;
+    activeChannel = FileChannel.open(segmentPath(segment), StandardOpenOption.WRITE);
+    if (activeChannel.size() > validBytes) {
+      logger.warn(
+          String.format(
+              "truncating %d bytes of a torn record in %s",
+              activeChannel.size() - validBytes, segmentPath(segment)));
+      activeChannel.truncate(validBytes);
+      activeChannel.force(true);
+    } else if (activeChannel.size() < validBytes) {
+      // the last record is complete but its line separator was not written
+      activeChannel.write(ByteBuffer.wrap(new byte[] {'\n'}), activeChannel.size());
+      activeChannel.force(true);
+    }
+  }
+
+  /** @return the sequence number of the first record of the segment, or -1 if it has none */
+  private long firstSequence(long segment) throws IOException {
+    try (BufferedReader reader = newReader(segmentPath(segment))) {
+      String line = reader.readLine();
+      Record record = line == null ? null : decode(line);
+      return record == null ? -1 : record.sequence;
+    }
+  }
+
+  private BufferedReader newReader(Path path) throws IOException {
+    return new BufferedReader(
+        new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8));
+  }
+
+  private Path segmentPath(long segment) {
+    return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+  }
+
+  private Path indexPath(long generation) {
+    return directory.resolve(String.format("%s%020d%s", INDEX_PREFIX, generation, INDEX_SUFFIX));
+  }
+
+  private static Path tmpPath(Path path) {
+    return path.resolveSibling(path.getFileName() + TMP_SUFFIX);
+  }
+
+  private static long sequenceOf(Path path, String prefix, String suffix) {
+    String name = path.getFileName().toString();
+    return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+  }
+
+  /** @return the hashes of the activity key and of each question key of the response document */
+  private static Collection<Long> keyHashes(Map<String, Object> document) {
+    String participantId = (String) document.get(AppConstants.PARTICIPANT_ID_KEY);
+    String activityId = (String) document.get(AppConstants.ACTIVITY_ID_KEY);
+    Set<Long> hashes = new LinkedHashSet<>();
+    hashes.add(hash(participantId, activityId, null));
+    for (String questionKey : StoredResponseConverter.getQuestionKeys(document)) {
+      hashes.add(hash(participantId, activityId, questionKey));
+    }
+    return hashes;
+  }
+
+  /** FNV-1a hash of the key parts, a null part hashes like an empty one. */
+  private static long hash(String participantId, String activityId, String questionKey) {
+    long hash = 0xcbf29ce484222325L;
+    for (String part : new String[] {participantId, activityId, questionKey}) {
+      if (part != null) {
+        for (byte b : part.getBytes(StandardCharsets.UTF_8)) {
+          hash ^= b & 0xff;
+          hash *= 0x100000001b3L;
+        }
+      }
+      // separates the parts
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  private static byte[] encode(long sequence, char type, String payload) {
+    StringBuilder line = new StringBuilder(payload.length() + 40);
+    line.append(sequence)
+        .append(SEPARATOR)
+        .append(Long.toHexString(crc(type, payload)))
+        .append(SEPARATOR)
+        .append(type)
+        .append(SEPARATOR)
+        .append(payload)
+        .append('\n');
+    return line.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** @return the record, or null if the line is incomplete or corrupt */
+  private static Record decode(String line) {
+    String[] fields = line.split(String.valueOf(SEPARATOR), 4);
+    if (fields.length != 4 || fields[2].length() != 1) {
+      return null;
+    }
+    try {
+      long sequence = Long.parseLong(fields[0]);
+      long expectedCrc = Long.parseLong(fields[1], 16);
+      char type = fields[2].charAt(0);
+      if (crc(type, fields[3]) != expectedCrc) {
+        return null;
+      }
+      return new Record(sequence, type, fields[3]);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static long crc(char type, String payload) {
+    CRC32 crc = new CRC32();
+    crc.update(type);
+    crc.update(payload.getBytes(StandardCharsets.UTF_8));
+    return crc.getValue();
+  }
+
+  private static class Record {
+
+    private final long sequence;
+
+    private final char type;
+
+    private final String payload;
+
+    private Record(long sequence, char type, String payload) {
+      this.sequence = sequence;
+      this.type = type;
+      this.payload = payload;
+    }
+  }
+
+  private static class Location {
+
+    private final long segment;
+
+    private final long offset;
+
+    /** Length of the line without its separator. */
+    private final int length;
+
+    /** Sequence number of the record, only known for appended or replayed records. */
+    private final long sequence;
+
+    private Location(long segment, long offset, int length, long sequence) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+      this.sequence = sequence;
+    }
+  }
+
+  private static class Entry {
+
+    private final long hash;
+
+    private final Location location;
+
+    private Entry(long hash, Location location) {
+      this.hash = hash;
+      this.location = location;
+    }
+  }
+
+  /** Deleted and withdrawn responses of a participant are the ones up to a sequence number. */
+  private static class ParticipantState {
+
+    private long deletedUpTo;
+
+    private long withdrawnUpTo;
+
+    private void apply(char type, long sequence) {
+      if (type == DELETE) {
+        deletedUpTo = Math.max(deletedUpTo, sequence);
+      } else if (type == WITHDRAW) {
+        withdrawnUpTo = Math.max(withdrawnUpTo, sequence);
+      }
+    }
+
+    private boolean isDeleted(Record record) {
+      return record.sequence <= deletedUpTo;
+    }
+
+    private boolean isWithdrawn(Record record) {
+      return record.sequence <= withdrawnUpTo;
+    }
+
+    private ParticipantState copy() {
+      ParticipantState copy = new ParticipantState();
+      copy.deletedUpTo = deletedUpTo;
+      copy.withdrawnUpTo = withdrawnUpTo;
+      return copy;
+    }
+  }
+
+  /** Memory-mapped index file, see {@link ResponseSegmentStore#writeIndex}. */
+  private static class Index {
+
+    private static final Index EMPTY =
+        new Index(0, 0, 0, Collections.emptySet(), Collections.emptyMap(), null, 0);
+
+    private final long generation;
+
+    private final long lastSequence;
+
+    /** Segment that was active when the index was written, later segments are not covered. */
+    private final long activeSegment;
+
+    private final Set<Long> covered;
+
+    private final Map<String, ParticipantState> participants;
+
+    private final ByteBuffer entries;
+
+    private final long count;
+
+    private Index(
+        long generation,
+        long lastSequence,
+        long activeSegment,
+        Set<Long> covered,
+        Map<String, ParticipantState> participants,
+        ByteBuffer entries,
+        long count) {
+      this.generation = generation;
+      this.lastSequence = lastSequence;
+      this.activeSegment = activeSegment;
+      this.covered = covered;
+      this.participants = participants;
+      this.entries = entries;
+      this.count = count;
+    }
+
+    private static Index load(Path path, long generation) throws IOException {
+      ByteBuffer buffer;
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        if (channel.size() > Integer.MAX_VALUE) {
+          throw new IOException(String.format("index %s is larger than 2GB", path));
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      if (buffer.getInt() != INDEX_MAGIC || buffer.getInt() != INDEX_VERSION) {
+        throw new IOException(String.format("%s is not a response index", path));
+      }
+      long lastSequence = buffer.getLong();
+      long activeSegment = buffer.getLong();
+      Set<Long> covered = new TreeSet<>();
+      for (int i = buffer.getInt(); i > 0; i--) {
+        covered.add(buffer.getLong());
+      }
+      Map<String, ParticipantState> participants = new HashMap<>();
+      for (int i = buffer.getInt(); i > 0; i--) {
+        byte[] participantId = new byte[buffer.getInt()];
+        buffer.get(participantId);
+        ParticipantState state = new ParticipantState();
+        state.deletedUpTo = buffer.getLong();
+        state.withdrawnUpTo = buffer.getLong();
+        participants.put(new String(participantId, StandardCharsets.UTF_8), state);
+      }
+      long count = buffer.getLong();
+      if (buffer.remaining() != count * ENTRY_BYTES) {
+        throw new IOException(String.format("index %s is truncated", path));
+      }
+      return new Index(
+          generation, lastSequence, activeSegment, covered, participants, buffer.slice(), count);
+    }
+
+    private long hashAt(long i) {
+      return entries.getLong((int) (i * ENTRY_BYTES));
+    }
+
+    private long segmentAt(long i) {
+      return entries.getLong((int) (i * ENTRY_BYTES + 8));
+    }
+
+    private Entry entryAt(long i) {
+      int position = (int) (i * ENTRY_BYTES);
+      return new Entry(
+          entries.getLong(position),
+          new Location(
+              entries.getLong(position + 8),
+              entries.getLong(position + 16),
+              entries.getInt(position + 24),
+              0));
+    }
+
+    private List<Location> find(long hash) {
+      long low = 0;
+      long high = count;
+      while (low < high) {
+        long middle = (low + high) >>> 1;
+        if (hashAt(middle) < hash) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      List<Location> locations = new ArrayList<>();
+      for (long i = low; i < count && hashAt(i) == hash; i++) {
+        locations.add(entryAt(i).location);
+      }
+      return locations;
+    }
+  }
+}
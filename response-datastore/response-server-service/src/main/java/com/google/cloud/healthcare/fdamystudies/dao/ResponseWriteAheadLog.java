@@ -0,0 +1,305 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.dao;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * Append-only log of serialized records, split in segment files named after their first sequence
+ * number. Every append is forced to disk before it returns. Each line holds the sequence number,
+ * the append time, a CRC32 of the payload and the payload itself, so that a line torn by a crash is
+ * detected and cut off when the log is opened again.
+ *
+ * <p>The consumer reads records after its checkpoint and moves the checkpoint forward once they are
+ * persisted elsewhere. Segments that only hold checkpointed records are deleted.
+ */
+public class ResponseWriteAheadLog implements Closeable {
+
+  private static final String SEGMENT_PREFIX = "responses-";
+
+  private static final String SEGMENT_SUFFIX = ".wal";
+
+  private static final String CHECKPOINT_FILE = "checkpoint";
+
+  private static final char SEPARATOR = '\t';
+
+  private XLogger logger = XLoggerFactory.getXLogger(ResponseWriteAheadLog.class.getName());
+
+  private final Path directory;
+
+  private final long segmentMaxBytes;
+
+  private final List<Long> segments = new ArrayList<>();
+
+  private FileChannel activeSegment;
+
+  private volatile long lastSequence;
+
+  private volatile long checkpoint;
+
+  public ResponseWriteAheadLog(Path directory, long segmentMaxBytes) throws IOException {
+    this.directory = directory;
+    this.segmentMaxBytes = segmentMaxBytes;
+    Files.createDirectories(directory);
+    recover();
+  }
+
+  /** @return the sequence number of the appended record */
+  public synchronized long append(String payload) throws IOException {
+    if (activeSegment == null || activeSegment.size() >= segmentMaxBytes) {
+      rollSegment();
+    }
+    long sequence = lastSequence + 1;
+    ByteBuffer line = ByteBuffer.wrap(encode(sequence, System.currentTimeMillis(), payload));
+    while (line.hasRemaining()) {
+      activeSegment.write(line);
+    }
+    activeSegment.force(false);
+    lastSequence = sequence;
+    return sequence;
+  }
+
+  /** @return up to maxRecords records with a sequence number greater than afterSequence */
+  public List<Record> read(long afterSequence, int maxRecords) throws IOException {
+    List<Long> firstSequences;
+    synchronized (this) {
+      firstSequences = new ArrayList<>(segments);
+    }
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < firstSequences.size() && records.size() < maxRecords; i++) {
+      if (i + 1 < firstSequences.size() && firstSequences.get(i + 1) <= afterSequence + 1) {
+        continue;
+      }
+      try (BufferedReader reader = newReader(firstSequences.get(i))) {
+        String line;
+        while (records.size() < maxRecords && (line = reader.readLine()) != null) {
+          Record record = decode(line);
+          if (record == null) {
+            // a line that is still being written
+            break;
+          }
+          if (record.getSequence() > afterSequence) {
+            records.add(record);
+          }
+        }
+      }
+    }
+    return records;
+  }
+
+  /** Marks every record up to and including the sequence number as persisted. */
+  public synchronized void checkpoint(long sequence) throws IOException {
+    if (sequence <= checkpoint) {
+      return;
+    }
+    Path tmp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+    try (FileChannel channel =
+        FileChannel.open(
+            tmp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      channel.write(ByteBuffer.wrap(Long.toString(sequence).getBytes(StandardCharsets.UTF_8)));
+      channel.force(true);
+    }
+    Files.move(
+        tmp,
+        directory.resolve(CHECKPOINT_FILE),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    checkpoint = sequence;
+
+    // the active segment is the last one and is never deleted
+    while (segments.size() > 1 && segments.get(1) - 1 <= checkpoint) {
+      Files.deleteIfExists(segmentPath(segments.remove(0)));
+    }
+  }
+
+  public long getCheckpoint() {
+    return checkpoint;
+  }
+
+  public long getLastSequence() {
+    return lastSequence;
+  }
+
+  /** @return the number of appended records that are not checkpointed yet */
+  public long getPendingCount() {
+    return Math.max(0, lastSequence - checkpoint);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (activeSegment != null) {
+      activeSegment.close();
+      activeSegment = null;
+    }
+  }
+
+  private void recover() throws IOException {
+    Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+    if (Files.exists(checkpointFile)) {
+      checkpoint =
+          Long.parseLong(new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8));
+    }
+    lastSequence = checkpoint;
+
+    try (DirectoryStream<Path> stream =
+        Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path path : stream) {
+        String name = path.getFileName().toString();
+        segments.add(
+            Long.parseLong(
+                name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+      }
+    }
+    Collections.sort(segments);
+    if (segments.isEmpty()) {
+      return;
+    }
+
+    // only the last segment can end with a torn line, earlier ones were complete when rolled
+    long firstSequence = segments.get(segments.size() - 1);
+    long validBytes = 0;
+    long sequence = firstSequence - 1;
+    try (BufferedReader reader = newReader(firstSequence)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        Record record = decode(line);
+        if (record == null) {
+          break;
+        }
+        sequence = record.getSequence();
+        validBytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+      }
+    }
+    activeSegment = FileChannel.open(segmentPath(firstSequence), StandardOpenOption.WRITE);
+    if (activeSegment.size() > validBytes) {
+      logger.warn(
+          String.format(
+              "truncating %d bytes of a torn record in %s",
+              activeSegment.size() - validBytes, segmentPath(firstSequence)));
+      activeSegment.truncate(validBytes);
+      activeSegment.force(true);
+    } else if (activeSegment.size() < validBytes) {
+      // the last record is complete but its line separator was not written
+      activeSegment.write(ByteBuffer.wrap(new byte[] {'\n'}), activeSegment.size());
+      activeSegment.force(true);
+    }
+    activeSegment.position(validBytes);
+    lastSequence = Math.max(checkpoint, sequence);
+  }
+
+  private void rollSegment() throws IOException {
+    if (activeSegment != null) {
+      activeSegment.close();
+    }
+    long firstSequence = lastSequence + 1;
+    activeSegment =
+        FileChannel.open(
+            segmentPath(firstSequence),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+    segments.add(firstSequence);
+  }
+
+  private BufferedReader newReader(long firstSequence) throws IOException {
+    return new BufferedReader(
+        new InputStreamReader(
+            Files.newInputStream(segmentPath(firstSequence)), StandardCharsets.UTF_8));
+  }
+
+  private Path segmentPath(long firstSequence) {
+    return directory.resolve(
+        String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+  }
+
+  private static byte[] encode(long sequence, long appendedAt, String payload) {
+    StringBuilder line = new StringBuilder(payload.length() + 48);
+    line.append(sequence)
+        .append(SEPARATOR)
+        .append(appendedAt)
+        .append(SEPARATOR)
+        .append(Long.toHexString(crc(payload)))
+        .append(SEPARATOR)
+        .append(payload)
+        .append('\n');
+    return line.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** @return the record, or null if the line is incomplete or corrupt */
+  private static Record decode(String line) {
+    String[] fields = line.split(String.valueOf(SEPARATOR), 4);
+    if (fields.length != 4) {
+      return null;
+    }
+    try {
+      long sequence = Long.parseLong(fields[0]);
+      long appendedAt = Long.parseLong(fields[1]);
+      long expectedCrc = Long.parseLong(fields[2], 16);
+      if (crc(fields[3]) != expectedCrc) {
+        return null;
+      }
+      return new Record(sequence, appendedAt, fields[3]);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static long crc(String payload) {
+    CRC32 crc = new CRC32();
+    crc.update(payload.getBytes(StandardCharsets.UTF_8));
+    return crc.getValue();
+  }
+
+  public static class Record {
+
+    private final long sequence;
+
+    private final long appendedAt;
+
+    private final String payload;
+
+    private Record(long sequence, long appendedAt, String payload) {
+      this.sequence = sequence;
+      this.appendedAt = appendedAt;
+      this.payload = payload;
+    }
+
+    public long getSequence() {
+      return sequence;
+    }
+
+    public long getAppendedAt() {
+      return appendedAt;
+    }
+
+    public String getPayload() {
+      return payload;
+    }
+  }
+}
@@ -8,8 +8,11 @@
 
 package com.google.cloud.healthcare.fdamystudies.dao;
 
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportFilter;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportPage;
 import com.google.cloud.healthcare.fdamystudies.bean.StoredResponseBean;
 import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
+import java.util.List;
 import java.util.Map;
 
 public interface ResponsesDao {
@@ -26,6 +29,23 @@ public interface ResponsesDao {
       String questionKey)
       throws ProcessResponseException;
 
+  /**
+   * Reads the answers of a participant to one question of an activity, oldest first.
+   *
+   * @param since only answers created after this timestamp in epoch milliseconds, optional
+   * @param limit maximum number of answers returned, optional
+   */
+  StoredResponseBean getQuestionResponseDataForParticipant(
+      String studyCollectionName,
+      String studyId,
+      String siteId,
+      String participantId,
+      String activityId,
+      String questionKey,
+      Long since,
+      Integer limit)
+      throws ProcessResponseException;
+
   void saveActivityResponseData(
       String studyId,
       String studyCollectionName,
@@ -33,6 +53,14 @@ public interface ResponsesDao {
       Map<String, Object> dataToStoreActivityResults)
       throws ProcessResponseException;
 
+  /** Saves several activity responses of one study in as few writes as the datastore allows. */
+  void saveActivityResponseDataList(
+      String studyId,
+      String studyCollectionName,
+      String activitiesCollectionName,
+      List<Map<String, Object>> dataToStoreActivityResultsList)
+      throws ProcessResponseException;
+
   void deleteActivityResponseDataForParticipant(
       String studyCollectionName,
       String studyId,
@@ -43,4 +71,19 @@ public interface ResponsesDao {
   void updateWithdrawalStatusForParticipant(
       String studyCollectionName, String studyId, String participantId)
       throws ProcessResponseException;
+
+  /**
+   * Reads the responses of a study page by page, in an order that does not change while responses
+   * are added, for exports. Withdrawn responses are included with their withdrawal status.
+   *
+   * @param cursor the next cursor of the previous page, or null to read from the first response
+   * @param pageSize maximum number of responses read for the page, before they are filtered
+   */
+  ResponseExportPage getActivityResponseDataPage(
+      String studyCollectionName,
+      String studyId,
+      ResponseExportFilter filter,
+      String cursor,
+      int pageSize)
+      throws ProcessResponseException;
 }
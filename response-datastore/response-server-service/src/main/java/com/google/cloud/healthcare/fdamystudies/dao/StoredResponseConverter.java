@@ -0,0 +1,369 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.dao;
+
+import com.google.cloud.healthcare.fdamystudies.bean.QuestionResponseValue;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseRows;
+import com.google.cloud.healthcare.fdamystudies.bean.SavedActivityResponse;
+import com.google.cloud.healthcare.fdamystudies.bean.StoredResponseBean;
+import com.google.cloud.healthcare.fdamystudies.config.ApplicationConfiguration;
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import com.google.gson.Gson;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/** Converts stored activity response documents to the rows returned by the responses API. */
+@Component
+public class StoredResponseConverter {
+  @Autowired private ApplicationConfiguration appConfig;
+
+  private static final String VALUE_GROUP_KEY = "actvityValueGroup";
+
+  private XLogger logger = XLoggerFactory.getXLogger(StoredResponseConverter.class.getName());
+
+  /** @return the rows for the response documents of a participant, or null if there are none */
+  public StoredResponseBean toStoredResponseBean(
+      String participantId, List<Map<String, Object>> activityResponseMapList) {
+    if (activityResponseMapList.isEmpty()) {
+      return null;
+    }
+    String lastResponseOnly = appConfig.getLastResponseOnly();
+    if (!StringUtils.isBlank(lastResponseOnly)
+        && lastResponseOnly.equalsIgnoreCase(AppConstants.TRUE_STR)) {
+      activityResponseMapList = filterResponseListByTimestamp(activityResponseMapList);
+    }
+    StoredResponseBean storedResponseBean = initStoredResponseBean();
+    return convertResponseDataToBean(participantId, activityResponseMapList, storedResponseBean);
+  }
+
+  private StoredResponseBean convertResponseDataToBean(
+      String participantId,
+      List<Map<String, Object>> activityResponseMapList,
+      StoredResponseBean storedResponseBean) {
+    logger.entry("begin convertResponseDataToBean()");
+    List<ResponseRows> responsesList = new ArrayList<>();
+    for (Map<String, Object> activityResponseMap : activityResponseMapList) {
+      ResponseRows responsesRow =
+          newResponseRow(
+              participantId, (String) activityResponseMap.get(AppConstants.CREATED_TS_KEY));
+      SavedActivityResponse savedActivityResponse =
+          new Gson().fromJson(new Gson().toJson(activityResponseMap), SavedActivityResponse.class);
+      List<Object> results = savedActivityResponse.getResults();
+      this.addResponsesToMap(responsesRow, results);
+      responsesList.add(responsesRow);
+      storedResponseBean.setRows(responsesList);
+    }
+    if (storedResponseBean.getRows() != null) {
+      storedResponseBean.setRowCount(storedResponseBean.getRows().size());
+    }
+    return storedResponseBean;
+  }
+
+  private void addResponsesToMap(ResponseRows responsesRow, List<Object> results) {
+    logger.entry("begin addResponsesToMap()");
+    if (results != null) {
+      for (Object result : results) {
+        if (result instanceof Map) {
+          Map<String, Object> mapResult = (Map<String, Object>) result;
+          String questionResultType = (String) mapResult.get(AppConstants.RESULT_TYPE_KEY);
+          String questionIdKey = null;
+          String questionValue = null;
+
+          if (!StringUtils.isBlank(questionResultType)) {
+            if (questionResultType.equalsIgnoreCase(AppConstants.GROUPED_FIELD_KEY)) {
+              Map<String, Object> resultsForm =
+                  (Map<String, Object>) mapResult.get(VALUE_GROUP_KEY);
+              List<Object> obj = (List<Object>) resultsForm.get("results");
+              this.addResponsesToMap(responsesRow, obj);
+
+            } else {
+              questionIdKey = (String) mapResult.get(AppConstants.QUESTION_ID_KEY);
+              questionValue = (String) mapResult.get(AppConstants.VALUE_KEY_STR);
+              addQuestionToRow(responsesRow, questionIdKey, questionResultType, questionValue);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /** Adds the participant ID and the formatted created timestamp to a new row. */
+  private ResponseRows newResponseRow(String participantId, String createdTimestamp) {
+    ResponseRows responsesRow = new ResponseRows();
+    // Add participant Id
+    Map<Object, Object> mapPartId = new HashMap<>();
+    Map<Object, Object> mapPartIdValue = new HashMap<>();
+    mapPartIdValue.put(AppConstants.VALUE_KEY_STR, participantId);
+    mapPartId.put(AppConstants.PARTICIPANT_ID_RESPONSE, mapPartIdValue);
+    responsesRow.getData().add(mapPartId);
+
+    // Add Created Timestamp
+    Map<Object, Object> mapTS = new HashMap<>();
+    Map<Object, Object> mapTsValue = new HashMap<>();
+
+    // Format timestamp to date
+    long timestampFromResponse = 0;
+    try {
+      timestampFromResponse = Long.parseLong(createdTimestamp);
+
+      DateFormat simpleDateFormat = new SimpleDateFormat(AppConstants.ISO_DATE_FORMAT_RESPONSE);
+      String formattedDate = simpleDateFormat.format(timestampFromResponse);
+      mapTsValue.put(AppConstants.VALUE_KEY_STR, formattedDate);
+
+    } catch (NumberFormatException ne) {
+      logger.error(
+          "Could not format createdTimestamp field to long. createdTimestamp value is: "
+              + timestampFromResponse);
+      mapTsValue.put(AppConstants.VALUE_KEY_STR, String.valueOf(timestampFromResponse));
+    }
+
+    mapTS.put(AppConstants.CREATED_RESPONSE, mapTsValue);
+    responsesRow.getData().add(mapTS);
+    return responsesRow;
+  }
+
+  /** Adds the answer to the row if the result type is supported and the value can be parsed. */
+  private void addQuestionToRow(
+      ResponseRows responsesRow,
+      String questionIdKey,
+      String questionResultType,
+      String questionValue) {
+    Map<Object, Object> tempMapForQuestions = new HashMap<>();
+    Map<Object, Object> tempMapQuestionsValue = new HashMap<>();
+    if (StringUtils.containsIgnoreCase(
+            appConfig.getResponseSupportedQTypeDouble(), questionResultType)
+        && !StringUtils.isBlank(questionValue)) {
+      Double questionValueDouble = null;
+      try {
+        questionValueDouble = Double.parseDouble(questionValue);
+        tempMapQuestionsValue.put(AppConstants.VALUE_KEY_STR, questionValueDouble);
+        tempMapForQuestions.put(questionIdKey, tempMapQuestionsValue);
+        responsesRow.getData().add(tempMapForQuestions);
+      } catch (NumberFormatException e) {
+        logger.error("Could not format value to Double. Value input string is: " + questionValue);
+      }
+    } else if (StringUtils.containsIgnoreCase(
+            appConfig.getResponseSupportedQTypeDate(), questionResultType)
+        && !StringUtils.isBlank(questionValue)) {
+      tempMapQuestionsValue.put(AppConstants.VALUE_KEY_STR, questionValue);
+      tempMapForQuestions.put(questionIdKey, tempMapQuestionsValue);
+      responsesRow.getData().add(tempMapForQuestions);
+    } else {
+      if (appConfig.getSupportStringResponse().equalsIgnoreCase(AppConstants.TRUE_STR)
+          && StringUtils.containsIgnoreCase(
+              appConfig.getResponseSupportedQTypeString(), questionResultType)
+          && !StringUtils.isBlank(questionValue)) {
+        tempMapQuestionsValue.put(AppConstants.VALUE_KEY_STR, questionValue);
+        tempMapForQuestions.put(questionIdKey, tempMapQuestionsValue);
+        responsesRow.getData().add(tempMapForQuestions);
+      }
+    }
+  }
+
+  private List<Map<String, Object>> filterResponseListByTimestamp(
+      List<Map<String, Object>> activityResponseMapList) {
+
+    activityResponseMapList.sort(
+        Comparator.nullsLast(
+            Comparator.comparing(
+                m -> Long.parseLong((String) m.get(AppConstants.CREATED_TS_KEY)),
+                Comparator.nullsLast(Comparator.reverseOrder()))));
+    // Get the latest response for activityId, bases on ordering by timestamp value
+    activityResponseMapList = Arrays.asList(activityResponseMapList.get(0));
+
+    return activityResponseMapList;
+  }
+
+  private StoredResponseBean initStoredResponseBean() {
+    StoredResponseBean retStoredResponseBean = new StoredResponseBean();
+    List<String> schemaNameList = Arrays.asList(AppConstants.RESPONSE_DATA_SCHEMA_NAME_LEGACY);
+    retStoredResponseBean.setSchemaName(schemaNameList);
+    retStoredResponseBean.setQueryName(AppConstants.RESPONSE_DATA_QUERY_NAME_LEGACY);
+    return retStoredResponseBean;
+  }
+
+  /** @return the keys of the questions answered in a response document, grouped ones included */
+  public static Set<String> getQuestionKeys(Map<String, Object> document) {
+    Set<String> questionKeys = new HashSet<>();
+    addQuestionKeys(document.get(AppConstants.RESULTS_FIELD_KEY), questionKeys);
+    return questionKeys;
+  }
+
+  /**
+   * @return the rows of one question, oldest first, answered after since (epoch milliseconds), at
+   *     most limit of them, or null if there are none. Since and limit are optional. With
+   *     last.response.only, only the latest answer is returned.
+   */
+  public StoredResponseBean toQuestionResponseBean(
+      String participantId,
+      String questionKey,
+      List<QuestionResponseValue> questionResponseValues,
+      Long since,
+      Integer limit) {
+    List<QuestionResponseValue> values = new ArrayList<>();
+    for (QuestionResponseValue value : questionResponseValues) {
+      if (since == null || value.getCreatedTimestamp() > since) {
+        values.add(value);
+      }
+    }
+    values.sort(Comparator.comparingLong(QuestionResponseValue::getCreatedTimestamp));
+    String lastResponseOnly = appConfig.getLastResponseOnly();
+    if (!values.isEmpty()
+        && !StringUtils.isBlank(lastResponseOnly)
+        && lastResponseOnly.equalsIgnoreCase(AppConstants.TRUE_STR)) {
+      values = values.subList(values.size() - 1, values.size());
+    } else if (limit != null && values.size() > limit) {
+      values = values.subList(0, limit);
+    }
+    if (values.isEmpty()) {
+      return null;
+    }
+
+    StoredResponseBean storedResponseBean = initStoredResponseBean();
+    List<ResponseRows> responsesList = new ArrayList<>();
+    for (QuestionResponseValue value : values) {
+      ResponseRows responsesRow =
+          newResponseRow(participantId, String.valueOf(value.getCreatedTimestamp()));
+      addQuestionToRow(responsesRow, questionKey, value.getResultType(), value.getValue());
+      responsesList.add(responsesRow);
+    }
+    storedResponseBean.setRows(responsesList);
+    storedResponseBean.setRowCount(responsesList.size());
+    return storedResponseBean;
+  }
+
+  /** @return the rows of the answers to one question in the response documents, as above */
+  public StoredResponseBean documentsToQuestionResponseBean(
+      String participantId,
+      String questionKey,
+      Collection<Map<String, Object>> documents,
+      Long since,
+      Integer limit) {
+    List<QuestionResponseValue> values = new ArrayList<>();
+    for (Map<String, Object> document : documents) {
+      QuestionResponseValue value = getQuestionResponseValues(document).get(questionKey);
+      if (value != null) {
+        values.add(value);
+      }
+    }
+    return toQuestionResponseBean(participantId, questionKey, values, since, limit);
+  }
+
+  /**
+   * @return the answers of a response document by question key, grouped ones included. Values that
+   *     are not strings are written as JSON.
+   */
+  public static Map<String, QuestionResponseValue> getQuestionResponseValues(
+      Map<String, Object> document) {
+    long createdTimestamp;
+    try {
+      createdTimestamp =
+          Long.parseLong(String.valueOf(document.get(AppConstants.CREATED_TS_KEY)));
+    } catch (NumberFormatException e) {
+      createdTimestamp = 0;
+    }
+    Map<String, QuestionResponseValue> questionResponseValues = new HashMap<>();
+    addQuestionResponseValues(
+        document.get(AppConstants.RESULTS_FIELD_KEY),
+        (String) document.get(AppConstants.ACTIVITY_RUN_ID_KEY),
+        createdTimestamp,
+        questionResponseValues);
+    return questionResponseValues;
+  }
+
+  /** @return the answers of a response document by question key, as text */
+  public static Map<String, String> getQuestionValues(Map<String, Object> document) {
+    Map<String, String> questionValues = new HashMap<>();
+    for (Map.Entry<String, QuestionResponseValue> value :
+        getQuestionResponseValues(document).entrySet()) {
+      questionValues.put(value.getKey(), value.getValue().getValue());
+    }
+    return questionValues;
+  }
+
+  private static void addQuestionResponseValues(
+      Object results,
+      String activityRunId,
+      long createdTimestamp,
+      Map<String, QuestionResponseValue> questionResponseValues) {
+    if (!(results instanceof List)) {
+      return;
+    }
+    for (Object result : (List<?>) results) {
+      if (!(result instanceof Map)) {
+        continue;
+      }
+      Map<?, ?> mapResult = (Map<?, ?>) result;
+      if (StringUtils.equalsIgnoreCase(
+              AppConstants.GROUPED_FIELD_KEY, (String) mapResult.get(AppConstants.RESULT_TYPE_KEY))
+          && mapResult.get(VALUE_GROUP_KEY) instanceof Map) {
+        addQuestionResponseValues(
+            ((Map<?, ?>) mapResult.get(VALUE_GROUP_KEY)).get(AppConstants.RESULTS_FIELD_KEY),
+            activityRunId,
+            createdTimestamp,
+            questionResponseValues);
+        continue;
+      }
+      Object questionKey = mapResult.get(AppConstants.QUESTION_ID_KEY);
+      Object value = mapResult.get(AppConstants.VALUE_KEY_STR);
+      if (!(questionKey instanceof String) || value == null) {
+        continue;
+      }
+      String text = value instanceof String ? (String) value : new Gson().toJson(value);
+      QuestionResponseValue existing = questionResponseValues.get(questionKey);
+      if (existing != null) {
+        existing.setValue(existing.getValue() + "|" + text);
+        continue;
+      }
+      QuestionResponseValue questionResponseValue = new QuestionResponseValue();
+      questionResponseValue.setActivityRunId(activityRunId);
+      questionResponseValue.setCreatedTimestamp(createdTimestamp);
+      questionResponseValue.setResultType((String) mapResult.get(AppConstants.RESULT_TYPE_KEY));
+      questionResponseValue.setValue(text);
+      questionResponseValues.put((String) questionKey, questionResponseValue);
+    }
+  }
+
+  private static void addQuestionKeys(Object results, Set<String> questionKeys) {
+    if (!(results instanceof List)) {
+      return;
+    }
+    for (Object result : (List<?>) results) {
+      if (!(result instanceof Map)) {
+        continue;
+      }
+      Map<?, ?> mapResult = (Map<?, ?>) result;
+      Object questionKey = mapResult.get(AppConstants.QUESTION_ID_KEY);
+      if (questionKey instanceof String) {
+        questionKeys.add((String) questionKey);
+      }
+      if (StringUtils.equalsIgnoreCase(
+              AppConstants.GROUPED_FIELD_KEY, (String) mapResult.get(AppConstants.RESULT_TYPE_KEY))
+          && mapResult.get(VALUE_GROUP_KEY) instanceof Map) {
+        addQuestionKeys(
+            ((Map<?, ?>) mapResult.get(VALUE_GROUP_KEY)).get(AppConstants.RESULTS_FIELD_KEY),
+            questionKeys);
+      }
+    }
+  }
+}
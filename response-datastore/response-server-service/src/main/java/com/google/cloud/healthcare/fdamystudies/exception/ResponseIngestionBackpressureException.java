@@ -0,0 +1,19 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.exception;
+
+/** Thrown when the ingestion log holds too many responses that are not persisted yet. */
+public class ResponseIngestionBackpressureException extends Exception {
+
+  private static final long serialVersionUID = 4730861942256158216L;
+
+  public ResponseIngestionBackpressureException(String message) {
+    super(message);
+  }
+}
@@ -8,11 +8,19 @@
 
 package com.google.cloud.healthcare.fdamystudies.filter;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
 import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Component;
@@ -21,10 +29,20 @@ import org.springframework.stereotype.Component;
 @Order(2)
 public class TokenIntrospectionFilter extends BaseTokenIntrospectionFilter {
 
+  private static final String CLIENT_ID = "client_id";
+
   private Map<String, String[]> uriTemplateAndMethods = new HashMap<>();
 
+  /** Study wide paths, only service clients may call them, never the mobile apps. */
+  private Set<String> serviceOnlyUriTemplates = new HashSet<>();
+
+  private Set<String> serviceClientIds;
+
   @Autowired ServletContext context;
 
+  @Value("${security.oauth2.service-client-ids:}")
+  private String serviceClientIdsValue;
+
   @PostConstruct
   public void init() {
 
@@ -34,6 +52,9 @@ public class TokenIntrospectionFilter extends BaseTokenIntrospectionFilter {
     uriTemplateAndMethods.put(
         String.format("%s/participant/process-response", context.getContextPath()),
         new String[] {HttpMethod.POST.name()});
+    uriTemplateAndMethods.put(
+        String.format("%s/participant/process-responses", context.getContextPath()),
+        new String[] {HttpMethod.POST.name()});
     uriTemplateAndMethods.put(
         String.format("%s/participant/getresponse", context.getContextPath()),
         new String[] {HttpMethod.GET.name()});
@@ -49,6 +70,33 @@ public class TokenIntrospectionFilter extends BaseTokenIntrospectionFilter {
     uriTemplateAndMethods.put(
         String.format("%s/studymetadata", context.getContextPath()),
         new String[] {HttpMethod.POST.name()});
+    uriTemplateAndMethods.put(
+        String.format("%s/studies/{studyId}/exports/**", context.getContextPath()),
+        new String[] {HttpMethod.GET.name(), HttpMethod.POST.name()});
+    serviceOnlyUriTemplates.add(
+        String.format("%s/studies/{studyId}/exports/**", context.getContextPath()));
+    uriTemplateAndMethods.put(
+        String.format("%s/studies/{studyId}/aggregates", context.getContextPath()),
+        new String[] {HttpMethod.GET.name()});
+    serviceOnlyUriTemplates.add(
+        String.format("%s/studies/{studyId}/aggregates", context.getContextPath()));
+
+    serviceClientIds =
+        Arrays.stream(StringUtils.split(StringUtils.defaultString(serviceClientIdsValue), ','))
+            .map(String::trim)
+            .filter(StringUtils::isNotEmpty)
+            .collect(Collectors.toSet());
+  }
+
+  @Override
+  protected boolean isAuthorized(HttpServletRequest request, JsonNode tokenInfo) {
+    for (String uriTemplate : serviceOnlyUriTemplates) {
+      if (checkPathMatches(uriTemplate, request.getRequestURI())) {
+        JsonNode clientId = tokenInfo.get(CLIENT_ID);
+        return clientId != null && serviceClientIds.contains(clientId.textValue());
+      }
+    }
+    return true;
   }
 
   @Override
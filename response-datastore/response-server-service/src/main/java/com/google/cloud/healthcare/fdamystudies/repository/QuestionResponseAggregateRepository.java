@@ -0,0 +1,37 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.repository;
+
+import com.google.cloud.healthcare.fdamystudies.response.model.QuestionResponseAggregateEntity;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface QuestionResponseAggregateRepository
+    extends JpaRepository<QuestionResponseAggregateEntity, String> {
+
+  Optional<QuestionResponseAggregateEntity> findByStudyIdAndSiteIdAndActivityIdAndQuestionKey(
+      String studyId, String siteId, String activityId, String questionKey);
+
+  /** Null filters match every site, activity or question. */
+  @Query(
+      "from QuestionResponseAggregateEntity a where a.studyId = :studyId "
+          + "and (:siteId is null or a.siteId = :siteId) "
+          + "and (:activityId is null or a.activityId = :activityId) "
+          + "and (:questionKey is null or a.questionKey = :questionKey)")
+  List<QuestionResponseAggregateEntity> findAggregates(
+      @Param("studyId") String studyId,
+      @Param("siteId") String siteId,
+      @Param("activityId") String activityId,
+      @Param("questionKey") String questionKey);
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.repository;
+
+import com.google.cloud.healthcare.fdamystudies.response.model.QuestionResponseContributionEntity;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface QuestionResponseContributionRepository
+    extends JpaRepository<QuestionResponseContributionEntity, String> {
+
+  boolean existsByStudyIdAndParticipantIdAndActivityIdAndActivityRunId(
+      String studyId, String participantId, String activityId, String activityRunId);
+
+  List<QuestionResponseContributionEntity> findByStudyIdAndParticipantIdAndWithdrawnFalse(
+      String studyId, String participantId);
+
+  /** The latest answers first, read one page of them. */
+  @Query(
+      "from QuestionResponseContributionEntity c "
+          + "where c.studyId = :studyId and c.siteId = :siteId and c.activityId = :activityId "
+          + "and c.questionKey = :questionKey and c.withdrawn = false "
+          + "order by c.createdTimestamp desc")
+  List<QuestionResponseContributionEntity> findLatest(
+      @Param("studyId") String studyId,
+      @Param("siteId") String siteId,
+      @Param("activityId") String activityId,
+      @Param("questionKey") String questionKey,
+      Pageable pageable);
+
+  @Query(
+      "select min(c.numericValue), max(c.numericValue) from QuestionResponseContributionEntity c "
+          + "where c.studyId = :studyId and c.siteId = :siteId and c.activityId = :activityId "
+          + "and c.questionKey = :questionKey and c.withdrawn = false")
+  List<Object[]> findNumericRange(
+      @Param("studyId") String studyId,
+      @Param("siteId") String siteId,
+      @Param("activityId") String activityId,
+      @Param("questionKey") String questionKey);
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.response.model;
+
+import static com.google.cloud.healthcare.fdamystudies.common.ColumnConstraints.SMALL_LENGTH;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Result of a request made with an idempotency key, read and written by IdempotencyKeyDaoImpl. The
+ * status is null while the first request with the key is processed.
+ */
+@Setter
+@Getter
+@Entity
+@Table(
+    name = "idempotency_keys",
+    indexes = {@Index(name = "idempotency_keys_expires_at_idx", columnList = "expires_at")})
+public class IdempotencyKeyEntity implements Serializable {
+
+  private static final long serialVersionUID = -2360245873147014271L;
+
+  @Id
+  @Column(name = "idempotency_key", updatable = false, nullable = false, length = SMALL_LENGTH)
+  private String idempotencyKey;
+
+  @Column(name = "response_status")
+  private Integer responseStatus;
+
+  @Lob
+  @Column(name = "response_body")
+  private String responseBody;
+
+  @Column(name = "request_fingerprint", length = SMALL_LENGTH)
+  private String requestFingerprint;
+
+  @Column(name = "expires_at", nullable = false)
+  private long expiresAt;
+
+  @Column(name = "created_time")
+  private Timestamp created;
+}
@@ -20,6 +20,7 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.Index;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 import lombok.Getter;
 import lombok.Setter;
 import org.hibernate.annotations.CreationTimestamp;
@@ -30,9 +31,17 @@ import org.hibernate.annotations.GenericGenerator;
 @Entity
 @Table(
     name = "participant_activities",
+    uniqueConstraints = {
+      @UniqueConstraint(
+          name = "participant_activities_uk",
+          columnNames = {"study_id", "participant_id", "activity_id"})
+    },
     indexes = {
       @Index(name = "participant_activities_participant_id_idx", columnList = "participant_id"),
-      @Index(name = "participant_activities_study_id_idx", columnList = "study_id")
+      @Index(name = "participant_activities_study_id_idx", columnList = "study_id"),
+      @Index(
+          name = "participant_activities_version_idx",
+          columnList = "study_id,participant_id,modification_version")
     })
 public class ParticipantActivitiesEntity implements Serializable {
 
@@ -74,6 +83,10 @@ public class ParticipantActivitiesEntity implements Serializable {
   @Column(name = "missed_count")
   private Integer missedCount;
 
+  /** Increases with every change of the activities of the participant, see ActivitiesBean. */
+  @Column(name = "modification_version", nullable = false)
+  private Long modificationVersion;
+
   @Column(name = "created_time")
   @CreationTimestamp
   private Timestamp created;
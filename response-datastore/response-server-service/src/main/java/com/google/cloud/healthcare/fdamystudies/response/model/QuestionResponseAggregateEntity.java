@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.response.model;
+
+import static com.google.cloud.healthcare.fdamystudies.common.ColumnConstraints.LARGE_LENGTH;
+import static com.google.cloud.healthcare.fdamystudies.common.ColumnConstraints.SMALL_LENGTH;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.UpdateTimestamp;
+
+/**
+ * Statistics of the answers to one question at one site, updated as responses are saved. The
+ * statistics of several sites merge into the ones of the study.
+ */
+@Setter
+@Getter
+@Entity
+@Table(
+    name = "question_response_aggregates",
+    uniqueConstraints = {
+      @UniqueConstraint(
+          name = "question_response_aggregates_uk",
+          columnNames = {"study_id", "site_id", "activity_id", "question_key"})
+    },
+    indexes = {
+      @Index(
+          name = "question_response_aggregates_question_idx",
+          columnList = "study_id,activity_id,question_key")
+    })
+public class QuestionResponseAggregateEntity implements Serializable {
+
+  private static final long serialVersionUID = 4113265530972341895L;
+
+  @Id
+  @GeneratedValue(generator = "system-uuid")
+  @GenericGenerator(name = "system-uuid", strategy = "uuid")
+  @Column(name = "id", updatable = false, nullable = false)
+  private String id;
+
+  @Column(name = "study_id", nullable = false, length = SMALL_LENGTH)
+  private String studyId;
+
+  @Column(name = "site_id", nullable = false, length = SMALL_LENGTH)
+  private String siteId;
+
+  @Column(name = "activity_id", nullable = false, length = SMALL_LENGTH)
+  private String activityId;
+
+  @Column(name = "question_key", nullable = false, length = LARGE_LENGTH)
+  private String questionKey;
+
+  /** Answers of any type. */
+  @Column(name = "response_count", nullable = false)
+  private long responseCount;
+
+  /** Answers of a numeric question type, the ones the statistics below are computed from. */
+  @Column(name = "numeric_count", nullable = false)
+  private long numericCount;
+
+  @Column(name = "value_sum", nullable = false)
+  private double valueSum;
+
+  @Column(name = "value_sum_of_squares", nullable = false)
+  private double valueSumOfSquares;
+
+  @Column(name = "min_value")
+  private Double minValue;
+
+  @Column(name = "max_value")
+  private Double maxValue;
+
+  @Column(name = "last_value", length = LARGE_LENGTH)
+  private String lastValue;
+
+  @Column(name = "last_created_timestamp")
+  private Long lastCreatedTimestamp;
+
+  /** {@link com.google.cloud.healthcare.fdamystudies.utils.QuantileSketch} as JSON. */
+  @Lob
+  @Column(name = "sketch")
+  private String sketch;
+
+  @Version
+  @Column(name = "version", nullable = false)
+  private long version;
+
+  @Column(name = "updated_time")
+  @UpdateTimestamp
+  private Timestamp updated;
+}
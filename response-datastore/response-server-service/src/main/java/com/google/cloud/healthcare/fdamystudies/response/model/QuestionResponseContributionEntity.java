@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.response.model;
+
+import static com.google.cloud.healthcare.fdamystudies.common.ColumnConstraints.LARGE_LENGTH;
+import static com.google.cloud.healthcare.fdamystudies.common.ColumnConstraints.SMALL_LENGTH;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.GenericGenerator;
+
+/**
+ * Answer counted in a {@link QuestionResponseAggregateEntity}. An activity run is counted once, and
+ * the answers of a participant can be taken out of the aggregates when they withdraw.
+ */
+@Setter
+@Getter
+@Entity
+@Table(
+    name = "question_response_contributions",
+    uniqueConstraints = {
+      @UniqueConstraint(
+          name = "question_response_contributions_uk",
+          columnNames = {
+            "study_id",
+            "participant_id",
+            "activity_id",
+            "activity_run_id",
+            "question_key"
+          })
+    },
+    indexes = {
+      @Index(
+          name = "question_response_contributions_question_idx",
+          columnList = "study_id,site_id,activity_id,question_key,withdrawn,created_timestamp")
+    })
+public class QuestionResponseContributionEntity implements Serializable {
+
+  private static final long serialVersionUID = -3265019874419207253L;
+
+  @Id
+  @GeneratedValue(generator = "system-uuid")
+  @GenericGenerator(name = "system-uuid", strategy = "uuid")
+  @Column(name = "id", updatable = false, nullable = false)
+  private String id;
+
+  @Column(name = "study_id", nullable = false, length = SMALL_LENGTH)
+  private String studyId;
+
+  @Column(name = "site_id", nullable = false, length = SMALL_LENGTH)
+  private String siteId;
+
+  @Column(name = "participant_id", nullable = false, length = SMALL_LENGTH)
+  private String participantId;
+
+  @Column(name = "activity_id", nullable = false, length = SMALL_LENGTH)
+  private String activityId;
+
+  @Column(name = "activity_run_id", nullable = false, length = SMALL_LENGTH)
+  private String activityRunId;
+
+  @Column(name = "question_key", nullable = false, length = LARGE_LENGTH)
+  private String questionKey;
+
+  /** Null unless the question type is numeric. */
+  @Column(name = "numeric_value")
+  private Double numericValue;
+
+  @Column(name = "answer_value", length = LARGE_LENGTH)
+  private String value;
+
+  @Column(name = "created_timestamp", nullable = false)
+  private long createdTimestamp;
+
+  @Column(name = "withdrawn", nullable = false)
+  private boolean withdrawn;
+
+  @Column(name = "created_time")
+  @CreationTimestamp
+  private Timestamp created;
+}
@@ -9,10 +9,12 @@
 package com.google.cloud.healthcare.fdamystudies.service;
 
 import com.google.cloud.healthcare.fdamystudies.bean.ActivityResponseBean;
+import com.google.cloud.healthcare.fdamystudies.bean.IngestedActivityResponse;
 import com.google.cloud.healthcare.fdamystudies.bean.QuestionnaireActivityStructureBean;
 import com.google.cloud.healthcare.fdamystudies.bean.StoredResponseBean;
 import com.google.cloud.healthcare.fdamystudies.beans.AuditLogEventRequest;
 import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
+import java.util.List;
 
 public interface ActivityResponseProcessorService {
 
@@ -22,8 +24,32 @@ public interface ActivityResponseProcessorService {
       AuditLogEventRequest auditRequest)
       throws ProcessResponseException, Exception;
 
+  /**
+   * Merges the response with the activity metadata and converts it to the document to store,
+   * without storing it.
+   */
+  IngestedActivityResponse prepareActivityResponseData(
+      QuestionnaireActivityStructureBean activityMetadatFromWcp,
+      ActivityResponseBean questionnaireActivityResponseBean,
+      AuditLogEventRequest auditRequest)
+      throws ProcessResponseException, Exception;
+
+  /** Stores prepared responses of one study, several responses are written as one batch. */
+  void saveActivityResponseData(List<IngestedActivityResponse> responses)
+      throws ProcessResponseException, Exception;
+
+  /**
+   * Reads the responses of a participant to an activity. With a question key, since and limit page
+   * through the answers to that question, oldest first; both are optional.
+   */
   StoredResponseBean getActivityResponseDataForParticipant(
-      String studyId, String siteId, String participantId, String activityId, String questionKey)
+      String studyId,
+      String siteId,
+      String participantId,
+      String activityId,
+      String questionKey,
+      Long since,
+      Integer limit)
       throws ProcessResponseException;
 
   void updateWithdrawalStatusForParticipant(String studyId, String participantId)
@@ -18,7 +18,9 @@ import static com.google.cloud.healthcare.fdamystudies.common.ResponseServerEven
 import com.google.cloud.healthcare.fdamystudies.bean.ActivityMetadataBean;
 import com.google.cloud.healthcare.fdamystudies.bean.ActivityResponseBean;
 import com.google.cloud.healthcare.fdamystudies.bean.ActivityValueGroupBean;
+import com.google.cloud.healthcare.fdamystudies.bean.IngestedActivityResponse;
 import com.google.cloud.healthcare.fdamystudies.bean.QuestionnaireActivityStepsBean;
+import com.google.cloud.healthcare.fdamystudies.bean.QuestionnaireActivityStepsIndex;
 import com.google.cloud.healthcare.fdamystudies.bean.QuestionnaireActivityStructureBean;
 import com.google.cloud.healthcare.fdamystudies.bean.StoredResponseBean;
 import com.google.cloud.healthcare.fdamystudies.beans.AuditLogEventRequest;
@@ -27,14 +29,11 @@ import com.google.cloud.healthcare.fdamystudies.config.ApplicationConfiguration;
 import com.google.cloud.healthcare.fdamystudies.dao.ResponsesDao;
 import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
 import com.google.cloud.healthcare.fdamystudies.utils.AppUtil;
+import com.google.cloud.healthcare.fdamystudies.utils.BeanDocumentMapper;
 import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import java.beans.BeanInfo;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -44,17 +43,19 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 @Service
 public class ActivityResponseProcessorServiceImpl implements ActivityResponseProcessorService {
   @Autowired
-  @Qualifier("cloudFirestoreResponsesDaoImpl")
   private ResponsesDao responsesDao;
 
   @Autowired private ApplicationConfiguration appConfig;
 
+  @Autowired private ResponseIngestionService responseIngestionService;
+
+  @Autowired private ResponseAggregateService responseAggregateService;
+
   @Autowired private ResponseServerAuditLogHelper responseServerAuditLogHelper;
 
   private XLogger logger =
@@ -67,6 +68,19 @@ public class ActivityResponseProcessorServiceImpl implements ActivityResponsePro
       AuditLogEventRequest auditRequest)
       throws Exception {
     logger.entry("begin saveActivityResponseDataForParticipant()");
+    IngestedActivityResponse response =
+        prepareActivityResponseData(
+            activityMetadataBeanFromWcp, questionnaireActivityResponseBean, auditRequest);
+    saveActivityResponseData(Collections.singletonList(response));
+    logger.exit("saveActivityResponseDataForParticipant() - ends ");
+  }
+
+  @Override
+  public IngestedActivityResponse prepareActivityResponseData(
+      QuestionnaireActivityStructureBean activityMetadataBeanFromWcp,
+      ActivityResponseBean questionnaireActivityResponseBean,
+      AuditLogEventRequest auditRequest)
+      throws Exception {
     if (activityMetadataBeanFromWcp == null) {
       throw new ProcessResponseException("QuestionnaireActivityStructureBean is null.");
     }
@@ -95,7 +109,10 @@ public class ActivityResponseProcessorServiceImpl implements ActivityResponsePro
     if (activityMetadataResponse
         .getActivityId()
         .equalsIgnoreCase(activityMetadataBeanFromWcp.getMetadata().getActivityId())) {
-      processActivityResponses(questionnaireResponses, questionnaireMetadata);
+      processActivityResponses(
+          questionnaireResponses,
+          questionnaireMetadata,
+          activityMetadataBeanFromWcp.getStepsIndex());
       Map<String, String> map = new HashedMap<>();
       map.put(ACTIVITY_TYPE, questionnaireActivityResponseBean.getType());
       map.put(ACTIVITY_ID, activityMetadataBeanFromWcp.getMetadata().getActivityId());
@@ -107,7 +124,8 @@ public class ActivityResponseProcessorServiceImpl implements ActivityResponsePro
       if (appConfig.getSaveRawResponseData().equalsIgnoreCase(AppConstants.TRUE_STR)) {
         rawResponseData = getRawJsonInputData(questionnaireActivityResponseBean);
       }
-      this.saveActivityResponseData(questionnaireActivityResponseBean, rawResponseData);
+      return toActivityResponseDocument(
+          questionnaireActivityResponseBean, rawResponseData, auditRequest);
     } else {
       logger.error(
           "saveActivityResponseDataForParticipant() - "
@@ -128,18 +146,76 @@ public class ActivityResponseProcessorServiceImpl implements ActivityResponsePro
       throw new ProcessResponseException(
           "The activity ID in the response does not match activity ID in the metadata provided.");
     }
-    logger.exit("saveActivityResponseDataForParticipant() - ends ");
+  }
+
+  @Override
+  public void saveActivityResponseData(List<IngestedActivityResponse> responses) throws Exception {
+    if (responses.isEmpty()) {
+      return;
+    }
+    if (responseIngestionService.isEnabled()) {
+      for (IngestedActivityResponse response : responses) {
+        responseIngestionService.append(response);
+      }
+      return;
+    }
+
+    IngestedActivityResponse first = responses.get(0);
+    if (responses.size() == 1) {
+      responsesDao.saveActivityResponseData(
+          first.getStudyId(),
+          first.getStudyCollectionName(),
+          first.getActivitiesCollectionName(),
+          first.getDataToStoreActivityResults());
+      responseAggregateService.addResponse(
+          first.getStudyId(), first.getDataToStoreActivityResults());
+      return;
+    }
+    List<Map<String, Object>> dataToStoreActivityResultsList = new ArrayList<>();
+    for (IngestedActivityResponse response : responses) {
+      if (!StringUtils.equals(first.getStudyId(), response.getStudyId())) {
+        throw new ProcessResponseException(
+            "saveActivityResponseData() method: responses of a batch must belong to one study.");
+      }
+      dataToStoreActivityResultsList.add(response.getDataToStoreActivityResults());
+    }
+    responsesDao.saveActivityResponseDataList(
+        first.getStudyId(),
+        first.getStudyCollectionName(),
+        first.getActivitiesCollectionName(),
+        dataToStoreActivityResultsList);
+    // the aggregates skip the responses that were saved before
+    for (Map<String, Object> dataToStoreActivityResults : dataToStoreActivityResultsList) {
+      responseAggregateService.addResponse(first.getStudyId(), dataToStoreActivityResults);
+    }
   }
 
   @Override
   public StoredResponseBean getActivityResponseDataForParticipant(
-      String studyId, String siteId, String participantId, String activityId, String questionKey)
+      String studyId,
+      String siteId,
+      String participantId,
+      String activityId,
+      String questionKey,
+      Long since,
+      Integer limit)
       throws ProcessResponseException {
     if (StringUtils.isBlank(studyId)) {
       throw new ProcessResponseException(
           "getActivityResponseDataForParticipant() method: Study Id argument is null or empty.");
     }
     String studyCollectionName = AppUtil.makeStudyCollectionName(studyId);
+    if (!StringUtils.isBlank(questionKey) && (since != null || limit != null)) {
+      return responsesDao.getQuestionResponseDataForParticipant(
+          studyCollectionName,
+          studyId,
+          siteId,
+          participantId,
+          activityId,
+          questionKey,
+          since,
+          limit);
+    }
     return responsesDao.getActivityResponseDataForParticipant(
         studyCollectionName, studyId, siteId, participantId, activityId, questionKey);
   }
@@ -154,11 +230,13 @@ public class ActivityResponseProcessorServiceImpl implements ActivityResponsePro
     }
     String studyCollectionName = AppUtil.makeStudyCollectionName(studyId);
     responsesDao.updateWithdrawalStatusForParticipant(studyCollectionName, studyId, participantId);
+    responseAggregateService.withdrawParticipant(studyId, participantId);
   }
 
   private void processActivityResponses(
       List<QuestionnaireActivityStepsBean> questionnaireResponses,
-      List<QuestionnaireActivityStepsBean> activityMetadataBeanFromWcp) {
+      List<QuestionnaireActivityStepsBean> activityMetadataBeanFromWcp,
+      QuestionnaireActivityStepsIndex activityMetadataIndex) {
     QuestionnaireActivityStepsBean scoreSumResponseBean = null;
     for (QuestionnaireActivityStepsBean responseBean : questionnaireResponses) {
       if (responseBean.getKey().equals(AppConstants.DUMMY_SUM_QUESTION_KEY)) {
@@ -166,13 +244,13 @@ public class ActivityResponseProcessorServiceImpl implements ActivityResponsePro
       }
       if (responseBean.getResultType().equalsIgnoreCase(AppConstants.GROUPED_FIELD_KEY)) {
         ActivityValueGroupBean valueGroupResponse =
-            getValueGroupResponses(activityMetadataBeanFromWcp, responseBean);
+            getValueGroupResponses(activityMetadataIndex, responseBean);
         responseBean.setActvityValueGroup(valueGroupResponse);
         // Remove the value object, as we have plugged in the metadata and added to the
         // ActivityValueGroupBean
         responseBean.setValue(AppConstants.EMPTY_STR);
       } else {
-        plugInMetadataToResponses(activityMetadataBeanFromWcp, responseBean, false);
+        plugInMetadataToResponses(activityMetadataIndex, responseBean, false);
       }
     }
     // We might want to hide the dummy sum question from users with conditional branching,
@@ -264,7 +342,7 @@ public class ActivityResponseProcessorServiceImpl implements ActivityResponsePro
   }
 
   private ActivityValueGroupBean getValueGroupResponses(
-      List<QuestionnaireActivityStepsBean> activityMetadataBeanFromWcp,
+      QuestionnaireActivityStepsIndex activityMetadataIndex,
       QuestionnaireActivityStepsBean responseBean) {
     ActivityValueGroupBean activityValueGroupBeanRet = new ActivityValueGroupBean();
     List<QuestionnaireActivityStepsBean> valueResponseBeanList =
@@ -281,7 +359,7 @@ public class ActivityResponseProcessorServiceImpl implements ActivityResponsePro
             String json = gson.toJson(valueObjMap, Map.class);
             QuestionnaireActivityStepsBean valueBean =
                 gson.fromJson(json, QuestionnaireActivityStepsBean.class);
-            plugInMetadataToResponses(activityMetadataBeanFromWcp, valueBean, true);
+            plugInMetadataToResponses(activityMetadataIndex, valueBean, true);
             valueResponseBeanList.add(valueBean);
           }
         } else {
@@ -291,7 +369,7 @@ public class ActivityResponseProcessorServiceImpl implements ActivityResponsePro
             String json = gson.toJson(valueObjMap, Map.class);
             QuestionnaireActivityStepsBean valueBean =
                 gson.fromJson(json, QuestionnaireActivityStepsBean.class);
-            plugInMetadataToResponses(activityMetadataBeanFromWcp, valueBean, true);
+            plugInMetadataToResponses(activityMetadataIndex, valueBean, true);
             valueResponseBeanList.add(valueBean);
           }
         }
@@ -302,56 +380,38 @@ public class ActivityResponseProcessorServiceImpl implements ActivityResponsePro
   }
 
   private void plugInMetadataToResponses(
-      List<QuestionnaireActivityStepsBean> activityMetadataBeanFromWcp,
+      QuestionnaireActivityStepsIndex activityMetadataIndex,
       QuestionnaireActivityStepsBean responseBean,
       boolean fromGrouped) {
-    List<QuestionnaireActivityStepsBean> metadataMatchList = null;
-
     String questionKey = responseBean.getKey();
-    if (fromGrouped) {
-      for (QuestionnaireActivityStepsBean stepBean : activityMetadataBeanFromWcp) {
-        List<QuestionnaireActivityStepsBean> stepsBean = stepBean.getSteps();
-        metadataMatchList =
-            stepsBean
-                .stream()
-                .filter(QuestionnaireActivityStepsBeanPredicate.questionKeyMatch(questionKey))
-                .collect(Collectors.<QuestionnaireActivityStepsBean>toList());
-        if (metadataMatchList != null && metadataMatchList.size() > 0) {
-          break;
-        }
-      }
-    } else {
-      metadataMatchList =
-          activityMetadataBeanFromWcp
-              .stream()
-              .filter(QuestionnaireActivityStepsBeanPredicate.questionKeyMatch(questionKey))
-              .collect(Collectors.<QuestionnaireActivityStepsBean>toList());
-    }
-    if (metadataMatchList != null) {
-      for (QuestionnaireActivityStepsBean metadataMatchBean : metadataMatchList) {
-        responseBean.setSkippable(metadataMatchBean.getSkippable());
-        responseBean.setText(metadataMatchBean.getText());
-        responseBean.setTitle(metadataMatchBean.getTitle());
-      }
+    QuestionnaireActivityStepsBean metadataMatchBean =
+        fromGrouped
+            ? activityMetadataIndex.getFormStep(questionKey)
+            : activityMetadataIndex.getStep(questionKey);
+    if (metadataMatchBean != null) {
+      responseBean.setSkippable(metadataMatchBean.getSkippable());
+      responseBean.setText(metadataMatchBean.getText());
+      responseBean.setTitle(metadataMatchBean.getTitle());
     }
   }
 
-  private void saveActivityResponseData(
-      ActivityResponseBean questionnaireActivityResponseBean, String rawResponseData)
+  private IngestedActivityResponse toActivityResponseDocument(
+      ActivityResponseBean questionnaireActivityResponseBean,
+      String rawResponseData,
+      AuditLogEventRequest auditRequest)
       throws Exception {
-    logger.entry("begin saveActivityResponseData()");
     // Add Timestamp to bean
     questionnaireActivityResponseBean.setCreatedTimestamp(
         String.valueOf(System.currentTimeMillis()));
     Map<String, Object> dataToStoreActivityResults =
-        this.getHashMapForBean(questionnaireActivityResponseBean.getMetadata());
+        BeanDocumentMapper.toDocument(questionnaireActivityResponseBean.getMetadata());
     dataToStoreActivityResults.remove(AppConstants.DATA_FIELD_KEY);
 
     List<QuestionnaireActivityStepsBean> questionnaireResponses =
         questionnaireActivityResponseBean.getData().getResults();
     List<Map<String, Object>> stepsList = new ArrayList<Map<String, Object>>();
     for (QuestionnaireActivityStepsBean tmpBean : questionnaireResponses) {
-      Map<String, Object> dataToStoreTemp = getHashMapForBean(tmpBean);
+      Map<String, Object> dataToStoreTemp = BeanDocumentMapper.toDocument(tmpBean);
       stepsList.add(dataToStoreTemp);
     }
     dataToStoreActivityResults.put(AppConstants.RESULTS_FIELD_KEY, stepsList);
@@ -367,12 +427,16 @@ public class ActivityResponseProcessorServiceImpl implements ActivityResponsePro
 
     String studyCollectionName = AppUtil.makeStudyCollectionName(studyId);
     logger.debug("saveActivityResponseData() : \n Study Collection Name: " + studyCollectionName);
-    responsesDao.saveActivityResponseData(
+    return new IngestedActivityResponse(
         studyId,
         studyCollectionName,
         AppConstants.ACTIVITIES_COLLECTION_NAME,
-        dataToStoreActivityResults);
-    logger.exit("saveActivityResponseData() - ends ");
+        questionnaireActivityResponseBean.getParticipantId(),
+        questionnaireActivityResponseBean.getMetadata().getActivityId(),
+        questionnaireActivityResponseBean.getMetadata().getVersion(),
+        questionnaireActivityResponseBean.getMetadata().getActivityRunId(),
+        dataToStoreActivityResults,
+        auditRequest);
   }
 
   private Map<String, Object> getMapForParticipantCollection(
@@ -407,80 +471,4 @@ public class ActivityResponseProcessorServiceImpl implements ActivityResponsePro
     Gson gson = new Gson();
     return gson.toJson(argBean);
   }
-
-  private Map<String, Object> getHashMapForBean(Object bean) throws Exception {
-    BeanInfo beanInfo;
-    beanInfo = Introspector.getBeanInfo(bean.getClass());
-    PropertyDescriptor[] propDescriptor = beanInfo.getPropertyDescriptors();
-    Map<String, Object> dataToStore = new HashMap<>();
-    GsonBuilder gsonBuilder = new GsonBuilder();
-    Gson gson = gsonBuilder.create();
-    List<Map<String, Object>> stepsList = new ArrayList<Map<String, Object>>();
-    for (PropertyDescriptor pd : propDescriptor) {
-      String propertyName = pd.getName();
-      if (!propertyName.equals(AppConstants.PROPERTY_NAME_CLASS)) {
-        Method getterMethod = pd.getReadMethod();
-        Object propertyValue = getterMethod.invoke(bean);
-        if (!(propertyValue instanceof String)) {
-          if (propertyValue instanceof ActivityValueGroupBean
-              || propertyValue instanceof ActivityMetadataBean) {
-            dataToStore.put(propertyName, getHashMapForBean(propertyValue));
-          } else if (propertyValue instanceof List) {
-            try {
-              ArrayList<Object> pvalueList = (ArrayList<Object>) propertyValue;
-              for (Object valueObj : pvalueList) {
-                if (valueObj instanceof QuestionnaireActivityStepsBean) {
-                  Map<String, Object> tempMap = getHashMapForBean(valueObj);
-                  stepsList.add(tempMap);
-                } else if (valueObj instanceof String) {
-                  if (valueObj != null) {
-                    Object tmpPropertyValue = dataToStore.get(propertyName);
-                    if (tmpPropertyValue != null) {
-                      String tmpPropertyValueStr = (String) tmpPropertyValue.toString();
-                      if (!StringUtils.isBlank(tmpPropertyValueStr)) {
-                        valueObj = tmpPropertyValueStr + AppConstants.COMMA_STR + valueObj;
-                      }
-                    }
-                    dataToStore.put(propertyName, valueObj);
-                  }
-                } else {
-                  if (valueObj != null) {
-                    propertyValue = gson.toJson(valueObj);
-                    Object tmpPropertyValue = dataToStore.get(propertyName);
-                    if (tmpPropertyValue != null) {
-                      String tmpPropertyValueStr = (String) tmpPropertyValue.toString();
-                      if (!StringUtils.isBlank(tmpPropertyValueStr)) {
-                        propertyValue =
-                            tmpPropertyValueStr + AppConstants.COMMA_STR + propertyValue;
-                      }
-                    }
-                    dataToStore.put(propertyName, propertyValue);
-                  }
-                }
-                if (stepsList != null && !stepsList.isEmpty()) {
-                  dataToStore.put(AppConstants.RESULTS_FIELD_KEY, stepsList);
-                }
-              }
-            } catch (ClassCastException ce) {
-              propertyValue = gson.toJson(propertyValue);
-              dataToStore.put(propertyName, getHashMapForBean(propertyValue));
-            }
-          } else {
-            propertyValue = gson.toJson(propertyValue);
-            dataToStore.put(propertyName, propertyValue);
-          }
-        } else {
-          if (propertyValue != null) {
-            dataToStore.put(propertyName, propertyValue);
-          }
-        }
-        logger.debug(
-            "getHashMapForBean() : \n Property Name: "
-                + propertyName
-                + "\t Property Value : "
-                + propertyValue);
-      }
-    }
-    return dataToStore;
-  }
 }
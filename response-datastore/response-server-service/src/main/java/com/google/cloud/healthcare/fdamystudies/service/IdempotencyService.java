@@ -0,0 +1,30 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import java.util.function.Supplier;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Processes a request once per idempotency key, so that the retries of a client get the response
+ * of the first request instead of processing it again.
+ */
+public interface IdempotencyService {
+
+  /**
+   * Returns the stored response of the key, or processes the request if there is none. A duplicate
+   * received while the key is processed waits for the response of the first request. Only
+   * successful responses are stored, the request is processed again after a failure. A request
+   * whose fingerprint differs from the one of the first request gets 422 instead of its response.
+   *
+   * @param requestFingerprint hash of the request body, or null to skip the check
+   */
+  ResponseEntity<?> process(
+      String idempotencyKey, String requestFingerprint, Supplier<ResponseEntity<?>> request);
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import com.google.cloud.healthcare.fdamystudies.bean.ErrorBean;
+import com.google.cloud.healthcare.fdamystudies.bean.IdempotentResponse;
+import com.google.cloud.healthcare.fdamystudies.dao.IdempotencyKeyDao;
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import com.google.cloud.healthcare.fdamystudies.utils.AppUtil;
+import com.google.cloud.healthcare.fdamystudies.utils.ErrorCode;
+import com.google.gson.Gson;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the idempotency keys with IdempotencyKeyDao, for a limited time and up to a maximum number
+ * of keys. Duplicates received by this instance wait on the first request in memory, the ones
+ * received by other instances poll the key until the first request completes it.
+ *
+ * <p>The keys are best effort: if they cannot be read or written, the request is processed.
+ */
+@Service
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+  private static final Gson GSON = new Gson();
+
+  private static final long POLL_INTERVAL_MILLIS = 200;
+
+  private XLogger logger = XLoggerFactory.getXLogger(IdempotencyServiceImpl.class.getName());
+
+  @Autowired private IdempotencyKeyDao idempotencyKeyDao;
+
+  @Autowired private ObjectProvider<MeterRegistry> meterRegistry;
+
+  @Value("${response.idempotency.enabled:true}")
+  private boolean enabled;
+
+  @Value("${response.idempotency.ttl-seconds:86400}")
+  private long ttlSeconds;
+
+  @Value("${response.idempotency.max-keys:100000}")
+  private int maxKeys;
+
+  @Value("${response.idempotency.claim-seconds:120}")
+  private long claimSeconds;
+
+  @Value("${response.idempotency.wait-timeout-seconds:30}")
+  private long waitTimeoutSeconds;
+
+  @Value("${response.idempotency.purge.interval-seconds:300}")
+  private long purgeIntervalSeconds;
+
+  private final Map<String, Attempt> inFlight = new ConcurrentHashMap<>();
+
+  private MeterRegistry registry;
+
+  private ScheduledExecutorService purgeExecutor;
+
+  @PostConstruct
+  public void init() {
+    registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    purgeExecutor =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "idempotency-keys-purge");
+              thread.setDaemon(true);
+              return thread;
+            });
+    purgeExecutor.scheduleWithFixedDelay(
+        this::purgeKeys, purgeIntervalSeconds, purgeIntervalSeconds, TimeUnit.SECONDS);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    purgeExecutor.shutdownNow();
+  }
+
+  @Override
+  public ResponseEntity<?> process(
+      String idempotencyKey, String requestFingerprint, Supplier<ResponseEntity<?>> request) {
+    if (!enabled) {
+      return request.get();
+    }
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(waitTimeoutSeconds);
+    while (true) {
+      Attempt attempt = new Attempt(requestFingerprint);
+      Attempt firstAttempt = inFlight.putIfAbsent(idempotencyKey, attempt);
+      if (firstAttempt == null) {
+        try {
+          return processClaimed(
+              idempotencyKey, requestFingerprint, request, attempt.response, deadline);
+        } finally {
+          inFlight.remove(idempotencyKey, attempt);
+          attempt.response.complete(null);
+        }
+      }
+      if (isOtherRequest(firstAttempt.requestFingerprint, requestFingerprint)) {
+        return otherRequestResponse();
+      }
+
+      IdempotentResponse response;
+      try {
+        response =
+            firstAttempt.response.get(
+                Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        return inProgressResponse();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return inProgressResponse();
+      } catch (ExecutionException e) {
+        response = null;
+      }
+      if (response != null) {
+        return replay(response, requestFingerprint);
+      }
+      // the first attempt failed, so this one is processed as a retry
+    }
+  }
+
+  private ResponseEntity<?> processClaimed(
+      String idempotencyKey,
+      String requestFingerprint,
+      Supplier<ResponseEntity<?>> request,
+      CompletableFuture<IdempotentResponse> attempt,
+      long deadline) {
+    try {
+      while (true) {
+        long now = System.currentTimeMillis();
+        IdempotentResponse stored = idempotencyKeyDao.find(idempotencyKey, now);
+        if (stored != null && stored.getStatus() != null) {
+          attempt.complete(stored);
+          return replay(stored, requestFingerprint);
+        }
+        if (stored != null && isOtherRequest(stored.getRequestFingerprint(), requestFingerprint)) {
+          return otherRequestResponse();
+        }
+        if (idempotencyKeyDao.claim(
+            idempotencyKey,
+            requestFingerprint,
+            now,
+            now + TimeUnit.SECONDS.toMillis(claimSeconds))) {
+          break;
+        }
+        // claimed by a request on another instance
+        if (now >= deadline) {
+          return inProgressResponse();
+        }
+        Thread.sleep(POLL_INTERVAL_MILLIS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return inProgressResponse();
+    } catch (DataAccessException e) {
+      logger.warn("Could not claim the idempotency key, the request is processed", e);
+      return request.get();
+    }
+
+    ResponseEntity<?> response;
+    try {
+      response = request.get();
+    } catch (RuntimeException e) {
+      release(idempotencyKey);
+      throw e;
+    }
+    if (response.getStatusCode().is2xxSuccessful()) {
+      IdempotentResponse stored =
+          new IdempotentResponse(
+              response.getStatusCodeValue(),
+              GSON.toJson(response.getBody()),
+              requestFingerprint);
+      try {
+        idempotencyKeyDao.complete(
+            idempotencyKey,
+            stored,
+            System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds));
+      } catch (DataAccessException e) {
+        logger.warn("Could not store the response of the idempotency key", e);
+      }
+      attempt.complete(stored);
+    } else {
+      release(idempotencyKey);
+    }
+    return response;
+  }
+
+  private void release(String idempotencyKey) {
+    try {
+      idempotencyKeyDao.release(idempotencyKey);
+    } catch (DataAccessException e) {
+      logger.warn("Could not release the idempotency key", e);
+    }
+  }
+
+  private ResponseEntity<?> replay(IdempotentResponse response, String requestFingerprint) {
+    if (isOtherRequest(response.getRequestFingerprint(), requestFingerprint)) {
+      return otherRequestResponse();
+    }
+    registry.counter("response.idempotency.replays").increment();
+    return ResponseEntity.status(response.getStatus())
+        .contentType(MediaType.APPLICATION_JSON)
+        .header(AppConstants.IDEMPOTENT_REPLAYED_HEADER, Boolean.TRUE.toString())
+        .body(response.getBody());
+  }
+
+  private ResponseEntity<?> inProgressResponse() {
+    ErrorBean errorBean =
+        AppUtil.dynamicResponse(
+            ErrorCode.EC_722.code(),
+            ErrorCode.EC_722.errorMessage(),
+            AppConstants.ERROR_STR,
+            ErrorCode.EC_722.errorMessage());
+    return new ResponseEntity<>(errorBean, HttpStatus.CONFLICT);
+  }
+
+  /** @return true if both fingerprints are known and differ */
+  private static boolean isOtherRequest(String storedFingerprint, String requestFingerprint) {
+    return storedFingerprint != null
+        && requestFingerprint != null
+        && !storedFingerprint.equals(requestFingerprint);
+  }
+
+  private ResponseEntity<?> otherRequestResponse() {
+    registry.counter("response.idempotency.mismatches").increment();
+    ErrorBean errorBean =
+        AppUtil.dynamicResponse(
+            ErrorCode.EC_723.code(),
+            ErrorCode.EC_723.errorMessage(),
+            AppConstants.ERROR_STR,
+            ErrorCode.EC_723.errorMessage());
+    return new ResponseEntity<>(errorBean, HttpStatus.UNPROCESSABLE_ENTITY);
+  }
+
+  private void purgeKeys() {
+    try {
+      int deleted = idempotencyKeyDao.purge(System.currentTimeMillis(), maxKeys);
+      logger.debug("Purged idempotency keys: " + deleted);
+    } catch (RuntimeException e) {
+      logger.warn("Could not purge the idempotency keys", e);
+    }
+  }
+
+  /** A request processed by this instance, with the fingerprint of its body. */
+  private static class Attempt {
+
+    private final String requestFingerprint;
+
+    private final CompletableFuture<IdempotentResponse> response = new CompletableFuture<>();
+
+    private Attempt(String requestFingerprint) {
+      this.requestFingerprint = requestFingerprint;
+    }
+  }
+}
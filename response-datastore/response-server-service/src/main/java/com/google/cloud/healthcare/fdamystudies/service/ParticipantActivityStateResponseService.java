@@ -20,6 +20,17 @@ public interface ParticipantActivityStateResponseService {
   ActivitiesBean getParticipantActivities(String studyId, String participantId)
       throws ProcessActivityStateException;
 
+  /**
+   * @param since the sync token of an earlier response, to get only the activities changed after
+   *     it, or null to get all activities
+   */
+  ActivitiesBean getParticipantActivities(String studyId, String participantId, Long since)
+      throws ProcessActivityStateException;
+
+  /** @return the sync token of the current activities of the participant */
+  long getParticipantActivitiesVersion(String studyId, String participantId)
+      throws ProcessActivityStateException;
+
   void deleteParticipantActivites(String studyId, String participantId)
       throws ProcessActivityStateException;
 }
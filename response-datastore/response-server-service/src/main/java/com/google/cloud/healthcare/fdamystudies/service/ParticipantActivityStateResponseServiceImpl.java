@@ -17,7 +17,12 @@ import com.google.cloud.healthcare.fdamystudies.exception.ProcessActivityStateEx
 import com.google.cloud.healthcare.fdamystudies.response.model.ParticipantActivitiesEntity;
 import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
@@ -35,12 +40,33 @@ public class ParticipantActivityStateResponseServiceImpl
   @Override
   public ActivitiesBean getParticipantActivities(String studyId, String participantId)
       throws ProcessActivityStateException {
+    return getParticipantActivities(studyId, participantId, null);
+  }
+
+  @Override
+  public ActivitiesBean getParticipantActivities(String studyId, String participantId, Long since)
+      throws ProcessActivityStateException {
     logger.entry("begin getParticipantActivities()");
     List<ParticipantActivitiesEntity> participantActivityList = null;
     ActivitiesBean retActivitiesBean = new ActivitiesBean();
     retActivitiesBean.setMessage(AppConstants.FAILURE);
-    participantActivityList =
-        participantActivitiesDao.getParticipantActivities(studyId, participantId);
+    long modificationVersion =
+        since == null
+            ? 0L
+            : participantActivitiesDao.getParticipantActivitiesVersion(studyId, participantId);
+    // a token ahead of the version is of activities deleted since, all activities are returned
+    if (since != null && since <= modificationVersion) {
+      participantActivityList =
+          since == modificationVersion
+              ? new ArrayList<>()
+              : participantActivitiesDao.getParticipantActivitiesModifiedAfter(
+                  studyId, participantId, since);
+      retActivitiesBean.setDelta(true);
+      retActivitiesBean.setMessage(AppConstants.SUCCESS_MSG);
+    } else {
+      participantActivityList =
+          participantActivitiesDao.getParticipantActivities(studyId, participantId);
+    }
     if (!participantActivityList.isEmpty()) {
       List<ParticipantActivityBean> participantActivityBeanList = new ArrayList<>();
       for (ParticipantActivitiesEntity participantActivity : participantActivityList) {
@@ -72,15 +98,26 @@ public class ParticipantActivityStateResponseServiceImpl
           }
           tempParticipantActivityBean.setActivityRun(tempActivityRunBean);
           participantActivityBeanList.add(tempParticipantActivityBean);
+          if (participantActivity.getModificationVersion() != null) {
+            modificationVersion =
+                Math.max(modificationVersion, participantActivity.getModificationVersion());
+          }
         }
       }
       retActivitiesBean.setActivities(participantActivityBeanList);
       retActivitiesBean.setMessage(AppConstants.SUCCESS_MSG);
     }
+    retActivitiesBean.setSyncToken(String.valueOf(modificationVersion));
     logger.exit("getParticipantActivities() - Ends ");
     return retActivitiesBean;
   }
 
+  @Override
+  public long getParticipantActivitiesVersion(String studyId, String participantId)
+      throws ProcessActivityStateException {
+    return participantActivitiesDao.getParticipantActivitiesVersion(studyId, participantId);
+  }
+
   @Override
   public void saveParticipantActivities(ActivityStateRequestBean activityStateRequestBean)
       throws ProcessActivityStateException {
@@ -97,7 +134,10 @@ public class ParticipantActivityStateResponseServiceImpl
           this.getConsolidatedParticipantListToUpdate(
               inputParticipantActivitiesList, existingParticipantActivitiesList);
 
-      participantActivitiesDao.saveParticipantActivities(participantActivitiesListToUpdate);
+      participantActivitiesDao.saveParticipantActivities(
+          activityStateRequestBean.getStudyId(),
+          activityStateRequestBean.getParticipantId(),
+          participantActivitiesListToUpdate);
     } else {
       throw new ProcessActivityStateException(
           "saveParticipantActivities() - error. Provided input for"
@@ -113,48 +153,84 @@ public class ParticipantActivityStateResponseServiceImpl
     participantActivitiesDao.deleteParticipantActivites(studyId, participantId);
   }
 
+  /**
+   * Merges the input activities into the existing ones of the participant, matched by activity ID
+   * ignoring case, and returns the new activities and the existing ones that changed.
+   */
   private List<ParticipantActivitiesEntity> getConsolidatedParticipantListToUpdate(
       List<ParticipantActivitiesEntity> inputParticipantActivitiesList,
-      List<ParticipantActivitiesEntity> saveOrUpdateParticipantActivitiesList) {
-    if (!inputParticipantActivitiesList.isEmpty()) {
-      for (ParticipantActivitiesEntity participantActivityInput : inputParticipantActivitiesList) {
-        boolean isExistingRecord = false;
-        if (!saveOrUpdateParticipantActivitiesList.isEmpty()) {
-          for (ParticipantActivitiesEntity participantActivityExisting :
-              saveOrUpdateParticipantActivitiesList) {
-            if (participantActivityInput
-                .getActivityId()
-                .equalsIgnoreCase(participantActivityExisting.getActivityId())) {
-              isExistingRecord = true;
-              participantActivityExisting.setActivityVersion(
-                  participantActivityInput.getActivityVersion());
-              participantActivityExisting.setActivityState(
-                  participantActivityInput.getActivityState());
-              participantActivityExisting.setBookmark(participantActivityInput.getBookmark());
-              if (StringUtils.isNotBlank(participantActivityInput.getActivityRunId())) {
-                participantActivityExisting.setActivityRunId(
-                    participantActivityInput.getActivityRunId());
-              }
-              if (participantActivityInput.getTotalCount() != null) {
-                participantActivityExisting.setTotalCount(participantActivityInput.getTotalCount());
-              }
-              if (participantActivityInput.getCompletedCount() != null) {
-                participantActivityExisting.setCompletedCount(
-                    participantActivityInput.getCompletedCount());
-              }
-              if (participantActivityInput.getMissedCount() != null) {
-                participantActivityExisting.setMissedCount(
-                    participantActivityInput.getMissedCount());
-              }
-            }
-          }
-        }
-        if (!isExistingRecord) {
-          saveOrUpdateParticipantActivitiesList.add(participantActivityInput);
-        }
+      List<ParticipantActivitiesEntity> existingParticipantActivitiesList) {
+    Map<String, ParticipantActivitiesEntity> participantActivitiesByActivityId = new HashMap<>();
+    for (ParticipantActivitiesEntity participantActivityExisting :
+        existingParticipantActivitiesList) {
+      participantActivitiesByActivityId.putIfAbsent(
+          activityKey(participantActivityExisting), participantActivityExisting);
+    }
+
+    Map<String, ParticipantActivitiesEntity> participantActivitiesToUpdate = new LinkedHashMap<>();
+    for (ParticipantActivitiesEntity participantActivityInput : inputParticipantActivitiesList) {
+      String activityKey = activityKey(participantActivityInput);
+      ParticipantActivitiesEntity participantActivityExisting =
+          participantActivitiesByActivityId.get(activityKey);
+      if (participantActivityExisting == null) {
+        participantActivitiesByActivityId.put(activityKey, participantActivityInput);
+        participantActivitiesToUpdate.put(activityKey, participantActivityInput);
+      } else if (mergeParticipantActivity(participantActivityInput, participantActivityExisting)) {
+        participantActivitiesToUpdate.put(activityKey, participantActivityExisting);
       }
     }
-    return saveOrUpdateParticipantActivitiesList;
+    return new ArrayList<>(participantActivitiesToUpdate.values());
+  }
+
+  /** @return true if a value of the existing activity changed */
+  private boolean mergeParticipantActivity(
+      ParticipantActivitiesEntity participantActivityInput,
+      ParticipantActivitiesEntity participantActivityExisting) {
+    boolean changed =
+        !Objects.equals(
+                participantActivityInput.getActivityVersion(),
+                participantActivityExisting.getActivityVersion())
+            || !Objects.equals(
+                participantActivityInput.getActivityState(),
+                participantActivityExisting.getActivityState())
+            || !Objects.equals(
+                participantActivityInput.getBookmark(), participantActivityExisting.getBookmark());
+    participantActivityExisting.setActivityVersion(participantActivityInput.getActivityVersion());
+    participantActivityExisting.setActivityState(participantActivityInput.getActivityState());
+    participantActivityExisting.setBookmark(participantActivityInput.getBookmark());
+    if (StringUtils.isNotBlank(participantActivityInput.getActivityRunId())
+        && !participantActivityInput
+            .getActivityRunId()
+            .equals(participantActivityExisting.getActivityRunId())) {
+      participantActivityExisting.setActivityRunId(participantActivityInput.getActivityRunId());
+      changed = true;
+    }
+    if (participantActivityInput.getTotalCount() != null
+        && !participantActivityInput
+            .getTotalCount()
+            .equals(participantActivityExisting.getTotalCount())) {
+      participantActivityExisting.setTotalCount(participantActivityInput.getTotalCount());
+      changed = true;
+    }
+    if (participantActivityInput.getCompletedCount() != null
+        && !participantActivityInput
+            .getCompletedCount()
+            .equals(participantActivityExisting.getCompletedCount())) {
+      participantActivityExisting.setCompletedCount(participantActivityInput.getCompletedCount());
+      changed = true;
+    }
+    if (participantActivityInput.getMissedCount() != null
+        && !participantActivityInput
+            .getMissedCount()
+            .equals(participantActivityExisting.getMissedCount())) {
+      participantActivityExisting.setMissedCount(participantActivityInput.getMissedCount());
+      changed = true;
+    }
+    return changed;
+  }
+
+  private static String activityKey(ParticipantActivitiesEntity participantActivity) {
+    return StringUtils.lowerCase(participantActivity.getActivityId(), Locale.ROOT);
   }
 
   private List<ParticipantActivitiesEntity> getDtoObject(
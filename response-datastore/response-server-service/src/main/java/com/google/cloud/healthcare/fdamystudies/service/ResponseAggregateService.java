@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import com.google.cloud.healthcare.fdamystudies.bean.QuestionAggregateBean;
+import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps per-question statistics of the saved responses up to date, so that they are read without
+ * reading the responses.
+ */
+public interface ResponseAggregateService {
+
+  /**
+   * Counts the answers of a saved response document in the aggregates of its site, activity and
+   * questions. An activity run that was counted already is skipped, so a save can be retried.
+   */
+  void addResponse(String studyId, Map<String, Object> document) throws ProcessResponseException;
+
+  /** Takes the answers of the participant out of the aggregates of the study. */
+  void withdrawParticipant(String studyId, String participantId) throws ProcessResponseException;
+
+  /**
+   * @param siteId the site of the aggregates, or null to merge the aggregates of all sites
+   * @param activityId the activity of the aggregates, or null for all activities
+   * @param questionKey the question of the aggregates, or null for all questions
+   * @return the aggregates of the study, one per question
+   */
+  List<QuestionAggregateBean> getAggregates(
+      String studyId, String siteId, String activityId, String questionKey);
+}
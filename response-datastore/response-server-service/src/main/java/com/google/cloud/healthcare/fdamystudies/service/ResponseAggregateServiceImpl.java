@@ -0,0 +1,401 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import static com.google.cloud.healthcare.fdamystudies.common.ColumnConstraints.LARGE_LENGTH;
+
+import com.google.cloud.healthcare.fdamystudies.bean.QuestionAggregateBean;
+import com.google.cloud.healthcare.fdamystudies.bean.QuestionResponseValue;
+import com.google.cloud.healthcare.fdamystudies.config.ApplicationConfiguration;
+import com.google.cloud.healthcare.fdamystudies.dao.StoredResponseConverter;
+import com.google.cloud.healthcare.fdamystudies.repository.QuestionResponseAggregateRepository;
+import com.google.cloud.healthcare.fdamystudies.repository.QuestionResponseContributionRepository;
+import com.google.cloud.healthcare.fdamystudies.response.model.QuestionResponseAggregateEntity;
+import com.google.cloud.healthcare.fdamystudies.response.model.QuestionResponseContributionEntity;
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
+import com.google.cloud.healthcare.fdamystudies.utils.QuantileSketch;
+import com.google.gson.Gson;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.PostConstruct;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Per-question aggregates kept in the response server database, whatever the response storage.
+ *
+ * <p>Each answer counted is recorded as a contribution, in the transaction that adds it to the
+ * aggregate of its site, activity and question. The contributions make the update idempotent per
+ * activity run and let the answers of a withdrawn participant be subtracted again: counts, sums
+ * and sketch buckets exactly, while the min, max and last value are read again from the remaining
+ * contributions when the withdrawn answers held them. Concurrent updates of an aggregate are
+ * detected by its version and retried.
+ */
+@Service
+public class ResponseAggregateServiceImpl implements ResponseAggregateService {
+
+  private static final Gson GSON = new Gson();
+
+  private static final List<Double> QUANTILES = Arrays.asList(0.25, 0.5, 0.75, 0.9, 0.95, 0.99);
+
+  private XLogger logger = XLoggerFactory.getXLogger(ResponseAggregateServiceImpl.class.getName());
+
+  @Autowired private QuestionResponseAggregateRepository aggregateRepository;
+
+  @Autowired private QuestionResponseContributionRepository contributionRepository;
+
+  @Autowired private TransactionTemplate transactionTemplate;
+
+  @Autowired private ApplicationConfiguration appConfig;
+
+  @Autowired private ObjectProvider<MeterRegistry> meterRegistry;
+
+  @Value("${response.aggregates.enabled:true}")
+  private boolean enabled;
+
+  @Value("${response.aggregates.sketch-relative-accuracy:0.01}")
+  private double sketchRelativeAccuracy;
+
+  @Value("${response.aggregates.max-attempts:5}")
+  private int maxAttempts;
+
+  private MeterRegistry registry;
+
+  @PostConstruct
+  public void init() {
+    registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+  }
+
+  @Override
+  public void addResponse(String studyId, Map<String, Object> document)
+      throws ProcessResponseException {
+    String participantId = (String) document.get(AppConstants.PARTICIPANT_ID_KEY);
+    String activityId = (String) document.get(AppConstants.ACTIVITY_ID_KEY);
+    if (!enabled || StringUtils.isBlank(participantId) || StringUtils.isBlank(activityId)) {
+      return;
+    }
+    String siteId = StringUtils.defaultString((String) document.get(AppConstants.SITE_ID_KEY));
+    String activityRunId =
+        StringUtils.defaultString((String) document.get(AppConstants.ACTIVITY_RUN_ID_KEY));
+    Map<String, QuestionResponseValue> values =
+        StoredResponseConverter.getQuestionResponseValues(document);
+    if (values.isEmpty()) {
+      return;
+    }
+    inTransaction(
+        "add",
+        () -> {
+          if (contributionRepository.existsByStudyIdAndParticipantIdAndActivityIdAndActivityRunId(
+              studyId, participantId, activityId, activityRunId)) {
+            logger.debug("Activity run counted already. Study ID " + studyId);
+            return;
+          }
+          for (Map.Entry<String, QuestionResponseValue> value : values.entrySet()) {
+            QuestionResponseContributionEntity contribution =
+                new QuestionResponseContributionEntity();
+            contribution.setStudyId(studyId);
+            contribution.setSiteId(siteId);
+            contribution.setParticipantId(participantId);
+            contribution.setActivityId(activityId);
+            contribution.setActivityRunId(activityRunId);
+            contribution.setQuestionKey(value.getKey());
+            contribution.setNumericValue(toNumericValue(value.getValue()));
+            contribution.setValue(StringUtils.left(value.getValue().getValue(), LARGE_LENGTH));
+            contribution.setCreatedTimestamp(value.getValue().getCreatedTimestamp());
+            contributionRepository.save(contribution);
+
+            QuestionResponseAggregateEntity aggregate =
+                aggregateRepository
+                    .findByStudyIdAndSiteIdAndActivityIdAndQuestionKey(
+                        studyId, siteId, activityId, value.getKey())
+                    .orElseGet(() -> newAggregate(studyId, siteId, activityId, value.getKey()));
+            add(aggregate, contribution);
+            aggregateRepository.save(aggregate);
+          }
+        });
+  }
+
+  @Override
+  public void withdrawParticipant(String studyId, String participantId)
+      throws ProcessResponseException {
+    if (!enabled) {
+      return;
+    }
+    inTransaction(
+        "withdraw",
+        () -> {
+          // contributions by aggregate, each aggregate is read and written once
+          Map<List<String>, List<QuestionResponseContributionEntity>> contributionsByAggregate =
+              new LinkedHashMap<>();
+          for (QuestionResponseContributionEntity contribution :
+              contributionRepository.findByStudyIdAndParticipantIdAndWithdrawnFalse(
+                  studyId, participantId)) {
+            contribution.setWithdrawn(true);
+            contributionRepository.save(contribution);
+            contributionsByAggregate
+                .computeIfAbsent(
+                    Arrays.asList(
+                        contribution.getSiteId(),
+                        contribution.getActivityId(),
+                        contribution.getQuestionKey()),
+                    key -> new ArrayList<>())
+                .add(contribution);
+          }
+          for (Map.Entry<List<String>, List<QuestionResponseContributionEntity>> entry :
+              contributionsByAggregate.entrySet()) {
+            aggregateRepository
+                .findByStudyIdAndSiteIdAndActivityIdAndQuestionKey(
+                    studyId, entry.getKey().get(0), entry.getKey().get(1), entry.getKey().get(2))
+                .ifPresent(
+                    aggregate -> {
+                      subtract(aggregate, entry.getValue());
+                      aggregateRepository.save(aggregate);
+                    });
+          }
+          logger.info(
+              String.format(
+                  "withdrawal of a participant: %d aggregates updated",
+                  contributionsByAggregate.size()));
+        });
+  }
+
+  @Override
+  public List<QuestionAggregateBean> getAggregates(
+      String studyId, String siteId, String activityId, String questionKey) {
+    List<QuestionResponseAggregateEntity> aggregates =
+        aggregateRepository.findAggregates(
+            studyId,
+            StringUtils.defaultIfBlank(siteId, null),
+            StringUtils.defaultIfBlank(activityId, null),
+            StringUtils.defaultIfBlank(questionKey, null));
+    List<QuestionAggregateBean> aggregateBeans = new ArrayList<>();
+    if (StringUtils.isNotBlank(siteId)) {
+      for (QuestionResponseAggregateEntity aggregate : aggregates) {
+        aggregateBeans.add(toBean(aggregate));
+      }
+      return aggregateBeans;
+    }
+    // the aggregates of the sites are merged into the one of the study
+    Map<List<String>, QuestionResponseAggregateEntity> studyAggregates = new LinkedHashMap<>();
+    for (QuestionResponseAggregateEntity aggregate : aggregates) {
+      merge(
+          studyAggregates.computeIfAbsent(
+              Arrays.asList(aggregate.getActivityId(), aggregate.getQuestionKey()),
+              key -> newAggregate(studyId, null, key.get(0), key.get(1))),
+          aggregate);
+    }
+    for (QuestionResponseAggregateEntity aggregate : studyAggregates.values()) {
+      aggregateBeans.add(toBean(aggregate));
+    }
+    return aggregateBeans;
+  }
+
+  /**
+   * Runs the work in a transaction, again if another transaction updated the same aggregate or
+   * counted the same activity run first.
+   */
+  private void inTransaction(String operation, Runnable work) throws ProcessResponseException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        transactionTemplate.execute(
+            status -> {
+              work.run();
+              return null;
+            });
+        return;
+      } catch (OptimisticLockingFailureException | DataIntegrityViolationException e) {
+        registry.counter("response.aggregates.conflicts", "operation", operation).increment();
+        if (attempt >= maxAttempts) {
+          logger.error(e.getMessage(), e);
+          throw new ProcessResponseException(
+              String.format(
+                  "%s of the aggregates failed after %d attempts: %s",
+                  operation, attempt, e.getMessage()));
+        }
+      } catch (Exception e) {
+        logger.error(e.getMessage(), e);
+        throw new ProcessResponseException(e.getMessage());
+      }
+    }
+  }
+
+  /** @return the value of a numeric question type, or null */
+  private Double toNumericValue(QuestionResponseValue value) {
+    if (StringUtils.isBlank(value.getResultType())
+        || !StringUtils.containsIgnoreCase(
+            appConfig.getResponseSupportedQTypeDouble(), value.getResultType())) {
+      return null;
+    }
+    try {
+      double numericValue = Double.parseDouble(value.getValue());
+      return Double.isNaN(numericValue) || Double.isInfinite(numericValue) ? null : numericValue;
+    } catch (NumberFormatException | NullPointerException e) {
+      return null;
+    }
+  }
+
+  private QuestionResponseAggregateEntity newAggregate(
+      String studyId, String siteId, String activityId, String questionKey) {
+    QuestionResponseAggregateEntity aggregate = new QuestionResponseAggregateEntity();
+    aggregate.setStudyId(studyId);
+    aggregate.setSiteId(siteId);
+    aggregate.setActivityId(activityId);
+    aggregate.setQuestionKey(questionKey);
+    aggregate.setSketch(GSON.toJson(new QuantileSketch(sketchRelativeAccuracy)));
+    return aggregate;
+  }
+
+  private void add(
+      QuestionResponseAggregateEntity aggregate, QuestionResponseContributionEntity contribution) {
+    aggregate.setResponseCount(aggregate.getResponseCount() + 1);
+    Double value = contribution.getNumericValue();
+    if (value != null) {
+      aggregate.setNumericCount(aggregate.getNumericCount() + 1);
+      aggregate.setValueSum(aggregate.getValueSum() + value);
+      aggregate.setValueSumOfSquares(aggregate.getValueSumOfSquares() + value * value);
+      if (aggregate.getMinValue() == null || value < aggregate.getMinValue()) {
+        aggregate.setMinValue(value);
+      }
+      if (aggregate.getMaxValue() == null || value > aggregate.getMaxValue()) {
+        aggregate.setMaxValue(value);
+      }
+      QuantileSketch sketch = GSON.fromJson(aggregate.getSketch(), QuantileSketch.class);
+      sketch.add(value);
+      aggregate.setSketch(GSON.toJson(sketch));
+    }
+    if (aggregate.getLastCreatedTimestamp() == null
+        || contribution.getCreatedTimestamp() >= aggregate.getLastCreatedTimestamp()) {
+      aggregate.setLastValue(contribution.getValue());
+      aggregate.setLastCreatedTimestamp(contribution.getCreatedTimestamp());
+    }
+  }
+
+  /** Subtracts contributions that are marked withdrawn already. */
+  private void subtract(
+      QuestionResponseAggregateEntity aggregate,
+      List<QuestionResponseContributionEntity> contributions) {
+    QuantileSketch sketch = GSON.fromJson(aggregate.getSketch(), QuantileSketch.class);
+    boolean rangeChanged = false;
+    boolean lastChanged = false;
+    for (QuestionResponseContributionEntity contribution : contributions) {
+      aggregate.setResponseCount(Math.max(0, aggregate.getResponseCount() - 1));
+      Double value = contribution.getNumericValue();
+      if (value != null) {
+        aggregate.setNumericCount(Math.max(0, aggregate.getNumericCount() - 1));
+        aggregate.setValueSum(aggregate.getValueSum() - value);
+        aggregate.setValueSumOfSquares(aggregate.getValueSumOfSquares() - value * value);
+        sketch.remove(value);
+        rangeChanged |=
+            value.equals(aggregate.getMinValue()) || value.equals(aggregate.getMaxValue());
+      }
+      lastChanged |=
+          Long.valueOf(contribution.getCreatedTimestamp())
+              .equals(aggregate.getLastCreatedTimestamp());
+    }
+    aggregate.setSketch(GSON.toJson(sketch));
+    if (aggregate.getNumericCount() == 0) {
+      // no rounding error is left behind
+      aggregate.setValueSum(0);
+      aggregate.setValueSumOfSquares(0);
+      aggregate.setMinValue(null);
+      aggregate.setMaxValue(null);
+    } else if (rangeChanged) {
+      Object[] range =
+          contributionRepository
+              .findNumericRange(
+                  aggregate.getStudyId(),
+                  aggregate.getSiteId(),
+                  aggregate.getActivityId(),
+                  aggregate.getQuestionKey())
+              .get(0);
+      aggregate.setMinValue((Double) range[0]);
+      aggregate.setMaxValue((Double) range[1]);
+    }
+    if (lastChanged) {
+      List<QuestionResponseContributionEntity> latest =
+          contributionRepository.findLatest(
+              aggregate.getStudyId(),
+              aggregate.getSiteId(),
+              aggregate.getActivityId(),
+              aggregate.getQuestionKey(),
+              PageRequest.of(0, 1));
+      aggregate.setLastValue(latest.isEmpty() ? null : latest.get(0).getValue());
+      aggregate.setLastCreatedTimestamp(
+          latest.isEmpty() ? null : latest.get(0).getCreatedTimestamp());
+    }
+  }
+
+  private void merge(
+      QuestionResponseAggregateEntity target, QuestionResponseAggregateEntity source) {
+    target.setResponseCount(target.getResponseCount() + source.getResponseCount());
+    target.setNumericCount(target.getNumericCount() + source.getNumericCount());
+    target.setValueSum(target.getValueSum() + source.getValueSum());
+    target.setValueSumOfSquares(target.getValueSumOfSquares() + source.getValueSumOfSquares());
+    if (source.getMinValue() != null
+        && (target.getMinValue() == null || source.getMinValue() < target.getMinValue())) {
+      target.setMinValue(source.getMinValue());
+    }
+    if (source.getMaxValue() != null
+        && (target.getMaxValue() == null || source.getMaxValue() > target.getMaxValue())) {
+      target.setMaxValue(source.getMaxValue());
+    }
+    QuantileSketch sketch = GSON.fromJson(target.getSketch(), QuantileSketch.class);
+    sketch.merge(GSON.fromJson(source.getSketch(), QuantileSketch.class));
+    target.setSketch(GSON.toJson(sketch));
+    if (source.getLastCreatedTimestamp() != null
+        && (target.getLastCreatedTimestamp() == null
+            || source.getLastCreatedTimestamp() > target.getLastCreatedTimestamp())) {
+      target.setLastValue(source.getLastValue());
+      target.setLastCreatedTimestamp(source.getLastCreatedTimestamp());
+    }
+  }
+
+  private QuestionAggregateBean toBean(QuestionResponseAggregateEntity aggregate) {
+    QuestionAggregateBean aggregateBean = new QuestionAggregateBean();
+    aggregateBean.setStudyId(aggregate.getStudyId());
+    aggregateBean.setSiteId(aggregate.getSiteId());
+    aggregateBean.setActivityId(aggregate.getActivityId());
+    aggregateBean.setQuestionKey(aggregate.getQuestionKey());
+    aggregateBean.setResponseCount(aggregate.getResponseCount());
+    aggregateBean.setNumericCount(aggregate.getNumericCount());
+    aggregateBean.setLastValue(aggregate.getLastValue());
+    aggregateBean.setLastCreatedTimestamp(aggregate.getLastCreatedTimestamp());
+    long count = aggregate.getNumericCount();
+    if (count > 0) {
+      double mean = aggregate.getValueSum() / count;
+      aggregateBean.setMin(aggregate.getMinValue());
+      aggregateBean.setMax(aggregate.getMaxValue());
+      aggregateBean.setMean(mean);
+      aggregateBean.setStandardDeviation(
+          Math.sqrt(Math.max(0, aggregate.getValueSumOfSquares() / count - mean * mean)));
+      QuantileSketch sketch = GSON.fromJson(aggregate.getSketch(), QuantileSketch.class);
+      for (double quantile : QUANTILES) {
+        aggregateBean
+            .getQuantiles()
+            .put("p" + Math.round(quantile * 100), sketch.getQuantile(quantile));
+      }
+    }
+    return aggregateBean;
+  }
+}
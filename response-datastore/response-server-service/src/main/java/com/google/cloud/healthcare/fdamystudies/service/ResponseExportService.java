@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportFilter;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportJobBean;
+import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
+import java.nio.file.Path;
+import java.util.List;
+
+public interface ResponseExportService {
+
+  String NDJSON_FORMAT = "ndjson";
+
+  String CSV_FORMAT = "csv";
+
+  /** Saves a new export job of the responses of the study and runs it in the background. */
+  ResponseExportJobBean startExport(
+      String studyId, ResponseExportFilter filter, List<String> formats)
+      throws ProcessResponseException;
+
+  /** @return the export job of the study, or null if there is none with that ID */
+  ResponseExportJobBean getExport(String studyId, String jobId);
+
+  /**
+   * Runs a failed export job again from the cursor of its last written chunk.
+   *
+   * @return the export job of the study, or null if there is none with that ID
+   */
+  ResponseExportJobBean resumeExport(String studyId, String jobId)
+      throws ProcessResponseException;
+
+  /** @return a written file of the export job of the study, or null if there is none */
+  Path getExportFile(String studyId, String jobId, String fileName);
+
+  /**
+   * Deletes the completed and failed export jobs, and their files, last updated before the
+   * timestamp. Running jobs are kept.
+   *
+   * @return the number of deleted jobs
+   */
+  int deleteJobsUpdatedBefore(long timestamp);
+}
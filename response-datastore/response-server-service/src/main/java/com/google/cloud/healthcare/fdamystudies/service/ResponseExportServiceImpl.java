@@ -0,0 +1,539 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportFilter;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportJobBean;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportPage;
+import com.google.cloud.healthcare.fdamystudies.common.JsonUtils;
+import com.google.cloud.healthcare.fdamystudies.dao.ResponsesDao;
+import com.google.cloud.healthcare.fdamystudies.dao.StoredResponseConverter;
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import com.google.cloud.healthcare.fdamystudies.utils.AppUtil;
+import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Background export of the responses of a study to chunked NDJSON and CSV files.
+ *
+ * <p>A job reads the responses one page at a time with {@link
+ * ResponsesDao#getActivityResponseDataPage}, so that only one page is held in memory whatever the
+ * size of the study. CSV files have one column per question key, which are collected by a first
+ * pass over the responses. A page with question keys that the first pass did not see, saved while
+ * the job runs, starts a new chunk whose header has the added columns, so the header of each CSV
+ * file lists every column of its rows. Each chunk is written to temporary files, renamed once
+ * complete, and the job file then saves the cursor of the next page. A job that was running when
+ * the service stopped is resumed from that cursor on start, and a failed job is resumed on
+ * request. Completed and failed jobs, and their files, are deleted after the retention period.
+ */
+@Service
+public class ResponseExportServiceImpl implements ResponseExportService {
+
+  private static final String PENDING = "PENDING";
+
+  private static final String RUNNING = "RUNNING";
+
+  private static final String COMPLETED = "COMPLETED";
+
+  private static final String FAILED = "FAILED";
+
+  private static final String COLUMNS_PHASE = "COLUMNS";
+
+  private static final String ROWS_PHASE = "ROWS";
+
+  private static final String JOB_FILE = "job.json";
+
+  private static final String TMP_SUFFIX = ".tmp";
+
+  private static final Pattern NUMBER_PATTERN =
+      Pattern.compile("[-+]?\\d+(\\.\\d+)?([eE][-+]?\\d+)?");
+
+  /** Columns of the CSV files before the question keys. */
+  private static final List<String> CSV_RESPONSE_COLUMNS =
+      Arrays.asList(
+          AppConstants.PARTICIPANT_ID_KEY,
+          AppConstants.SITE_ID_KEY,
+          AppConstants.ACTIVITY_ID_KEY,
+          AppConstants.ACTIVITY_RUN_ID_KEY,
+          AppConstants.STUDY_VERSION_KEY,
+          AppConstants.CREATED_TS_KEY,
+          AppConstants.WITHDRAWAL_STATUS_KEY);
+
+  private XLogger logger = XLoggerFactory.getXLogger(ResponseExportServiceImpl.class.getName());
+
+  @Autowired private ResponsesDao responsesDao;
+
+  @Autowired private ObjectProvider<MeterRegistry> meterRegistry;
+
+  @Value("${response.export.path:./response-exports}")
+  private String exportPath;
+
+  @Value("${response.export.page-size:500}")
+  private int pageSize;
+
+  @Value("${response.export.chunk-max-responses:100000}")
+  private long chunkMaxResponses;
+
+  @Value("${response.export.max-concurrent-jobs:2}")
+  private int maxConcurrentJobs;
+
+  @Value("${response.export.retention-hours:72}")
+  private long retentionHours;
+
+  @Value("${response.export.cleanup.interval-minutes:60}")
+  private long cleanupIntervalMinutes;
+
+  private final Map<String, ResponseExportJobBean> jobs = new ConcurrentHashMap<>();
+
+  private final ObjectMapper objectMapper = JsonUtils.getObjectMapper();
+
+  private MeterRegistry registry;
+
+  private ExecutorService executor;
+
+  private ScheduledExecutorService cleanupExecutor;
+
+  @PostConstruct
+  public void init() throws IOException {
+    registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    executor =
+        Executors.newFixedThreadPool(
+            maxConcurrentJobs,
+            runnable -> {
+              Thread thread = new Thread(runnable, "response-export");
+              thread.setDaemon(true);
+              return thread;
+            });
+    cleanupExecutor =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "response-export-cleanup");
+              thread.setDaemon(true);
+              return thread;
+            });
+
+    Path root = Paths.get(exportPath);
+    Files.createDirectories(root);
+    try (DirectoryStream<Path> jobDirectories = Files.newDirectoryStream(root)) {
+      for (Path jobDirectory : jobDirectories) {
+        Path jobFile = jobDirectory.resolve(JOB_FILE);
+        if (!Files.isRegularFile(jobFile)) {
+          continue;
+        }
+        ResponseExportJobBean job =
+            objectMapper.readValue(jobFile.toFile(), ResponseExportJobBean.class);
+        jobs.put(job.getJobId(), job);
+        if (PENDING.equals(job.getStatus()) || RUNNING.equals(job.getStatus())) {
+          logger.info(String.format("resuming response export job %s", job.getJobId()));
+          executor.execute(() -> run(job));
+        }
+      }
+    }
+    cleanupExecutor.scheduleWithFixedDelay(
+        this::deleteExpiredJobs, 0, cleanupIntervalMinutes, TimeUnit.MINUTES);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    // running jobs keep their status and are resumed on the next start
+    executor.shutdownNow();
+    cleanupExecutor.shutdownNow();
+  }
+
+  @Override
+  public ResponseExportJobBean startExport(
+      String studyId, ResponseExportFilter filter, List<String> formats)
+      throws ProcessResponseException {
+    ResponseExportJobBean job = new ResponseExportJobBean();
+    job.setJobId(UUID.randomUUID().toString());
+    job.setStudyId(studyId);
+    job.setFilter(filter);
+    job.setFormats(formats);
+    job.setStatus(PENDING);
+    job.setPhase(formats.contains(CSV_FORMAT) ? COLUMNS_PHASE : ROWS_PHASE);
+    job.setCreatedTime(System.currentTimeMillis());
+    try {
+      Files.createDirectories(jobDirectory(job));
+      saveJob(job);
+    } catch (IOException e) {
+      logger.error("saving the response export job failed", e);
+      throw new ProcessResponseException(e.getMessage());
+    }
+    jobs.put(job.getJobId(), job);
+    executor.execute(() -> run(job));
+    return job;
+  }
+
+  @Override
+  public ResponseExportJobBean getExport(String studyId, String jobId) {
+    ResponseExportJobBean job = jobs.get(jobId);
+    return job != null && job.getStudyId().equals(studyId) ? job : null;
+  }
+
+  @Override
+  public ResponseExportJobBean resumeExport(String studyId, String jobId)
+      throws ProcessResponseException {
+    ResponseExportJobBean job = getExport(studyId, jobId);
+    if (job == null) {
+      return null;
+    }
+    synchronized (job) {
+      if (jobs.get(jobId) != job) {
+        // deleted by the retention meanwhile
+        return null;
+      }
+      if (!FAILED.equals(job.getStatus())) {
+        return job;
+      }
+      job.setStatus(PENDING);
+      job.setErrorMessage(null);
+      try {
+        saveJob(job);
+      } catch (IOException e) {
+        logger.error("saving the response export job failed", e);
+        throw new ProcessResponseException(e.getMessage());
+      }
+    }
+    executor.execute(() -> run(job));
+    return job;
+  }
+
+  @Override
+  public Path getExportFile(String studyId, String jobId, String fileName) {
+    ResponseExportJobBean job = getExport(studyId, jobId);
+    // only the files listed by the job, never a path built from the request
+    if (job == null || !job.getFiles().contains(fileName)) {
+      return null;
+    }
+    return jobDirectory(job).resolve(fileName);
+  }
+
+  private void run(ResponseExportJobBean job) {
+    long start = System.currentTimeMillis();
+    try {
+      job.setStatus(RUNNING);
+      saveJob(job);
+      deleteTmpFiles(job);
+      String studyCollectionName = AppUtil.makeStudyCollectionName(job.getStudyId());
+      if (COLUMNS_PHASE.equals(job.getPhase())) {
+        collectQuestionKeys(job, studyCollectionName);
+      }
+      writeChunks(job, studyCollectionName);
+      job.setStatus(COMPLETED);
+      saveJob(job);
+      registry.counter("response.export.jobs", "result", "completed").increment();
+      logger.info(
+          String.format(
+              "response export job %s exported %d responses to %d chunks in %d ms",
+              job.getJobId(),
+              job.getExportedResponses(),
+              job.getChunks(),
+              System.currentTimeMillis() - start));
+    } catch (Exception e) {
+      if (executor.isShutdown()) {
+        return;
+      }
+      logger.error(String.format("response export job %s failed", job.getJobId()), e);
+      registry.counter("response.export.jobs", "result", "failed").increment();
+      failJob(job, e);
+    }
+  }
+
+  /** Reads every response once to collect the question keys, the columns of the CSV files. */
+  private void collectQuestionKeys(ResponseExportJobBean job, String studyCollectionName)
+      throws ProcessResponseException, IOException {
+    Set<String> questionKeys = new TreeSet<>(job.getQuestionKeys());
+    do {
+      ResponseExportPage page =
+          responsesDao.getActivityResponseDataPage(
+              studyCollectionName, job.getStudyId(), job.getFilter(), job.getCursor(), pageSize);
+      for (Map<String, Object> document : page.getDocuments()) {
+        questionKeys.addAll(StoredResponseConverter.getQuestionKeys(document));
+      }
+      job.setQuestionKeys(new ArrayList<>(questionKeys));
+      job.setCursor(page.getNextCursor());
+      job.setScannedResponses(job.getScannedResponses() + page.getDocuments().size());
+      saveJob(job);
+    } while (job.getCursor() != null);
+    job.setPhase(ROWS_PHASE);
+    job.setScannedResponses(0);
+    saveJob(job);
+  }
+
+  private void writeChunks(ResponseExportJobBean job, String studyCollectionName)
+      throws ProcessResponseException, IOException {
+    String cursor = job.getCursor();
+    ExportChunk chunk = null;
+    try {
+      do {
+        ResponseExportPage page =
+            responsesDao.getActivityResponseDataPage(
+                studyCollectionName, job.getStudyId(), job.getFilter(), cursor, pageSize);
+        Set<String> questionKeys = getWidenedQuestionKeys(job, page);
+        if (questionKeys != null) {
+          if (chunk != null) {
+            // the rows of this page are not written yet, the job resumes from this page
+            chunk.commit(cursor);
+            chunk = null;
+          }
+          job.setQuestionKeys(new ArrayList<>(questionKeys));
+          saveJob(job);
+        }
+        for (Map<String, Object> document : page.getDocuments()) {
+          if (chunk == null) {
+            chunk = new ExportChunk(job);
+          }
+          chunk.write(document);
+        }
+        cursor = page.getNextCursor();
+        job.setScannedResponses(job.getScannedResponses() + page.getDocuments().size());
+        if (chunk != null && (cursor == null || chunk.responses >= chunkMaxResponses)) {
+          chunk.commit(cursor);
+          chunk = null;
+        }
+      } while (cursor != null);
+    } finally {
+      if (chunk != null) {
+        chunk.close();
+      }
+    }
+    job.setCursor(null);
+  }
+
+  /** Returns the question keys with those first seen in the page, or null if none is new. */
+  private Set<String> getWidenedQuestionKeys(ResponseExportJobBean job, ResponseExportPage page) {
+    if (!job.getFormats().contains(CSV_FORMAT)) {
+      return null;
+    }
+    Set<String> questionKeys = new TreeSet<>(job.getQuestionKeys());
+    int known = questionKeys.size();
+    for (Map<String, Object> document : page.getDocuments()) {
+      questionKeys.addAll(StoredResponseConverter.getQuestionKeys(document));
+    }
+    return questionKeys.size() > known ? questionKeys : null;
+  }
+
+  /** Saves the failure on the state of the last written chunk, the job is resumed from there. */
+  private void failJob(ResponseExportJobBean job, Exception cause) {
+    try {
+      ResponseExportJobBean saved =
+          objectMapper.readValue(
+              jobDirectory(job).resolve(JOB_FILE).toFile(), ResponseExportJobBean.class);
+      saved.setStatus(FAILED);
+      saved.setErrorMessage(cause.getMessage());
+      saveJob(saved);
+      jobs.put(saved.getJobId(), saved);
+    } catch (IOException e) {
+      logger.error(String.format("saving response export job %s failed", job.getJobId()), e);
+      job.setStatus(FAILED);
+      job.setErrorMessage(cause.getMessage());
+    }
+  }
+
+  private void deleteExpiredJobs() {
+    deleteJobsUpdatedBefore(
+        System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retentionHours));
+  }
+
+  @Override
+  public int deleteJobsUpdatedBefore(long timestamp) {
+    int deleted = 0;
+    for (ResponseExportJobBean job : jobs.values()) {
+      synchronized (job) {
+        if ((!COMPLETED.equals(job.getStatus()) && !FAILED.equals(job.getStatus()))
+            || job.getUpdatedTime() >= timestamp
+            || !jobs.remove(job.getJobId(), job)) {
+          continue;
+        }
+      }
+      try (Stream<Path> paths = Files.walk(jobDirectory(job))) {
+        // children first, the job directory last
+        for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+          Files.deleteIfExists(path);
+        }
+        deleted++;
+        registry.counter("response.export.jobs.deleted").increment();
+        logger.info(String.format("deleted expired response export job %s", job.getJobId()));
+      } catch (IOException | RuntimeException e) {
+        // the job is loaded again, and deleted, on the next start
+        logger.warn(String.format("deleting response export job %s failed", job.getJobId()), e);
+      }
+    }
+    return deleted;
+  }
+
+  private void saveJob(ResponseExportJobBean job) throws IOException {
+    job.setUpdatedTime(System.currentTimeMillis());
+    Path jobFile = jobDirectory(job).resolve(JOB_FILE);
+    Path tmpFile = jobFile.resolveSibling(JOB_FILE + TMP_SUFFIX);
+    try (FileOutputStream out = new FileOutputStream(tmpFile.toFile())) {
+      out.write(objectMapper.writeValueAsBytes(job));
+      out.getFD().sync();
+    }
+    Files.move(tmpFile, jobFile, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /** Deletes the chunk files left by a job that stopped before they were complete. */
+  private void deleteTmpFiles(ResponseExportJobBean job) throws IOException {
+    try (DirectoryStream<Path> tmpFiles =
+        Files.newDirectoryStream(jobDirectory(job), "part-*" + TMP_SUFFIX)) {
+      for (Path tmpFile : tmpFiles) {
+        Files.delete(tmpFile);
+      }
+    }
+  }
+
+  private Path jobDirectory(ResponseExportJobBean job) {
+    return Paths.get(exportPath, job.getJobId());
+  }
+
+  private static String toCsvField(Object value) {
+    if (value == null) {
+      return AppConstants.EMPTY_STR;
+    }
+    String text = String.valueOf(value);
+    // spreadsheets run a cell starting with one of these as a formula, numbers are left as is
+    if (StringUtils.startsWithAny(text, "=", "+", "-", "@", "\t", "\r")
+        && !NUMBER_PATTERN.matcher(text).matches()) {
+      text = "'" + text;
+    }
+    if (StringUtils.containsAny(text, ',', '"', '\n', '\r')) {
+      return '"' + text.replace("\"", "\"\"") + '"';
+    }
+    return text;
+  }
+
+  /** Files of one chunk, one per format, written to temporary files until committed. */
+  private class ExportChunk {
+
+    private final ResponseExportJobBean job;
+
+    private final List<String> fileNames = new ArrayList<>();
+
+    private final List<FileOutputStream> outputs = new ArrayList<>();
+
+    private final List<Writer> writers = new ArrayList<>();
+
+    private long responses;
+
+    private ExportChunk(ResponseExportJobBean job) throws IOException {
+      this.job = job;
+      for (String format : job.getFormats()) {
+        String fileName = String.format("part-%05d.%s", job.getChunks(), format);
+        FileOutputStream output =
+            new FileOutputStream(jobDirectory(job).resolve(fileName + TMP_SUFFIX).toFile());
+        Writer writer =
+            new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        fileNames.add(fileName);
+        outputs.add(output);
+        writers.add(writer);
+        if (CSV_FORMAT.equals(format)) {
+          List<String> header = new ArrayList<>(CSV_RESPONSE_COLUMNS);
+          header.addAll(job.getQuestionKeys());
+          writeCsvRow(writer, header);
+        }
+      }
+    }
+
+    private void write(Map<String, Object> document) throws IOException {
+      for (int i = 0; i < writers.size(); i++) {
+        Writer writer = writers.get(i);
+        if (CSV_FORMAT.equals(job.getFormats().get(i))) {
+          List<Object> row = new ArrayList<>();
+          for (String column : CSV_RESPONSE_COLUMNS) {
+            row.add(document.get(column));
+          }
+          Map<String, String> questionValues = StoredResponseConverter.getQuestionValues(document);
+          for (String questionKey : job.getQuestionKeys()) {
+            row.add(questionValues.get(questionKey));
+          }
+          writeCsvRow(writer, row);
+        } else {
+          writer.write(objectMapper.writeValueAsString(document));
+          writer.write('\n');
+        }
+      }
+      responses++;
+    }
+
+    private void writeCsvRow(Writer writer, List<?> values) throws IOException {
+      for (int i = 0; i < values.size(); i++) {
+        if (i > 0) {
+          writer.write(',');
+        }
+        writer.write(toCsvField(values.get(i)));
+      }
+      writer.write("\r\n");
+    }
+
+    /** Makes the files durable, renames them and saves the cursor of the next page in the job. */
+    private void commit(String nextCursor) throws IOException {
+      for (int i = 0; i < writers.size(); i++) {
+        writers.get(i).flush();
+        outputs.get(i).getFD().sync();
+      }
+      close();
+      for (String fileName : fileNames) {
+        Path file = jobDirectory(job).resolve(fileName);
+        Files.move(
+            file.resolveSibling(fileName + TMP_SUFFIX), file, StandardCopyOption.ATOMIC_MOVE);
+      }
+      job.getFiles().addAll(fileNames);
+      job.setChunks(job.getChunks() + 1);
+      job.setExportedResponses(job.getExportedResponses() + responses);
+      job.setCursor(nextCursor);
+      saveJob(job);
+      registry.counter("response.export.responses").increment(responses);
+    }
+
+    private void close() throws IOException {
+      for (Writer writer : writers) {
+        writer.close();
+      }
+    }
+  }
+}
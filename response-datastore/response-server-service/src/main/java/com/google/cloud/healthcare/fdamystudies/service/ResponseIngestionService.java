@@ -0,0 +1,26 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import com.google.cloud.healthcare.fdamystudies.bean.IngestedActivityResponse;
+import com.google.cloud.healthcare.fdamystudies.exception.ResponseIngestionBackpressureException;
+import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
+
+public interface ResponseIngestionService {
+
+  /** @return true if responses are acknowledged once logged and persisted in the background */
+  boolean isEnabled();
+
+  /**
+   * Durably logs the response. The response document is saved and the activity is marked
+   * completed later, by the background drainer.
+   */
+  void append(IngestedActivityResponse response)
+      throws ProcessResponseException, ResponseIngestionBackpressureException;
+}
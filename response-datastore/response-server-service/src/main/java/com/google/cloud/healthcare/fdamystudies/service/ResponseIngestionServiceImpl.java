@@ -0,0 +1,393 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import static com.google.cloud.healthcare.fdamystudies.common.CommonConstants.ACTIVITY_ID;
+import static com.google.cloud.healthcare.fdamystudies.common.CommonConstants.ACTIVITY_VERSION;
+import static com.google.cloud.healthcare.fdamystudies.common.CommonConstants.RUN_ID;
+import static com.google.cloud.healthcare.fdamystudies.common.ResponseServerEvent.ACTIVITY_STATE_SAVED_OR_UPDATED_AFTER_RESPONSE_SUBMISSION;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.cloud.healthcare.fdamystudies.bean.ActivityStateRequestBean;
+import com.google.cloud.healthcare.fdamystudies.bean.IngestedActivityResponse;
+import com.google.cloud.healthcare.fdamystudies.bean.ParticipantActivityBean;
+import com.google.cloud.healthcare.fdamystudies.beans.AuditLogEventRequest;
+import com.google.cloud.healthcare.fdamystudies.common.JsonUtils;
+import com.google.cloud.healthcare.fdamystudies.common.ResponseServerAuditLogHelper;
+import com.google.cloud.healthcare.fdamystudies.dao.ResponseWriteAheadLog;
+import com.google.cloud.healthcare.fdamystudies.dao.ResponseWriteAheadLog.Record;
+import com.google.cloud.healthcare.fdamystudies.dao.ResponsesDao;
+import com.google.cloud.healthcare.fdamystudies.exception.ResponseIngestionBackpressureException;
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+/**
+ * Write-behind ingestion of activity responses. With {@code response.ingestion.mode=wal} a response
+ * is appended to a local {@link ResponseWriteAheadLog} and acknowledged, and a single drainer
+ * thread saves the logged responses with the configured {@link ResponsesDao} and marks the
+ * activities completed, in batches, moving the log checkpoint after each batch. The responses of a
+ * batch are written with one DAO call per study and one activity state update per participant.
+ *
+ * <p>Records are persisted at least once. After a restart the drainer replays every record after
+ * the checkpoint, the responses DAO skips responses that already exist for the same activity run.
+ * A batch that fails on a poison record, whose payload cannot be read or whose data is rejected,
+ * is persisted record by record so that the records before it are not held back, and only the
+ * poison record is written to the dead letter file and skipped after max-attempts. Any other
+ * failure, such as an unavailable datastore, pauses the drainer with an exponential backoff up to
+ * max-backoff-millis and the batch is retried until it is persisted, while appends are rejected
+ * past max-pending.
+ */
+@Service
+public class ResponseIngestionServiceImpl implements ResponseIngestionService {
+
+  private static final String WAL_MODE = "wal";
+
+  private static final String DEAD_LETTER_FILE = "dead-letter.jsonl";
+
+  private XLogger logger = XLoggerFactory.getXLogger(ResponseIngestionServiceImpl.class.getName());
+
+  @Autowired
+  private ResponsesDao responsesDao;
+
+  @Autowired
+  private ParticipantActivityStateResponseService participantActivityStateResponseService;
+
+  @Autowired private ResponseAggregateService responseAggregateService;
+
+  @Autowired private ResponseServerAuditLogHelper responseServerAuditLogHelper;
+
+  @Autowired private ObjectProvider<MeterRegistry> meterRegistry;
+
+  @Value("${response.ingestion.mode:direct}")
+  private String mode;
+
+  @Value("${response.ingestion.wal.path:./response-wal}")
+  private String walPath;
+
+  @Value("${response.ingestion.wal.segment-max-bytes:67108864}")
+  private long segmentMaxBytes;
+
+  @Value("${response.ingestion.wal.max-pending:100000}")
+  private long maxPending;
+
+  @Value("${response.ingestion.drain.batch-size:100}")
+  private int batchSize;
+
+  @Value("${response.ingestion.drain.poll-interval-millis:200}")
+  private long pollIntervalMillis;
+
+  @Value("${response.ingestion.drain.max-attempts:10}")
+  private int maxAttempts;
+
+  @Value("${response.ingestion.drain.max-backoff-millis:60000}")
+  private long maxBackoffMillis;
+
+  private ResponseWriteAheadLog writeAheadLog;
+
+  private Thread drainer;
+
+  private volatile boolean running;
+
+  private volatile long oldestPendingAppendedAt;
+
+  private Counter appended;
+
+  private Counter persisted;
+
+  private Counter failed;
+
+  private Counter deadLettered;
+
+  private Counter rejected;
+
+  @PostConstruct
+  public void init() throws IOException {
+    if (!isEnabled()) {
+      return;
+    }
+    writeAheadLog = new ResponseWriteAheadLog(Paths.get(walPath), segmentMaxBytes);
+    logger.info(
+        String.format(
+            "response ingestion log opened at %s, %d responses to replay",
+            walPath, writeAheadLog.getPendingCount()));
+
+    MeterRegistry registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    appended = registry.counter("response.ingestion.records", "result", "appended");
+    persisted = registry.counter("response.ingestion.records", "result", "persisted");
+    failed = registry.counter("response.ingestion.records", "result", "failed");
+    deadLettered = registry.counter("response.ingestion.records", "result", "dead_lettered");
+    rejected = registry.counter("response.ingestion.records", "result", "rejected");
+    Gauge.builder(
+            "response.ingestion.pending", writeAheadLog, ResponseWriteAheadLog::getPendingCount)
+        .description("logged responses that are not persisted yet")
+        .register(registry);
+    Gauge.builder(
+            "response.ingestion.lag.seconds", this, ResponseIngestionServiceImpl::getLagSeconds)
+        .description("age of the oldest logged response that is not persisted yet")
+        .register(registry);
+
+    running = true;
+    drainer = new Thread(this::drain, "response-ingestion-drainer");
+    drainer.setDaemon(true);
+    drainer.start();
+  }
+
+  @PreDestroy
+  public void shutdown() throws IOException, InterruptedException {
+    if (writeAheadLog == null) {
+      return;
+    }
+    running = false;
+    drainer.interrupt();
+    drainer.join(pollIntervalMillis * 10);
+    writeAheadLog.close();
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return WAL_MODE.equalsIgnoreCase(mode);
+  }
+
+  @Override
+  public void append(IngestedActivityResponse response)
+      throws ProcessResponseException, ResponseIngestionBackpressureException {
+    if (writeAheadLog.getPendingCount() >= maxPending) {
+      rejected.increment();
+      throw new ResponseIngestionBackpressureException(
+          String.format(
+              "%d responses are waiting to be persisted, limit is %d",
+              writeAheadLog.getPendingCount(), maxPending));
+    }
+    try {
+      writeAheadLog.append(JsonUtils.getObjectMapper().writeValueAsString(response));
+      appended.increment();
+    } catch (IOException e) {
+      logger.error("append to the response ingestion log failed", e);
+      throw new ProcessResponseException(e.getMessage());
+    }
+  }
+
+  private double getLagSeconds() {
+    if (writeAheadLog.getPendingCount() == 0 || oldestPendingAppendedAt == 0) {
+      return 0;
+    }
+    return (System.currentTimeMillis() - oldestPendingAppendedAt) / 1000d;
+  }
+
+  private void drain() {
+    int attempts = 0;
+    while (running) {
+      try {
+        List<Record> records = writeAheadLog.read(writeAheadLog.getCheckpoint(), batchSize);
+        if (records.isEmpty()) {
+          oldestPendingAppendedAt = 0;
+          Thread.sleep(pollIntervalMillis);
+          continue;
+        }
+        oldestPendingAppendedAt = records.get(0).getAppendedAt();
+
+        int persistedCount = 0;
+        Exception failure = null;
+        try {
+          persist(records);
+          persistedCount = records.size();
+        } catch (Exception e) {
+          failure = e;
+        }
+        if (failure != null && isPoison(failure)) {
+          // the records are persisted one at a time up to the bad one, so that it does not hold
+          // back the rest of the batch
+          failure = null;
+          try {
+            for (Record record : records) {
+              persist(Collections.singletonList(record));
+              persistedCount++;
+            }
+          } catch (Exception e) {
+            failure = e;
+          }
+        }
+        persisted.increment(persistedCount);
+
+        if (failure == null) {
+          attempts = 0;
+        } else {
+          failed.increment();
+          attempts++;
+          Record failedRecord = records.get(persistedCount);
+          if (isPoison(failure) && attempts >= maxAttempts) {
+            logger.error(
+                String.format(
+                    "giving up on logged response %d after %d attempts",
+                    failedRecord.getSequence(), attempts),
+                failure);
+            writeDeadLetter(failedRecord);
+            persistedCount++;
+            attempts = 0;
+          } else {
+            logger.warn(
+                String.format(
+                    "persisting logged response %d failed, attempt %d, retrying in %d ms",
+                    failedRecord.getSequence(), attempts, getBackoffMillis(attempts)),
+                failure);
+          }
+        }
+        if (persistedCount > 0) {
+          writeAheadLog.checkpoint(records.get(persistedCount - 1).getSequence());
+        }
+        if (attempts > 0) {
+          Thread.sleep(getBackoffMillis(attempts));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        logger.error("response ingestion drainer failed", e);
+        try {
+          Thread.sleep(maxBackoffMillis);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  private long getBackoffMillis(int attempts) {
+    return Math.min(maxBackoffMillis, pollIntervalMillis << Math.min(attempts, 20));
+  }
+
+  /**
+   * @return true if the record fails the same way on every attempt, because its payload cannot be
+   *     read or its data is rejected, rather than because the datastore is unavailable
+   */
+  static boolean isPoison(Exception e) {
+    return e instanceof JsonProcessingException
+        || e instanceof DataIntegrityViolationException
+        || e instanceof IllegalArgumentException
+        || e instanceof ClassCastException
+        || e instanceof NullPointerException;
+  }
+
+  /**
+   * Saves the responses of the records with one write per study, then marks their activities
+   * completed with one update per participant. Responses saved by an earlier attempt are skipped by
+   * the DAO and the aggregates, so the records can be persisted again after a failure.
+   */
+  private void persist(List<Record> records) throws Exception {
+    Map<String, List<IngestedActivityResponse>> responsesByStudy = new LinkedHashMap<>();
+    Map<List<String>, List<IngestedActivityResponse>> responsesByParticipant =
+        new LinkedHashMap<>();
+    for (Record record : records) {
+      IngestedActivityResponse response =
+          JsonUtils.getObjectMapper()
+              .readValue(record.getPayload(), IngestedActivityResponse.class);
+      responsesByStudy
+          .computeIfAbsent(response.getStudyId(), studyId -> new ArrayList<>())
+          .add(response);
+      responsesByParticipant
+          .computeIfAbsent(
+              Arrays.asList(response.getStudyId(), response.getParticipantId()),
+              participant -> new ArrayList<>())
+          .add(response);
+    }
+
+    for (List<IngestedActivityResponse> studyResponses : responsesByStudy.values()) {
+      IngestedActivityResponse first = studyResponses.get(0);
+      List<Map<String, Object>> dataToStoreActivityResultsList = new ArrayList<>();
+      for (IngestedActivityResponse response : studyResponses) {
+        dataToStoreActivityResultsList.add(response.getDataToStoreActivityResults());
+      }
+      responsesDao.saveActivityResponseDataList(
+          first.getStudyId(),
+          first.getStudyCollectionName(),
+          first.getActivitiesCollectionName(),
+          dataToStoreActivityResultsList);
+      for (Map<String, Object> dataToStoreActivityResults : dataToStoreActivityResultsList) {
+        responseAggregateService.addResponse(first.getStudyId(), dataToStoreActivityResults);
+      }
+    }
+
+    for (List<IngestedActivityResponse> participantResponses : responsesByParticipant.values()) {
+      saveActivitiesCompleted(participantResponses);
+    }
+  }
+
+  private void saveActivitiesCompleted(List<IngestedActivityResponse> participantResponses)
+      throws Exception {
+    IngestedActivityResponse first = participantResponses.get(0);
+    ActivityStateRequestBean activityStateRequestBean = new ActivityStateRequestBean();
+    activityStateRequestBean.setParticipantId(first.getParticipantId());
+    activityStateRequestBean.setStudyId(first.getStudyId());
+    List<ParticipantActivityBean> activity = new ArrayList<>();
+    for (IngestedActivityResponse response : participantResponses) {
+      ParticipantActivityBean participantActivityBean = new ParticipantActivityBean();
+      participantActivityBean.setActivityId(response.getActivityId());
+      participantActivityBean.setActivityVersion(response.getActivityVersion());
+      participantActivityBean.setActivityState(AppConstants.COMPLETED);
+      activity.add(participantActivityBean);
+    }
+    activityStateRequestBean.setActivity(activity);
+    participantActivityStateResponseService.saveParticipantActivities(activityStateRequestBean);
+
+    for (IngestedActivityResponse response : participantResponses) {
+      AuditLogEventRequest auditRequest = response.getAuditRequest();
+      if (auditRequest != null) {
+        auditRequest.setStudyId(response.getStudyId());
+        auditRequest.setParticipantId(response.getParticipantId());
+        Map<String, String> activityStateMap = new HashMap<>();
+        activityStateMap.put("activity_state", AppConstants.COMPLETED);
+        activityStateMap.put(ACTIVITY_ID, response.getActivityId());
+        activityStateMap.put(ACTIVITY_VERSION, response.getActivityVersion());
+        activityStateMap.put(RUN_ID, response.getActivityRunId());
+        responseServerAuditLogHelper.logEvent(
+            ACTIVITY_STATE_SAVED_OR_UPDATED_AFTER_RESPONSE_SUBMISSION,
+            auditRequest,
+            activityStateMap);
+      }
+    }
+  }
+
+  private void writeDeadLetter(Record record) throws IOException {
+    Path deadLetter = Paths.get(walPath).resolve(DEAD_LETTER_FILE);
+    Files.write(
+        deadLetter,
+        (record.getPayload() + "\n").getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND,
+        StandardOpenOption.SYNC);
+    deadLettered.increment();
+  }
+}
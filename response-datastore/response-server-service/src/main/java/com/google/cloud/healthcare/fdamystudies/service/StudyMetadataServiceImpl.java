@@ -8,31 +8,40 @@
 
 package com.google.cloud.healthcare.fdamystudies.service;
 
+import com.google.cloud.healthcare.fdamystudies.bean.ActivitiesBean;
+import com.google.cloud.healthcare.fdamystudies.bean.ParticipantActivityBean;
 import com.google.cloud.healthcare.fdamystudies.bean.QuestionnaireActivityMetaDataBean;
 import com.google.cloud.healthcare.fdamystudies.bean.QuestionnaireActivityStructureBean;
 import com.google.cloud.healthcare.fdamystudies.bean.StudyActivityMetadataRequestBean;
 import com.google.cloud.healthcare.fdamystudies.bean.StudyMetadataBean;
 import com.google.cloud.healthcare.fdamystudies.beans.AuditLogEventRequest;
+import com.google.cloud.healthcare.fdamystudies.common.ExpiringCache;
 import com.google.cloud.healthcare.fdamystudies.config.ApplicationConfiguration;
 import com.google.cloud.healthcare.fdamystudies.dao.ResponsesDao;
 import com.google.cloud.healthcare.fdamystudies.mapper.AuditEventMapper;
 import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
 import com.google.cloud.healthcare.fdamystudies.utils.AppUtil;
+import com.google.cloud.healthcare.fdamystudies.utils.BeanDocumentMapper;
+import com.google.cloud.healthcare.fdamystudies.utils.BeanDocumentMapper.BeanProperty;
 import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
-import java.beans.BeanInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -48,35 +57,67 @@ public class StudyMetadataServiceImpl implements StudyMetadataService {
   @Autowired private ApplicationConfiguration appConfig;
 
   @Autowired
-  @Qualifier("cloudFirestoreResponsesDaoImpl")
   private ResponsesDao responsesDao;
 
+  @Autowired private ObjectProvider<MeterRegistry> meterRegistry;
+
+  @Value("${response.activity.metadata.cache.enabled:true}")
+  private boolean activityMetadataCacheEnabled;
+
+  @Value("${response.activity.metadata.cache.max-size:1000}")
+  private int activityMetadataCacheMaxSize;
+
+  @Value("${response.activity.metadata.cache.ttl-seconds:86400}")
+  private long activityMetadataCacheTtlSeconds;
+
+  @Value("${response.activity.metadata.cache.warm-up.enabled:true}")
+  private boolean activityMetadataWarmUpEnabled;
+
+  private ExpiringCache<String, QuestionnaireActivityStructureBean> activityMetadataCache;
+
+  private ExecutorService activityMetadataWarmUpExecutor;
+
   private XLogger logger = XLoggerFactory.getXLogger(StudyMetadataServiceImpl.class.getName());
 
+  @PostConstruct
+  public void init() {
+    activityMetadataCache =
+        new ExpiringCache<>(
+            "activity-metadata",
+            activityMetadataCacheMaxSize,
+            meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    activityMetadataWarmUpExecutor =
+        Executors.newSingleThreadExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "activity-metadata-warm-up");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    activityMetadataWarmUpExecutor.shutdownNow();
+  }
+
   @Override
   public void saveStudyMetadata(StudyMetadataBean studyMetadataBean)
       throws ProcessResponseException, IntrospectionException, IllegalAccessException,
           IllegalArgumentException, InvocationTargetException {
 
-    BeanInfo beanInfo;
-    beanInfo = Introspector.getBeanInfo(studyMetadataBean.getClass());
-    PropertyDescriptor[] propDescriptor = beanInfo.getPropertyDescriptors();
     Map<String, Object> dataToStore = new HashMap<>();
-    for (PropertyDescriptor pd : propDescriptor) {
-      String propertyName = pd.getName();
-      if (!propertyName.equals("class")) {
-        Method getterMethod = pd.getReadMethod();
-        Object propertyValue = getterMethod.invoke(studyMetadataBean);
-        if (propertyValue == null) {
-          propertyValue = AppConstants.EMPTY_STR;
-        }
-        logger.debug(
-            "saveStudyMetadata() : \n Property Name: "
-                + propertyName
-                + "\t Propert Value : "
-                + propertyValue);
-        dataToStore.put(propertyName, propertyValue);
+    for (BeanProperty property : BeanDocumentMapper.getProperties(studyMetadataBean.getClass())) {
+      String propertyName = property.getName();
+      Object propertyValue = property.get(studyMetadataBean);
+      if (propertyValue == null) {
+        propertyValue = AppConstants.EMPTY_STR;
       }
+      logger.debug(
+          "saveStudyMetadata() : \n Property Name: "
+              + propertyName
+              + "\t Propert Value : "
+              + propertyValue);
+      dataToStore.put(propertyName, propertyValue);
     }
     String studyCollectionName = AppUtil.makeStudyCollectionName(studyMetadataBean.getStudyId());
 
@@ -87,6 +128,10 @@ public class StudyMetadataServiceImpl implements StudyMetadataService {
         "saveStudyMetadata() : \n Study Collection Name: "
             + studyCollectionName
             + " added successfully");
+
+    if (activityMetadataCacheEnabled && activityMetadataWarmUpEnabled) {
+      warmUpActivityMetadata(studyMetadataBean.getAppId(), studyMetadataBean.getStudyId());
+    }
   }
 
   @Override
@@ -95,6 +140,76 @@ public class StudyMetadataServiceImpl implements StudyMetadataService {
       StudyActivityMetadataRequestBean studyActivityMetadataRequestBean,
       AuditLogEventRequest auditRequest)
       throws ProcessResponseException {
+    String studyId = studyActivityMetadataRequestBean.getStudyId();
+    String activityId = studyActivityMetadataRequestBean.getActivityId();
+    String activityVersion = studyActivityMetadataRequestBean.getActivityVersion();
+    if (!activityMetadataCacheEnabled) {
+      return fetchStudyActivityMetadata(
+          applicationId, studyId, activityId, activityVersion, auditRequest);
+    }
+    try {
+      return activityMetadataCache.get(
+          getActivityMetadataCacheKey(studyId, activityId, activityVersion),
+          key -> {
+            try {
+              return fetchStudyActivityMetadata(
+                  applicationId, studyId, activityId, activityVersion, auditRequest);
+            } catch (ProcessResponseException e) {
+              throw new UncheckedProcessResponseException(e);
+            }
+          },
+          this::getActivityMetadataTtlMillis);
+    } catch (UncheckedProcessResponseException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Loads the structure of every activity of the study into the activity metadata cache in the
+   * background, so that the first responses after a study is published do not wait for study
+   * datastore. Failures are logged and otherwise ignored, the activities are then loaded on demand.
+   */
+  private void warmUpActivityMetadata(String applicationId, String studyId) {
+    activityMetadataWarmUpExecutor.execute(
+        () -> {
+          try {
+            ActivitiesBean activitiesBean = fetchStudyActivityList(applicationId, studyId);
+            if (activitiesBean == null || activitiesBean.getActivities() == null) {
+              return;
+            }
+            for (ParticipantActivityBean activity : activitiesBean.getActivities()) {
+              String activityId = activity.getActivityId();
+              String activityVersion = activity.getActivityVersion();
+              activityMetadataCache.get(
+                  getActivityMetadataCacheKey(studyId, activityId, activityVersion),
+                  key -> {
+                    try {
+                      return fetchStudyActivityMetadata(
+                          applicationId, studyId, activityId, activityVersion, null);
+                    } catch (ProcessResponseException e) {
+                      throw new UncheckedProcessResponseException(e);
+                    }
+                  },
+                  this::getActivityMetadataTtlMillis);
+            }
+            logger.info(
+                String.format(
+                    "activity metadata of %d activities loaded for studyId=%s",
+                    activitiesBean.getActivities().size(), studyId));
+          } catch (Exception e) {
+            logger.warn(
+                String.format("activity metadata warm-up failed for studyId=%s", studyId), e);
+          }
+        });
+  }
+
+  private QuestionnaireActivityStructureBean fetchStudyActivityMetadata(
+      String applicationId,
+      String studyId,
+      String activityId,
+      String activityVersion,
+      AuditLogEventRequest auditRequest)
+      throws ProcessResponseException {
     logger.entry("begin getStudyActivityMetadata()");
     HttpHeaders headers = null;
 
@@ -103,16 +218,15 @@ public class StudyMetadataServiceImpl implements StudyMetadataService {
     headers.setContentType(MediaType.APPLICATION_JSON);
     headers.set(AppConstants.APPLICATION_ID_HEADER_WCP, applicationId);
     headers.set(AppConstants.AUTHORIZATION_HEADER, this.getWcpAuthorizationHeader());
-    AuditEventMapper.addAuditEventHeaderParams(headers, auditRequest);
+    if (auditRequest != null) {
+      AuditEventMapper.addAuditEventHeaderParams(headers, auditRequest);
+    }
 
     UriComponentsBuilder studyMetadataUriBuilder =
         UriComponentsBuilder.fromHttpUrl(appConfig.getWcpStudyActivityMetadataUrl())
-            .queryParam(AppConstants.STUDY_ID_PARAM, studyActivityMetadataRequestBean.getStudyId())
-            .queryParam(
-                AppConstants.ACTIVITY_ID_KEY, studyActivityMetadataRequestBean.getActivityId())
-            .queryParam(
-                AppConstants.ACTIVITY_VERSION_PARAM,
-                studyActivityMetadataRequestBean.getActivityVersion());
+            .queryParam(AppConstants.STUDY_ID_PARAM, studyId)
+            .queryParam(AppConstants.ACTIVITY_ID_KEY, activityId)
+            .queryParam(AppConstants.ACTIVITY_VERSION_PARAM, activityVersion);
     logger.debug(studyMetadataUriBuilder.toUriString());
     responseEntity =
         restTemplate.exchange(
@@ -128,6 +242,35 @@ public class StudyMetadataServiceImpl implements StudyMetadataService {
     return retQuestionnaireActivityStructureBean;
   }
 
+  private ActivitiesBean fetchStudyActivityList(String applicationId, String studyId)
+      throws ProcessResponseException {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.APPLICATION_JSON);
+    headers.set(AppConstants.APPLICATION_ID_HEADER_WCP, applicationId);
+    headers.set(AppConstants.AUTHORIZATION_HEADER, this.getWcpAuthorizationHeader());
+
+    UriComponentsBuilder activityListUriBuilder =
+        UriComponentsBuilder.fromHttpUrl(appConfig.getWcpStudyActivityListUrl())
+            .queryParam(AppConstants.STUDY_ID_PARAM, studyId);
+    ResponseEntity<ActivitiesBean> responseEntity =
+        restTemplate.exchange(
+            activityListUriBuilder.toUriString(),
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ActivitiesBean.class);
+    return responseEntity.getBody();
+  }
+
+  private static String getActivityMetadataCacheKey(
+      String studyId, String activityId, String activityVersion) {
+    return studyId + AppConstants.COLON + activityId + AppConstants.COLON + activityVersion;
+  }
+
+  /** The structure of an activity version never changes, the ttl only bounds stale entries. */
+  private long getActivityMetadataTtlMillis(QuestionnaireActivityStructureBean activity) {
+    return activity == null ? 0 : TimeUnit.SECONDS.toMillis(activityMetadataCacheTtlSeconds);
+  }
+
   private String getWcpAuthorizationHeader() throws ProcessResponseException {
     String wcpAuthUserName = appConfig.getWcpBundleId();
     String wcpAuthPassword = appConfig.getWcpAppToken();
@@ -141,4 +284,19 @@ public class StudyMetadataServiceImpl implements StudyMetadataService {
           "Could not create AUthorization header for WCP as credentials are null.");
     }
   }
+
+  /** Carries a {@link ProcessResponseException} out of a cache loader. */
+  private static class UncheckedProcessResponseException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private UncheckedProcessResponseException(ProcessResponseException cause) {
+      super(cause);
+    }
+
+    @Override
+    public synchronized ProcessResponseException getCause() {
+      return (ProcessResponseException) super.getCause();
+    }
+  }
 }
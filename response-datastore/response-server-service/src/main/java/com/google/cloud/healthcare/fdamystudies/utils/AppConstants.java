@@ -10,6 +10,7 @@ package com.google.cloud.healthcare.fdamystudies.utils;
 
 public class AppConstants {
   public static final String HYPHEN = "-";
+  public static final String COLON = ":";
   public static final String RESPONSES = "RESPONSES";
   public static final String EMPTY_STR = "";
   public static final String FAILURE = "FAILURE";
@@ -42,6 +43,8 @@ public class AppConstants {
   public static final String APPLICATION_ID_HEADER_WCP = "applicationId";
   public static final String APPLICATION_ID_HEADER = "appId";
   public static final String AUTHORIZATION_HEADER = "Authorization";
+  public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+  public static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
   public static final String STUDY_ID_PARAM = "studyId";
   public static final String ACTIVITY_ID_KEY = "activityId";
   public static final String ACTIVITY_RUN_ID_KEY = "activityRunId";
@@ -55,6 +58,10 @@ public class AppConstants {
   public static final String ACTIVITY_TYPE_TASK = "task";
   public static final String PARTICIPANT_METADATA_KEY = "Participants";
   public static final String ACTIVITIES_COLLECTION_NAME = "Activities";
+  public static final String QUESTION_RESPONSES_COLLECTION_NAME = "QuestionResponses";
+  public static final String QUESTION_VALUES_COLLECTION_NAME = "Values";
+  public static final String LATEST_VALUE_KEY = "latest";
+  public static final String BACKFILLED_KEY = "backfilled";
   public static final String SUCCESS_MSG = "SUCCESS";
   public static final String COMPLETED = "completed";
   public static final String WITHDRAWAL_STATUS_KEY = "withdrawalStatus";
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.utils;
+
+import com.google.cloud.healthcare.fdamystudies.bean.ActivityMetadataBean;
+import com.google.cloud.healthcare.fdamystudies.bean.ActivityValueGroupBean;
+import com.google.cloud.healthcare.fdamystudies.bean.QuestionnaireActivityStepsBean;
+import com.google.gson.Gson;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * Converts response beans into the {@code Map<String, Object>} documents stored by the {@link
+ * com.google.cloud.healthcare.fdamystudies.dao.ResponsesDao} implementations.
+ *
+ * <p>The readable properties of a class are resolved once, in {@link Introspector} order, and kept
+ * as method handles, so that a mapping does no bean introspection or reflective lookups. The
+ * document shape is the same as the former per-call {@code Introspector} based mapping.
+ */
+public final class BeanDocumentMapper {
+
+  private static final XLogger logger =
+      XLoggerFactory.getXLogger(BeanDocumentMapper.class.getName());
+
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+  private static final Gson GSON = new Gson();
+
+  private static final ClassValue<List<BeanProperty>> PROPERTIES =
+      new ClassValue<List<BeanProperty>>() {
+        @Override
+        protected List<BeanProperty> computeValue(Class<?> type) {
+          return compile(type);
+        }
+      };
+
+  private BeanDocumentMapper() {}
+
+  /** @return the readable properties of the class, except {@code class}, sorted by name */
+  public static List<BeanProperty> getProperties(Class<?> type) {
+    return PROPERTIES.get(type);
+  }
+
+  /**
+   * Strings are kept as is, nested metadata and value group beans become nested maps, steps in
+   * lists are collected under {@code results}, other list items are joined as comma separated JSON
+   * and any other value, including null, is stored as its JSON text.
+   */
+  @SuppressWarnings("unchecked")
+  public static Map<String, Object> toDocument(Object bean) throws Exception {
+    Map<String, Object> dataToStore = new HashMap<>();
+    List<Map<String, Object>> stepsList = new ArrayList<>();
+    for (BeanProperty property : getProperties(bean.getClass())) {
+      String propertyName = property.getName();
+      Object propertyValue = property.get(bean);
+      if (propertyValue instanceof String) {
+        dataToStore.put(propertyName, propertyValue);
+      } else if (propertyValue instanceof ActivityValueGroupBean
+          || propertyValue instanceof ActivityMetadataBean) {
+        dataToStore.put(propertyName, toDocument(propertyValue));
+      } else if (propertyValue instanceof List) {
+        try {
+          ArrayList<Object> pvalueList = (ArrayList<Object>) propertyValue;
+          for (Object valueObj : pvalueList) {
+            if (valueObj instanceof QuestionnaireActivityStepsBean) {
+              stepsList.add(toDocument(valueObj));
+            } else if (valueObj != null) {
+              String value = valueObj instanceof String ? (String) valueObj : GSON.toJson(valueObj);
+              dataToStore.put(propertyName, join(dataToStore.get(propertyName), value));
+            }
+            if (!stepsList.isEmpty()) {
+              dataToStore.put(AppConstants.RESULTS_FIELD_KEY, stepsList);
+            }
+          }
+        } catch (ClassCastException ce) {
+          dataToStore.put(propertyName, toDocument(GSON.toJson(propertyValue)));
+        }
+      } else {
+        dataToStore.put(propertyName, GSON.toJson(propertyValue));
+      }
+      if (logger.isDebugEnabled()) {
+        logger.debug(
+            "toDocument() : \n Property Name: "
+                + propertyName
+                + "\t Property Value : "
+                + propertyValue);
+      }
+    }
+    return dataToStore;
+  }
+
+  private static String join(Object previousValue, String value) {
+    if (previousValue != null && !StringUtils.isBlank(previousValue.toString())) {
+      return previousValue.toString() + AppConstants.COMMA_STR + value;
+    }
+    return value;
+  }
+
+  private static List<BeanProperty> compile(Class<?> type) {
+    try {
+      List<BeanProperty> properties = new ArrayList<>();
+      for (PropertyDescriptor pd : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+        if (AppConstants.PROPERTY_NAME_CLASS.equals(pd.getName())) {
+          continue;
+        }
+        MethodHandle getter =
+            pd.getReadMethod() == null
+                ? null
+                : MethodHandles.publicLookup().unreflect(pd.getReadMethod()).asType(GETTER_TYPE);
+        properties.add(new BeanProperty(pd.getName(), getter));
+      }
+      return Collections.unmodifiableList(properties);
+    } catch (IntrospectionException | IllegalAccessException e) {
+      throw new IllegalArgumentException(
+          String.format("%s is not a readable bean", type.getName()), e);
+    }
+  }
+
+  public static final class BeanProperty {
+
+    private final String name;
+
+    private final MethodHandle getter;
+
+    private BeanProperty(String name, MethodHandle getter) {
+      this.name = name;
+      this.getter = getter;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /** Like {@link java.lang.reflect.Method#invoke}, a failing getter is reported wrapped. */
+    public Object get(Object bean) throws InvocationTargetException {
+      if (getter == null) {
+        throw new IllegalStateException(String.format("%s has no getter", name));
+      }
+      try {
+        return (Object) getter.invokeExact(bean);
+      } catch (Throwable t) {
+        throw new InvocationTargetException(t);
+      }
+    }
+  }
+}
@@ -74,7 +74,18 @@ public enum ErrorCode {
           + " but could not delete participant activity state data."),
 
   EC_718(718, "UNAUTHORIZED"),
-  EC_719(719, "Invalid clientId or secretKey");
+  EC_719(719, "Invalid clientId or secretKey"),
+
+  EC_720(720, "Too many responses are waiting to be stored. Please try again after sometime."),
+
+  EC_721(721, "Could not start or resume the export of the response data."),
+
+  EC_722(
+      722,
+      "A request with the same idempotency key is still being processed."
+          + " Please try again after sometime."),
+
+  EC_723(723, "The idempotency key was already used for a different request.");
 
   private final int code;
   private final String errorMessage;
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.Getter;
+
+/**
+ * Streaming quantile sketch with a relative accuracy guarantee. Values are counted in
+ * logarithmically sized buckets, as in DDSketch, so a quantile is returned within the relative
+ * accuracy of the exact one and the size of the sketch grows with the range of the values, not
+ * with their number. Sketches of the same accuracy merge bucket by bucket, and a value added can be
+ * removed again.
+ */
+@Getter
+public class QuantileSketch {
+
+  /** Values closer to zero are counted as zero. */
+  private static final double MIN_INDEXABLE_VALUE = 1e-9;
+
+  private double relativeAccuracy;
+
+  private TreeMap<Integer, Long> positiveBuckets = new TreeMap<>();
+
+  private TreeMap<Integer, Long> negativeBuckets = new TreeMap<>();
+
+  private long zeroCount;
+
+  public QuantileSketch(double relativeAccuracy) {
+    if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+      throw new IllegalArgumentException("relative accuracy must be between 0 and 1");
+    }
+    this.relativeAccuracy = relativeAccuracy;
+  }
+
+  public void add(double value) {
+    update(value, 1);
+  }
+
+  /** Removes a value added before, a value that was not added is ignored. */
+  public void remove(double value) {
+    update(value, -1);
+  }
+
+  public void merge(QuantileSketch other) {
+    if (other.relativeAccuracy != relativeAccuracy) {
+      throw new IllegalArgumentException("sketches of different accuracies cannot be merged");
+    }
+    other.positiveBuckets.forEach((index, count) -> addToBucket(positiveBuckets, index, count));
+    other.negativeBuckets.forEach((index, count) -> addToBucket(negativeBuckets, index, count));
+    zeroCount += other.zeroCount;
+  }
+
+  public long getCount() {
+    long count = zeroCount;
+    for (long bucketCount : positiveBuckets.values()) {
+      count += bucketCount;
+    }
+    for (long bucketCount : negativeBuckets.values()) {
+      count += bucketCount;
+    }
+    return count;
+  }
+
+  /** @return the value at the quantile, between 0 and 1, or null if the sketch is empty */
+  public Double getQuantile(double quantile) {
+    long count = getCount();
+    if (count == 0) {
+      return null;
+    }
+    double rank = quantile * (count - 1);
+    long seen = 0;
+    // the most negative values are in the buckets of the highest indexes
+    for (Map.Entry<Integer, Long> bucket : negativeBuckets.descendingMap().entrySet()) {
+      seen += bucket.getValue();
+      if (seen > rank) {
+        return -bucketValue(bucket.getKey());
+      }
+    }
+    seen += zeroCount;
+    if (seen > rank) {
+      return 0d;
+    }
+    for (Map.Entry<Integer, Long> bucket : positiveBuckets.entrySet()) {
+      seen += bucket.getValue();
+      if (seen > rank) {
+        return bucketValue(bucket.getKey());
+      }
+    }
+    return bucketValue(positiveBuckets.lastKey());
+  }
+
+  private void update(double value, long delta) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      return;
+    }
+    if (Math.abs(value) < MIN_INDEXABLE_VALUE) {
+      zeroCount = Math.max(0, zeroCount + delta);
+    } else if (value > 0) {
+      addToBucket(positiveBuckets, bucketIndex(value), delta);
+    } else {
+      addToBucket(negativeBuckets, bucketIndex(-value), delta);
+    }
+  }
+
+  private static void addToBucket(TreeMap<Integer, Long> buckets, int index, long delta) {
+    long count = buckets.getOrDefault(index, 0L) + delta;
+    if (count > 0) {
+      buckets.put(index, count);
+    } else {
+      buckets.remove(index);
+    }
+  }
+
+  private int bucketIndex(double value) {
+    return (int) Math.ceil(Math.log(value) / Math.log(gamma()));
+  }
+
+  /** @return the value of the bucket within the relative accuracy of all values counted in it */
+  private double bucketValue(int index) {
+    double gamma = gamma();
+    return 2 * Math.pow(gamma, index) / (gamma + 1);
+  }
+
+  private double gamma() {
+    return (1 + relativeAccuracy) / (1 - relativeAccuracy);
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.bean;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.google.cloud.healthcare.fdamystudies.service.QuestionnaireActivityStepsBeanPredicate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link QuestionnaireActivityStepsIndex} finds the same metadata steps as the linear
+ * scans of ActivityResponseProcessorServiceImpl.plugInMetadataToResponses it replaced, which are
+ * kept below as the reference.
+ */
+public class QuestionnaireActivityStepsIndexTest {
+
+  private static final List<String> KEYS =
+      Arrays.asList("q1", "Q1", "q2", "Q2", "form1", "f1", "F1", "f2", "f3", "F3", "missing");
+
+  @Test
+  public void shouldFindStepsLikeLinearScan() {
+    List<QuestionnaireActivityStepsBean> steps = newSteps();
+    QuestionnaireActivityStepsIndex index = new QuestionnaireActivityStepsIndex(steps);
+
+    for (String key : KEYS) {
+      assertSame(scanSteps(steps, key), index.getStep(key), key);
+      assertSame(scanFormSteps(steps, key), index.getFormStep(key), key);
+    }
+  }
+
+  @Test
+  public void shouldReturnLastTopLevelMatchIgnoringCase() {
+    QuestionnaireActivityStepsBean first = newStep("q1");
+    QuestionnaireActivityStepsBean last = newStep("Q1");
+    QuestionnaireActivityStepsIndex index =
+        new QuestionnaireActivityStepsIndex(Arrays.asList(first, newStep("q2"), last));
+
+    assertSame(last, index.getStep("q1"));
+    assertSame(last, index.getStep("Q1"));
+    assertNull(index.getStep("missing"));
+    assertNull(index.getStep(null));
+  }
+
+  @Test
+  public void shouldReturnMatchOfFirstFormContainingKey() {
+    QuestionnaireActivityStepsBean firstFormMatch = newStep("f1");
+    QuestionnaireActivityStepsBean firstFormLastMatch = newStep("F1");
+    QuestionnaireActivityStepsBean secondFormMatch = newStep("f1");
+    QuestionnaireActivityStepsIndex index =
+        new QuestionnaireActivityStepsIndex(
+            Arrays.asList(
+                newStep("q1"),
+                newForm("form1", firstFormMatch, newStep("f2"), firstFormLastMatch),
+                newForm("form2", secondFormMatch)));
+
+    // the last match of the first form, the second form is not looked at
+    assertSame(firstFormLastMatch, index.getFormStep("f1"));
+    // form sub-steps and top-level steps are looked up separately
+    assertNull(index.getStep("f1"));
+    assertNull(index.getFormStep("q1"));
+  }
+
+  @Test
+  public void shouldBuildIndexOncePerSteps() {
+    QuestionnaireActivityStructureBean activity = new QuestionnaireActivityStructureBean();
+    activity.setSteps(newSteps());
+
+    QuestionnaireActivityStepsIndex index = activity.getStepsIndex();
+    assertSame(index, activity.getStepsIndex());
+
+    QuestionnaireActivityStepsBean replaced = newStep("q1");
+    activity.setSteps(new ArrayList<>(Arrays.asList(replaced)));
+    assertNotSame(index, activity.getStepsIndex());
+    assertSame(replaced, activity.getStepsIndex().getStep("q1"));
+  }
+
+  /** Top-level and form keys repeat, in different cases, within and across forms. */
+  private static List<QuestionnaireActivityStepsBean> newSteps() {
+    return new ArrayList<>(
+        Arrays.asList(
+            newStep("q1"),
+            newStep("Q2"),
+            newForm("form1", newStep("f1"), newStep("F2"), newStep("f2")),
+            newStep("q2"),
+            newStep("Q1"),
+            newForm("form1", newStep("F1"), newStep("f3"), newStep("F3")),
+            newStep(null)));
+  }
+
+  private static QuestionnaireActivityStepsBean newForm(
+      String key, QuestionnaireActivityStepsBean... subSteps) {
+    QuestionnaireActivityStepsBean form = newStep(key);
+    form.setType("form");
+    form.setSteps(new ArrayList<>(Arrays.asList(subSteps)));
+    return form;
+  }
+
+  private static QuestionnaireActivityStepsBean newStep(String key) {
+    QuestionnaireActivityStepsBean step = new QuestionnaireActivityStepsBean();
+    step.setType("question");
+    step.setKey(key);
+    step.setTitle("Question " + key);
+    return step;
+  }
+
+  /** The former top-level scan: every match was applied in turn, so the last one won. */
+  private static QuestionnaireActivityStepsBean scanSteps(
+      List<QuestionnaireActivityStepsBean> steps, String questionKey) {
+    List<QuestionnaireActivityStepsBean> metadataMatchList =
+        steps
+            .stream()
+            .filter(QuestionnaireActivityStepsBeanPredicate.questionKeyMatch(questionKey))
+            .collect(Collectors.<QuestionnaireActivityStepsBean>toList());
+    return getLast(metadataMatchList);
+  }
+
+  /** The former form scan: the matches of the first form step with any, the last one won. */
+  private static QuestionnaireActivityStepsBean scanFormSteps(
+      List<QuestionnaireActivityStepsBean> steps, String questionKey) {
+    List<QuestionnaireActivityStepsBean> metadataMatchList = null;
+    for (QuestionnaireActivityStepsBean stepBean : steps) {
+      List<QuestionnaireActivityStepsBean> stepsBean = stepBean.getSteps();
+      metadataMatchList =
+          stepsBean
+              .stream()
+              .filter(QuestionnaireActivityStepsBeanPredicate.questionKeyMatch(questionKey))
+              .collect(Collectors.<QuestionnaireActivityStepsBean>toList());
+      if (metadataMatchList != null && metadataMatchList.size() > 0) {
+        break;
+      }
+    }
+    return getLast(metadataMatchList);
+  }
+
+  private static QuestionnaireActivityStepsBean getLast(
+      List<QuestionnaireActivityStepsBean> metadataMatchList) {
+    if (metadataMatchList == null || metadataMatchList.isEmpty()) {
+      return null;
+    }
+    return metadataMatchList.get(metadataMatchList.size() - 1);
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.config;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.google.cloud.healthcare.fdamystudies.common.BaseMockIT;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = "management.endpoints.web.exposure.include=prometheus")
+public class MetricsEndpointTest extends BaseMockIT {
+
+  @Test
+  public void shouldServeRequestLatenciesWithApplicationTag() throws Exception {
+    // Step-1: a first scrape is itself a request that is timed
+    mockMvc
+        .perform(get(getContextPath() + "/actuator/prometheus").contextPath(getContextPath()))
+        .andExpect(status().isOk());
+
+    // Step-2: the next scrape lists it with the application tag of the service
+    mockMvc
+        .perform(get(getContextPath() + "/actuator/prometheus").contextPath(getContextPath()))
+        .andExpect(status().isOk())
+        .andExpect(
+            content()
+                .string(
+                    containsString(
+                        "http_server_requests_seconds_count{application=\"RESPONSE DATASTORE\"")));
+  }
+}
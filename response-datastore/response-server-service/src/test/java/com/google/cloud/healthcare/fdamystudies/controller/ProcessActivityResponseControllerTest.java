@@ -40,19 +40,29 @@ import static com.google.cloud.healthcare.fdamystudies.utils.Constants.SUCCESS;
 import static com.google.cloud.healthcare.fdamystudies.utils.Constants.USER_ID_HEADER;
 import static com.google.cloud.healthcare.fdamystudies.utils.Constants.VALID_USER_ID;
 import static com.google.cloud.healthcare.fdamystudies.utils.ErrorCode.EC_701;
+import static com.google.cloud.healthcare.fdamystudies.utils.ErrorCode.EC_706;
+import static com.google.cloud.healthcare.fdamystudies.utils.ErrorCode.EC_707;
+import static com.google.cloud.healthcare.fdamystudies.utils.ErrorCode.EC_723;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import com.google.cloud.healthcare.fdamystudies.bean.ActivityResponseBatchBean;
 import com.google.cloud.healthcare.fdamystudies.bean.ActivityResponseBean;
 import com.google.cloud.healthcare.fdamystudies.bean.StoredResponseBean;
 import com.google.cloud.healthcare.fdamystudies.beans.AuditLogEventRequest;
@@ -60,15 +70,17 @@ import com.google.cloud.healthcare.fdamystudies.common.ApiEndpoint;
 import com.google.cloud.healthcare.fdamystudies.common.BaseMockIT;
 import com.google.cloud.healthcare.fdamystudies.common.IdGenerator;
 import com.google.cloud.healthcare.fdamystudies.common.JsonUtils;
+import com.google.cloud.healthcare.fdamystudies.common.ResponseServerEvent;
 import com.google.cloud.healthcare.fdamystudies.dao.CloudFirestoreResponsesDaoImpl;
 import com.google.cloud.healthcare.fdamystudies.helper.TestDataHelper;
 import com.google.cloud.healthcare.fdamystudies.repository.ParticipantActivitiesRepository;
 import com.google.cloud.healthcare.fdamystudies.repository.ParticipantInfoRepository;
 import com.google.cloud.healthcare.fdamystudies.response.model.ParticipantActivitiesEntity;
 import com.google.cloud.healthcare.fdamystudies.response.model.ParticipantInfoEntity;
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
 import com.google.cloud.healthcare.fdamystudies.utils.Constants;
+import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
 import com.google.cloud.healthcare.fdamystudies.utils.TestUtils;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.commons.collections4.map.HashedMap;
@@ -102,6 +114,7 @@ public class ProcessActivityResponseControllerTest extends BaseMockIT {
   @Captor ArgumentCaptor<String> questionKeyCaptor;
   @Captor ArgumentCaptor<String> activityCollectionNameCaptor;
   @Captor ArgumentCaptor<Map<String, Object>> dataToStoreCaptor;
+  @Captor ArgumentCaptor<List<Map<String, Object>>> dataToStoreListCaptor;
 
   @Autowired private ParticipantActivitiesRepository participantActivitiesRepository;
 
@@ -112,17 +125,14 @@ public class ProcessActivityResponseControllerTest extends BaseMockIT {
 
   @Test
   public void shouldSaveProcessActivityResponse() throws Exception {
-    Map<String, Object> dataToStore = new HashMap<>();
-    dataToStore.put(PARTICIPANT_ID_KEY, participantBo.getParticipantId());
-
     // Step-1 saveActivityResponseData
     doNothing()
         .when(responsesDaoMock)
         .saveActivityResponseData(
-            STUDY_ID_VALUE,
-            STUDY_COLLECTION_NAME_VALUE,
-            ACTIVITY_COLLECTION_NAME_VALUE,
-            dataToStore);
+            eq(STUDY_ID_VALUE),
+            eq(STUDY_COLLECTION_NAME_VALUE),
+            eq(ACTIVITY_COLLECTION_NAME_VALUE),
+            anyMap());
 
     // Step-2 call API to details to save participant activities
     ActivityResponseBean activityResponseBean = setActivityResponseBean();
@@ -207,6 +217,327 @@ public class ProcessActivityResponseControllerTest extends BaseMockIT {
         ACTIVITY_STATE_SAVED_OR_UPDATED_AFTER_RESPONSE_SUBMISSION);
   }
 
+  @Test
+  public void shouldNotCompleteActivityWhenResponseIsNotSaved() throws Exception {
+    // Step-1 the response write fails after the request was accepted
+    doThrow(new ProcessResponseException("Firestore unavailable"))
+        .when(responsesDaoMock)
+        .saveActivityResponseData(
+            eq(STUDY_ID_VALUE),
+            eq(STUDY_COLLECTION_NAME_VALUE),
+            eq(ACTIVITY_COLLECTION_NAME_VALUE),
+            anyMap());
+
+    ActivityResponseBean activityResponseBean = setActivityResponseBean();
+    activityResponseBean.getMetadata().setStudyVersion(STUDY_VERSION);
+    activityResponseBean.getMetadata().setActivityRunId("4");
+
+    HttpHeaders headers = TestUtils.newHeadersUser();
+    mockMvc
+        .perform(
+            post(ApiEndpoint.PROCESS_ACTIVITY_RESPONSE.getPath())
+                .contextPath(getContextPath())
+                .content(JsonUtils.asJsonString(activityResponseBean))
+                .headers(headers))
+        .andDo(print())
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.userMessage", is(EC_707.errorMessage())));
+
+    // Step-2 the activity is not marked completed for the participant
+    List<ParticipantActivitiesEntity> participantActivitiesList =
+        participantActivitiesRepository.findByStudyIdAndParticipantId(
+            STUDY_ID_VALUE, participantBo.getParticipantId());
+    assertTrue(participantActivitiesList.isEmpty());
+  }
+
+  @Test
+  public void shouldReturnStoredResponseForRetriedProcessActivityResponse() throws Exception {
+    doNothing()
+        .when(responsesDaoMock)
+        .saveActivityResponseData(
+            eq(STUDY_ID_VALUE),
+            eq(STUDY_COLLECTION_NAME_VALUE),
+            eq(ACTIVITY_COLLECTION_NAME_VALUE),
+            anyMap());
+
+    ActivityResponseBean activityResponseBean = setActivityResponseBean();
+    activityResponseBean.getMetadata().setStudyVersion(STUDY_VERSION);
+    activityResponseBean.getMetadata().setActivityRunId("3");
+
+    // Step-1: the response and its retry are sent with the same idempotency key
+    HttpHeaders headers = TestUtils.newHeadersUser();
+    headers.add(AppConstants.IDEMPOTENCY_KEY_HEADER, "submission-1");
+    mockMvc
+        .perform(
+            post(ApiEndpoint.PROCESS_ACTIVITY_RESPONSE.getPath())
+                .contextPath(getContextPath())
+                .content(JsonUtils.asJsonString(activityResponseBean))
+                .headers(headers))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.message", is(SUCCESS)));
+
+    mockMvc
+        .perform(
+            post(ApiEndpoint.PROCESS_ACTIVITY_RESPONSE.getPath())
+                .contextPath(getContextPath())
+                .content(JsonUtils.asJsonString(activityResponseBean))
+                .headers(headers))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(header().string(AppConstants.IDEMPOTENT_REPLAYED_HEADER, "true"))
+        .andExpect(jsonPath("$.message", is(SUCCESS)));
+
+    // Step-2: the retry did not process the response again
+    verify(responsesDaoMock, times(1))
+        .saveActivityResponseData(
+            eq(STUDY_ID_VALUE),
+            eq(STUDY_COLLECTION_NAME_VALUE),
+            eq(ACTIVITY_COLLECTION_NAME_VALUE),
+            anyMap());
+    verify(
+        1,
+        getRequestedFor(
+            urlEqualTo(
+                "/participant-enroll-datastore/participantInfo?studyId=ASignature01&participantId="
+                    + participantBo.getParticipantId())));
+  }
+
+  @Test
+  public void shouldRejectOtherResponseWithUsedIdempotencyKey() throws Exception {
+    doNothing()
+        .when(responsesDaoMock)
+        .saveActivityResponseData(
+            eq(STUDY_ID_VALUE),
+            eq(STUDY_COLLECTION_NAME_VALUE),
+            eq(ACTIVITY_COLLECTION_NAME_VALUE),
+            anyMap());
+
+    ActivityResponseBean activityResponseBean = setActivityResponseBean();
+    activityResponseBean.getMetadata().setStudyVersion(STUDY_VERSION);
+    activityResponseBean.getMetadata().setActivityRunId("3");
+
+    // Step-1: the response is saved with the idempotency key
+    HttpHeaders headers = TestUtils.newHeadersUser();
+    headers.add(AppConstants.IDEMPOTENCY_KEY_HEADER, "submission-2");
+    mockMvc
+        .perform(
+            post(ApiEndpoint.PROCESS_ACTIVITY_RESPONSE.getPath())
+                .contextPath(getContextPath())
+                .content(JsonUtils.asJsonString(activityResponseBean))
+                .headers(headers))
+        .andDo(print())
+        .andExpect(status().isOk());
+
+    // Step-2: another response sent with the same key is neither replayed nor processed
+    activityResponseBean.getMetadata().setActivityRunId("4");
+    mockMvc
+        .perform(
+            post(ApiEndpoint.PROCESS_ACTIVITY_RESPONSE.getPath())
+                .contextPath(getContextPath())
+                .content(JsonUtils.asJsonString(activityResponseBean))
+                .headers(headers))
+        .andDo(print())
+        .andExpect(status().isUnprocessableEntity())
+        .andExpect(jsonPath("$.userMessage", is(EC_723.errorMessage())));
+
+    verify(responsesDaoMock, times(1))
+        .saveActivityResponseData(
+            eq(STUDY_ID_VALUE),
+            eq(STUDY_COLLECTION_NAME_VALUE),
+            eq(ACTIVITY_COLLECTION_NAME_VALUE),
+            anyMap());
+  }
+
+  @Test
+  public void shouldNotReplayStoredResponseForInvalidEnrollmentToken() throws Exception {
+    doNothing()
+        .when(responsesDaoMock)
+        .saveActivityResponseData(
+            eq(STUDY_ID_VALUE),
+            eq(STUDY_COLLECTION_NAME_VALUE),
+            eq(ACTIVITY_COLLECTION_NAME_VALUE),
+            anyMap());
+
+    ActivityResponseBean activityResponseBean = setActivityResponseBean();
+    activityResponseBean.getMetadata().setStudyVersion(STUDY_VERSION);
+    activityResponseBean.getMetadata().setActivityRunId("3");
+
+    // Step-1: the response is saved with the idempotency key
+    HttpHeaders headers = TestUtils.newHeadersUser();
+    headers.add(AppConstants.IDEMPOTENCY_KEY_HEADER, "submission-3");
+    mockMvc
+        .perform(
+            post(ApiEndpoint.PROCESS_ACTIVITY_RESPONSE.getPath())
+                .contextPath(getContextPath())
+                .content(JsonUtils.asJsonString(activityResponseBean))
+                .headers(headers))
+        .andDo(print())
+        .andExpect(status().isOk());
+
+    // Step-2: the key of the participant does not skip the check of the enrollment token
+    activityResponseBean.setTokenIdentifier("invalid-token");
+    mockMvc
+        .perform(
+            post(ApiEndpoint.PROCESS_ACTIVITY_RESPONSE.getPath())
+                .contextPath(getContextPath())
+                .content(JsonUtils.asJsonString(activityResponseBean))
+                .headers(headers))
+        .andDo(print())
+        .andExpect(status().isBadRequest())
+        .andExpect(header().doesNotExist(AppConstants.IDEMPOTENT_REPLAYED_HEADER))
+        .andExpect(jsonPath("$.userMessage", is(EC_706.errorMessage())));
+  }
+
+  @Test
+  public void shouldSaveProcessActivityResponsesAsOneBatch() throws Exception {
+    ActivityResponseBatchBean activityResponseBatchBean = new ActivityResponseBatchBean();
+    for (String activityRunId : new String[] {"2", "3"}) {
+      ActivityResponseBean activityResponseBean = setActivityResponseBean();
+      activityResponseBean.getMetadata().setStudyVersion(STUDY_VERSION);
+      activityResponseBean.getMetadata().setActivityRunId(activityRunId);
+      activityResponseBatchBean.getResponses().add(activityResponseBean);
+    }
+
+    HttpHeaders headers = TestUtils.newHeadersUser();
+    mockMvc
+        .perform(
+            post(ApiEndpoint.PROCESS_ACTIVITY_RESPONSES.getPath())
+                .contextPath(getContextPath())
+                .content(JsonUtils.asJsonString(activityResponseBatchBean))
+                .headers(headers))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.message", is(SUCCESS)))
+        .andExpect(jsonPath("$.results[0].status", is(SUCCESS)))
+        .andExpect(jsonPath("$.results[1].activityRunId", is("3")))
+        .andExpect(jsonPath("$.results[1].status", is(SUCCESS)));
+
+    verify(responsesDaoMock)
+        .saveActivityResponseDataList(
+            studyIdCaptor.capture(),
+            studyCollectionNameCaptor.capture(),
+            activityCollectionNameCaptor.capture(),
+            dataToStoreListCaptor.capture());
+    assertEquals(STUDY_ID_VALUE, studyIdCaptor.getValue());
+    assertEquals(2, dataToStoreListCaptor.getValue().size());
+
+    // participant and metadata are looked up once for the whole batch
+    verify(
+        1,
+        getRequestedFor(
+            urlEqualTo(
+                "/participant-enroll-datastore/participantInfo?studyId=ASignature01&participantId="
+                    + participantBo.getParticipantId())));
+    verify(
+        1,
+        getRequestedFor(
+            urlEqualTo(
+                "/study-datastore/activity?studyId=ASignature01"
+                    + "&activityId=Activity&activityVersion=1.0")));
+
+    List<ParticipantActivitiesEntity> participantActivitiesList =
+        participantActivitiesRepository.findByStudyIdAndParticipantId(
+            STUDY_ID_VALUE, participantBo.getParticipantId());
+    assertEquals(1, participantActivitiesList.size());
+  }
+
+  @Test
+  public void shouldReplayBatchRetriedWithSameIdempotencyKey() throws Exception {
+    ActivityResponseBatchBean activityResponseBatchBean = new ActivityResponseBatchBean();
+    for (String activityRunId : new String[] {"2", "3"}) {
+      ActivityResponseBean activityResponseBean = setActivityResponseBean();
+      activityResponseBean.getMetadata().setStudyVersion(STUDY_VERSION);
+      activityResponseBean.getMetadata().setActivityRunId(activityRunId);
+      activityResponseBatchBean.getResponses().add(activityResponseBean);
+    }
+
+    // Step-1: the batch and its retry are sent with the same idempotency key
+    HttpHeaders headers = TestUtils.newHeadersUser();
+    headers.add(AppConstants.IDEMPOTENCY_KEY_HEADER, "batch-1");
+    mockMvc
+        .perform(
+            post(ApiEndpoint.PROCESS_ACTIVITY_RESPONSES.getPath())
+                .contextPath(getContextPath())
+                .content(JsonUtils.asJsonString(activityResponseBatchBean))
+                .headers(headers))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.message", is(SUCCESS)));
+
+    // each response of the batch is audited as received
+    assertEquals(2, countAuditEvents(ACTIVITY_RESPONSE_RECEIVED));
+
+    mockMvc
+        .perform(
+            post(ApiEndpoint.PROCESS_ACTIVITY_RESPONSES.getPath())
+                .contextPath(getContextPath())
+                .content(JsonUtils.asJsonString(activityResponseBatchBean))
+                .headers(headers))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(header().string(AppConstants.IDEMPOTENT_REPLAYED_HEADER, "true"))
+        .andExpect(jsonPath("$.message", is(SUCCESS)))
+        .andExpect(jsonPath("$.results[1].activityRunId", is("3")))
+        .andExpect(jsonPath("$.results[1].status", is(SUCCESS)));
+
+    // Step-2: the retry was audited but did not process the batch again
+    assertEquals(4, countAuditEvents(ACTIVITY_RESPONSE_RECEIVED));
+    assertEquals(2, countAuditEvents(ACTIVITY_RESPONSE_SAVED));
+    verify(responsesDaoMock, times(1))
+        .saveActivityResponseDataList(
+            eq(STUDY_ID_VALUE),
+            eq(STUDY_COLLECTION_NAME_VALUE),
+            eq(ACTIVITY_COLLECTION_NAME_VALUE),
+            anyList());
+    verify(
+        1,
+        getRequestedFor(
+            urlEqualTo(
+                "/participant-enroll-datastore/participantInfo?studyId=ASignature01&participantId="
+                    + participantBo.getParticipantId())));
+  }
+
+  @Test
+  public void shouldRejectOtherBatchWithUsedIdempotencyKey() throws Exception {
+    ActivityResponseBatchBean activityResponseBatchBean = new ActivityResponseBatchBean();
+    ActivityResponseBean activityResponseBean = setActivityResponseBean();
+    activityResponseBean.getMetadata().setStudyVersion(STUDY_VERSION);
+    activityResponseBean.getMetadata().setActivityRunId("2");
+    activityResponseBatchBean.getResponses().add(activityResponseBean);
+
+    // Step-1: the batch is saved with the idempotency key
+    HttpHeaders headers = TestUtils.newHeadersUser();
+    headers.add(AppConstants.IDEMPOTENCY_KEY_HEADER, "batch-2");
+    mockMvc
+        .perform(
+            post(ApiEndpoint.PROCESS_ACTIVITY_RESPONSES.getPath())
+                .contextPath(getContextPath())
+                .content(JsonUtils.asJsonString(activityResponseBatchBean))
+                .headers(headers))
+        .andDo(print())
+        .andExpect(status().isOk());
+
+    // Step-2: another batch sent with the same key is neither replayed nor processed
+    activityResponseBean.getMetadata().setActivityRunId("3");
+    mockMvc
+        .perform(
+            post(ApiEndpoint.PROCESS_ACTIVITY_RESPONSES.getPath())
+                .contextPath(getContextPath())
+                .content(JsonUtils.asJsonString(activityResponseBatchBean))
+                .headers(headers))
+        .andDo(print())
+        .andExpect(status().isUnprocessableEntity())
+        .andExpect(jsonPath("$.userMessage", is(EC_723.errorMessage())));
+
+    verify(responsesDaoMock, times(1))
+        .saveActivityResponseDataList(
+            eq(STUDY_ID_VALUE),
+            eq(STUDY_COLLECTION_NAME_VALUE),
+            eq(ACTIVITY_COLLECTION_NAME_VALUE),
+            anyList());
+  }
+
   @Test
   public void shouldReturnBadRequestForEmptyInputsOfProccessActivityResponse() throws Exception {
     ActivityResponseBean activityResponseBean = new ActivityResponseBean();
@@ -318,6 +649,67 @@ public class ProcessActivityResponseControllerTest extends BaseMockIT {
     verifyAuditEventCall(auditEventMap, READ_OPERATION_FOR_RESPONSE_DATA_SUCCEEDED);
   }
 
+  @Test
+  public void shouldGetQuestionResponsesSince() throws Exception {
+    String inputJsonContent = readJsonFile("/get_activity_response_data_for_participant.json");
+    StoredResponseBean storedResponseBean =
+        getObjectMapper().readValue(inputJsonContent, StoredResponseBean.class);
+
+    // Step-1 the answers to the question are read from the question-level read model
+    when(responsesDaoMock.getQuestionResponseDataForParticipant(
+            STUDY_COLLECTION_NAME_VALUE,
+            STUDY_ID_VALUE,
+            SITE_ID_VALUE,
+            participantBo.getParticipantId(),
+            ACTIVITY_ID_VALUE,
+            QUESTION_KEY_VALUE,
+            1000L,
+            10))
+        .thenReturn(storedResponseBean);
+
+    // Step-2 call API with since and limit
+    MvcResult result =
+        mockMvc
+            .perform(
+                get(ApiEndpoint.GET_PROCESS_ACTIVITY_RESPONSE.getPath())
+                    .contextPath(getContextPath())
+                    .headers(TestUtils.newHeadersUser())
+                    .queryParam("appId", "appId")
+                    .queryParam("studyId", STUDY_ID_VALUE)
+                    .queryParam("siteId", SITE_ID_VALUE)
+                    .queryParam("participantId", participantBo.getParticipantId())
+                    .queryParam(PARTICIPANT_TOKEN_IDENTIFIER_KEY, participantBo.getTokenId())
+                    .queryParam("activityId", ACTIVITY_ID_VALUE)
+                    .queryParam("questionKey", QUESTION_KEY_VALUE)
+                    .queryParam("since", "1000")
+                    .queryParam("limit", "10"))
+            .andDo(print())
+            .andExpect(status().isOk())
+            .andReturn();
+
+    String actualResponse = result.getResponse().getContentAsString();
+    JSONAssert.assertEquals(inputJsonContent, actualResponse, JSONCompareMode.NON_EXTENSIBLE);
+  }
+
+  @Test
+  public void shouldReturnBadRequestForInvalidLimit() throws Exception {
+    mockMvc
+        .perform(
+            get(ApiEndpoint.GET_PROCESS_ACTIVITY_RESPONSE.getPath())
+                .contextPath(getContextPath())
+                .headers(TestUtils.newHeadersUser())
+                .queryParam("appId", "appId")
+                .queryParam("studyId", STUDY_ID_VALUE)
+                .queryParam("siteId", SITE_ID_VALUE)
+                .queryParam("participantId", participantBo.getParticipantId())
+                .queryParam(PARTICIPANT_TOKEN_IDENTIFIER_KEY, participantBo.getTokenId())
+                .queryParam("activityId", ACTIVITY_ID_VALUE)
+                .queryParam("questionKey", QUESTION_KEY_VALUE)
+                .queryParam("limit", "0"))
+        .andDo(print())
+        .andExpect(status().isBadRequest());
+  }
+
   @Test
   public void shouldReturnBadRequestsGetActivityResponse() throws Exception {
     HttpHeaders headers = TestUtils.newHeadersUser();
@@ -436,4 +828,11 @@ public class ProcessActivityResponseControllerTest extends BaseMockIT {
     activityResponseBean.setTokenIdentifier(participantBo.getTokenId());
     return activityResponseBean;
   }
+
+  private long countAuditEvents(ResponseServerEvent auditEvent) {
+    return auditRequests
+        .stream()
+        .filter(auditRequest -> auditEvent.getEventCode().equals(auditRequest.getEventCode()))
+        .count();
+  }
 }
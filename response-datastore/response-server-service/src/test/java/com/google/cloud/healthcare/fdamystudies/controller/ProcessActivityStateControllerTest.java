@@ -13,6 +13,8 @@ import static com.google.cloud.healthcare.fdamystudies.common.JsonUtils.readJson
 import static com.google.cloud.healthcare.fdamystudies.common.ResponseServerEvent.ACTIVITY_STATE_SAVED_OR_UPDATED;
 import static com.google.cloud.healthcare.fdamystudies.common.ResponseServerEvent.READ_OPERATION_FOR_ACTIVITY_STATE_INFO_FAILED;
 import static com.google.cloud.healthcare.fdamystudies.common.ResponseServerEvent.READ_OPERATION_FOR_ACTIVITY_STATE_INFO_SUCCEEDED;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -30,6 +32,7 @@ import com.google.cloud.healthcare.fdamystudies.response.model.ParticipantActivi
 import com.google.cloud.healthcare.fdamystudies.service.ParticipantActivityStateResponseService;
 import com.google.cloud.healthcare.fdamystudies.utils.Constants;
 import com.google.cloud.healthcare.fdamystudies.utils.TestUtils;
+import com.jayway.jsonpath.JsonPath;
 import java.util.List;
 import java.util.Map;
 import org.apache.commons.collections4.map.HashedMap;
@@ -38,8 +41,10 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.aggregator.ArgumentsAccessor;
 import org.junit.jupiter.params.provider.CsvSource;
+import org.skyscreamer.jsonassert.Customization;
 import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompareMode;
+import org.skyscreamer.jsonassert.comparator.CustomComparator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.test.web.servlet.MvcResult;
@@ -78,7 +83,12 @@ public class ProcessActivityStateControllerTest extends BaseMockIT {
 
     String actualResponse = result.getResponse().getContentAsString();
     String expectedResponse = readJsonFile("/get_activity_state_runs_info_response.json");
-    JSONAssert.assertEquals(expectedResponse, actualResponse, JSONCompareMode.NON_EXTENSIBLE);
+    JSONAssert.assertEquals(
+        expectedResponse,
+        actualResponse,
+        new CustomComparator(
+            JSONCompareMode.NON_EXTENSIBLE,
+            new Customization("syncToken", (actual, expected) -> actual != null)));
 
     AuditLogEventRequest auditRequest = new AuditLogEventRequest();
     auditRequest.setStudyId("RT3");
@@ -285,6 +295,119 @@ public class ProcessActivityStateControllerTest extends BaseMockIT {
         resultsList.get(1).getCompletedCount());
   }
 
+  @Test
+  void shouldUpdateExistingActivityState() throws Exception {
+    String inputJsonContent = readJsonFile("/update_activity_state_runs_info_request.json");
+    HttpHeaders headers = TestUtils.newHeadersUser();
+
+    // Step 1: save the activity state, twice and then with another case of the activity ID
+    String updatedJsonContent =
+        inputJsonContent
+            .replace("questionnaire_1", "QUESTIONNAIRE_1")
+            .replace("\"Completed\"", "\"InProgress\"")
+            .replace("\"completed\": 5", "\"completed\": 6");
+    for (String content : new String[] {inputJsonContent, inputJsonContent, updatedJsonContent}) {
+      mockMvc
+          .perform(
+              post(ApiEndpoint.UPDATE_ACTIVITY_STATE.getPath())
+                  .contextPath(getContextPath())
+                  .content(content)
+                  .headers(headers))
+          .andDo(print())
+          .andExpect(status().isOk());
+    }
+
+    // Step 2: verify that the saved activity state was updated
+    ActivityStateRequestBean inputActivityStateBean =
+        getObjectMapper().readValue(inputJsonContent, ActivityStateRequestBean.class);
+    List<ParticipantActivitiesEntity> resultsList =
+        participantActivitiesRepository.findByStudyIdAndParticipantId(
+            inputActivityStateBean.getStudyId(), inputActivityStateBean.getParticipantId());
+    assertEquals(1, resultsList.size());
+    assertEquals("questionnaire_1", resultsList.get(0).getActivityId());
+    assertEquals("InProgress", resultsList.get(0).getActivityState());
+    assertEquals(Integer.valueOf(6), resultsList.get(0).getCompletedCount());
+    assertEquals(Integer.valueOf(11), resultsList.get(0).getTotalCount());
+  }
+
+  @Test
+  void shouldGetActivityStateChangedSinceToken() throws Exception {
+    // Step 1: save two activities and get all of them with a sync token
+    String inputJsonContent =
+        readJsonFile("/update_activity_state_runs_info__multiple_request.json");
+    participantActivitiesResponseService.saveParticipantActivities(
+        getObjectMapper().readValue(inputJsonContent, ActivityStateRequestBean.class));
+
+    HttpHeaders headers = TestUtils.newHeadersUser();
+    MvcResult result =
+        mockMvc
+            .perform(
+                get(ApiEndpoint.GET_ACTIVITY_STATE.getPath())
+                    .contextPath(getContextPath())
+                    .queryParam("studyId", "RT3")
+                    .queryParam("participantId", "567")
+                    .headers(headers))
+            .andDo(print())
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.activities", hasSize(2)))
+            .andExpect(jsonPath("$.delta").value(false))
+            .andReturn();
+    String syncToken =
+        JsonPath.read(result.getResponse().getContentAsString(), "$.syncToken").toString();
+    String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+    assertEquals("\"" + syncToken + "\"", eTag);
+
+    // Step 2: nothing changed since the token
+    HttpHeaders conditionalHeaders = TestUtils.newHeadersUser();
+    conditionalHeaders.setIfNoneMatch(eTag);
+    mockMvc
+        .perform(
+            get(ApiEndpoint.GET_ACTIVITY_STATE.getPath())
+                .contextPath(getContextPath())
+                .queryParam("studyId", "RT3")
+                .queryParam("participantId", "567")
+                .queryParam("since", syncToken)
+                .headers(conditionalHeaders))
+        .andDo(print())
+        .andExpect(status().isNotModified());
+
+    mockMvc
+        .perform(
+            get(ApiEndpoint.GET_ACTIVITY_STATE.getPath())
+                .contextPath(getContextPath())
+                .queryParam("studyId", "RT3")
+                .queryParam("participantId", "567")
+                .queryParam("since", syncToken)
+                .headers(headers))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.activities", hasSize(0)))
+        .andExpect(jsonPath("$.delta").value(true))
+        .andExpect(jsonPath("$.syncToken").value(syncToken));
+
+    // Step 3: only the updated activity is returned
+    participantActivitiesResponseService.saveParticipantActivities(
+        getObjectMapper()
+            .readValue(
+                inputJsonContent.replace("\"In progress\"", "\"Completed\""),
+                ActivityStateRequestBean.class));
+    mockMvc
+        .perform(
+            get(ApiEndpoint.GET_ACTIVITY_STATE.getPath())
+                .contextPath(getContextPath())
+                .queryParam("studyId", "RT3")
+                .queryParam("participantId", "567")
+                .queryParam("since", syncToken)
+                .headers(conditionalHeaders))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.activities", hasSize(1)))
+        .andExpect(jsonPath("$.activities[0].activityId").value("questionnaire_2"))
+        .andExpect(jsonPath("$.activities[0].activityState").value("Completed"))
+        .andExpect(jsonPath("$.delta").value(true))
+        .andExpect(jsonPath("$.syncToken", not(syncToken)));
+  }
+
   @AfterEach
   void cleanUp() {
     participantActivitiesRepository.deleteAll();
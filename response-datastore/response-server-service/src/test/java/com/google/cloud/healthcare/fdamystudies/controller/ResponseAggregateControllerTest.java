@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.controller;
+
+import static com.google.cloud.healthcare.fdamystudies.common.ErrorCode.CLIENT_ACCESS_DENIED;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.google.cloud.healthcare.fdamystudies.common.BaseMockIT;
+import com.google.cloud.healthcare.fdamystudies.dao.CloudFirestoreResponsesDaoImpl;
+import com.google.cloud.healthcare.fdamystudies.service.ResponseAggregateService;
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import com.google.cloud.healthcare.fdamystudies.utils.TestUtils;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+
+public class ResponseAggregateControllerTest extends BaseMockIT {
+
+  private static final String STUDY_ID = "AggregateStudy";
+
+  @MockBean private CloudFirestoreResponsesDaoImpl responsesDaoMock;
+
+  @Autowired private ResponseAggregateService responseAggregateService;
+
+  @Test
+  void shouldAggregateResponsesAndReverseWithdrawal() throws Exception {
+    // Step 1: three responses at two sites, one of them saved twice
+    responseAggregateService.addResponse(
+        STUDY_ID, newResponse("participant1", "site1", "run1", 1, 1));
+    responseAggregateService.addResponse(
+        STUDY_ID, newResponse("participant1", "site1", "run1", 1, 1));
+    responseAggregateService.addResponse(
+        STUDY_ID, newResponse("participant1", "site1", "run2", 2, 4));
+    responseAggregateService.addResponse(
+        STUDY_ID, newResponse("participant2", "site2", "run1", 3, 10));
+
+    // Step 2: the aggregates of the sites are merged
+    mockMvc
+        .perform(
+            get(aggregatesPath())
+                .contextPath(getContextPath())
+                .headers(TestUtils.newCommonHeaders())
+                .queryParam("activityId", "activity1")
+                .queryParam("questionKey", "question1"))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].responseCount").value(3))
+        .andExpect(jsonPath("$[0].numericCount").value(3))
+        .andExpect(jsonPath("$[0].min").value(1.0))
+        .andExpect(jsonPath("$[0].max").value(10.0))
+        .andExpect(jsonPath("$[0].mean").value(5.0))
+        .andExpect(jsonPath("$[0].quantiles.p50", closeTo(4.0, 0.1)))
+        .andExpect(jsonPath("$[0].lastValue").value("10"));
+
+    // Step 3: the withdrawn participant held the max and the last value
+    responseAggregateService.withdrawParticipant(STUDY_ID, "participant2");
+    mockMvc
+        .perform(
+            get(aggregatesPath())
+                .contextPath(getContextPath())
+                .headers(TestUtils.newCommonHeaders())
+                .queryParam("activityId", "activity1")
+                .queryParam("questionKey", "question1"))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].responseCount").value(2))
+        .andExpect(jsonPath("$[0].min").value(1.0))
+        .andExpect(jsonPath("$[0].max").value(4.0))
+        .andExpect(jsonPath("$[0].mean").value(2.5))
+        .andExpect(jsonPath("$[0].lastValue").value("4"));
+
+    // Step 4: the aggregates of one site
+    mockMvc
+        .perform(
+            get(aggregatesPath())
+                .contextPath(getContextPath())
+                .headers(TestUtils.newCommonHeaders())
+                .queryParam("siteId", "site2"))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].responseCount").value(0));
+  }
+
+  @Test
+  void shouldReturnForbiddenForParticipantToken() throws Exception {
+    HttpHeaders headers = TestUtils.newCommonHeaders();
+    headers.set("Authorization", PARTICIPANT_BEARER_TOKEN);
+    mockMvc
+        .perform(get(aggregatesPath()).contextPath(getContextPath()).headers(headers))
+        .andDo(print())
+        .andExpect(FORBIDDEN)
+        .andExpect(jsonPath("$.error_code").value(CLIENT_ACCESS_DENIED.getCode()));
+  }
+
+  private String aggregatesPath() {
+    return getContextPath() + "/studies/" + STUDY_ID + "/aggregates";
+  }
+
+  private static Map<String, Object> newResponse(
+      String participantId,
+      String siteId,
+      String activityRunId,
+      long createdTimestamp,
+      int value) {
+    Map<String, Object> response = new HashMap<>();
+    response.put(AppConstants.PARTICIPANT_ID_KEY, participantId);
+    response.put(AppConstants.SITE_ID_KEY, siteId);
+    response.put(AppConstants.ACTIVITY_ID_KEY, "activity1");
+    response.put(AppConstants.ACTIVITY_RUN_ID_KEY, activityRunId);
+    response.put(AppConstants.CREATED_TS_KEY, String.valueOf(createdTimestamp));
+    Map<String, Object> result = new HashMap<>();
+    result.put(AppConstants.QUESTION_ID_KEY, "question1");
+    result.put(AppConstants.RESULT_TYPE_KEY, "scale");
+    result.put(AppConstants.VALUE_KEY_STR, String.valueOf(value));
+    response.put(AppConstants.RESULTS_FIELD_KEY, Arrays.asList(result));
+    return response;
+  }
+}
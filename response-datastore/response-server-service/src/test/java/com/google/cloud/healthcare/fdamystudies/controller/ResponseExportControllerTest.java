@@ -0,0 +1,314 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.controller;
+
+import static com.google.cloud.healthcare.fdamystudies.common.ErrorCode.CLIENT_ACCESS_DENIED;
+import static com.google.cloud.healthcare.fdamystudies.common.JsonUtils.asJsonString;
+import static com.google.cloud.healthcare.fdamystudies.common.JsonUtils.getObjectMapper;
+import static com.google.cloud.healthcare.fdamystudies.utils.Constants.STUDY_ID_VALUE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportJobBean;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportPage;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportRequestBean;
+import com.google.cloud.healthcare.fdamystudies.common.BaseMockIT;
+import com.google.cloud.healthcare.fdamystudies.dao.CloudFirestoreResponsesDaoImpl;
+import com.google.cloud.healthcare.fdamystudies.service.ResponseExportService;
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import com.google.cloud.healthcare.fdamystudies.utils.TestUtils;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MvcResult;
+
+public class ResponseExportControllerTest extends BaseMockIT {
+
+  @MockBean private CloudFirestoreResponsesDaoImpl responsesDaoMock;
+
+  @Autowired private ResponseExportService responseExportService;
+
+  @Value("${response.export.path}")
+  private String exportPath;
+
+  @Test
+  void shouldExportResponsesInChunks() throws Exception {
+    // Step 1: three pages of responses, the mockit chunks hold at least 3 responses
+    when(responsesDaoMock.getActivityResponseDataPage(
+            eq(STUDY_ID_VALUE + "-RESPONSES"), eq(STUDY_ID_VALUE), any(), isNull(), anyInt()))
+        .thenReturn(
+            newPage("cursor1", newResponse("run1", "a,b"), newResponse("run2", "=1+2")));
+    when(responsesDaoMock.getActivityResponseDataPage(
+            eq(STUDY_ID_VALUE + "-RESPONSES"), eq(STUDY_ID_VALUE), any(), eq("cursor1"), anyInt()))
+        .thenReturn(newPage("cursor2", newResponse("run3", "3"), newResponse("run4", "-4")));
+    when(responsesDaoMock.getActivityResponseDataPage(
+            eq(STUDY_ID_VALUE + "-RESPONSES"), eq(STUDY_ID_VALUE), any(), eq("cursor2"), anyInt()))
+        .thenReturn(newPage(null, newResponse("run5", "5")));
+
+    // Step 2: start the export in both formats
+    HttpHeaders headers = TestUtils.newCommonHeaders();
+    ResponseExportRequestBean exportRequest = new ResponseExportRequestBean();
+    exportRequest.setFormats(Arrays.asList("ndjson", "csv"));
+    MvcResult result =
+        mockMvc
+            .perform(
+                post(exportsPath())
+                    .contextPath(getContextPath())
+                    .content(asJsonString(exportRequest))
+                    .headers(headers))
+            .andDo(print())
+            .andExpect(status().isAccepted())
+            .andExpect(jsonPath("$.jobId").isNotEmpty())
+            .andReturn();
+    String jobId =
+        getObjectMapper()
+            .readValue(result.getResponse().getContentAsString(), ResponseExportJobBean.class)
+            .getJobId();
+
+    // Step 3: wait for the job to complete
+    ResponseExportJobBean job = waitForJob(jobId, headers);
+    assertEquals("COMPLETED", job.getStatus());
+    assertEquals(5, job.getExportedResponses());
+    assertEquals(2, job.getChunks());
+    assertEquals(Collections.singletonList("question1"), job.getQuestionKeys());
+    assertEquals(
+        Arrays.asList("part-00000.ndjson", "part-00000.csv", "part-00001.ndjson", "part-00001.csv"),
+        job.getFiles());
+
+    // Step 4: download the first CSV chunk
+    result =
+        mockMvc
+            .perform(
+                get(exportsPath() + "/" + jobId + "/files/part-00000.csv")
+                    .contextPath(getContextPath())
+                    .headers(headers))
+            .andExpect(status().isOk())
+            .andReturn();
+    String[] lines = result.getResponse().getContentAsString().split("\r\n");
+    assertEquals(5, lines.length);
+    assertEquals(
+        "participantId,siteId,activityId,activityRunId,studyVersion,createdTimestamp,"
+            + "withdrawalStatus,question1",
+        lines[0]);
+    assertTrue(lines[1].startsWith("participant1,site1,activity1,run1,1.0,"));
+    assertTrue(lines[1].endsWith(",\"a,b\""));
+    // formulas are escaped, negative numbers are not
+    assertTrue(lines[2].endsWith(",'=1+2"));
+    assertTrue(lines[4].endsWith(",-4"));
+  }
+
+  @Test
+  void shouldAddColumnsForQuestionKeysSavedDuringExport() throws Exception {
+    // Step 1: a response with a new question key is saved between the two passes
+    when(responsesDaoMock.getActivityResponseDataPage(
+            eq(STUDY_ID_VALUE + "-RESPONSES"), eq(STUDY_ID_VALUE), any(), isNull(), anyInt()))
+        .thenReturn(newPage("cursor1", newResponse("run1", "1")));
+    when(responsesDaoMock.getActivityResponseDataPage(
+            eq(STUDY_ID_VALUE + "-RESPONSES"), eq(STUDY_ID_VALUE), any(), eq("cursor1"), anyInt()))
+        .thenReturn(newPage(null, newResponse("run2", "2")))
+        .thenReturn(
+            newPage(null, newResponse("run2", "2"), newResponse("run3", "question2", "3")));
+
+    // Step 2: export to CSV
+    HttpHeaders headers = TestUtils.newCommonHeaders();
+    ResponseExportJobBean job = waitForJob(startCsvExport(headers), headers);
+    assertEquals("COMPLETED", job.getStatus());
+    assertEquals(3, job.getExportedResponses());
+    assertEquals(Arrays.asList("question1", "question2"), job.getQuestionKeys());
+    assertEquals(Arrays.asList("part-00000.csv", "part-00001.csv"), job.getFiles());
+
+    // Step 3: the chunk of the page with the new question key has its column
+    String[] lines = getFileLines(job.getJobId(), "part-00000.csv", headers);
+    assertEquals(2, lines.length);
+    assertTrue(lines[0].endsWith(",withdrawalStatus,question1"));
+    lines = getFileLines(job.getJobId(), "part-00001.csv", headers);
+    assertEquals(3, lines.length);
+    assertTrue(lines[0].endsWith(",withdrawalStatus,question1,question2"));
+    assertTrue(lines[1].endsWith(",2,"));
+    assertTrue(lines[2].endsWith(",,3"));
+  }
+
+  @Test
+  void shouldDeleteExpiredJobs() throws Exception {
+    when(responsesDaoMock.getActivityResponseDataPage(
+            eq(STUDY_ID_VALUE + "-RESPONSES"), eq(STUDY_ID_VALUE), any(), isNull(), anyInt()))
+        .thenReturn(newPage(null, newResponse("run1", "1")));
+    HttpHeaders headers = TestUtils.newCommonHeaders();
+    ResponseExportJobBean job = waitForJob(startCsvExport(headers), headers);
+    assertEquals("COMPLETED", job.getStatus());
+    Path jobDirectory = Paths.get(exportPath, job.getJobId());
+    assertTrue(Files.isDirectory(jobDirectory));
+
+    // a job updated after the timestamp is kept
+    responseExportService.deleteJobsUpdatedBefore(job.getUpdatedTime());
+    assertTrue(Files.isDirectory(jobDirectory));
+
+    responseExportService.deleteJobsUpdatedBefore(System.currentTimeMillis() + 1);
+    assertFalse(Files.exists(jobDirectory));
+    mockMvc
+        .perform(
+            get(exportsPath() + "/" + job.getJobId()).contextPath(getContextPath()).headers(headers))
+        .andDo(print())
+        .andExpect(status().isNotFound());
+  }
+
+  @Test
+  void shouldReturnBadRequestForUnsupportedFormat() throws Exception {
+    ResponseExportRequestBean exportRequest = new ResponseExportRequestBean();
+    exportRequest.setFormats(Collections.singletonList("xlsx"));
+    mockMvc
+        .perform(
+            post(exportsPath())
+                .contextPath(getContextPath())
+                .content(asJsonString(exportRequest))
+                .headers(TestUtils.newCommonHeaders()))
+        .andDo(print())
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void shouldReturnNotFoundForUnknownJob() throws Exception {
+    mockMvc
+        .perform(
+            get(exportsPath() + "/unknown-job")
+                .contextPath(getContextPath())
+                .headers(TestUtils.newCommonHeaders()))
+        .andDo(print())
+        .andExpect(status().isNotFound());
+  }
+
+  @Test
+  void shouldReturnForbiddenForParticipantToken() throws Exception {
+    HttpHeaders headers = TestUtils.newCommonHeaders();
+    headers.set("Authorization", PARTICIPANT_BEARER_TOKEN);
+    ResponseExportRequestBean exportRequest = new ResponseExportRequestBean();
+    exportRequest.setFormats(Collections.singletonList("csv"));
+    mockMvc
+        .perform(
+            post(exportsPath())
+                .contextPath(getContextPath())
+                .content(asJsonString(exportRequest))
+                .headers(headers))
+        .andDo(print())
+        .andExpect(FORBIDDEN)
+        .andExpect(jsonPath("$.error_code").value(CLIENT_ACCESS_DENIED.getCode()));
+
+    mockMvc
+        .perform(
+            get(exportsPath() + "/unknown-job").contextPath(getContextPath()).headers(headers))
+        .andDo(print())
+        .andExpect(FORBIDDEN);
+  }
+
+  private String startCsvExport(HttpHeaders headers) throws Exception {
+    ResponseExportRequestBean exportRequest = new ResponseExportRequestBean();
+    exportRequest.setFormats(Collections.singletonList("csv"));
+    MvcResult result =
+        mockMvc
+            .perform(
+                post(exportsPath())
+                    .contextPath(getContextPath())
+                    .content(asJsonString(exportRequest))
+                    .headers(headers))
+            .andDo(print())
+            .andExpect(status().isAccepted())
+            .andReturn();
+    return getObjectMapper()
+        .readValue(result.getResponse().getContentAsString(), ResponseExportJobBean.class)
+        .getJobId();
+  }
+
+  private ResponseExportJobBean waitForJob(String jobId, HttpHeaders headers) throws Exception {
+    ResponseExportJobBean job = null;
+    for (int i = 0; i < 100; i++) {
+      MvcResult result =
+          mockMvc
+              .perform(
+                  get(exportsPath() + "/" + jobId)
+                      .contextPath(getContextPath())
+                      .headers(headers))
+              .andExpect(status().isOk())
+              .andReturn();
+      job =
+          getObjectMapper()
+              .readValue(result.getResponse().getContentAsString(), ResponseExportJobBean.class);
+      if ("COMPLETED".equals(job.getStatus()) || "FAILED".equals(job.getStatus())) {
+        break;
+      }
+      Thread.sleep(100);
+    }
+    return job;
+  }
+
+  private String[] getFileLines(String jobId, String fileName, HttpHeaders headers)
+      throws Exception {
+    MvcResult result =
+        mockMvc
+            .perform(
+                get(exportsPath() + "/" + jobId + "/files/" + fileName)
+                    .contextPath(getContextPath())
+                    .headers(headers))
+            .andExpect(status().isOk())
+            .andReturn();
+    return result.getResponse().getContentAsString().split("\r\n");
+  }
+
+  private String exportsPath() {
+    return getContextPath() + "/studies/" + STUDY_ID_VALUE + "/exports";
+  }
+
+  @SafeVarargs
+  private static ResponseExportPage newPage(String nextCursor, Map<String, Object>... documents) {
+    ResponseExportPage page = new ResponseExportPage();
+    page.getDocuments().addAll(Arrays.asList(documents));
+    page.setNextCursor(nextCursor);
+    return page;
+  }
+
+  private static Map<String, Object> newResponse(String activityRunId, String value) {
+    return newResponse(activityRunId, "question1", value);
+  }
+
+  private static Map<String, Object> newResponse(
+      String activityRunId, String questionKey, String value) {
+    Map<String, Object> response = new HashMap<>();
+    response.put(AppConstants.PARTICIPANT_ID_KEY, "participant1");
+    response.put(AppConstants.SITE_ID_KEY, "site1");
+    response.put(AppConstants.ACTIVITY_ID_KEY, "activity1");
+    response.put(AppConstants.ACTIVITY_RUN_ID_KEY, activityRunId);
+    response.put(AppConstants.STUDY_VERSION_KEY, "1.0");
+    response.put(AppConstants.CREATED_TS_KEY, String.valueOf(System.currentTimeMillis()));
+    Map<String, Object> result = new HashMap<>();
+    result.put(AppConstants.QUESTION_ID_KEY, questionKey);
+    result.put(AppConstants.RESULT_TYPE_KEY, "text");
+    result.put(AppConstants.VALUE_KEY_STR, value);
+    response.put(AppConstants.RESULTS_FIELD_KEY, Collections.singletonList(result));
+    return response;
+  }
+}
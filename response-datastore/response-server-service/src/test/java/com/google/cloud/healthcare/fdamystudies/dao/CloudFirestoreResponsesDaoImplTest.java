@@ -0,0 +1,440 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.healthcare.fdamystudies.bean.StoredResponseBean;
+import com.google.cloud.healthcare.fdamystudies.config.ApplicationConfiguration;
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
+import com.google.cloud.healthcare.fdamystudies.utils.ResponseServerUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class CloudFirestoreResponsesDaoImplTest {
+
+  private static final String STUDY_COLLECTION_NAME = "Studies";
+
+  private static final String STUDY_ID = "study1";
+
+  private static final String PARTICIPANT_ID = "participant1";
+
+  private static final String SITE_ID = "site1";
+
+  private static final String ACTIVITY_ID = "activity1";
+
+  private static final String QUESTION_KEY = "question1";
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+  private CloudFirestoreResponsesDaoImpl responsesDao;
+
+  private Firestore firestore;
+
+  private DocumentReference studyDocument;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    ObjectProvider<MeterRegistry> meterRegistryProvider = mock(ObjectProvider.class);
+    when(meterRegistryProvider.getIfAvailable(any())).thenReturn(new SimpleMeterRegistry());
+
+    firestore = mock(Firestore.class);
+    CollectionReference studies = mock(CollectionReference.class);
+    studyDocument = mock(DocumentReference.class);
+    when(firestore.collection(STUDY_COLLECTION_NAME)).thenReturn(studies);
+    when(studies.document(STUDY_ID)).thenReturn(studyDocument);
+
+    ApplicationConfiguration appConfig = new ApplicationConfiguration();
+    appConfig.setLastResponseOnly("false");
+    appConfig.setResponseSupportedQTypeDouble("numeric,scale,continuousScale");
+    StoredResponseConverter storedResponseConverter = new StoredResponseConverter();
+    ReflectionTestUtils.setField(storedResponseConverter, "appConfig", appConfig);
+
+    responsesDao = new CloudFirestoreResponsesDaoImpl();
+    ReflectionTestUtils.setField(responsesDao, "appConfig", appConfig);
+    ReflectionTestUtils.setField(
+        responsesDao, "storedResponseConverter", storedResponseConverter);
+    ReflectionTestUtils.setField(responsesDao, "meterRegistry", meterRegistryProvider);
+    ReflectionTestUtils.setField(responsesDao, "studyVersionCacheMaxSize", 10);
+    ReflectionTestUtils.setField(responsesDao, "bulkWriteMaxInFlight", 4);
+    ReflectionTestUtils.setField(responsesDao, "bulkWriteMaxAttempts", 3);
+    ReflectionTestUtils.setField(responsesDao, "bulkWriteRetryDelayMillis", 1L);
+    ReflectionTestUtils.setField(responsesDao, "responsesDb", firestore);
+    responsesDao.init();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    responsesDao.shutdown();
+  }
+
+  @Test
+  void shouldWriteResponseAndQuestionSeriesInOneBatch() throws Exception {
+    // Step-1: the response is not saved yet
+    CollectionReference activities = mock(CollectionReference.class);
+    Query participantQuery = mock(Query.class);
+    Query activityQuery = mock(Query.class);
+    Query activityRunQuery = mock(Query.class);
+    when(studyDocument.collection(AppConstants.ACTIVITIES_COLLECTION_NAME)).thenReturn(activities);
+    when(activities.whereEqualTo(AppConstants.PARTICIPANT_ID_KEY, PARTICIPANT_ID))
+        .thenReturn(participantQuery);
+    when(participantQuery.whereEqualTo(AppConstants.ACTIVITY_ID_KEY, ACTIVITY_ID))
+        .thenReturn(activityQuery);
+    when(activityQuery.whereEqualTo(AppConstants.ACTIVITY_RUN_ID_KEY, "run1"))
+        .thenReturn(activityRunQuery);
+    when(activityRunQuery.get()).thenReturn(ApiFutures.immediateFuture(newQuerySnapshot()));
+    DocumentReference responseDocument = mock(DocumentReference.class);
+    when(activities.document()).thenReturn(responseDocument);
+    when(studyDocument.getPath()).thenReturn(STUDY_COLLECTION_NAME + "/" + STUDY_ID);
+
+    DocumentReference seriesDocument = mockSeriesDocument();
+    DocumentReference valueDocument = mockValueDocument(seriesDocument, "run1");
+    WriteBatch writeBatch = mock(WriteBatch.class);
+    when(writeBatch.commit()).thenReturn(ApiFutures.immediateFuture(Collections.emptyList()));
+    when(firestore.batch()).thenReturn(writeBatch);
+
+    // Step-2: save the response
+    Map<String, Object> response = newResponse("run1", 100L, "3");
+    response.put(AppConstants.STUDY_VERSION_KEY, "1.0");
+    responsesDao.saveActivityResponseData(
+        STUDY_ID, STUDY_COLLECTION_NAME, AppConstants.ACTIVITIES_COLLECTION_NAME, response);
+
+    // Step-3: the response, its answer, the series and the study version are one batch
+    Map<String, Object> valueMap = newValueMap("run1", 100L, "3");
+    Map<String, Object> seriesMap = newSeriesMap();
+    seriesMap.put(AppConstants.LATEST_VALUE_KEY, valueMap);
+    verify(writeBatch).set(responseDocument, response);
+    verify(writeBatch).set(eq(seriesDocument), eq(seriesMap), any(SetOptions.class));
+    verify(writeBatch).set(valueDocument, valueMap);
+    verify(writeBatch)
+        .set(studyDocument, Collections.singletonMap(AppConstants.STUDY_VERSION_KEY, "1.0"));
+    verify(writeBatch, times(1)).commit();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldBackfillLegacyAnswersIntoExistingSeries() throws Exception {
+    // Step-1: the series was created by a response saved after the read model, run1 predates it
+    DocumentReference seriesDocument = mockSeriesDocument();
+    DocumentSnapshot series = mock(DocumentSnapshot.class);
+    when(series.exists()).thenReturn(true);
+    when(series.get(AppConstants.LATEST_VALUE_KEY)).thenReturn(newValueMap("run2", 200L, "5"));
+    DocumentSnapshot backfilledSeries = mock(DocumentSnapshot.class);
+    when(backfilledSeries.getBoolean(AppConstants.BACKFILLED_KEY)).thenReturn(true);
+    when(seriesDocument.get())
+        .thenReturn(ApiFutures.immediateFuture(series))
+        .thenReturn(ApiFutures.immediateFuture(backfilledSeries));
+    when(seriesDocument.set(any(Map.class), any(SetOptions.class)))
+        .thenReturn(ApiFutures.immediateFuture(null));
+    mockActivityResponses(newResponse("run1", 100L, "3"), newResponse("run2", 200L, "5"));
+    DocumentReference legacyValueDocument = mockValueDocument(seriesDocument, "run1");
+    DocumentReference valueDocument = mockValueDocument(seriesDocument, "run2");
+    mockSeriesValues(
+        seriesDocument, newValueMap("run1", 100L, "3"), newValueMap("run2", 200L, "5"));
+    WriteBatch writeBatch = mock(WriteBatch.class);
+    when(writeBatch.commit()).thenReturn(ApiFutures.immediateFuture(Collections.emptyList()));
+    when(firestore.batch()).thenReturn(writeBatch);
+
+    // Step-2: the first read backfills the series
+    StoredResponseBean storedResponseBean =
+        responsesDao.getQuestionResponseDataForParticipant(
+            STUDY_COLLECTION_NAME,
+            STUDY_ID,
+            SITE_ID,
+            PARTICIPANT_ID,
+            ACTIVITY_ID,
+            QUESTION_KEY,
+            null,
+            null);
+
+    // Step-3: both answers are written and returned, the latest answer is kept
+    verify(writeBatch).set(legacyValueDocument, newValueMap("run1", 100L, "3"));
+    verify(writeBatch).set(valueDocument, newValueMap("run2", 200L, "5"));
+    Map<String, Object> seriesMap = newSeriesMap();
+    seriesMap.put(AppConstants.BACKFILLED_KEY, true);
+    verify(seriesDocument).set(eq(seriesMap), any(SetOptions.class));
+    assertEquals(2, storedResponseBean.getRows().size());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldSetLatestAnswerOfBackfilledSeries() throws Exception {
+    // Step-1: every response predates the read model
+    DocumentReference seriesDocument = mockSeriesDocument();
+    DocumentSnapshot series = mock(DocumentSnapshot.class);
+    DocumentSnapshot backfilledSeries = mock(DocumentSnapshot.class);
+    when(backfilledSeries.getBoolean(AppConstants.BACKFILLED_KEY)).thenReturn(true);
+    when(seriesDocument.get())
+        .thenReturn(ApiFutures.immediateFuture(series))
+        .thenReturn(ApiFutures.immediateFuture(backfilledSeries));
+    when(seriesDocument.set(any(Map.class), any(SetOptions.class)))
+        .thenReturn(ApiFutures.immediateFuture(null));
+    mockActivityResponses(newResponse("run2", 200L, "5"), newResponse("run1", 100L, "3"));
+    mockValueDocument(seriesDocument, "run1");
+    mockValueDocument(seriesDocument, "run2");
+    mockSeriesValues(
+        seriesDocument, newValueMap("run1", 100L, "3"), newValueMap("run2", 200L, "5"));
+    WriteBatch writeBatch = mock(WriteBatch.class);
+    when(writeBatch.commit()).thenReturn(ApiFutures.immediateFuture(Collections.emptyList()));
+    when(firestore.batch()).thenReturn(writeBatch);
+
+    responsesDao.getQuestionResponseDataForParticipant(
+        STUDY_COLLECTION_NAME,
+        STUDY_ID,
+        SITE_ID,
+        PARTICIPANT_ID,
+        ACTIVITY_ID,
+        QUESTION_KEY,
+        null,
+        null);
+
+    // Step-2: the newest answer becomes the latest one
+    Map<String, Object> seriesMap = newSeriesMap();
+    seriesMap.put(AppConstants.BACKFILLED_KEY, true);
+    seriesMap.put(AppConstants.LATEST_VALUE_KEY, newValueMap("run2", 200L, "5"));
+    verify(seriesDocument).set(eq(seriesMap), any(SetOptions.class));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldReadBackfilledSeriesWithoutResponseDocuments() throws Exception {
+    DocumentReference seriesDocument = mockSeriesDocument();
+    DocumentSnapshot series = mock(DocumentSnapshot.class);
+    when(series.getBoolean(AppConstants.BACKFILLED_KEY)).thenReturn(true);
+    when(seriesDocument.get()).thenReturn(ApiFutures.immediateFuture(series));
+    mockSeriesValues(seriesDocument, newValueMap("run1", 100L, "3"));
+
+    StoredResponseBean storedResponseBean =
+        responsesDao.getQuestionResponseDataForParticipant(
+            STUDY_COLLECTION_NAME,
+            STUDY_ID,
+            SITE_ID,
+            PARTICIPANT_ID,
+            ACTIVITY_ID,
+            QUESTION_KEY,
+            null,
+            null);
+
+    assertEquals(1, storedResponseBean.getRows().size());
+    verify(studyDocument, never()).collection(AppConstants.ACTIVITIES_COLLECTION_NAME);
+    verify(seriesDocument, never()).set(any(Map.class), any(SetOptions.class));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldNotCreateSeriesOfQuestionWithoutAnswers() throws Exception {
+    DocumentReference seriesDocument = mockSeriesDocument();
+    DocumentSnapshot series = mock(DocumentSnapshot.class);
+    when(seriesDocument.get()).thenReturn(ApiFutures.immediateFuture(series));
+    mockActivityResponses();
+    mockSeriesValues(seriesDocument);
+
+    assertNull(
+        responsesDao.getQuestionResponseDataForParticipant(
+            STUDY_COLLECTION_NAME,
+            STUDY_ID,
+            SITE_ID,
+            PARTICIPANT_ID,
+            ACTIVITY_ID,
+            QUESTION_KEY,
+            null,
+            null));
+    verify(seriesDocument, never()).set(any(Map.class), any(SetOptions.class));
+  }
+
+  @Test
+  void shouldFailWithdrawalWhenRetriedCommitThrows() throws Exception {
+    mockParticipantResponses();
+    WriteBatch writeBatch = mock(WriteBatch.class);
+    when(writeBatch.commit())
+        .thenReturn(ApiFutures.immediateFailedFuture(new RuntimeException("UNAVAILABLE")));
+    // the retries cannot even create their batch
+    when(firestore.batch())
+        .thenReturn(writeBatch)
+        .thenThrow(new IllegalStateException("Firestore client has already been closed"));
+
+    ProcessResponseException e =
+        assertTimeoutPreemptively(
+            TIMEOUT,
+            () ->
+                assertThrows(
+                    ProcessResponseException.class,
+                    () ->
+                        responsesDao.updateWithdrawalStatusForParticipant(
+                            STUDY_COLLECTION_NAME, STUDY_ID, PARTICIPANT_ID)));
+    assertTrue(e.getMessage().contains("already been closed"));
+    verify(firestore, times(3)).batch();
+  }
+
+  @Test
+  void shouldFailWithdrawalWhenFirstCommitThrows() throws Exception {
+    mockParticipantResponses();
+    when(firestore.batch()).thenThrow(new IllegalStateException("Firestore client is closed"));
+
+    assertTimeoutPreemptively(
+        TIMEOUT,
+        () ->
+            assertThrows(
+                ProcessResponseException.class,
+                () ->
+                    responsesDao.updateWithdrawalStatusForParticipant(
+                        STUDY_COLLECTION_NAME, STUDY_ID, PARTICIPANT_ID)));
+    verify(firestore, times(3)).batch();
+  }
+
+  private DocumentReference mockSeriesDocument() {
+    CollectionReference seriesCollection = mock(CollectionReference.class);
+    DocumentReference seriesDocument = mock(DocumentReference.class);
+    when(studyDocument.collection(AppConstants.QUESTION_RESPONSES_COLLECTION_NAME))
+        .thenReturn(seriesCollection);
+    when(seriesCollection.document(
+            ResponseServerUtil.getHashedValue(
+                String.join("\n", SITE_ID, PARTICIPANT_ID, ACTIVITY_ID, QUESTION_KEY))))
+        .thenReturn(seriesDocument);
+    when(seriesDocument.collection(AppConstants.QUESTION_VALUES_COLLECTION_NAME))
+        .thenReturn(mock(CollectionReference.class));
+    return seriesDocument;
+  }
+
+  private DocumentReference mockValueDocument(
+      DocumentReference seriesDocument, String activityRunId) {
+    DocumentReference valueDocument = mock(DocumentReference.class);
+    CollectionReference values =
+        seriesDocument.collection(AppConstants.QUESTION_VALUES_COLLECTION_NAME);
+    when(values.document(ResponseServerUtil.getHashedValue(activityRunId)))
+        .thenReturn(valueDocument);
+    return valueDocument;
+  }
+
+  @SafeVarargs
+  private final void mockSeriesValues(
+      DocumentReference seriesDocument, Map<String, Object>... valueMaps) {
+    CollectionReference values =
+        seriesDocument.collection(AppConstants.QUESTION_VALUES_COLLECTION_NAME);
+    Query valuesQuery = mock(Query.class);
+    when(values.orderBy(AppConstants.CREATED_TS_KEY)).thenReturn(valuesQuery);
+    when(valuesQuery.get()).thenReturn(ApiFutures.immediateFuture(newQuerySnapshot(valueMaps)));
+  }
+
+  @SafeVarargs
+  private final void mockActivityResponses(Map<String, Object>... responses) {
+    CollectionReference activities = mock(CollectionReference.class);
+    Query participantQuery = mock(Query.class);
+    Query siteQuery = mock(Query.class);
+    Query activityQuery = mock(Query.class);
+    when(studyDocument.collection(AppConstants.ACTIVITIES_COLLECTION_NAME)).thenReturn(activities);
+    when(activities.whereEqualTo(AppConstants.PARTICIPANT_ID_KEY, PARTICIPANT_ID))
+        .thenReturn(participantQuery);
+    when(participantQuery.whereEqualTo(AppConstants.SITE_ID_KEY, SITE_ID)).thenReturn(siteQuery);
+    when(siteQuery.whereEqualTo(AppConstants.ACTIVITY_ID_KEY, ACTIVITY_ID))
+        .thenReturn(activityQuery);
+    when(activityQuery.get()).thenReturn(ApiFutures.immediateFuture(newQuerySnapshot(responses)));
+  }
+
+  @SafeVarargs
+  private static QuerySnapshot newQuerySnapshot(Map<String, Object>... documents) {
+    List<QueryDocumentSnapshot> snapshots = new ArrayList<>();
+    for (Map<String, Object> document : documents) {
+      QueryDocumentSnapshot snapshot = mock(QueryDocumentSnapshot.class);
+      when(snapshot.getData()).thenReturn(document);
+      snapshots.add(snapshot);
+    }
+    QuerySnapshot querySnapshot = mock(QuerySnapshot.class);
+    when(querySnapshot.getDocuments()).thenReturn(snapshots);
+    when(querySnapshot.isEmpty()).thenReturn(snapshots.isEmpty());
+    return querySnapshot;
+  }
+
+  private static Map<String, Object> newResponse(
+      String activityRunId, long createdTimestamp, String value) {
+    Map<String, Object> result = new HashMap<>();
+    result.put(AppConstants.QUESTION_ID_KEY, QUESTION_KEY);
+    result.put(AppConstants.RESULT_TYPE_KEY, "scale");
+    result.put(AppConstants.VALUE_KEY_STR, value);
+    Map<String, Object> response = new HashMap<>();
+    response.put(AppConstants.PARTICIPANT_ID_KEY, PARTICIPANT_ID);
+    response.put(AppConstants.SITE_ID_KEY, SITE_ID);
+    response.put(AppConstants.ACTIVITY_ID_KEY, ACTIVITY_ID);
+    response.put(AppConstants.ACTIVITY_RUN_ID_KEY, activityRunId);
+    response.put(AppConstants.CREATED_TS_KEY, String.valueOf(createdTimestamp));
+    response.put(AppConstants.RESULTS_FIELD_KEY, Arrays.asList(result));
+    return response;
+  }
+
+  private static Map<String, Object> newValueMap(
+      String activityRunId, long createdTimestamp, String value) {
+    Map<String, Object> valueMap = new HashMap<>();
+    valueMap.put(AppConstants.ACTIVITY_RUN_ID_KEY, activityRunId);
+    valueMap.put(AppConstants.CREATED_TS_KEY, createdTimestamp);
+    valueMap.put(AppConstants.RESULT_TYPE_KEY, "scale");
+    valueMap.put(AppConstants.VALUE_KEY_STR, value);
+    return valueMap;
+  }
+
+  private static Map<String, Object> newSeriesMap() {
+    Map<String, Object> seriesMap = new HashMap<>();
+    seriesMap.put(AppConstants.PARTICIPANT_ID_KEY, PARTICIPANT_ID);
+    seriesMap.put(AppConstants.SITE_ID_KEY, SITE_ID);
+    seriesMap.put(AppConstants.ACTIVITY_ID_KEY, ACTIVITY_ID);
+    seriesMap.put(AppConstants.QUESTION_ID_KEY, QUESTION_KEY);
+    return seriesMap;
+  }
+
+  private void mockParticipantResponses() {
+    CollectionReference activities = mock(CollectionReference.class);
+    Query query = mock(Query.class);
+    QuerySnapshot querySnapshot = mock(QuerySnapshot.class);
+    QueryDocumentSnapshot document = mock(QueryDocumentSnapshot.class);
+    when(studyDocument.collection(AppConstants.ACTIVITIES_COLLECTION_NAME)).thenReturn(activities);
+    when(activities.whereEqualTo(AppConstants.PARTICIPANT_ID_KEY, PARTICIPANT_ID))
+        .thenReturn(query);
+    when(query.orderBy(any(FieldPath.class))).thenReturn(query);
+    when(query.limit(anyInt())).thenReturn(query);
+    when(query.get()).thenReturn(ApiFutures.immediateFuture(querySnapshot));
+    when(querySnapshot.getDocuments()).thenReturn(Collections.singletonList(document));
+    when(document.getReference()).thenReturn(mock(DocumentReference.class));
+  }
+}
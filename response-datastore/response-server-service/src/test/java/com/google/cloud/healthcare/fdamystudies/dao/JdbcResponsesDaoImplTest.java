@@ -0,0 +1,303 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportFilter;
+import com.google.cloud.healthcare.fdamystudies.bean.ResponseExportPage;
+import com.google.cloud.healthcare.fdamystudies.config.ApplicationConfiguration;
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import com.google.cloud.healthcare.fdamystudies.utils.ProcessResponseException;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class JdbcResponsesDaoImplTest {
+
+  private static final String STUDY_ID = "study1";
+
+  private static final String PARTICIPANT_ID = "participant1";
+
+  private static final String SITE_ID = "site1";
+
+  private static final String ACTIVITY_ID = "activity1";
+
+  private static final String INSERT_RESPONSE_SQL =
+      "INSERT INTO activity_responses (study_id, document) VALUES (?, ?) "
+          + "ON DUPLICATE KEY UPDATE id = id";
+
+  private static final String INSERT_QUESTION_SQL =
+      "INSERT INTO activity_response_questions "
+          + "(study_id, participant_id, activity_id, activity_run_id, question_key) "
+          + "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE question_key = question_key";
+
+  private JdbcResponsesDaoImpl responsesDao;
+
+  private JdbcTemplate jdbcTemplate;
+
+  private TransactionTemplate transactionTemplate;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    jdbcTemplate = mock(JdbcTemplate.class);
+    transactionTemplate = mock(TransactionTemplate.class);
+    when(transactionTemplate.execute(any()))
+        .thenAnswer(
+            invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+
+    ApplicationConfiguration appConfig = new ApplicationConfiguration();
+    appConfig.setLastResponseOnly("false");
+    appConfig.setResponseSupportedQTypeDouble("numeric,scale,continuousScale");
+    StoredResponseConverter storedResponseConverter = new StoredResponseConverter();
+    ReflectionTestUtils.setField(storedResponseConverter, "appConfig", appConfig);
+
+    responsesDao = new JdbcResponsesDaoImpl();
+    ReflectionTestUtils.setField(responsesDao, "jdbcTemplate", jdbcTemplate);
+    ReflectionTestUtils.setField(responsesDao, "transactionTemplate", transactionTemplate);
+    ReflectionTestUtils.setField(
+        responsesDao, "storedResponseConverter", storedResponseConverter);
+    ReflectionTestUtils.setField(responsesDao, "batchSize", 500);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldSaveResponsesQuestionsAndStudyVersionInOneTransaction() throws Exception {
+    Map<String, Object> response1 = newResponse("run1", "question1", "question2");
+    Map<String, Object> response2 = newResponse(null, "question1");
+    response2.put(AppConstants.STUDY_VERSION_KEY, "1.2");
+
+    responsesDao.saveActivityResponseDataList(
+        STUDY_ID, "Studies", "Activities", Arrays.asList(response1, response2));
+
+    verify(transactionTemplate).execute(any());
+    ArgumentCaptor<List<Object[]>> responseRows = ArgumentCaptor.forClass(List.class);
+    verify(jdbcTemplate)
+        .batchUpdate(
+            eq(INSERT_RESPONSE_SQL),
+            responseRows.capture(),
+            eq(500),
+            any(ParameterizedPreparedStatementSetter.class));
+    assertEquals(2, responseRows.getValue().size());
+    assertEquals(STUDY_ID, responseRows.getValue().get(0)[0]);
+    assertEquals(
+        "run1",
+        new ObjectMapper()
+            .readValue((String) responseRows.getValue().get(0)[1], Map.class)
+            .get(AppConstants.ACTIVITY_RUN_ID_KEY));
+
+    ArgumentCaptor<List<Object[]>> questionRows = ArgumentCaptor.forClass(List.class);
+    verify(jdbcTemplate)
+        .batchUpdate(
+            eq(INSERT_QUESTION_SQL),
+            questionRows.capture(),
+            eq(500),
+            any(ParameterizedPreparedStatementSetter.class));
+    List<String> questionKeys = new ArrayList<>();
+    for (Object[] row : questionRows.getValue()) {
+      questionKeys.add(row[0] + "/" + row[3] + "/" + row[4]);
+    }
+    questionKeys.sort(null);
+    // a response without activity run is indexed under the empty run, like the generated column
+    assertEquals(
+        Arrays.asList("study1//question1", "study1/run1/question1", "study1/run1/question2"),
+        questionKeys);
+
+    verify(jdbcTemplate)
+        .update(startsWith("INSERT INTO study_metadata"), eq(STUDY_ID), eq("1.2"), eq("1.2"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldFailSaveWhenInsertFailsForAnotherReasonThanDuplicateKey() {
+    when(jdbcTemplate.batchUpdate(
+            eq(INSERT_RESPONSE_SQL),
+            any(List.class),
+            anyInt(),
+            any(ParameterizedPreparedStatementSetter.class)))
+        .thenThrow(new DataIntegrityViolationException("Data too long for column 'study_id'"));
+    Map<String, Object> response = newResponse("run1", "question1");
+    response.put(AppConstants.STUDY_VERSION_KEY, "1.2");
+
+    ProcessResponseException e =
+        assertThrows(
+            ProcessResponseException.class,
+            () ->
+                responsesDao.saveActivityResponseDataList(
+                    STUDY_ID, "Studies", "Activities", Arrays.asList(response)));
+
+    assertEquals("Data too long for column 'study_id'", e.getMessage());
+    verify(jdbcTemplate, never())
+        .update(startsWith("INSERT INTO study_metadata"), eq(STUDY_ID), eq("1.2"), eq("1.2"));
+  }
+
+  @Test
+  void shouldReadAnswersOfQuestionThroughQuestionTable() throws Exception {
+    when(jdbcTemplate.queryForList(
+            anyString(),
+            eq(String.class),
+            eq(STUDY_ID),
+            eq(PARTICIPANT_ID),
+            eq(SITE_ID),
+            eq(ACTIVITY_ID),
+            eq("question1")))
+        .thenReturn(Arrays.asList(toJson(newResponse("run1", "question1"))));
+
+    assertEquals(
+        1,
+        responsesDao
+            .getQuestionResponseDataForParticipant(
+                "Studies", STUDY_ID, SITE_ID, PARTICIPANT_ID, ACTIVITY_ID, "question1", null, null)
+            .getRows()
+            .size());
+
+    ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+    verify(jdbcTemplate)
+        .queryForList(
+            sql.capture(),
+            eq(String.class),
+            eq(STUDY_ID),
+            eq(PARTICIPANT_ID),
+            eq(SITE_ID),
+            eq(ACTIVITY_ID),
+            eq("question1"));
+    assertTrue(sql.getValue().contains("q.question_key = ?"));
+  }
+
+  @Test
+  void shouldReadExportPageWithTheNumberTypesOfFirestore() throws Exception {
+    Map<String, Object> response1 = newResponse("run1", "question1");
+    response1.put("score", 5);
+    response1.put("duration", 2.5);
+    Map<String, Object> response2 = newResponse("run2", "question1");
+    ResultSet resultSet = mock(ResultSet.class);
+    when(resultSet.getLong("id")).thenReturn(7L, 9L);
+    when(resultSet.getString("document")).thenReturn(toJson(response1), toJson(response2));
+    doAnswer(
+            invocation -> {
+              RowCallbackHandler handler = invocation.getArgument(1);
+              handler.processRow(resultSet);
+              handler.processRow(resultSet);
+              return null;
+            })
+        .when(jdbcTemplate)
+        .query(
+            anyString(), any(RowCallbackHandler.class), eq(STUDY_ID), eq(3L), eq(SITE_ID), eq(2));
+    ResponseExportFilter filter = new ResponseExportFilter();
+    filter.setSiteId(SITE_ID);
+
+    ResponseExportPage page =
+        responsesDao.getActivityResponseDataPage("Studies", STUDY_ID, filter, "3", 2);
+
+    assertEquals(2, page.getDocuments().size());
+    assertEquals(5L, page.getDocuments().get(0).get("score"));
+    assertEquals(2.5, page.getDocuments().get(0).get("duration"));
+    assertEquals("9", page.getNextCursor());
+    ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+    verify(jdbcTemplate)
+        .query(
+            sql.capture(),
+            any(RowCallbackHandler.class),
+            eq(STUDY_ID),
+            eq(3L),
+            eq(SITE_ID),
+            eq(2));
+    assertTrue(sql.getValue().endsWith(" AND site_id = ? ORDER BY id LIMIT ?"));
+  }
+
+  @Test
+  void shouldEndExportAtShortPage() throws Exception {
+    ResultSet resultSet = mock(ResultSet.class);
+    when(resultSet.getLong("id")).thenReturn(4L);
+    when(resultSet.getString("document")).thenReturn(toJson(newResponse("run1", "question1")));
+    doAnswer(
+            invocation -> {
+              ((RowCallbackHandler) invocation.getArgument(1)).processRow(resultSet);
+              return null;
+            })
+        .when(jdbcTemplate)
+        .query(anyString(), any(RowCallbackHandler.class), eq(STUDY_ID), eq(0L), eq(2));
+
+    ResponseExportPage page =
+        responsesDao.getActivityResponseDataPage(
+            "Studies", STUDY_ID, new ResponseExportFilter(), null, 2);
+
+    assertEquals(1, page.getDocuments().size());
+    assertNull(page.getNextCursor());
+  }
+
+  @Test
+  void shouldDeleteQuestionsAndResponsesOfParticipantInOneTransaction() throws Exception {
+    responsesDao.deleteActivityResponseDataForParticipant(
+        "Studies", STUDY_ID, "Activities", PARTICIPANT_ID);
+
+    verify(transactionTemplate).execute(any());
+    verify(jdbcTemplate)
+        .update(
+            startsWith("DELETE FROM activity_response_questions"),
+            eq(STUDY_ID),
+            eq(PARTICIPANT_ID));
+    verify(jdbcTemplate)
+        .update(startsWith("DELETE FROM activity_responses"), eq(STUDY_ID), eq(PARTICIPANT_ID));
+  }
+
+  private static String toJson(Map<String, Object> document) throws Exception {
+    return new ObjectMapper().writeValueAsString(document);
+  }
+
+  private static Map<String, Object> newResponse(String activityRunId, String... questionKeys) {
+    List<Map<String, Object>> results = new ArrayList<>();
+    for (String questionKey : questionKeys) {
+      Map<String, Object> result = new HashMap<>();
+      result.put(AppConstants.QUESTION_ID_KEY, questionKey);
+      result.put(AppConstants.RESULT_TYPE_KEY, "scale");
+      result.put(AppConstants.VALUE_KEY_STR, "3");
+      results.add(result);
+    }
+    Map<String, Object> response = new HashMap<>();
+    response.put(AppConstants.PARTICIPANT_ID_KEY, PARTICIPANT_ID);
+    response.put(AppConstants.SITE_ID_KEY, SITE_ID);
+    response.put(AppConstants.ACTIVITY_ID_KEY, ACTIVITY_ID);
+    if (activityRunId != null) {
+      response.put(AppConstants.ACTIVITY_RUN_ID_KEY, activityRunId);
+    }
+    response.put(AppConstants.CREATED_TS_KEY, "100");
+    response.put(AppConstants.RESULTS_FIELD_KEY, results);
+    return response;
+  }
+}
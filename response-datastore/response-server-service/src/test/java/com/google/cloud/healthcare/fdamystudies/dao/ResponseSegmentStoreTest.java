@@ -0,0 +1,214 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ResponseSegmentStoreTest {
+
+  private static final long SEGMENT_MAX_BYTES = 1024 * 1024;
+
+  private static final String ACTIVITY_ID = "activity1";
+
+  @TempDir Path tempDir;
+
+  @Test
+  void shouldReplayActiveSegmentAndTruncateTornRecord() throws Exception {
+    try (ResponseSegmentStore store = new ResponseSegmentStore(tempDir, SEGMENT_MAX_BYTES)) {
+      store.put(
+          Arrays.asList(newResponse("participant1", "run1"), newResponse("participant1", "run2")));
+    }
+    Path segment = getSegments().get(0);
+    long completeSize = Files.size(segment);
+    Files.write(
+        segment, "3\tdead\tP\t{".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+    try (ResponseSegmentStore store = new ResponseSegmentStore(tempDir, SEGMENT_MAX_BYTES)) {
+      assertEquals(completeSize, Files.size(segment));
+      assertEquals(
+          Arrays.asList("run1", "run2"),
+          getActivityRunIds(store.find("participant1", ACTIVITY_ID, null)));
+
+      store.put(Collections.singletonList(newResponse("participant1", "run3")));
+      assertEquals(
+          Arrays.asList("run1", "run2", "run3"),
+          getActivityRunIds(store.find("participant1", ACTIVITY_ID, "question1")));
+    }
+  }
+
+  @Test
+  void shouldFindRecordsOfSealedSegmentsAfterReopen() throws Exception {
+    // every record seals the previous segment into the index
+    try (ResponseSegmentStore store = new ResponseSegmentStore(tempDir, 1)) {
+      for (int i = 1; i <= 4; i++) {
+        store.put(Collections.singletonList(newResponse("participant1", "run" + i)));
+      }
+      store.put(Collections.singletonList(newResponse("participant2", "run1")));
+    }
+    assertEquals(5, getSegments().size());
+
+    try (ResponseSegmentStore store = new ResponseSegmentStore(tempDir, 1)) {
+      assertEquals(
+          Arrays.asList("run1", "run2", "run3", "run4"),
+          getActivityRunIds(store.find("participant1", ACTIVITY_ID, "question1")));
+      assertEquals(1, store.find("participant2", ACTIVITY_ID, null).size());
+      assertTrue(store.find("participant1", ACTIVITY_ID, "question2").isEmpty());
+    }
+  }
+
+  @Test
+  void shouldCompactDeletedAndWithdrawnParticipants() throws Exception {
+    try (ResponseSegmentStore store = new ResponseSegmentStore(tempDir, 1)) {
+      for (int i = 1; i <= 3; i++) {
+        store.put(
+            Arrays.asList(
+                newResponse("participant1", "run" + i), newResponse("participant2", "run" + i)));
+      }
+      store.delete("participant1");
+      store.withdraw("participant2");
+      // saved after the withdrawal, so not withdrawn
+      store.put(Collections.singletonList(newResponse("participant2", "run4")));
+      long sizeBeforeCompaction = getSegmentsSize();
+
+      assertTrue(store.needsCompaction(Integer.MAX_VALUE));
+      store.compact();
+
+      assertFalse(store.needsCompaction(1));
+      assertTrue(getSegmentsSize() < sizeBeforeCompaction);
+      assertCompactedResponses(store);
+    }
+
+    try (ResponseSegmentStore store = new ResponseSegmentStore(tempDir, 1)) {
+      assertCompactedResponses(store);
+
+      // the records keep their order
+      List<Map<String, Object>> documents = new ArrayList<>();
+      assertNull(store.scan(null, 100, document -> true, documents));
+      assertEquals(Arrays.asList("run1", "run2", "run3", "run4"), getActivityRunIds(documents));
+    }
+  }
+
+  @Test
+  void shouldStoreActivityRunOnceWhenSavedConcurrently() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try (ResponseSegmentStore store = new ResponseSegmentStore(tempDir, SEGMENT_MAX_BYTES)) {
+      List<Callable<Integer>> saves = new ArrayList<>();
+      for (int i = 0; i < 16; i++) {
+        saves.add(
+            () ->
+                store.putIfAbsent(Collections.singletonList(newResponse("participant1", "run1"))));
+      }
+      int saved = 0;
+      for (Future<Integer> future : executor.invokeAll(saves)) {
+        saved += future.get();
+      }
+      assertEquals(1, saved);
+
+      // a run sent twice in one batch is stored once as well
+      assertEquals(
+          1,
+          store.putIfAbsent(
+              Arrays.asList(
+                  newResponse("participant1", "run2"), newResponse("participant1", "run2"))));
+      assertEquals(2, store.find("participant1", ACTIVITY_ID, null).size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldReadNumbersWithTheTypesOfFirestore() throws Exception {
+    Map<String, Object> response = newResponse("participant1", "run1");
+    response.put("score", 5);
+    response.put("duration", 2.5);
+    response.put("total", 3.0);
+    try (ResponseSegmentStore store = new ResponseSegmentStore(tempDir, SEGMENT_MAX_BYTES)) {
+      store.put(Collections.singletonList(response));
+    }
+
+    try (ResponseSegmentStore store = new ResponseSegmentStore(tempDir, SEGMENT_MAX_BYTES)) {
+      Map<String, Object> document = store.find("participant1", ACTIVITY_ID, null).get(0);
+      assertEquals(5L, document.get("score"));
+      assertEquals(2.5, document.get("duration"));
+      assertEquals(3.0, document.get("total"));
+    }
+  }
+
+  private static void assertCompactedResponses(ResponseSegmentStore store) throws Exception {
+    assertTrue(store.find("participant1", ACTIVITY_ID, null).isEmpty());
+    List<Map<String, Object>> documents = store.find("participant2", ACTIVITY_ID, null);
+    assertEquals(Arrays.asList("run1", "run2", "run3", "run4"), getActivityRunIds(documents));
+    for (Map<String, Object> document : documents) {
+      assertEquals(
+          !"run4".equals(document.get(AppConstants.ACTIVITY_RUN_ID_KEY)),
+          Boolean.TRUE.equals(document.get(AppConstants.WITHDRAWAL_STATUS_KEY)));
+    }
+  }
+
+  private List<Path> getSegments() throws Exception {
+    try (Stream<Path> paths = Files.list(tempDir)) {
+      return paths
+          .filter(path -> path.getFileName().toString().endsWith(".log"))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private long getSegmentsSize() throws Exception {
+    long size = 0;
+    for (Path segment : getSegments()) {
+      size += Files.size(segment);
+    }
+    return size;
+  }
+
+  private static List<String> getActivityRunIds(List<Map<String, Object>> documents) {
+    return documents.stream()
+        .map(document -> (String) document.get(AppConstants.ACTIVITY_RUN_ID_KEY))
+        .collect(Collectors.toList());
+  }
+
+  private static Map<String, Object> newResponse(String participantId, String activityRunId) {
+    Map<String, Object> result = new HashMap<>();
+    result.put(AppConstants.QUESTION_ID_KEY, "question1");
+    result.put(AppConstants.RESULT_TYPE_KEY, "scale");
+    result.put(AppConstants.VALUE_KEY_STR, "3");
+    Map<String, Object> response = new HashMap<>();
+    response.put(AppConstants.PARTICIPANT_ID_KEY, participantId);
+    response.put(AppConstants.SITE_ID_KEY, "site1");
+    response.put(AppConstants.ACTIVITY_ID_KEY, ACTIVITY_ID);
+    response.put(AppConstants.ACTIVITY_RUN_ID_KEY, activityRunId);
+    response.put(AppConstants.CREATED_TS_KEY, "100");
+    response.put(AppConstants.RESULTS_FIELD_KEY, Arrays.asList(result));
+    return response;
+  }
+}
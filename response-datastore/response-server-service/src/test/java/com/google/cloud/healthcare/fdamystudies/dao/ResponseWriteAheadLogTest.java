@@ -0,0 +1,175 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.cloud.healthcare.fdamystudies.dao.ResponseWriteAheadLog.Record;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ResponseWriteAheadLogTest {
+
+  private static final long SEGMENT_MAX_BYTES = 1024 * 1024;
+
+  @TempDir Path tempDir;
+
+  @Test
+  void shouldTruncateTornRecordOnRecovery() throws Exception {
+    try (ResponseWriteAheadLog wal = new ResponseWriteAheadLog(tempDir, SEGMENT_MAX_BYTES)) {
+      wal.append("response1");
+      wal.append("response2");
+      wal.append("response3");
+    }
+    Path segment = getSegments().get(0);
+    long completeSize = Files.size(segment);
+    Files.write(segment, "4\t1\tdead".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+    try (ResponseWriteAheadLog wal = new ResponseWriteAheadLog(tempDir, SEGMENT_MAX_BYTES)) {
+      assertEquals(completeSize, Files.size(segment));
+      assertEquals(3, wal.getLastSequence());
+      assertEquals(4, wal.append("response4"));
+      assertEquals(
+          Stream.of("response1", "response2", "response3", "response4")
+              .collect(Collectors.toList()),
+          getPayloads(wal.read(0, 10)));
+    }
+  }
+
+  @Test
+  void shouldTruncateRecordWithBadChecksumOnRecovery() throws Exception {
+    try (ResponseWriteAheadLog wal = new ResponseWriteAheadLog(tempDir, SEGMENT_MAX_BYTES)) {
+      wal.append("response1");
+      wal.append("response2");
+    }
+    Path segment = getSegments().get(0);
+    String content = new String(Files.readAllBytes(segment), StandardCharsets.UTF_8);
+    Files.write(
+        segment,
+        content.replace("response2", "response9").getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.TRUNCATE_EXISTING);
+
+    try (ResponseWriteAheadLog wal = new ResponseWriteAheadLog(tempDir, SEGMENT_MAX_BYTES)) {
+      assertEquals(1, wal.getLastSequence());
+      assertEquals(2, wal.append("response2"));
+      assertEquals(
+          Stream.of("response1", "response2").collect(Collectors.toList()),
+          getPayloads(wal.read(0, 10)));
+    }
+  }
+
+  @Test
+  void shouldRestoreMissingLineSeparatorOnRecovery() throws Exception {
+    try (ResponseWriteAheadLog wal = new ResponseWriteAheadLog(tempDir, SEGMENT_MAX_BYTES)) {
+      wal.append("response1");
+      wal.append("response2");
+    }
+    Path segment = getSegments().get(0);
+    byte[] content = Files.readAllBytes(segment);
+    Files.write(segment, Arrays.copyOf(content, content.length - 1));
+
+    try (ResponseWriteAheadLog wal = new ResponseWriteAheadLog(tempDir, SEGMENT_MAX_BYTES)) {
+      assertEquals(content.length, Files.size(segment));
+      assertEquals(2, wal.getLastSequence());
+      assertEquals(3, wal.append("response3"));
+      assertEquals(
+          Stream.of("response1", "response2", "response3").collect(Collectors.toList()),
+          getPayloads(wal.read(0, 10)));
+    }
+  }
+
+  @Test
+  void shouldKeepCheckpointAcrossRestarts() throws Exception {
+    try (ResponseWriteAheadLog wal = new ResponseWriteAheadLog(tempDir, SEGMENT_MAX_BYTES)) {
+      wal.append("response1");
+      wal.append("response2");
+      wal.append("response3");
+      wal.checkpoint(2);
+      // an older checkpoint is ignored
+      wal.checkpoint(1);
+      assertEquals(2, wal.getCheckpoint());
+      assertEquals(1, wal.getPendingCount());
+    }
+
+    try (ResponseWriteAheadLog wal = new ResponseWriteAheadLog(tempDir, SEGMENT_MAX_BYTES)) {
+      assertEquals(2, wal.getCheckpoint());
+      assertEquals(3, wal.getLastSequence());
+      List<Record> records = wal.read(wal.getCheckpoint(), 10);
+      assertEquals(1, records.size());
+      assertEquals(3, records.get(0).getSequence());
+      assertEquals("response3", records.get(0).getPayload());
+    }
+  }
+
+  @Test
+  void shouldDeleteCheckpointedSegmentsButNotTheActiveOne() throws Exception {
+    // every record rolls a new segment
+    try (ResponseWriteAheadLog wal = new ResponseWriteAheadLog(tempDir, 1)) {
+      for (int i = 1; i <= 4; i++) {
+        wal.append("response" + i);
+      }
+      assertEquals(4, getSegments().size());
+
+      wal.checkpoint(2);
+      assertEquals(
+          Stream.of(segmentName(3), segmentName(4)).collect(Collectors.toList()),
+          getSegmentNames());
+      assertEquals(
+          Stream.of("response3", "response4").collect(Collectors.toList()),
+          getPayloads(wal.read(2, 10)));
+
+      wal.checkpoint(4);
+      assertEquals(Stream.of(segmentName(4)).collect(Collectors.toList()), getSegmentNames());
+      assertEquals(0, wal.getPendingCount());
+      assertTrue(wal.read(4, 10).isEmpty());
+    }
+
+    try (ResponseWriteAheadLog wal = new ResponseWriteAheadLog(tempDir, 1)) {
+      assertEquals(4, wal.getLastSequence());
+      assertEquals(5, wal.append("response5"));
+      assertFalse(getSegmentNames().contains(segmentName(3)));
+      assertEquals(
+          Stream.of("response5").collect(Collectors.toList()), getPayloads(wal.read(4, 10)));
+    }
+  }
+
+  private List<Path> getSegments() throws IOException {
+    try (Stream<Path> paths = Files.list(tempDir)) {
+      return paths
+          .filter(path -> path.getFileName().toString().endsWith(".wal"))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private List<String> getSegmentNames() throws IOException {
+    return getSegments().stream()
+        .map(path -> path.getFileName().toString())
+        .collect(Collectors.toList());
+  }
+
+  private static String segmentName(long firstSequence) {
+    return String.format("responses-%020d.wal", firstSequence);
+  }
+
+  private static List<String> getPayloads(List<Record> records) {
+    return records.stream().map(Record::getPayload).collect(Collectors.toList());
+  }
+}
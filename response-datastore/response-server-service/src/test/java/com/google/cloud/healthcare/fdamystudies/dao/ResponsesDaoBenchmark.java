@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.dao;
+
+import com.google.cloud.healthcare.fdamystudies.common.BaseMockIT;
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Compares the throughput of the responses DAOs. It only runs with {@code -Dresponses.benchmark=true}
+ * and needs the datastores of the benchmarked backends, for example:
+ *
+ * <pre>
+ * mvn test -Dtest=ResponsesDaoBenchmark -Dresponses.benchmark=true \
+ *   -Dresponses.benchmark.backends=file,jdbc,firestore \
+ *   -Dspring.datasource.url=jdbc:mysql://localhost:3306/mystudies_response_server?rewriteBatchedStatements=true \
+ *   -Dspring.datasource.driver-class-name=com.mysql.cj.jdbc.Driver \
+ *   -Dspring.datasource.username=... -Dspring.datasource.password=... \
+ *   -Dfirestore.project.id=...
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "responses.benchmark", matches = "true")
+public class ResponsesDaoBenchmark extends BaseMockIT {
+
+  private static final String STUDY_COLLECTION_NAME = "BENCHMARK-RESPONSES";
+
+  private static final int QUESTIONS_PER_RESPONSE = 10;
+
+  private XLogger logger = XLoggerFactory.getXLogger(ResponsesDaoBenchmark.class.getName());
+
+  @Autowired
+  @Qualifier("cloudFirestoreResponsesDaoImpl")
+  private ResponsesDao cloudFirestoreResponsesDao;
+
+  @Autowired
+  @Qualifier("fileResponsesDaoImpl")
+  private ResponsesDao fileResponsesDao;
+
+  @Autowired
+  @Qualifier("jdbcResponsesDaoImpl")
+  private ResponsesDao jdbcResponsesDao;
+
+  @Value("${responses.benchmark.backends:file}")
+  private String backends;
+
+  @Value("${responses.benchmark.responses:10000}")
+  private int responseCount;
+
+  @Value("${responses.benchmark.participants:100}")
+  private int participantCount;
+
+  @Value("${responses.benchmark.batch-size:100}")
+  private int batchSize;
+
+  @Test
+  void compareResponsesDaoThroughput() throws Exception {
+    for (String backend : backends.split(",")) {
+      switch (backend.trim()) {
+        case "firestore":
+          run(backend, cloudFirestoreResponsesDao);
+          break;
+        case "file":
+          run(backend, fileResponsesDao);
+          break;
+        case "jdbc":
+          run(backend, jdbcResponsesDao);
+          break;
+        default:
+          throw new IllegalArgumentException("unknown backend " + backend);
+      }
+    }
+  }
+
+  private void run(String backend, ResponsesDao responsesDao) throws Exception {
+    String studyId = "BENCHMARK_" + UUID.randomUUID().toString().substring(0, 8);
+    List<Map<String, Object>> responses = new ArrayList<>();
+    for (int i = 0; i < responseCount; i++) {
+      responses.add(newResponse(i));
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < responses.size(); i += batchSize) {
+      responsesDao.saveActivityResponseDataList(
+          studyId,
+          STUDY_COLLECTION_NAME,
+          AppConstants.ACTIVITIES_COLLECTION_NAME,
+          responses.subList(i, Math.min(responses.size(), i + batchSize)));
+    }
+    report(backend, "save", responseCount, start);
+
+    start = System.nanoTime();
+    for (int i = 0; i < participantCount; i++) {
+      responsesDao.getActivityResponseDataForParticipant(
+          STUDY_COLLECTION_NAME, studyId, "site" + (i % 5), "participant" + i, "activity0", null);
+    }
+    report(backend, "read", participantCount, start);
+
+    start = System.nanoTime();
+    for (int i = 0; i < participantCount; i++) {
+      responsesDao.updateWithdrawalStatusForParticipant(
+          STUDY_COLLECTION_NAME, studyId, "participant" + i);
+    }
+    report(backend, "withdraw", participantCount, start);
+
+    start = System.nanoTime();
+    for (int i = 0; i < participantCount; i++) {
+      responsesDao.deleteActivityResponseDataForParticipant(
+          STUDY_COLLECTION_NAME,
+          studyId,
+          AppConstants.ACTIVITIES_COLLECTION_NAME,
+          "participant" + i);
+    }
+    report(backend, "delete", participantCount, start);
+  }
+
+  private Map<String, Object> newResponse(int i) {
+    int participant = i % participantCount;
+    Map<String, Object> response = new HashMap<>();
+    response.put(AppConstants.PARTICIPANT_ID_KEY, "participant" + participant);
+    response.put(AppConstants.SITE_ID_KEY, "site" + (participant % 5));
+    response.put(AppConstants.ACTIVITY_ID_KEY, "activity" + (i % 3));
+    response.put(AppConstants.ACTIVITY_RUN_ID_KEY, "run" + i);
+    response.put(AppConstants.STUDY_VERSION_KEY, "1.0");
+    response.put(AppConstants.CREATED_TS_KEY, String.valueOf(System.currentTimeMillis()));
+    List<Map<String, Object>> results = new ArrayList<>();
+    for (int q = 0; q < QUESTIONS_PER_RESPONSE; q++) {
+      Map<String, Object> result = new HashMap<>();
+      result.put(AppConstants.QUESTION_ID_KEY, "question" + q);
+      result.put(AppConstants.RESULT_TYPE_KEY, "numeric");
+      result.put(AppConstants.VALUE_KEY_STR, String.valueOf(q * i));
+      results.add(result);
+    }
+    response.put(AppConstants.RESULTS_FIELD_KEY, results);
+    return response;
+  }
+
+  private void report(String backend, String operation, int count, long startNanos) {
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    logger.info(
+        String.format(
+            "%-9s %-8s %8d ops in %8.3f s, %10.1f ops/s",
+            backend, operation, count, seconds, count / seconds));
+  }
+}
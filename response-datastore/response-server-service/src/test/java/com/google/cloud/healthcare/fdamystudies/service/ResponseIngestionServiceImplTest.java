@@ -0,0 +1,215 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.healthcare.fdamystudies.bean.ActivityStateRequestBean;
+import com.google.cloud.healthcare.fdamystudies.bean.IngestedActivityResponse;
+import com.google.cloud.healthcare.fdamystudies.bean.ParticipantActivityBean;
+import com.google.cloud.healthcare.fdamystudies.common.JsonUtils;
+import com.google.cloud.healthcare.fdamystudies.common.ResponseServerAuditLogHelper;
+import com.google.cloud.healthcare.fdamystudies.dao.ResponseWriteAheadLog;
+import com.google.cloud.healthcare.fdamystudies.dao.ResponsesDao;
+import com.google.cloud.healthcare.fdamystudies.utils.AppConstants;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ResponseIngestionServiceImplTest {
+
+  private static final long TIMEOUT_MILLIS = 10000;
+
+  @TempDir Path walPath;
+
+  private final ResponsesDao responsesDao = mock(ResponsesDao.class);
+
+  private final ParticipantActivityStateResponseService participantActivityStateResponseService =
+      mock(ParticipantActivityStateResponseService.class);
+
+  private final ResponseIngestionServiceImpl ingestionService = new ResponseIngestionServiceImpl();
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    ObjectProvider<MeterRegistry> meterRegistryProvider = mock(ObjectProvider.class);
+    when(meterRegistryProvider.getIfAvailable(any())).thenReturn(new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(ingestionService, "responsesDao", responsesDao);
+    ReflectionTestUtils.setField(
+        ingestionService,
+        "participantActivityStateResponseService",
+        participantActivityStateResponseService);
+    ReflectionTestUtils.setField(
+        ingestionService, "responseAggregateService", mock(ResponseAggregateService.class));
+    ReflectionTestUtils.setField(
+        ingestionService, "responseServerAuditLogHelper", mock(ResponseServerAuditLogHelper.class));
+    ReflectionTestUtils.setField(ingestionService, "meterRegistry", meterRegistryProvider);
+    ReflectionTestUtils.setField(ingestionService, "mode", "wal");
+    ReflectionTestUtils.setField(ingestionService, "walPath", walPath.toString());
+    ReflectionTestUtils.setField(ingestionService, "segmentMaxBytes", 1024L * 1024);
+    ReflectionTestUtils.setField(ingestionService, "maxPending", 100L);
+    ReflectionTestUtils.setField(ingestionService, "batchSize", 100);
+    ReflectionTestUtils.setField(ingestionService, "pollIntervalMillis", 10L);
+    ReflectionTestUtils.setField(ingestionService, "maxAttempts", 2);
+    ReflectionTestUtils.setField(ingestionService, "maxBackoffMillis", 50L);
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    ingestionService.shutdown();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldWriteOneBatchPerStudyAndOneStateUpdatePerParticipant() throws Exception {
+    // Step-1: responses of two studies are logged before the drainer starts
+    appendRecords(
+        toPayload(newResponse("study1", "participant1", "activity1", "run1")),
+        toPayload(newResponse("study1", "participant1", "activity2", "run1")),
+        toPayload(newResponse("study2", "participant2", "activity1", "run1")),
+        toPayload(newResponse("study1", "participant3", "activity1", "run1")));
+
+    ingestionService.init();
+    awaitCheckpoint(4);
+
+    // Step-2: one write per study
+    ArgumentCaptor<List<Map<String, Object>>> study1Responses = ArgumentCaptor.forClass(List.class);
+    verify(responsesDao)
+        .saveActivityResponseDataList(
+            eq("study1"), anyString(), anyString(), study1Responses.capture());
+    assertEquals(
+        Arrays.asList("participant1", "participant1", "participant3"),
+        getParticipantIds(study1Responses.getValue()));
+    verify(responsesDao)
+        .saveActivityResponseDataList(eq("study2"), anyString(), anyString(), anyList());
+    verify(responsesDao, never())
+        .saveActivityResponseData(anyString(), anyString(), anyString(), anyMap());
+
+    // Step-3: one activity state update per participant
+    ArgumentCaptor<ActivityStateRequestBean> activityStates =
+        ArgumentCaptor.forClass(ActivityStateRequestBean.class);
+    verify(participantActivityStateResponseService, times(3))
+        .saveParticipantActivities(activityStates.capture());
+    ActivityStateRequestBean participant1State = activityStates.getAllValues().get(0);
+    assertEquals("participant1", participant1State.getParticipantId());
+    assertEquals(
+        Arrays.asList("activity1", "activity2"),
+        participant1State
+            .getActivity()
+            .stream()
+            .map(ParticipantActivityBean::getActivityId)
+            .collect(Collectors.toList()));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldDeadLetterPoisonRecordWithoutHoldingBackItsBatch() throws Exception {
+    // Step-1: a record that cannot be read is logged between two responses
+    appendRecords(
+        toPayload(newResponse("study1", "participant1", "activity1", "run1")),
+        "not a response",
+        toPayload(newResponse("study1", "participant2", "activity1", "run1")));
+
+    ingestionService.init();
+    awaitCheckpoint(3);
+
+    // Step-2: only the poison record is dead lettered, the responses around it are saved
+    assertEquals(
+        Collections.singletonList("not a response"),
+        Files.readAllLines(walPath.resolve("dead-letter.jsonl"), StandardCharsets.UTF_8));
+    ArgumentCaptor<List<Map<String, Object>>> savedResponses = ArgumentCaptor.forClass(List.class);
+    verify(responsesDao, timeout(TIMEOUT_MILLIS).atLeastOnce())
+        .saveActivityResponseDataList(
+            eq("study1"), anyString(), anyString(), savedResponses.capture());
+    assertTrue(
+        savedResponses
+            .getAllValues()
+            .stream()
+            .flatMap(List::stream)
+            .map(response -> response.get(AppConstants.PARTICIPANT_ID_KEY))
+            .collect(Collectors.toSet())
+            .containsAll(Arrays.asList("participant1", "participant2")));
+    verify(participantActivityStateResponseService, timeout(TIMEOUT_MILLIS).atLeast(2))
+        .saveParticipantActivities(any(ActivityStateRequestBean.class));
+  }
+
+  private void appendRecords(String... payloads) throws Exception {
+    try (ResponseWriteAheadLog wal = new ResponseWriteAheadLog(walPath, 1024L * 1024)) {
+      for (String payload : payloads) {
+        wal.append(payload);
+      }
+    }
+  }
+
+  private void awaitCheckpoint(long sequence) throws Exception {
+    ResponseWriteAheadLog wal =
+        (ResponseWriteAheadLog) ReflectionTestUtils.getField(ingestionService, "writeAheadLog");
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (wal.getCheckpoint() < sequence && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(sequence, wal.getCheckpoint());
+  }
+
+  private static List<Object> getParticipantIds(List<Map<String, Object>> responses) {
+    return responses
+        .stream()
+        .map(response -> response.get(AppConstants.PARTICIPANT_ID_KEY))
+        .collect(Collectors.toList());
+  }
+
+  private static String toPayload(IngestedActivityResponse response) throws Exception {
+    return JsonUtils.getObjectMapper().writeValueAsString(response);
+  }
+
+  private static IngestedActivityResponse newResponse(
+      String studyId, String participantId, String activityId, String activityRunId) {
+    Map<String, Object> dataToStore = new HashMap<>();
+    dataToStore.put(AppConstants.PARTICIPANT_ID_KEY, participantId);
+    dataToStore.put(AppConstants.ACTIVITY_ID_KEY, activityId);
+    dataToStore.put(AppConstants.ACTIVITY_RUN_ID_KEY, activityRunId);
+    return new IngestedActivityResponse(
+        studyId,
+        "studies",
+        AppConstants.ACTIVITIES_COLLECTION_NAME,
+        participantId,
+        activityId,
+        "1.0",
+        activityRunId,
+        dataToStore,
+        null);
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.healthcare.fdamystudies.bean.ActivitiesBean;
+import com.google.cloud.healthcare.fdamystudies.bean.ParticipantActivityBean;
+import com.google.cloud.healthcare.fdamystudies.bean.QuestionnaireActivityMetaDataBean;
+import com.google.cloud.healthcare.fdamystudies.bean.QuestionnaireActivityStructureBean;
+import com.google.cloud.healthcare.fdamystudies.bean.StudyActivityMetadataRequestBean;
+import com.google.cloud.healthcare.fdamystudies.bean.StudyMetadataBean;
+import com.google.cloud.healthcare.fdamystudies.config.ApplicationConfiguration;
+import com.google.cloud.healthcare.fdamystudies.dao.ResponsesDao;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+public class StudyMetadataServiceImplTest {
+
+  private static final String APP_ID = "app1";
+
+  private static final String STUDY_ID = "study1";
+
+  private static final String METADATA_URL = "http://localhost/study-datastore/activity";
+
+  private static final String ACTIVITY_LIST_URL = "http://localhost/study-datastore/activityList";
+
+  private static final long TIMEOUT_MILLIS = 10000;
+
+  private final RestTemplate restTemplate = mock(RestTemplate.class);
+
+  private final StudyMetadataServiceImpl studyMetadataService = new StudyMetadataServiceImpl();
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    ApplicationConfiguration appConfig = new ApplicationConfiguration();
+    appConfig.setWcpStudyActivityMetadataUrl(METADATA_URL);
+    appConfig.setWcpStudyActivityListUrl(ACTIVITY_LIST_URL);
+    appConfig.setWcpBundleId("bundle");
+    appConfig.setWcpAppToken("token");
+    ObjectProvider<MeterRegistry> meterRegistryProvider = mock(ObjectProvider.class);
+    when(meterRegistryProvider.getIfAvailable(any())).thenReturn(new SimpleMeterRegistry());
+
+    ReflectionTestUtils.setField(studyMetadataService, "restTemplate", restTemplate);
+    ReflectionTestUtils.setField(studyMetadataService, "appConfig", appConfig);
+    ReflectionTestUtils.setField(studyMetadataService, "responsesDao", mock(ResponsesDao.class));
+    ReflectionTestUtils.setField(studyMetadataService, "meterRegistry", meterRegistryProvider);
+    ReflectionTestUtils.setField(studyMetadataService, "activityMetadataCacheEnabled", true);
+    ReflectionTestUtils.setField(studyMetadataService, "activityMetadataCacheMaxSize", 100);
+    ReflectionTestUtils.setField(studyMetadataService, "activityMetadataCacheTtlSeconds", 3600L);
+    ReflectionTestUtils.setField(studyMetadataService, "activityMetadataWarmUpEnabled", true);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    studyMetadataService.shutdown();
+  }
+
+  @Test
+  public void shouldFetchActivityOnceForConcurrentRequests() throws Exception {
+    studyMetadataService.init();
+    // Step-1: study datastore answers only once every request is waiting
+    CountDownLatch release = new CountDownLatch(1);
+    QuestionnaireActivityStructureBean activity = newActivity("activity1");
+    when(restTemplate.exchange(
+            contains(METADATA_URL),
+            eq(HttpMethod.GET),
+            any(HttpEntity.class),
+            eq(QuestionnaireActivityMetaDataBean.class)))
+        .thenAnswer(
+            invocation -> {
+              release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+              return newMetadataResponse(activity);
+            });
+
+    // Step-2: a burst of requests for the same study, activity and version
+    ExecutorService requests = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<QuestionnaireActivityStructureBean>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        results.add(requests.submit(() -> getActivity("activity1", "1.0")));
+      }
+      Thread.sleep(200);
+      release.countDown();
+      for (Future<QuestionnaireActivityStructureBean> result : results) {
+        assertSame(activity, result.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+      }
+    } finally {
+      requests.shutdownNow();
+    }
+
+    // Step-3: a single upstream fetch, later requests are served from the cache
+    assertSame(activity, getActivity("activity1", "1.0"));
+    verifyMetadataFetches(1);
+  }
+
+  @Test
+  public void shouldFetchActivityAgainAfterTtl() throws Exception {
+    ReflectionTestUtils.setField(studyMetadataService, "activityMetadataCacheTtlSeconds", 1L);
+    studyMetadataService.init();
+    mockMetadataResponse();
+
+    getActivity("activity1", "1.0");
+    getActivity("activity1", "1.0");
+    verifyMetadataFetches(1);
+
+    Thread.sleep(1100);
+    getActivity("activity1", "1.0");
+    verifyMetadataFetches(2);
+  }
+
+  @Test
+  public void shouldNotCacheUpstreamFailure() throws Exception {
+    studyMetadataService.init();
+    QuestionnaireActivityStructureBean activity = newActivity("activity1");
+    when(restTemplate.exchange(
+            contains(METADATA_URL),
+            eq(HttpMethod.GET),
+            any(HttpEntity.class),
+            eq(QuestionnaireActivityMetaDataBean.class)))
+        .thenThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE))
+        .thenReturn(newMetadataResponse(activity));
+
+    assertThrows(HttpServerErrorException.class, () -> getActivity("activity1", "1.0"));
+
+    // the next request fetches the activity again and caches it
+    assertSame(activity, getActivity("activity1", "1.0"));
+    assertSame(activity, getActivity("activity1", "1.0"));
+    verifyMetadataFetches(2);
+  }
+
+  @Test
+  public void shouldWarmUpActivitiesOfSavedStudy() throws Exception {
+    studyMetadataService.init();
+    mockMetadataResponse();
+    ActivitiesBean activitiesBean = new ActivitiesBean();
+    activitiesBean.setActivities(
+        Arrays.asList(
+            newParticipantActivity("activity1", "1.0"),
+            newParticipantActivity("activity2", "2.0")));
+    when(restTemplate.exchange(
+            contains(ACTIVITY_LIST_URL),
+            eq(HttpMethod.GET),
+            any(HttpEntity.class),
+            eq(ActivitiesBean.class)))
+        .thenReturn(ResponseEntity.ok(activitiesBean));
+
+    // Step-1: saving the study metadata loads its activities in the background
+    StudyMetadataBean studyMetadata = new StudyMetadataBean();
+    studyMetadata.setStudyId(STUDY_ID);
+    studyMetadata.setAppId(APP_ID);
+    studyMetadataService.saveStudyMetadata(studyMetadata);
+    verify(restTemplate, timeout(TIMEOUT_MILLIS).times(2))
+        .exchange(
+            contains(METADATA_URL),
+            eq(HttpMethod.GET),
+            any(HttpEntity.class),
+            eq(QuestionnaireActivityMetaDataBean.class));
+
+    // Step-2: the responses that follow do not call study datastore
+    assertEquals("activity1", getActivity("activity1", "1.0").getMetadata().getActivityId());
+    assertEquals("activity2", getActivity("activity2", "2.0").getMetadata().getActivityId());
+    verifyMetadataFetches(2);
+  }
+
+  private QuestionnaireActivityStructureBean getActivity(String activityId, String version)
+      throws Exception {
+    StudyActivityMetadataRequestBean request = new StudyActivityMetadataRequestBean();
+    request.setStudyId(STUDY_ID);
+    request.setActivityId(activityId);
+    request.setActivityVersion(version);
+    return studyMetadataService.getStudyActivityMetadata(APP_ID, request, null);
+  }
+
+  /** Answers each activity with its own structure, whatever the order of the requests. */
+  private void mockMetadataResponse() {
+    when(restTemplate.exchange(
+            contains(METADATA_URL),
+            eq(HttpMethod.GET),
+            any(HttpEntity.class),
+            eq(QuestionnaireActivityMetaDataBean.class)))
+        .thenAnswer(
+            invocation -> {
+              String url = invocation.getArgument(0);
+              String activityId = url.contains("activityId=activity2") ? "activity2" : "activity1";
+              return newMetadataResponse(newActivity(activityId));
+            });
+  }
+
+  private void verifyMetadataFetches(int fetches) {
+    verify(restTemplate, times(fetches))
+        .exchange(
+            anyString(),
+            eq(HttpMethod.GET),
+            any(HttpEntity.class),
+            eq(QuestionnaireActivityMetaDataBean.class));
+  }
+
+  private static ResponseEntity<QuestionnaireActivityMetaDataBean> newMetadataResponse(
+      QuestionnaireActivityStructureBean activity) {
+    QuestionnaireActivityMetaDataBean metadata = new QuestionnaireActivityMetaDataBean();
+    metadata.setActivity(activity);
+    return ResponseEntity.ok(metadata);
+  }
+
+  private static QuestionnaireActivityStructureBean newActivity(String activityId) {
+    QuestionnaireActivityStructureBean activity = new QuestionnaireActivityStructureBean();
+    activity.setType("questionnaire");
+    activity.getMetadata().setActivityId(activityId);
+    return activity;
+  }
+
+  private static ParticipantActivityBean newParticipantActivity(
+      String activityId, String activityVersion) {
+    ParticipantActivityBean activity = new ParticipantActivityBean();
+    activity.setActivityId(activityId);
+    activity.setActivityVersion(activityVersion);
+    return activity;
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.google.cloud.healthcare.fdamystudies.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.cloud.healthcare.fdamystudies.bean.ActivityMetadataBean;
+import com.google.cloud.healthcare.fdamystudies.bean.ActivityResponseBean;
+import com.google.cloud.healthcare.fdamystudies.bean.ActivityResponseDataStructureBean;
+import com.google.cloud.healthcare.fdamystudies.bean.ActivityValueGroupBean;
+import com.google.cloud.healthcare.fdamystudies.bean.DestinationBean;
+import com.google.cloud.healthcare.fdamystudies.bean.QuestionnaireActivityStepsBean;
+import com.google.cloud.healthcare.fdamystudies.bean.StudyMetadataBean;
+import com.google.cloud.healthcare.fdamystudies.utils.BeanDocumentMapper.BeanProperty;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.beans.BeanInfo;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link BeanDocumentMapper} builds the same documents as the per-call {@link
+ * Introspector} mapping it replaced, which is kept below as the reference.
+ */
+public class BeanDocumentMapperTest {
+
+  @Test
+  public void shouldMapMetadataLikeIntrospection() throws Exception {
+    assertSameDocument(newMetadata());
+    assertSameDocument(new ActivityMetadataBean());
+  }
+
+  @Test
+  public void shouldMapStepsLikeIntrospection() throws Exception {
+    for (QuestionnaireActivityStepsBean step : newSteps()) {
+      assertSameDocument(step);
+    }
+    assertSameDocument(new QuestionnaireActivityStepsBean());
+  }
+
+  @Test
+  public void shouldMapResponsesLikeIntrospection() throws Exception {
+    ActivityResponseDataStructureBean data = new ActivityResponseDataStructureBean();
+    data.setResultType("questionnaire");
+    data.setStartTime("2020-11-20T10:00:00.000+0000");
+    data.setEndTime("2020-11-20T10:05:00.000+0000");
+    data.setResults(newSteps());
+    assertSameDocument(data);
+
+    ActivityResponseBean response = new ActivityResponseBean();
+    response.setParticipantId("participant1");
+    response.setType("questionnaire");
+    response.setWithdrawalStatus(false);
+    response.setMetadata(newMetadata());
+    response.setData(data);
+    assertSameDocument(response);
+  }
+
+  @Test
+  public void shouldReadStudyMetadataLikeIntrospection() throws Exception {
+    StudyMetadataBean studyMetadata = new StudyMetadataBean();
+    studyMetadata.setStudyId("study1");
+    studyMetadata.setStudyTitle("Study");
+    studyMetadata.setAppId("app1");
+
+    Map<String, Object> expected = new LinkedHashMap<>();
+    BeanInfo beanInfo = Introspector.getBeanInfo(StudyMetadataBean.class);
+    for (PropertyDescriptor pd : beanInfo.getPropertyDescriptors()) {
+      if (!pd.getName().equals("class")) {
+        expected.put(pd.getName(), pd.getReadMethod().invoke(studyMetadata));
+      }
+    }
+    Map<String, Object> actual = new LinkedHashMap<>();
+    for (BeanProperty property : BeanDocumentMapper.getProperties(StudyMetadataBean.class)) {
+      actual.put(property.getName(), property.get(studyMetadata));
+    }
+
+    // same properties, in the same order, with the same values
+    assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+    assertEquals(expected, actual);
+  }
+
+  private static void assertSameDocument(Object bean) throws Exception {
+    assertEquals(introspectedDocument(bean), BeanDocumentMapper.toDocument(bean));
+  }
+
+  private static ActivityMetadataBean newMetadata() {
+    ActivityMetadataBean metadata = new ActivityMetadataBean();
+    metadata.setStudyId("study1");
+    metadata.setStudyVersion("1.0");
+    metadata.setActivityId("activity1");
+    metadata.setActivityRunId("run1");
+    metadata.setActivityType("questionnaire");
+    metadata.setName("Survey");
+    metadata.setVersion("1.0");
+    metadata.setStartDate("2020-11-20T10:00:00.000+0000");
+    return metadata;
+  }
+
+  private static List<QuestionnaireActivityStepsBean> newSteps() {
+    QuestionnaireActivityStepsBean scale = newStep("scale", "q1", 5);
+    scale.setSkippable(true);
+    scale.setSkipped(false);
+    Map<String, Object> format = new HashMap<>();
+    format.put("maxValue", 10);
+    format.put("minValue", 0);
+    scale.setFormat(format);
+    DestinationBean destination = new DestinationBean();
+    destination.setCondition("5");
+    destination.setOperator("gt");
+    destination.setDestination("q2");
+    scale.setDestinations(new ArrayList<>(Arrays.asList(destination, new DestinationBean())));
+
+    QuestionnaireActivityStepsBean textChoice =
+        newStep("textChoice", "q2", new ArrayList<>(Arrays.asList("option1", "option2")));
+    textChoice.setOptions(new ArrayList<>(Arrays.asList("option1", "option2", "option3")));
+
+    // not an ArrayList, mapped through its JSON text
+    QuestionnaireActivityStepsBean fixedList = newStep("textChoice", "q3", "option1");
+    fixedList.setOptions(Arrays.asList("option1", "option2"));
+
+    QuestionnaireActivityStepsBean grouped = newStep("grouped", "q4", null);
+    grouped.setRepeatable(true);
+    grouped.setSteps(new ArrayList<>(Arrays.asList(newStep("text", "q4a", "answer"))));
+    ActivityValueGroupBean valueGroup = new ActivityValueGroupBean();
+    valueGroup.setValueGroup(
+        new ArrayList<>(Arrays.asList(newStep("text", "q4a", "a"), newStep("text", "q4b", "b"))));
+    grouped.setActvityValueGroup(valueGroup);
+
+    return new ArrayList<>(Arrays.asList(scale, textChoice, fixedList, grouped));
+  }
+
+  private static QuestionnaireActivityStepsBean newStep(
+      String resultType, String key, Object value) {
+    QuestionnaireActivityStepsBean step = new QuestionnaireActivityStepsBean();
+    step.setType("question");
+    step.setResultType(resultType);
+    step.setKey(key);
+    step.setTitle("Question " + key);
+    step.setStartTime("2020-11-20T10:01:00.000+0000");
+    step.setEndTime("2020-11-20T10:02:00.000+0000");
+    step.setValue(value);
+    return step;
+  }
+
+  /** The former ActivityResponseProcessorServiceImpl.getHashMapForBean, unchanged. */
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> introspectedDocument(Object bean) throws Exception {
+    BeanInfo beanInfo;
+    beanInfo = Introspector.getBeanInfo(bean.getClass());
+    PropertyDescriptor[] propDescriptor = beanInfo.getPropertyDescriptors();
+    Map<String, Object> dataToStore = new HashMap<>();
+    GsonBuilder gsonBuilder = new GsonBuilder();
+    Gson gson = gsonBuilder.create();
+    List<Map<String, Object>> stepsList = new ArrayList<Map<String, Object>>();
+    for (PropertyDescriptor pd : propDescriptor) {
+      String propertyName = pd.getName();
+      if (!propertyName.equals(AppConstants.PROPERTY_NAME_CLASS)) {
+        Method getterMethod = pd.getReadMethod();
+        Object propertyValue = getterMethod.invoke(bean);
+        if (!(propertyValue instanceof String)) {
+          if (propertyValue instanceof ActivityValueGroupBean
+              || propertyValue instanceof ActivityMetadataBean) {
+            dataToStore.put(propertyName, introspectedDocument(propertyValue));
+          } else if (propertyValue instanceof List) {
+            try {
+              ArrayList<Object> pvalueList = (ArrayList<Object>) propertyValue;
+              for (Object valueObj : pvalueList) {
+                if (valueObj instanceof QuestionnaireActivityStepsBean) {
+                  Map<String, Object> tempMap = introspectedDocument(valueObj);
+                  stepsList.add(tempMap);
+                } else if (valueObj instanceof String) {
+                  if (valueObj != null) {
+                    Object tmpPropertyValue = dataToStore.get(propertyName);
+                    if (tmpPropertyValue != null) {
+                      String tmpPropertyValueStr = (String) tmpPropertyValue.toString();
+                      if (!StringUtils.isBlank(tmpPropertyValueStr)) {
+                        valueObj = tmpPropertyValueStr + AppConstants.COMMA_STR + valueObj;
+                      }
+                    }
+                    dataToStore.put(propertyName, valueObj);
+                  }
+                } else {
+                  if (valueObj != null) {
+                    propertyValue = gson.toJson(valueObj);
+                    Object tmpPropertyValue = dataToStore.get(propertyName);
+                    if (tmpPropertyValue != null) {
+                      String tmpPropertyValueStr = (String) tmpPropertyValue.toString();
+                      if (!StringUtils.isBlank(tmpPropertyValueStr)) {
+                        propertyValue =
+                            tmpPropertyValueStr + AppConstants.COMMA_STR + propertyValue;
+                      }
+                    }
+                    dataToStore.put(propertyName, propertyValue);
+                  }
+                }
+                if (stepsList != null && !stepsList.isEmpty()) {
+                  dataToStore.put(AppConstants.RESULTS_FIELD_KEY, stepsList);
+                }
+              }
+            } catch (ClassCastException ce) {
+              propertyValue = gson.toJson(propertyValue);
+              dataToStore.put(propertyName, introspectedDocument(propertyValue));
+            }
+          } else {
+            propertyValue = gson.toJson(propertyValue);
+            dataToStore.put(propertyName, propertyValue);
+          }
+        } else {
+          if (propertyValue != null) {
+            dataToStore.put(propertyName, propertyValue);
+          }
+        }
+      }
+    }
+    return dataToStore;
+  }
+}
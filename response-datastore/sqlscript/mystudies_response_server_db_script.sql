@@ -34,9 +34,12 @@ CREATE TABLE IF NOT EXISTS `participant_activities` (
   `participant_id` varchar(64) NOT NULL,
   `study_id` varchar(32) NOT NULL,
   `total_count` int DEFAULT NULL,
+  `modification_version` bigint NOT NULL DEFAULT '0',
   PRIMARY KEY (`id`),
+  UNIQUE KEY `participant_activities_uk` (`study_id`,`participant_id`,`activity_id`),
   KEY `participant_activities_participant_id_idx` (`participant_id`),
-  KEY `participant_activities_study_id_idx` (`study_id`)
+  KEY `participant_activities_study_id_idx` (`study_id`),
+  KEY `participant_activities_version_idx` (`study_id`,`participant_id`,`modification_version`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
 
 -- Data exporting was unselected.
@@ -55,6 +58,101 @@ CREATE TABLE IF NOT EXISTS `participant_info` (
   KEY `participant_info_token_id_participant_id_idx` (`token_id`,`participant_id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
 
+/* Response documents stored by JdbcResponsesDaoImpl (response.storage.type=jdbc). The participant,
+site, activity and activity run of a response are generated from its JSON document and indexed,
+the keys of the questions it answers are indexed in a side table. */
+CREATE TABLE IF NOT EXISTS `study_metadata` (
+  `study_id` VARCHAR(64) NOT NULL,
+  `document` JSON NOT NULL,
+  `updated_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+  PRIMARY KEY (`study_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS `activity_responses` (
+  `id` BIGINT NOT NULL AUTO_INCREMENT,
+  `study_id` VARCHAR(64) NOT NULL,
+  `document` JSON NOT NULL,
+  `participant_id` VARCHAR(64)
+    GENERATED ALWAYS AS (IFNULL(JSON_UNQUOTE(JSON_EXTRACT(`document`, '$.participantId')), '')) STORED NOT NULL,
+  `site_id` VARCHAR(64)
+    GENERATED ALWAYS AS (JSON_UNQUOTE(JSON_EXTRACT(`document`, '$.siteId'))) STORED,
+  `activity_id` VARCHAR(64)
+    GENERATED ALWAYS AS (IFNULL(JSON_UNQUOTE(JSON_EXTRACT(`document`, '$.activityId')), '')) STORED NOT NULL,
+  `activity_run_id` VARCHAR(64)
+    GENERATED ALWAYS AS (IFNULL(JSON_UNQUOTE(JSON_EXTRACT(`document`, '$.activityRunId')), '')) STORED NOT NULL,
+  `created_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `activity_responses_run_uk` (`study_id`, `participant_id`, `activity_id`, `activity_run_id`),
+  KEY `activity_responses_site_activity_idx` (`study_id`, `participant_id`, `site_id`, `activity_id`),
+  KEY `activity_responses_study_idx` (`study_id`, `id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS `activity_response_questions` (
+  `study_id` VARCHAR(64) NOT NULL,
+  `participant_id` VARCHAR(64) NOT NULL,
+  `activity_id` VARCHAR(64) NOT NULL,
+  `activity_run_id` VARCHAR(64) NOT NULL,
+  `question_key` VARCHAR(255) NOT NULL,
+  PRIMARY KEY (`study_id`, `participant_id`, `activity_id`, `activity_run_id`, `question_key`),
+  KEY `activity_response_questions_key_idx` (`study_id`, `question_key`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+/* Per-question aggregates of the responses, see ResponseAggregateServiceImpl. Each answer counted
+is kept as a contribution, so that an activity run is counted once and the answers of a withdrawn
+participant can be subtracted. */
+CREATE TABLE IF NOT EXISTS `question_response_aggregates` (
+  `id` VARCHAR(255) NOT NULL,
+  `study_id` VARCHAR(64) NOT NULL,
+  `site_id` VARCHAR(64) NOT NULL,
+  `activity_id` VARCHAR(64) NOT NULL,
+  `question_key` VARCHAR(255) NOT NULL,
+  `response_count` BIGINT NOT NULL,
+  `numeric_count` BIGINT NOT NULL,
+  `value_sum` DOUBLE NOT NULL,
+  `value_sum_of_squares` DOUBLE NOT NULL,
+  `min_value` DOUBLE DEFAULT NULL,
+  `max_value` DOUBLE DEFAULT NULL,
+  `last_value` VARCHAR(255) DEFAULT NULL,
+  `last_created_timestamp` BIGINT DEFAULT NULL,
+  `sketch` LONGTEXT,
+  `version` BIGINT NOT NULL,
+  `updated_time` DATETIME DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `question_response_aggregates_uk` (`study_id`, `site_id`, `activity_id`, `question_key`),
+  KEY `question_response_aggregates_question_idx` (`study_id`, `activity_id`, `question_key`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS `question_response_contributions` (
+  `id` VARCHAR(255) NOT NULL,
+  `study_id` VARCHAR(64) NOT NULL,
+  `site_id` VARCHAR(64) NOT NULL,
+  `participant_id` VARCHAR(64) NOT NULL,
+  `activity_id` VARCHAR(64) NOT NULL,
+  `activity_run_id` VARCHAR(64) NOT NULL,
+  `question_key` VARCHAR(255) NOT NULL,
+  `numeric_value` DOUBLE DEFAULT NULL,
+  `answer_value` VARCHAR(255) DEFAULT NULL,
+  `created_timestamp` BIGINT NOT NULL,
+  `withdrawn` BIT(1) NOT NULL,
+  `created_time` DATETIME DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `question_response_contributions_uk`
+    (`study_id`, `participant_id`, `activity_id`, `activity_run_id`, `question_key`),
+  KEY `question_response_contributions_question_idx`
+    (`study_id`, `site_id`, `activity_id`, `question_key`, `withdrawn`, `created_timestamp`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS `idempotency_keys` (
+  `idempotency_key` VARCHAR(64) NOT NULL,
+  `response_status` INT DEFAULT NULL,
+  `response_body` LONGTEXT,
+  `request_fingerprint` VARCHAR(64) DEFAULT NULL,
+  `expires_at` BIGINT NOT NULL,
+  `created_time` DATETIME DEFAULT NULL,
+  PRIMARY KEY (`idempotency_key`),
+  KEY `idempotency_keys_expires_at_idx` (`expires_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
 /*!40101 SET SQL_MODE=IFNULL(@OLD_SQL_MODE, '') */;
 /*!40014 SET FOREIGN_KEY_CHECKS=IF(@OLD_FOREIGN_KEY_CHECKS IS NULL, 1, @OLD_FOREIGN_KEY_CHECKS) */;
 /*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;
@@ -217,15 +217,17 @@ public class FDASchedulerService {
           HttpConnectionParams.setSoTimeout(httpParams, 30000);
           HttpClient client = new DefaultHttpClient(httpParams);
 
-          HttpResponse response =
-              invokePushNotificationApi(json, client, oauthService.getAccessToken());
+          String accessToken = oauthService.getAccessToken();
+          HttpResponse response = invokePushNotificationApi(json, client, accessToken);
           if (response.getStatusLine().getStatusCode() == HttpStatus.UNAUTHORIZED.value()) {
             // Below method is called to indicate that the content of this entity is no longer
             // required.This will fix the error
             // Invalid use of BasicClientConnManager: connection still allocated.
             // Make sure to release the connection before allocating another one.
             response.getEntity().consumeContent();
-            response = invokePushNotificationApi(json, client, oauthService.getNewAccessToken());
+            response =
+                invokePushNotificationApi(
+                    json, client, oauthService.getNewAccessToken(accessToken));
           }
 
           if (response.getStatusLine().getStatusCode() != HttpStatus.OK.value()) {
@@ -29,4 +29,7 @@ public interface OAuthService {
   public String getAccessToken();
 
   public String getNewAccessToken();
+
+  /** Requests a new access token unless the rejected token was already replaced. */
+  public String getNewAccessToken(String rejectedAccessToken);
 }
@@ -25,10 +25,14 @@
 package com.fdahpstudydesigner.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fdahpstudydesigner.util.AccessTokenHolder;
+import com.fdahpstudydesigner.util.AccessTokenHolder.AccessToken;
 import com.fdahpstudydesigner.util.FdahpStudyDesignerUtil;
 import java.util.Base64;
 import java.util.Collections;
+import java.util.concurrent.Callable;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
@@ -64,10 +68,12 @@ public class OAuthServiceImpl implements OAuthService {
   private static final String APPLICATION_X_WWW_FORM_URLENCODED_CHARSET_UTF_8 =
       "application/x-www-form-urlencoded;charset=UTF-8";
 
-  private String accessToken;
+  private static final String EXPIRES_IN = "expires_in";
 
   private String encodedAuthorization;
 
+  private AccessTokenHolder accessTokenHolder;
+
   @Autowired private RestTemplate restTemplate;
 
   @PostConstruct
@@ -76,30 +82,58 @@ public class OAuthServiceImpl implements OAuthService {
     String clientSecret = getPropertyValue("security.oauth2.client.client-secret");
     String credentials = clientId + ":" + clientSecret;
     encodedAuthorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes());
+    accessTokenHolder =
+        new AccessTokenHolder(
+            new Callable<AccessToken>() {
+              @Override
+              public AccessToken call() {
+                return requestAccessToken();
+              }
+            },
+            Double.parseDouble(
+                StringUtils.defaultIfEmpty(
+                    getPropertyValue("security.oauth2.client.token.refresh-ahead-ratio"), "0.8")),
+            Long.parseLong(
+                StringUtils.defaultIfEmpty(
+                    getPropertyValue("security.oauth2.client.token.retry-delay-seconds"), "10")));
+  }
+
+  @PreDestroy
+  public void destroy() {
+    accessTokenHolder.shutdown();
   }
 
   @Override
   public String getAccessToken() {
-    if (StringUtils.isEmpty(accessToken)) {
-      this.accessToken = getNewAccessToken();
-    }
-    return this.accessToken;
+    return accessTokenHolder.getToken();
   }
 
   @Override
   public String getNewAccessToken() {
-    logger.entry("begin getNewAccessToken()");
+    return accessTokenHolder.getNewToken(null);
+  }
+
+  @Override
+  public String getNewAccessToken(String rejectedAccessToken) {
+    return accessTokenHolder.getNewToken(rejectedAccessToken);
+  }
+
+  private AccessToken requestAccessToken() {
+    logger.entry("begin requestAccessToken()");
     ResponseEntity<JsonNode> response = getToken();
-    if (response.getStatusCode() == HttpStatus.OK) {
-      this.accessToken = response.getBody().get(ACCESS_TOKEN).textValue();
-      logger.exit(String.format("status=%d", response.getStatusCode().value()));
-    } else {
+    if (response.getStatusCode() != HttpStatus.OK) {
       logger.error(
           String.format(
               "Get new access token from oauth scim service failed with status=%d and response=%s",
-              response.getStatusCode().value(), response.getBody().toString()));
+              response.getStatusCode().value(), response.getBody()));
+      return null;
     }
-    return this.accessToken;
+
+    JsonNode body = response.getBody();
+    long expiresIn = body.hasNonNull(EXPIRES_IN) ? body.get(EXPIRES_IN).asLong() : 3600;
+    logger.exit(
+        String.format("status=%d, expires_in=%d", response.getStatusCode().value(), expiresIn));
+    return new AccessToken(body.get(ACCESS_TOKEN).textValue(), expiresIn);
   }
 
   private ResponseEntity<JsonNode> getToken() {
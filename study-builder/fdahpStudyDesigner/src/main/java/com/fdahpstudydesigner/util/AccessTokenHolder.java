@@ -0,0 +1,215 @@
+/*
+ * Copyright 2020-2021 Google LLC
+ *
+ * Use of this source code is governed by an MIT-style
+ * license that can be found in the LICENSE file or at
+ * https://opensource.org/licenses/MIT.
+ */
+
+package com.fdahpstudydesigner.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+
+/**
+ * Holds the client credentials access token of the study builder. The token is refreshed in the
+ * background once refresh-ahead-ratio of its lifetime has passed, and concurrent callers that need
+ * a new token share one in-flight token request. If that request fails, all of them get an {@link
+ * AccessTokenUnavailableException}.
+ */
+public class AccessTokenHolder {
+
+  private static XLogger logger = XLoggerFactory.getXLogger(AccessTokenHolder.class.getName());
+
+  private final Callable<AccessToken> tokenSupplier;
+
+  private final double refreshAheadRatio;
+
+  private final long retryDelaySeconds;
+
+  private final ScheduledExecutorService scheduler;
+
+  private volatile AccessToken current;
+
+  private FutureTask<AccessToken> inFlight;
+
+  private ScheduledFuture<?> scheduledRefresh;
+
+  private boolean shutdown;
+
+  public AccessTokenHolder(
+      Callable<AccessToken> tokenSupplier, double refreshAheadRatio, long retryDelaySeconds) {
+    this.tokenSupplier = tokenSupplier;
+    this.refreshAheadRatio = refreshAheadRatio;
+    this.retryDelaySeconds = retryDelaySeconds;
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "access-token-refresh");
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+  }
+
+  public String getToken() {
+    AccessToken token = current;
+    if (token != null && !token.isExpired()) {
+      return token.getValue();
+    }
+    return join(refresh()).getValue();
+  }
+
+  /** Refreshes the rejected token unless a concurrent caller has already replaced it. */
+  public String getNewToken(String rejectedToken) {
+    AccessToken token = current;
+    if (token != null
+        && !token.isExpired()
+        && rejectedToken != null
+        && !StringUtils.equals(token.getValue(), rejectedToken)) {
+      return token.getValue();
+    }
+    return join(refresh()).getValue();
+  }
+
+  /** Cancels the scheduled refresh, callers still waiting for a token get an exception. */
+  public synchronized void shutdown() {
+    shutdown = true;
+    if (scheduledRefresh != null) {
+      scheduledRefresh.cancel(false);
+      scheduledRefresh = null;
+    }
+    if (inFlight != null) {
+      inFlight.cancel(true);
+    }
+    scheduler.shutdownNow();
+  }
+
+  private synchronized FutureTask<AccessToken> refresh() {
+    if (shutdown) {
+      throw new AccessTokenUnavailableException("the access token holder is shut down", null);
+    }
+    if (inFlight == null) {
+      inFlight =
+          new FutureTask<>(
+              new Callable<AccessToken>() {
+                @Override
+                public AccessToken call() {
+                  return fetch();
+                }
+              });
+      scheduler.execute(inFlight);
+    }
+    return inFlight;
+  }
+
+  private AccessToken fetch() {
+    AccessToken token = null;
+    try {
+      token = tokenSupplier.call();
+    } catch (Exception e) {
+      logger.error("access token refresh failed with an exception", e);
+      throw new AccessTokenUnavailableException("access token refresh failed", e);
+    } finally {
+      long nextRefreshSeconds =
+          token == null
+              ? retryDelaySeconds
+              : Math.max(
+                  retryDelaySeconds, (long) (token.getExpiresInSeconds() * refreshAheadRatio));
+      synchronized (this) {
+        inFlight = null;
+        if (token != null) {
+          current = token;
+        }
+        if (!shutdown) {
+          scheduleRefresh(nextRefreshSeconds);
+        }
+      }
+    }
+    if (token == null) {
+      throw new AccessTokenUnavailableException("no access token was returned", null);
+    }
+    return token;
+  }
+
+  private void scheduleRefresh(long delaySeconds) {
+    if (scheduledRefresh != null) {
+      scheduledRefresh.cancel(false);
+    }
+    scheduledRefresh =
+        scheduler.schedule(
+            new Runnable() {
+              @Override
+              public void run() {
+                refresh();
+              }
+            },
+            delaySeconds,
+            TimeUnit.SECONDS);
+  }
+
+  private static AccessToken join(FutureTask<AccessToken> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AccessTokenUnavailableException("interrupted waiting for the access token", e);
+    } catch (CancellationException e) {
+      throw new AccessTokenUnavailableException("the access token holder is shut down", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof AccessTokenUnavailableException) {
+        throw (AccessTokenUnavailableException) e.getCause();
+      }
+      throw new AccessTokenUnavailableException("access token refresh failed", e.getCause());
+    }
+  }
+
+  /** Thrown to the callers waiting for a token when the refresh failed. */
+  public static class AccessTokenUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 4618262390235810427L;
+
+    public AccessTokenUnavailableException(String message, Throwable cause) {
+      super(message, cause);
+    }
+  }
+
+  public static class AccessToken {
+
+    private final String value;
+
+    private final long expiresInSeconds;
+
+    private final long expiresAt;
+
+    public AccessToken(String value, long expiresInSeconds) {
+      this.value = value;
+      this.expiresInSeconds = expiresInSeconds;
+      this.expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(expiresInSeconds);
+    }
+
+    public String getValue() {
+      return value;
+    }
+
+    public long getExpiresInSeconds() {
+      return expiresInSeconds;
+    }
+
+    public boolean isExpired() {
+      return System.currentTimeMillis() >= expiresAt;
+    }
+  }
+}